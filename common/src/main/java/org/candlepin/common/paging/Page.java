@@ -25,6 +25,7 @@ public class Page<T> {
     private T pageData;
     private Integer maxRecords;
     private PageRequest pageRequest;
+    private String nextCursor;
 
     public T getPageData() {
         return pageData;
@@ -50,4 +51,16 @@ public class Page<T> {
         this.pageRequest = pageRequest;
     }
 
+    /**
+     * @return the ID of the last record of this keyset page, to request the next
+     * page after, or null if there are no more records
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
 }
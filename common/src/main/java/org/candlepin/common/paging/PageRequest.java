@@ -30,6 +30,7 @@ public class PageRequest {
     public static final String SORT_BY_PARAM = "sort_by";
     public static final String PAGE_PARAM = "page";
     public static final String PER_PAGE_PARAM = "per_page";
+    public static final String AFTER_PARAM = "after";
 
     public static final Integer DEFAULT_PAGE = Integer.valueOf(1);
     public static final Integer DEFAULT_PER_PAGE = Integer.valueOf(10);
@@ -39,6 +40,7 @@ public class PageRequest {
     private Integer perPage;
     private String sortBy;
     private Order order;
+    private String after;
 
     public Integer getPage() {
         return page;
@@ -72,7 +74,29 @@ public class PageRequest {
         this.order = order;
     }
 
+    /**
+     * @return the ID of the record the requested page follows, the empty string
+     * for the first page, or null if pages are requested by number
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
     public boolean isPaging() {
         return perPage != null && page != null;
     }
+
+    /**
+     * Keyset paging seeks past the last record of the previous page rather than
+     * skipping the records of all previous pages, and does not count the records.
+     *
+     * @return true if the page following a given record is requested
+     */
+    public boolean isKeyset() {
+        return perPage != null && after != null;
+    }
 }
@@ -71,7 +71,7 @@ public class LinkHeaderResponseFilter implements ContainerResponseFilter {
         }
 
         // If we aren't paging, then no need for Link headers.
-        if (page.getPageRequest() == null || !page.getPageRequest().isPaging()) {
+        if (page.getPageRequest() == null || !isPaged(page.getPageRequest())) {
             return;
         }
 
@@ -89,6 +89,17 @@ public class LinkHeaderResponseFilter implements ContainerResponseFilter {
 
         LinkHeader header = new LinkHeader();
 
+        // Keyset pages are not counted, so only link forward and back to the start.
+        if (page.getPageRequest().isKeyset()) {
+            if (page.getNextCursor() != null) {
+                header.addLink(null, "next", buildCursorLink(builder, page.getNextCursor()),
+                    null);
+            }
+            header.addLink(null, "first", buildCursorLink(builder, ""), null);
+            respContext.getHeaders().add(LINK_HEADER, header.toString());
+            return;
+        }
+
         Integer next = getNextPage(page);
         if (next != null) {
             header.addLink(null, "next", buildPageLink(builder, next), null);
@@ -104,6 +115,10 @@ public class LinkHeaderResponseFilter implements ContainerResponseFilter {
         respContext.getHeaders().add(LINK_HEADER, header.toString());
     }
 
+    private boolean isPaged(PageRequest pageRequest) {
+        return pageRequest.isPaging() || pageRequest.isKeyset();
+    }
+
     protected String buildPageLink(UriBuilder b, int value) {
         // Copy so we can use the same builder for building each link.
         UriBuilder builder = b.clone();
@@ -111,6 +126,12 @@ public class LinkHeaderResponseFilter implements ContainerResponseFilter {
         return builder.build().toString();
     }
 
+    protected String buildCursorLink(UriBuilder b, String after) {
+        UriBuilder builder = b.clone();
+        builder.replaceQueryParam(PageRequest.AFTER_PARAM, after);
+        return builder.build().toString();
+    }
+
     protected Integer getLastPage(Page<?> page) {
         PageRequest pageRequest = page.getPageRequest();
 
@@ -178,7 +199,8 @@ public class LinkHeaderResponseFilter implements ContainerResponseFilter {
         // parameters provided too.
         if (params != null) {
             for (Entry<String, List<String>> e : params.entrySet()) {
-                if (!e.getKey().equals(PageRequest.PAGE_PARAM)) {
+                if (!e.getKey().equals(PageRequest.PAGE_PARAM) &&
+                    !e.getKey().equals(PageRequest.AFTER_PARAM)) {
                     for (String v : e.getValue()) {
                         builder = builder.queryParam(e.getKey(), v);
                     }
@@ -55,8 +55,10 @@ public class PageRequestFilter implements ContainerRequestFilter {
         String perPage = params.getFirst(PageRequest.PER_PAGE_PARAM);
         String order = params.getFirst(PageRequest.ORDER_PARAM);
         String sortBy = params.getFirst(PageRequest.SORT_BY_PARAM);
+        String after = params.getFirst(PageRequest.AFTER_PARAM);
 
-        if (page != null || perPage != null || order != null || sortBy != null) {
+        if (page != null || perPage != null || order != null || sortBy != null ||
+            after != null) {
             p = new PageRequest();
 
             if (order == null) {
@@ -71,7 +73,18 @@ public class PageRequestFilter implements ContainerRequestFilter {
             p.setSortBy(sortBy);
 
             try {
-                if (page == null && perPage != null) {
+                if (after != null) {
+                    if (page != null) {
+                        I18n i18n = this.i18nProvider.get();
+                        throw new BadRequestException(i18n.tr("the page and after" +
+                            " parameters cannot be used together"));
+                    }
+                    // An empty after parameter requests the first page.
+                    p.setAfter(after);
+                    p.setPerPage(perPage == null ?
+                        PageRequest.DEFAULT_PER_PAGE : readInteger(perPage));
+                }
+                else if (page == null && perPage != null) {
                     p.setPage(PageRequest.DEFAULT_PAGE);
                     p.setPerPage(readInteger(perPage));
                 }
@@ -195,6 +195,22 @@ public class LinkHeaderResponseFilterTest {
             interceptor.buildPageLink(bu, 5));
     }
 
+    @Test
+    public void testBuildCursorLink() {
+        UriBuilder bu = UriBuilder.fromUri("https://localhost:8443/candlepin/resource");
+        assertEquals("https://localhost:8443/candlepin/resource?after=abc",
+            interceptor.buildCursorLink(bu, "abc"));
+    }
+
+    @Test
+    public void testDoesNotAddAfterParameter() {
+        MultivaluedMap<String, String> map = new MultivaluedMapImpl<String, String>();
+        map.add("after", "abc");
+        UriBuilder bu = UriBuilder.fromUri("https://localhost:8443/candlepin/resource");
+        URI returned = interceptor.addUnchangingQueryParams(bu, map).build();
+        assertEquals(URI.create("https://localhost:8443/candlepin/resource"), returned);
+    }
+
     @Test
     public void testGetPrevPage() {
         Page<Object> p = new Page<Object>();
@@ -366,4 +382,33 @@ public class LinkHeaderResponseFilterTest {
         assertTrue(header.contains("rel=\"next\""));
         assertTrue(header.contains("rel=\"prev\""));
     }
+
+    @Test
+    public void testPostProcessWithKeysetPaging() throws Exception {
+        when(page.getPageRequest()).thenReturn(pageRequest);
+        when(page.getNextCursor()).thenReturn("abc");
+        when(pageRequest.isKeyset()).thenReturn(true);
+        when(pageRequest.getPerPage()).thenReturn(5);
+
+        when(config.containsKey(eq(this.apiUrlPrefixKey))).thenReturn(false);
+        MultivaluedMap<String, Object> map = new MultivaluedMapImpl<String, Object>();
+        ResteasyProviderFactory.pushContext(Page.class, page);
+
+        mockReq = MockHttpRequest.create("GET",
+                new URI("/candlepin/resource?per_page=5&after=xyz"),
+                new URI("https://example.com"));
+        when(mockRequestContext.getUriInfo()).thenReturn(mockReq.getUri());
+        when(mockResponseContext.getHeaders()).thenReturn(map);
+
+        interceptor.filter(mockRequestContext, mockResponseContext);
+        String header = (String) map.getFirst(LinkHeaderResponseFilter.LINK_HEADER);
+
+        // Keyset pages are not counted, so there is no last or previous page.
+        assertTrue(header.contains("after=abc"));
+        assertFalse(header.contains("after=xyz"));
+        assertTrue(header.contains("rel=\"first\""));
+        assertTrue(header.contains("rel=\"next\""));
+        assertFalse(header.contains("rel=\"last\""));
+        assertFalse(header.contains("rel=\"prev\""));
+    }
 }
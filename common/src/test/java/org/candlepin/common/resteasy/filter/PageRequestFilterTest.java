@@ -174,4 +174,43 @@ public class PageRequestFilterTest {
         assertEquals(PageRequest.Order.DESCENDING, p.getOrder());
         assertEquals("id", p.getSortBy());
     }
+
+    @Test
+    public void testAfter() throws Exception {
+        mockReq = MockHttpRequest.create("GET",
+            "http://localhost/candlepin/status?after=abc&per_page=5");
+        when(mockRequestContext.getUriInfo()).thenReturn(mockReq.getUri());
+
+        interceptor.filter(mockRequestContext);
+
+        PageRequest p = ResteasyProviderFactory.getContextData(PageRequest.class);
+        assertTrue(p.isKeyset());
+        assertFalse(p.isPaging());
+        assertEquals("abc", p.getAfter());
+        assertEquals(Integer.valueOf(5), p.getPerPage());
+        assertNull(p.getPage());
+    }
+
+    @Test
+    public void testEmptyAfterRequestsFirstPage() throws Exception {
+        mockReq = MockHttpRequest.create("GET",
+            "http://localhost/candlepin/status?after=");
+        when(mockRequestContext.getUriInfo()).thenReturn(mockReq.getUri());
+
+        interceptor.filter(mockRequestContext);
+
+        PageRequest p = ResteasyProviderFactory.getContextData(PageRequest.class);
+        assertTrue(p.isKeyset());
+        assertEquals("", p.getAfter());
+        assertEquals(PageRequest.DEFAULT_PER_PAGE, p.getPerPage());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testDoesNotAllowAfterAndPage() throws Exception {
+        mockReq = MockHttpRequest.create("GET",
+            "http://localhost/candlepin/status?after=abc&page=2");
+        when(mockRequestContext.getUriInfo()).thenReturn(mockReq.getUri());
+
+        interceptor.filter(mockRequestContext);
+    }
 }
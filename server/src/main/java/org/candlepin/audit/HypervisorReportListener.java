@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.candlepin.resource.util.HypervisorReportCache;
+
+import com.google.inject.Inject;
+
+/**
+ * HypervisorReportListener: drops the hypervisor report digests of owners
+ * whose consumers were deleted, so a deleted host is created again the next
+ * time it is reported, even if the report did not change.
+ */
+public class HypervisorReportListener implements EventListener {
+
+    private HypervisorReportCache cache;
+
+    @Inject
+    public HypervisorReportListener(HypervisorReportCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void onEvent(Event e) {
+        if (e.getTarget() == Event.Target.CONSUMER && e.getType() == Event.Type.DELETED &&
+            e.getOwnerId() != null) {
+            cache.evict(e.getOwnerId());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.candlepin.model.OwnerInfoCache;
+
+import com.google.inject.Inject;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * OwnerInfoListener: drops the cached info of owners whose consumers,
+ * entitlements or pools changed.
+ */
+public class OwnerInfoListener implements EventListener {
+    private static final Set<Event.Target> TARGETS = EnumSet.of(Event.Target.CONSUMER,
+        Event.Target.OWNER, Event.Target.ENTITLEMENT, Event.Target.POOL,
+        Event.Target.SUBSCRIPTION, Event.Target.IMPORT, Event.Target.GUESTID,
+        Event.Target.COMPLIANCE);
+
+    private OwnerInfoCache cache;
+
+    @Inject
+    public OwnerInfoListener(OwnerInfoCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void onEvent(Event e) {
+        if (!TARGETS.contains(e.getTarget())) {
+            return;
+        }
+
+        if (e.getOwnerId() == null) {
+            cache.invalidateAll();
+        }
+        else {
+            cache.invalidate(e.getOwnerId());
+        }
+    }
+}
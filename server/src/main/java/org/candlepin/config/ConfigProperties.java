@@ -25,6 +25,7 @@ import org.candlepin.pinsetter.tasks.ExpiredPoolsJob;
 import org.candlepin.pinsetter.tasks.ExportCleaner;
 import org.candlepin.pinsetter.tasks.ImportRecordJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
+import org.candlepin.pinsetter.tasks.KeyPairRefillJob;
 import org.candlepin.pinsetter.tasks.StatisticHistoryTask;
 import org.candlepin.pinsetter.tasks.SweepBarJob;
 import org.candlepin.pinsetter.tasks.UnmappedGuestEntitlementCleanerJob;
@@ -166,6 +167,7 @@ public class ConfigProperties {
         UnpauseJob.class.getName(), SweepBarJob.class.getName(),
         ExportCleaner.class.getName(), ActiveEntitlementJob.class.getName(),
         UnmappedGuestEntitlementCleanerJob.class.getName(),
+        KeyPairRefillJob.class.getName(),
     };
 
     public static final String ENTITLER_JOB_THROTTLE =
@@ -193,6 +195,103 @@ public class ConfigProperties {
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
 
+    /**
+     * Number of seconds between checks of the database for updated rules. Rules
+     * uploaded, deleted or imported through this node are recompiled immediately.
+     */
+    public static final String RULES_FRESHNESS_INTERVAL =
+        "candlepin.rules.freshness_check_interval";
+
+    /**
+     * Maximum number of idle javascript execution scopes kept per thread.
+     */
+    public static final String RULES_SCOPE_POOL_SIZE = "candlepin.rules.scope_pool_size";
+
+    /**
+     * Engine used to calculate consumer compliance: "javascript" runs the compliance
+     * rules, "native" uses the equivalent Java implementation.
+     */
+    public static final String COMPLIANCE_ENGINE = "candlepin.compliance.engine";
+    public static final String COMPLIANCE_ENGINE_JAVASCRIPT = "javascript";
+    public static final String COMPLIANCE_ENGINE_NATIVE = "native";
+
+    /**
+     * Maximum number of current compliance statuses cached, one per consumer.
+     * Set to 0 to disable the cache.
+     */
+    public static final String COMPLIANCE_CACHE_MAX = "candlepin.compliance.cache.max_size";
+
+    /**
+     * Maximum number of owners whose pools are indexed by product and stacking ID
+     * to narrow down autobind candidates. Set to 0 to disable the index.
+     */
+    public static final String POOL_INDEX_MAX_OWNERS = "candlepin.pool_index.max_owners";
+
+    /**
+     * Maximum number of encoded v3 content payloads cached, one per distinct set
+     * of content paths. Set to 0 to disable the cache.
+     */
+    public static final String CONTENT_PAYLOAD_CACHE_MAX =
+        "candlepin.entitlement.content_payload_cache.max_size";
+
+    /**
+     * Number of entitlements whose certificates are regenerated together, and the
+     * number of threads signing them.
+     */
+    public static final String CERT_REGEN_BATCH_SIZE = "candlepin.entitlement.regen.batch_size";
+    public static final String CERT_REGEN_THREADS = "candlepin.entitlement.regen.threads";
+
+    /**
+     * Number of subscriptions whose pools are looked up, created, updated and
+     * deleted together when refreshing an owner's pools. Also the number of
+     * floating pools handed to the rules at once.
+     */
+    public static final String REFRESH_POOLS_BATCH_SIZE = "candlepin.refresh.pools.batch_size";
+
+    /**
+     * Number of owners whose info is cached, and the number of seconds it is
+     * served for at most before being recomputed. Set the number of owners to 0
+     * to compute the info on every request.
+     */
+    public static final String OWNER_INFO_CACHE_MAX_OWNERS =
+        "candlepin.owner_info.cache.max_owners";
+    public static final String OWNER_INFO_CACHE_MAX_AGE = "candlepin.owner_info.cache.max_age";
+
+    /**
+     * Number of distributor consumers whose last signed manifest is kept in the
+     * sync work directory, to be served again as long as nothing it was exported
+     * from changed. Set to 0 to build the manifest on every export.
+     */
+    public static final String EXPORT_CACHE_MAX_CONSUMERS =
+        "candlepin.export.cache.max_consumers";
+
+    /**
+     * Number of owner and reporter pairs whose last applied hypervisor report is
+     * remembered by digest, so it can be skipped when reported again unchanged,
+     * and the number of seconds a digest is trusted for at most. Set the number of
+     * reports to 0 to apply every report.
+     */
+    public static final String HYPERVISOR_REPORT_CACHE_MAX_REPORTS =
+        "candlepin.hypervisor.report_cache.max_reports";
+    public static final String HYPERVISOR_REPORT_CACHE_MAX_AGE =
+        "candlepin.hypervisor.report_cache.max_age";
+
+    /**
+     * Number of consumer key pairs generated ahead of time by the key pair refill
+     * job, so registration does not have to wait for one to be generated. The job
+     * warns when fewer than the low watermark are left. Set the size to 0 to
+     * generate key pairs on demand only.
+     */
+    public static final String KEYPAIR_POOL_SIZE = "candlepin.keypair_pool.size";
+    public static final String KEYPAIR_POOL_LOW_WATERMARK =
+        "candlepin.keypair_pool.low_watermark";
+
+    /**
+     * Number of threads healing the consumers of an owner concurrently in a heal
+     * entire org job.
+     */
+    public static final String HEAL_ORG_THREADS = "candlepin.heal_org.threads";
+
     public static final String INTEGER_FACTS = "candlepin.integer_facts";
     private static final String INTEGER_FACT_LIST = "";
 
@@ -253,7 +352,9 @@ public class ConfigProperties {
                 this.put(AUDIT_LISTENERS,
                     "org.candlepin.audit.DatabaseListener," +
                         "org.candlepin.audit.LoggingListener," +
-                        "org.candlepin.audit.ActivationListener");
+                        "org.candlepin.audit.ActivationListener," +
+                        "org.candlepin.audit.OwnerInfoListener," +
+                        "org.candlepin.audit.HypervisorReportListener");
                 this.put(AUDIT_LOG_FILE, "/var/log/candlepin/audit.log");
                 this.put(AUDIT_LOG_VERBOSE, "false");
                 this.put(AUDIT_FILTER_ENABLED, "false");
@@ -344,6 +445,24 @@ public class ConfigProperties {
                  */
                 this.put(PRODUCT_CACHE_MAX, "100");
 
+                this.put(RULES_FRESHNESS_INTERVAL, "10");
+                this.put(RULES_SCOPE_POOL_SIZE, "4");
+                this.put(COMPLIANCE_ENGINE, COMPLIANCE_ENGINE_JAVASCRIPT);
+                this.put(COMPLIANCE_CACHE_MAX, "10000");
+                this.put(POOL_INDEX_MAX_OWNERS, "100");
+                this.put(CONTENT_PAYLOAD_CACHE_MAX, "1000");
+                this.put(CERT_REGEN_BATCH_SIZE, "100");
+                this.put(CERT_REGEN_THREADS, "4");
+                this.put(REFRESH_POOLS_BATCH_SIZE, "1000");
+                this.put(HEAL_ORG_THREADS, "4");
+                this.put(OWNER_INFO_CACHE_MAX_OWNERS, "100");
+                this.put(OWNER_INFO_CACHE_MAX_AGE, "60");
+                this.put(EXPORT_CACHE_MAX_CONSUMERS, "100");
+                this.put(HYPERVISOR_REPORT_CACHE_MAX_REPORTS, "1000");
+                this.put(HYPERVISOR_REPORT_CACHE_MAX_AGE, "900");
+                this.put(KEYPAIR_POOL_SIZE, "100");
+                this.put(KEYPAIR_POOL_LOW_WATERMARK, "20");
+
                 /**
                  * As we do math on some facts and attributes, we need to constrain
                  * some values
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Owner;
+import org.candlepin.model.PoolCurator;
+
+import com.google.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CandidatePoolIndex
+ *
+ * Per owner index of pool IDs by the products the pools provide and by the
+ * stacking ID of their product, used to narrow down the pools autobind considers
+ * before loading them and running any rules.
+ *
+ * Each index is versioned with cheap aggregates over the owner's pools, their
+ * attributes, their products and provided products, see
+ * {@link PoolCurator#getPoolsVersion}, so pools changed by another node or outside
+ * the pool manager are picked up as well, save for the blind spot documented
+ * there. The pool manager also drops the index of an owner whenever it creates,
+ * updates or deletes one of their pools.
+ *
+ * Lookups may return IDs of pools which no longer qualify, callers still check
+ * the pools they load.
+ */
+public class CandidatePoolIndex {
+    private static Logger log = LoggerFactory.getLogger(CandidatePoolIndex.class);
+
+    private final PoolCurator poolCurator;
+    private final int maxOwners;
+    private final Map<String, Index> indexes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    @Inject
+    public CandidatePoolIndex(PoolCurator poolCurator, Configuration config) {
+        this(poolCurator, config.getInt(ConfigProperties.POOL_INDEX_MAX_OWNERS));
+    }
+
+    CandidatePoolIndex(PoolCurator poolCurator, final int maxOwners) {
+        this.poolCurator = poolCurator;
+        this.maxOwners = maxOwners;
+        this.indexes = new LinkedHashMap<String, Index>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Index> eldest) {
+                return size() > maxOwners;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxOwners > 0;
+    }
+
+    /**
+     * Looks up the owner's pools which provide one of the given products, or whose
+     * product has one of the given stacking IDs.
+     *
+     * @param owner the owner of the pools
+     * @param productIds IDs of the products the pools should provide
+     * @param stackIds stacking IDs of the pools to include
+     * @return IDs of the candidate pools
+     */
+    public Set<String> getCandidates(Owner owner, Collection<String> productIds,
+        Collection<String> stackIds) {
+        Index index = getIndex(owner);
+        Set<String> poolIds = new HashSet<String>();
+        addAll(poolIds, index.byProduct, productIds);
+        addAll(poolIds, index.byStack, stackIds);
+        return poolIds;
+    }
+
+    /**
+     * Looks up the owner's pools which provide one of the given products to guests,
+     * that is as a derived product if the pool has one and as a regular product
+     * otherwise.
+     *
+     * @param owner the owner of the pools
+     * @param productIds IDs of the products the pools should provide
+     * @return IDs of the candidate pools
+     */
+    public Set<String> getDerivedCandidates(Owner owner, Collection<String> productIds) {
+        Index index = getIndex(owner);
+        Set<String> poolIds = new HashSet<String>();
+        addAll(poolIds, index.byDerivedProduct, productIds);
+        return poolIds;
+    }
+
+    /**
+     * Drops the index of the owner, to be called whenever one of their pools is
+     * created, updated or deleted.
+     *
+     * @param owner the owner whose pools changed
+     */
+    public void invalidate(Owner owner) {
+        if (owner != null && owner.getId() != null) {
+            synchronized (indexes) {
+                indexes.remove(owner.getId());
+            }
+        }
+    }
+
+    /**
+     * @return number of lookups answered by an up to date index
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of times an owner's index had to be built
+     */
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    private Index getIndex(Owner owner) {
+        String version = poolCurator.getPoolsVersion(owner);
+        Index index;
+        synchronized (indexes) {
+            index = indexes.get(owner.getId());
+        }
+        if (index != null && index.version.equals(version)) {
+            hits.incrementAndGet();
+            return index;
+        }
+
+        rebuilds.incrementAndGet();
+        index = buildIndex(owner, version);
+        synchronized (indexes) {
+            indexes.put(owner.getId(), index);
+        }
+        return index;
+    }
+
+    private Index buildIndex(Owner owner, String version) {
+        log.debug("Indexing pools of owner: {}", owner.getKey());
+        Index index = new Index(version);
+        List<Object[]> products = poolCurator.listPoolProductIds(owner, "product");
+        List<Object[]> provided = poolCurator.listPoolProductIds(owner, "providedProducts");
+        List<Object[]> derived = poolCurator.listPoolProductIds(owner, "derivedProduct");
+        List<Object[]> derivedProvided =
+            poolCurator.listPoolProductIds(owner, "derivedProvidedProducts");
+
+        Set<String> hasDerived = new HashSet<String>();
+        for (Object[] row : derived) {
+            hasDerived.add((String) row[0]);
+        }
+
+        add(index.byProduct, products, null);
+        add(index.byProduct, provided, null);
+        add(index.byStack, poolCurator.listPoolStackingIds(owner), null);
+
+        // Pools without a derived product provide their regular products to guests:
+        add(index.byDerivedProduct, derived, null);
+        add(index.byDerivedProduct, derivedProvided, null);
+        add(index.byDerivedProduct, products, hasDerived);
+        add(index.byDerivedProduct, provided, hasDerived);
+        return index;
+    }
+
+    private static void add(Map<String, Set<String>> map, List<Object[]> pairs,
+        Set<String> skipPools) {
+        for (Object[] pair : pairs) {
+            String poolId = (String) pair[0];
+            String key = (String) pair[1];
+            if (key == null || (skipPools != null && skipPools.contains(poolId))) {
+                continue;
+            }
+
+            Set<String> poolIds = map.get(key);
+            if (poolIds == null) {
+                poolIds = new HashSet<String>();
+                map.put(key, poolIds);
+            }
+            poolIds.add(poolId);
+        }
+    }
+
+    private static void addAll(Set<String> poolIds, Map<String, Set<String>> map,
+        Collection<String> keys) {
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            Set<String> found = map.get(key);
+            if (found != null) {
+                poolIds.addAll(found);
+            }
+        }
+    }
+
+    private static class Index {
+        private final String version;
+        private final Map<String, Set<String>> byProduct = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> byStack = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> byDerivedProduct =
+            new HashMap<String, Set<String>>();
+
+        Index(String version) {
+            this.version = version;
+        }
+    }
+}
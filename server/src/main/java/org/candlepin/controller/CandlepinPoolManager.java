@@ -99,6 +99,10 @@ public class CandlepinPoolManager implements PoolManager {
     private static Logger log = LoggerFactory.getLogger(CandlepinPoolManager.class);
 
     private static final int MAX_ENTITLE_RETRIES = 3;
+    // Larger sets of candidate pools are filtered after listing the pools:
+    private static final int MAX_CANDIDATE_ID_FILTER = 500;
+    // Most pools listed at once to fill a keyset page of pools passing the rules:
+    private static final int MAX_POST_FILTER_CHUNK = 512;
 
     private EventSink sink;
     private EventFactory eventFactory;
@@ -116,6 +120,7 @@ public class CandlepinPoolManager implements PoolManager {
     private ProductCurator prodCurator;
     private ContentCurator contentCurator;
     private OwnerCurator ownerCurator;
+    private CandidatePoolIndex poolIndex;
 
     /**
      * @param poolCurator
@@ -133,7 +138,7 @@ public class CandlepinPoolManager implements PoolManager {
         EntitlementCertificateCurator ecC, ComplianceRules complianceRules,
         AutobindRules autobindRules, ActivationKeyRules activationKeyRules,
         ProductCurator prodCurator, ContentCurator contentCurator, OwnerCurator ownerCurator,
-        I18n i18n) {
+        I18n i18n, CandidatePoolIndex poolIndex) {
 
         this.poolCurator = poolCurator;
         this.sink = sink;
@@ -153,6 +158,7 @@ public class CandlepinPoolManager implements PoolManager {
         this.contentCurator = contentCurator;
         this.ownerCurator = ownerCurator;
         this.i18n = i18n;
+        this.poolIndex = poolIndex;
     }
 
     /*
@@ -169,51 +175,133 @@ public class CandlepinPoolManager implements PoolManager {
 
         SubscriptionReconciler reconciler = new SubscriptionReconciler();
         reconciler.reconcile(owner, subs, poolCurator);
-
-        Set<String> subIds = Util.newSet();
+        long subsDone = System.currentTimeMillis();
 
         // TODO:
         // Does changedContent have a use? Should refreshing products imply refreshing content?
         refreshContent(owner, subs);
         Set<Product> changedProducts = refreshProducts(owner, subs);
 
-        List<String> deletedSubs = new LinkedList<String>();
-        for (Subscription sub : subs) {
-            String subId = sub.getId();
-            subIds.add(subId);
-
-            log.debug("Processing subscription: {}", sub);
+        // Don't serve the refreshed products and content from this node's cache in
+        // their old state.
+        contentCurator.evictCachedEntities();
+        prodCurator.evictCachedEntities();
+        long productsDone = System.currentTimeMillis();
 
+        int batchSize = Math.max(1, config.getInt(ConfigProperties.REFRESH_POOLS_BATCH_SIZE));
+        Set<String> subIds = Util.newSet();
+        List<Subscription> activeSubs = new ArrayList<Subscription>(subs.size());
+        for (Subscription sub : subs) {
             // Remove expired subscriptions
             if (isExpired(sub)) {
-                deletedSubs.add(subId);
                 log.info("Skipping expired subscription: {}", sub);
                 continue;
             }
 
-            refreshPoolsForMasterPool(convertToMasterPool(sub), false, lazy, changedProducts);
+            subIds.add(sub.getId());
+            activeSubs.add(sub);
         }
 
+        for (int i = 0; i < activeSubs.size(); i += batchSize) {
+            refreshPoolsForSubscriptions(activeSubs.subList(i,
+                Math.min(activeSubs.size(), i + batchSize)), lazy, changedProducts);
+        }
+        long subPoolsDone = System.currentTimeMillis();
+
         Pool ueberPool = this.findUeberPool(owner);
         String ueberPoolId = ueberPool != null ? ueberPool.getId() : null;
 
-        // We deleted some, need to take that into account so we
-        // remove everything that isn't actually active
-        subIds.removeAll(deletedSubs);
         // delete pools whose subscription disappeared:
+        List<Pool> orphanedPools = new ArrayList<Pool>();
         for (Pool pool : poolCurator.getPoolsFromBadSubs(owner, subIds)) {
             if (pool.getSourceSubscription() != null && !pool.getType().isDerivedType() &&
                 (ueberPoolId == null || !ueberPoolId.equals(pool.getId()))) {
 
-                deletePool(pool);
+                orphanedPools.add(pool);
             }
         }
 
-        // TODO: break this call into smaller pieces.  There may be lots of floating pools
+        for (int i = 0; i < orphanedPools.size(); i += batchSize) {
+            deletePools(orphanedPools.subList(i, Math.min(orphanedPools.size(), i + batchSize)));
+        }
+        long orphansDone = System.currentTimeMillis();
+
+        // There may be lots of floating pools, so the rules only get a batch at a time:
         List<Pool> floatingPools = poolCurator.getOwnersFloatingPools(owner);
-        updateFloatingPools(floatingPools, lazy, changedProducts);
-        log.info("Refresh pools for owner: {} completed in: {}ms", owner.getKey(),
-                System.currentTimeMillis() - start);
+        for (int i = 0; i < floatingPools.size(); i += batchSize) {
+            updateFloatingPools(floatingPools.subList(i,
+                Math.min(floatingPools.size(), i + batchSize)), lazy, changedProducts);
+        }
+        long end = System.currentTimeMillis();
+
+        log.info("Refresh pools for owner: {} completed in: {}ms", owner.getKey(), end - start);
+        log.info("Refresh pools for owner: {} phases: subscriptions: {}ms, products and content: {}ms, " +
+            "{} subscriptions' pools: {}ms, {} orphaned pools: {}ms, {} floating pools: {}ms",
+            new Object[] {owner.getKey(), subsDone - start, productsDone - subsDone,
+                activeSubs.size(), subPoolsDone - productsDone, orphanedPools.size(),
+                orphansDone - subPoolsDone, floatingPools.size(), end - orphansDone});
+    }
+
+    /**
+     * Refreshes the pools of a batch of subscriptions. The existing pools of all of
+     * the subscriptions are looked up at once, and the pools to delete, create and
+     * update are then each saved together rather than subscription by subscription.
+     *
+     * @param subs active subscriptions to refresh the pools of
+     * @param lazy whether to regenerate the affected entitlement certificates lazily
+     * @param changedProducts products changed by the refresh
+     */
+    @Transactional
+    void refreshPoolsForSubscriptions(List<Subscription> subs, boolean lazy,
+        Set<Product> changedProducts) {
+        List<String> subIds = new ArrayList<String>(subs.size());
+        for (Subscription sub : subs) {
+            subIds.add(sub.getId());
+        }
+
+        // These don't all necessarily belong to this owner
+        Map<String, List<Pool>> poolsBySubId = new HashMap<String, List<Pool>>();
+        for (Pool pool : poolCurator.getPoolsBySubscriptionIds(subIds)) {
+            List<Pool> subscriptionPools = poolsBySubId.get(pool.getSubscriptionId());
+            if (subscriptionPools == null) {
+                subscriptionPools = new LinkedList<Pool>();
+                poolsBySubId.put(pool.getSubscriptionId(), subscriptionPools);
+            }
+            subscriptionPools.add(pool);
+        }
+
+        List<Pool> poolsToDelete = new ArrayList<Pool>();
+        List<Pool> poolsToCreate = new ArrayList<Pool>();
+        Map<String, EventBuilder> poolEvents = new HashMap<String, EventBuilder>();
+        List<PoolUpdate> poolUpdates = new ArrayList<PoolUpdate>();
+        for (Subscription sub : subs) {
+            log.debug("Processing subscription: {}", sub);
+            Pool pool = convertToMasterPool(sub);
+
+            List<Pool> subscriptionPools = poolsBySubId.get(sub.getId());
+            if (subscriptionPools == null) {
+                subscriptionPools = new LinkedList<Pool>();
+            }
+
+            // Cleans up pools on other owners who have migrated subs away
+            poolsToDelete.addAll(removePoolsOnOtherOwners(subscriptionPools, pool));
+
+            // capture the original quantity to check for updates later
+            Long originalQuantity = pool.getQuantity();
+            // BUG 1012386 This will regenerate master/derived for bonus scenarios
+            //  if only one of the pair still exists.
+            poolsToCreate.addAll(poolRules.createAndEnrichPools(pool, subscriptionPools));
+
+            // don't update floating here, we'll do that later so we don't update anything twice
+            poolUpdates.addAll(getPoolUpdatesForMasterPool(poolEvents, subscriptionPools, pool,
+                originalQuantity, false, changedProducts));
+        }
+
+        deletePools(poolsToDelete);
+        createPools(poolsToCreate);
+        regenerateCertificatesByEntIds(processPoolUpdates(poolEvents, poolUpdates), lazy);
+        log.debug("Refreshed pools of {} subscriptions: {} deleted, {} created, {} updated",
+            new Object[] {subs.size(), poolsToDelete.size(), poolsToCreate.size(), poolUpdates.size()});
     }
 
     private Owner refreshOwner(Owner owner) {
@@ -602,18 +690,30 @@ public class CandlepinPoolManager implements PoolManager {
     }
 
     void removeAndDeletePoolsOnOtherOwners(List<Pool> existingPools, Pool pool) {
+        deletePools(removePoolsOnOtherOwners(existingPools, pool));
+    }
+
+    /**
+     * Removes the pools which exist in another org than the master pool from the
+     * existing pools.
+     *
+     * @return the removed pools which should be deleted
+     */
+    private List<Pool> removePoolsOnOtherOwners(List<Pool> existingPools, Pool pool) {
         List<Pool> toRemove = new LinkedList<Pool>();
+        List<Pool> toDelete = new LinkedList<Pool>();
         for (Pool existing : existingPools) {
             if (!existing.getOwner().equals(pool.getOwner())) {
                 toRemove.add(existing);
                 log.warn("Removing {} because it exists in the wrong org", existing);
                 if (existing.getType() == PoolType.NORMAL ||
                     existing.getType() == PoolType.BONUS) {
-                    deletePool(existing);
+                    toDelete.add(existing);
                 }
             }
         }
         existingPools.removeAll(toRemove);
+        return toDelete;
     }
 
     /**
@@ -627,6 +727,27 @@ public class CandlepinPoolManager implements PoolManager {
      */
     Set<String> updatePoolsForMasterPool(List<Pool> existingPools, Pool pool, Long originalQuantity,
             boolean updateStackDerived, Set<Product> changedProducts) {
+        Map<String, EventBuilder> poolEvents = new HashMap<String, EventBuilder>();
+        List<PoolUpdate> updatedPools = getPoolUpdatesForMasterPool(poolEvents, existingPools, pool,
+            originalQuantity, updateStackDerived, changedProducts);
+        return processPoolUpdates(poolEvents, updatedPools);
+    }
+
+    /**
+     * Determines the updates of the pools for a master pool, without saving them.
+     *
+     * @param poolEvents the modified event of each pool which could change is
+     *        added to this map, by pool ID
+     * @param existingPools the existing pools
+     * @param pool the master pool
+     * @param originalQuantity the pool's original quantity before multiplier was applied
+     * @param updateStackDerived whether or not to attempt to update stack
+     *        derived pools
+     * @return the updates to process
+     */
+    List<PoolUpdate> getPoolUpdatesForMasterPool(Map<String, EventBuilder> poolEvents,
+            List<Pool> existingPools, Pool pool, Long originalQuantity, boolean updateStackDerived,
+            Set<Product> changedProducts) {
 
         /*
          * Rules need to determine which pools have changed, but the Java must
@@ -634,12 +755,11 @@ public class CandlepinPoolManager implements PoolManager {
          * even if we won't use them all.
          */
         if (existingPools == null || existingPools.isEmpty()) {
-            return new HashSet<String>(0);
+            return new ArrayList<PoolUpdate>(0);
         }
 
         log.debug("Updating {} pools for existing master pool: {}", existingPools.size(), pool);
 
-        Map<String, EventBuilder> poolEvents = new HashMap<String, EventBuilder>();
         for (Pool existing : existingPools) {
             EventBuilder eventBuilder = eventFactory
                     .getEventBuilder(Target.POOL, Type.MODIFIED)
@@ -670,13 +790,18 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
-        Set<String> entsToRegen = processPoolUpdates(poolEvents, updatedPools);
-        return entsToRegen;
+        return updatedPools;
     }
 
+    /*
+     * Saves the updated pools with a single flush before revoking excess
+     * entitlements, and deletes the pools the rules marked for deletion together.
+     */
     private Set<String> processPoolUpdates(
         Map<String, EventBuilder> poolEvents, List<PoolUpdate> updatedPools) {
         Set<String> entitlementsToRegen = Util.newSet();
+        List<PoolUpdate> savedPools = new ArrayList<PoolUpdate>(updatedPools.size());
+        List<Pool> deletedPools = new ArrayList<Pool>();
         for (PoolUpdate updatedPool : updatedPools) {
 
             Pool existingPool = updatedPool.getPool();
@@ -685,17 +810,25 @@ public class CandlepinPoolManager implements PoolManager {
             // Delete pools the rules signal needed to be cleaned up:
             if (existingPool.isMarkedForDelete()) {
                 log.warn("Deleting pool as requested by rules: {}", existingPool.getId());
-                deletePool(existingPool);
+                deletedPools.add(existingPool);
                 continue;
             }
 
             // save changes for the pool
             this.poolCurator.merge(existingPool);
+            poolIndex.invalidate(existingPool.getOwner());
+            savedPools.add(updatedPool);
+        }
 
+        if (!savedPools.isEmpty()) {
             // Explicitly call flush to avoid issues with how we sync up the attributes.
             // This prevents "instance does not yet exist as a row in the database" errors
             // when we later try to lock the pool if we need to revoke entitlements:
             this.poolCurator.flush();
+        }
+
+        for (PoolUpdate updatedPool : savedPools) {
+            Pool existingPool = updatedPool.getPool();
 
             // quantity has changed. delete any excess entitlements from pool
             if (updatedPool.getQuantityChanged()) {
@@ -716,6 +849,7 @@ public class CandlepinPoolManager implements PoolManager {
             sink.queueEvent(event);
         }
 
+        deletePools(deletedPools);
         return entitlementsToRegen;
     }
 
@@ -778,9 +912,29 @@ public class CandlepinPoolManager implements PoolManager {
         return pool;
     }
 
+    /**
+     * Creates all of the given pools with a single flush, which allows their
+     * inserts to be sent in JDBC batches.
+     *
+     * @param pools pools to be created
+     */
+    void createPools(List<Pool> pools) {
+        if (pools.isEmpty()) {
+            return;
+        }
+
+        poolCurator.createAll(pools);
+        for (Pool pool : pools) {
+            poolIndex.invalidate(pool.getOwner());
+            log.debug("   new pool: {}", pool);
+            sink.emitPoolCreated(pool);
+        }
+    }
+
     @Override
     public Pool createPool(Pool pool) {
         Pool created = poolCurator.create(pool);
+        poolIndex.invalidate(pool.getOwner());
         log.debug("   new pool: {}", pool);
 
         if (created != null) {
@@ -1020,30 +1174,6 @@ public class CandlepinPoolManager implements PoolManager {
         if (entitleDate == null) {
             activePoolDate = new Date();
         }
-        PoolFilterBuilder poolFilter = new PoolFilterBuilder();
-        poolFilter.addIdFilters(fromPools);
-        List<Pool> allOwnerPools = this.listAvailableEntitlementPools(
-            host, null, owner, (String) null, activePoolDate, true, false,
-            poolFilter, null).getPageData();
-        log.debug("Found {} total pools in org.", allOwnerPools.size());
-        logPools(allOwnerPools);
-
-        List<Pool> allOwnerPoolsForGuest = this.listAvailableEntitlementPools(
-            guest, null, owner, (String) null, activePoolDate,
-            true, false, poolFilter,
-            null).getPageData();
-        log.debug("Found {} total pools already available for guest", allOwnerPoolsForGuest.size());
-        logPools(allOwnerPoolsForGuest);
-
-        for (Entitlement ent : host.getEntitlements()) {
-            //filter out pools that are attached, there is no need to
-            //complete partial stacks, as they are already granting
-            //virtual pools
-            log.debug("Removing pool host is already entitled to: {}", ent.getPool());
-            allOwnerPools.remove(ent.getPool());
-        }
-        List<Pool> filteredPools = new LinkedList<Pool>();
-
         ComplianceStatus guestCompliance = complianceRules.getStatus(guest, entitleDate,
                 false);
         Set<String> tmpSet = new HashSet<String>();
@@ -1051,6 +1181,15 @@ public class CandlepinPoolManager implements PoolManager {
         tmpSet.addAll(guestCompliance.getNonCompliantProducts());
         log.debug("Guest's non-compliant products: {}", Util.collectionToString(tmpSet));
 
+        Set<String> guestCandidates = null;
+        if (poolIndex.isEnabled()) {
+            guestCandidates = poolIndex.getCandidates(owner, tmpSet, null);
+        }
+        List<Pool> allOwnerPoolsForGuest = listCandidatePools(guest, owner, activePoolDate,
+            fromPools, guestCandidates);
+        log.debug("Found {} total pools already available for guest", allOwnerPoolsForGuest.size());
+        logPools(allOwnerPoolsForGuest);
+
         /*Do not attempt to create subscriptions for products that
           already have virt_only pools available to the guest */
         Set<String> productsToRemove = getProductsToRemove(allOwnerPoolsForGuest, tmpSet);
@@ -1059,13 +1198,31 @@ public class CandlepinPoolManager implements PoolManager {
         tmpSet.removeAll(productsToRemove);
         String[] productIds = tmpSet.toArray(new String [] {});
 
+        Set<String> hostCandidates = null;
+        if (poolIndex.isEnabled()) {
+            hostCandidates = poolIndex.getDerivedCandidates(owner, tmpSet);
+        }
+        List<Pool> allOwnerPools = listCandidatePools(host, owner, activePoolDate,
+            fromPools, hostCandidates);
+        log.debug("Found {} total pools in org.", allOwnerPools.size());
+        logPools(allOwnerPools);
+
+        for (Entitlement ent : host.getEntitlements()) {
+            //filter out pools that are attached, there is no need to
+            //complete partial stacks, as they are already granting
+            //virtual pools
+            log.debug("Removing pool host is already entitled to: {}", ent.getPool());
+            allOwnerPools.remove(ent.getPool());
+        }
+        List<Pool> filteredPools = new LinkedList<Pool>();
+
         if (log.isDebugEnabled()) {
             log.debug("Attempting host autobind for guest products: {}",
                     Util.collectionToString(tmpSet));
         }
 
+        List<Pool> providingPools = new LinkedList<Pool>();
         for (Pool pool : allOwnerPools) {
-            boolean providesProduct = false;
             // Would parse the int here, but it can be 'unlimited'
             // and we only need to check that it's non-zero
             if (pool.getProduct().hasAttribute("virt_limit") &&
@@ -1075,14 +1232,19 @@ public class CandlepinPoolManager implements PoolManager {
                     // provides anything for the guest, otherwise we use the parent.
                     if (pool.providesDerived(productId)) {
                         log.debug("Found virt_limit pool providing product {}: {}", productId, pool);
-                        providesProduct = true;
+                        providingPools.add(pool);
                         break;
                     }
                 }
             }
-            if (providesProduct) {
-                ValidationResult result = enforcer.preEntitlement(host,
-                    pool, 1, CallerType.BEST_POOLS);
+        }
+
+        if (!providingPools.isEmpty()) {
+            Map<String, ValidationResult> results = enforcer.preEntitlement(host,
+                providingPools, CallerType.BEST_POOLS);
+
+            for (Pool pool : providingPools) {
+                ValidationResult result = results.get(pool.getId());
 
                 if (result.hasErrors() || result.hasWarnings()) {
                     // Just keep the last one around, if we need it
@@ -1124,6 +1286,42 @@ public class CandlepinPoolManager implements PoolManager {
         return enforced;
     }
 
+    /*
+     * Lists the pools available to the consumer, limited to the given candidate
+     * pools if there are any. Small sets of candidates are passed on to the query,
+     * larger ones are filtered after listing to keep the IN clause bounded.
+     */
+    private List<Pool> listCandidatePools(Consumer consumer, Owner owner, Date activeOn,
+        Collection<String> fromPools, Set<String> candidates) {
+        PoolFilterBuilder poolFilter = new PoolFilterBuilder();
+        if (candidates != null) {
+            if (fromPools != null && !fromPools.isEmpty()) {
+                candidates.retainAll(fromPools);
+            }
+            if (candidates.isEmpty()) {
+                return new LinkedList<Pool>();
+            }
+        }
+
+        boolean filterAfter = candidates != null &&
+            candidates.size() > MAX_CANDIDATE_ID_FILTER;
+        poolFilter.addIdFilters(candidates == null || filterAfter ? fromPools : candidates);
+        List<Pool> pools = this.listAvailableEntitlementPools(
+            consumer, null, owner, (String) null, activeOn, true, false,
+            poolFilter, null).getPageData();
+
+        if (filterAfter) {
+            List<Pool> filtered = new LinkedList<Pool>();
+            for (Pool pool : pools) {
+                if (candidates.contains(pool.getId())) {
+                    filtered.add(pool);
+                }
+            }
+            return filtered;
+        }
+        return pools;
+    }
+
     /**
      * Do not attempt to create subscriptions for products that
      * already have virt_only pools available to the guest
@@ -1156,7 +1354,6 @@ public class CandlepinPoolManager implements PoolManager {
         String serviceLevelOverride, Collection<String> fromPools)
         throws EntitlementRefusedException {
 
-        boolean hasFromPools = fromPools != null && !fromPools.isEmpty();
         ValidationResult failedResult = null;
 
         Date activePoolDate = entitleDate;
@@ -1164,13 +1361,6 @@ public class CandlepinPoolManager implements PoolManager {
             activePoolDate = new Date();
         }
 
-        PoolFilterBuilder poolFilter = new PoolFilterBuilder();
-        poolFilter.addIdFilters(fromPools);
-        List<Pool> allOwnerPools = this.listAvailableEntitlementPools(
-            consumer, null, owner, (String) null, activePoolDate, true, false,
-            poolFilter, null).getPageData();
-        List<Pool> filteredPools = new LinkedList<Pool>();
-
         // We have to check compliance status here so we can replace an empty
         // array of product IDs with the array the consumer actually needs. (i.e. during
         // a healing request)
@@ -1183,6 +1373,15 @@ public class CandlepinPoolManager implements PoolManager {
             productIds = tmpSet.toArray(new String [] {});
         }
 
+        Set<String> candidates = null;
+        if (poolIndex.isEnabled()) {
+            candidates = poolIndex.getCandidates(owner, Arrays.asList(productIds),
+                compliance.getPartialStacks().keySet());
+        }
+        List<Pool> allOwnerPools = listCandidatePools(consumer, owner, activePoolDate,
+            fromPools, candidates);
+        List<Pool> filteredPools = new LinkedList<Pool>();
+
         if (log.isDebugEnabled()) {
             log.debug("Attempting for products on date: {}", entitleDate);
             for (String productId : productIds) {
@@ -1190,6 +1389,7 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
+        List<Pool> providingPools = new LinkedList<Pool>();
         for (Pool pool : allOwnerPools) {
             boolean providesProduct = false;
             // If We want to complete partial stacks if possible,
@@ -1208,8 +1408,17 @@ public class CandlepinPoolManager implements PoolManager {
                 }
             }
             if (providesProduct) {
-                ValidationResult result = enforcer.preEntitlement(consumer,
-                    pool, 1, CallerType.BEST_POOLS);
+                providingPools.add(pool);
+            }
+        }
+
+        // Validate all the candidates in a single rules call:
+        if (!providingPools.isEmpty()) {
+            Map<String, ValidationResult> results = enforcer.preEntitlement(consumer,
+                providingPools, CallerType.BEST_POOLS);
+
+            for (Pool pool : providingPools) {
+                ValidationResult result = results.get(pool.getId());
 
                 if (result.hasErrors() || result.hasWarnings()) {
                     // Just keep the last one around, if we need it
@@ -1349,6 +1558,7 @@ public class CandlepinPoolManager implements PoolManager {
         handler.handlePostEntitlement(consumer, poolHelper, entitlement);
 
         // Check consumer's new compliance status and save:
+        complianceRules.invalidateStatus(consumer);
         complianceRules.getStatus(consumer, null, false, false);
         consumerCurator.update(consumer);
 
@@ -1423,11 +1633,81 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Transactional
     void regenerateCertificatesOf(Iterable<Entitlement> iterable, boolean lazy) {
+        regenerateCertificatesOf(iterable, lazy, new RegenerationProgress());
+    }
+
+    /*
+     * Certificates are regenerated in batches, every batch is generated by the
+     * certificate adapter at once, and the replaced certificates are deleted
+     * together.
+     */
+    @Transactional
+    void regenerateCertificatesOf(Iterable<Entitlement> iterable, boolean lazy,
+        RegenerationProgress progress) {
+        if (lazy) {
+            for (Entitlement e : iterable) {
+                regenerateCertificatesOf(e, false, lazy);
+            }
+            return;
+        }
+
+        List<Entitlement> entitlements = new ArrayList<Entitlement>();
         for (Entitlement e : iterable) {
-            regenerateCertificatesOf(e, false, lazy);
+            entitlements.add(e);
+        }
+        progress.addTotal(entitlements.size());
+
+        int batchSize = Math.max(1, config.getInt(ConfigProperties.CERT_REGEN_BATCH_SIZE));
+        for (int i = 0; i < entitlements.size(); i += batchSize) {
+            regenerateBatch(entitlements.subList(i,
+                Math.min(entitlements.size(), i + batchSize)), progress);
+            log.debug("Regenerating certificates: {}", progress);
         }
     }
 
+    private void regenerateBatch(List<Entitlement> batch, RegenerationProgress progress) {
+        List<Set<EntitlementCertificate>> previous = new ArrayList<Set<EntitlementCertificate>>();
+        for (Entitlement e : batch) {
+            log.debug("Revoking entitlementCertificates of: {}", e);
+            previous.add(new HashSet<EntitlementCertificate>(e.getCertificates()));
+            e.setCertificates(null);
+        }
+
+        Map<String, EntitlementCertificate> generated;
+        try {
+            generated = entCertAdapter.generateEntitlementCerts(batch);
+        }
+        catch (CertVersionConflictException cvce) {
+            throw cvce;
+        }
+        catch (CertificateSizeException cse) {
+            throw cse;
+        }
+        catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+
+        List<EntitlementCertificate> revoked = new ArrayList<EntitlementCertificate>();
+        for (int i = 0; i < batch.size(); i++) {
+            Entitlement e = batch.get(i);
+            if (!generated.containsKey(e.getId())) {
+                // Keeps the current certificates:
+                e.setCertificates(previous.get(i));
+                progress.addFailed(1);
+                continue;
+            }
+
+            e.setDirty(false);
+            entitlementCurator.merge(e);
+            revoked.addAll(previous.get(i));
+
+            // send entitlement changed event.
+            this.sink.queueEvent(this.eventFactory.entitlementChanged(e));
+            progress.addRegenerated(1);
+        }
+        entitlementCertificateCurator.deleteAll(revoked);
+    }
+
     @Transactional
     void regenerateCertificatesByEntIds(Iterable<String> iterable, boolean lazy) {
         for (String entId : iterable) {
@@ -1455,6 +1735,13 @@ public class CandlepinPoolManager implements PoolManager {
     @Override
     @Transactional
     public void regenerateCertificatesOf(Environment e, Set<String> affectedContent, boolean lazy) {
+        regenerateCertificatesOf(e, affectedContent, lazy, new RegenerationProgress());
+    }
+
+    @Override
+    @Transactional
+    public void regenerateCertificatesOf(Environment e, Set<String> affectedContent, boolean lazy,
+        RegenerationProgress progress) {
         log.info("Regenerating relevant certificates in environment: {}", e.getId());
 
         List<Entitlement> allEnvEnts = entitlementCurator.listByEnvironment(e);
@@ -1479,7 +1766,7 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         log.info("Found {} certificates to regenerate.", entsToRegen.size());
-        regenerateCertificatesOf(entsToRegen, lazy);
+        regenerateCertificatesOf(entsToRegen, lazy, progress);
     }
 
     /**
@@ -1527,13 +1814,22 @@ public class CandlepinPoolManager implements PoolManager {
     @Override
     @Transactional
     public void regenerateCertificatesOf(Owner owner, String productId, boolean lazy) {
+        regenerateCertificatesOf(owner, productId, lazy, new RegenerationProgress());
+    }
+
+    @Override
+    @Transactional
+    public void regenerateCertificatesOf(Owner owner, String productId, boolean lazy,
+        RegenerationProgress progress) {
         List<Pool> poolsForProduct = this.listAvailableEntitlementPools(null, null, owner,
             productId, new Date(), false, false, new PoolFilterBuilder(), null)
             .getPageData();
 
+        List<Entitlement> entitlements = new ArrayList<Entitlement>();
         for (Pool pool : poolsForProduct) {
-            regenerateCertificatesOf(pool.getEntitlements(), lazy);
+            entitlements.addAll(pool.getEntitlements());
         }
+        regenerateCertificatesOf(entitlements, lazy, progress);
     }
 
     /**
@@ -1615,6 +1911,7 @@ public class CandlepinPoolManager implements PoolManager {
                 else {
                     updatePoolFromStackedEntitlements(stackedSubPool, stackedEnts);
                     poolCurator.merge(stackedSubPool);
+                    poolIndex.invalidate(stackedSubPool.getOwner());
                 }
             }
         }
@@ -1634,9 +1931,11 @@ public class CandlepinPoolManager implements PoolManager {
         // associated pool as well.
         if (pool.isDevelopmentPool()) {
             poolCurator.delete(pool);
+            poolIndex.invalidate(pool.getOwner());
         }
 
         log.info("Revoked entitlement: {}", entitlement.getId());
+        complianceRules.invalidateStatus(consumer);
 
         // If we don't care about updating other entitlements based on this one, we probably
         // don't care about updating compliance either.
@@ -1694,9 +1993,36 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         poolCurator.delete(pool);
+        poolIndex.invalidate(pool.getOwner());
         sink.queueEvent(event);
     }
 
+    @Override
+    @Transactional
+    public void deletePools(Collection<Pool> pools) {
+        if (pools.isEmpty()) {
+            return;
+        }
+
+        List<Event> events = new ArrayList<Event>(pools.size());
+        for (Pool pool : pools) {
+            events.add(eventFactory.poolDeleted(pool));
+        }
+
+        // Must do a full revoke for all entitlements:
+        for (Entitlement e : poolCurator.entitlementsIn(pools)) {
+            revokeEntitlement(e);
+        }
+
+        poolCurator.deleteAll(pools);
+        for (Pool pool : pools) {
+            poolIndex.invalidate(pool.getOwner());
+        }
+        for (Event event : events) {
+            sink.queueEvent(event);
+        }
+    }
+
     /**
      * Adjust the count of a pool. The caller does not have knowledge
      *   of the current quantity. It only determines how much to adjust.
@@ -1793,6 +2119,7 @@ public class CandlepinPoolManager implements PoolManager {
                 if (pool != null) {
                     poolRules.updatePoolFromStack(pool, new HashSet<Product>());
                     poolCurator.merge(pool);
+                    poolIndex.invalidate(pool.getOwner());
                 }
             }
 
@@ -1855,6 +2182,11 @@ public class CandlepinPoolManager implements PoolManager {
             filters.addAttributeFilter(Pool.DEVELOPMENT_POOL_ATTRIBUTE, "!true");
         }
 
+        if (postFilter && pageRequest != null && pageRequest.isKeyset()) {
+            return listFilteredPoolsByKeyset(consumer, key, owner, productId, activeOn,
+                activeOnly, includeWarnings, filters, pageRequest);
+        }
+
         Page<List<Pool>> page = this.poolCurator.listAvailableEntitlementPools(consumer,
             owner, productId, activeOn, activeOnly, filters, pageRequest, postFilter);
 
@@ -1869,15 +2201,8 @@ public class CandlepinPoolManager implements PoolManager {
         // Note that something could change between the time we list a pool as
         // available, and the consumer requests the actual entitlement, and the
         // request still could fail.
-        List<Pool> resultingPools = page.getPageData();
-        if (consumer != null) {
-            resultingPools = enforcer.filterPools(
-                consumer, resultingPools, includeWarnings);
-        }
-        if (key != null) {
-            resultingPools = this.filterPoolsForActKey(
-                key, resultingPools, includeWarnings);
-        }
+        List<Pool> resultingPools = filterAvailablePools(consumer, key,
+            page.getPageData(), includeWarnings);
 
         // Set maxRecords once we are done filtering
         page.setMaxRecords(resultingPools.size());
@@ -1890,6 +2215,60 @@ public class CandlepinPoolManager implements PoolManager {
         return page;
     }
 
+    /**
+     * Fills a keyset page with the pools passing the rules by seeking through the
+     * pools in chunks, growing while the rules keep rejecting pools, until the page
+     * is full or the pools run out. The pools are not counted.
+     */
+    private Page<List<Pool>> listFilteredPoolsByKeyset(Consumer consumer,
+        ActivationKey key, Owner owner, String productId, Date activeOn,
+        boolean activeOnly, boolean includeWarnings, PoolFilterBuilder filters,
+        PageRequest pageRequest) {
+        int perPage = pageRequest.getPerPage();
+
+        PageRequest chunkRequest = new PageRequest();
+        chunkRequest.setOrder(pageRequest.getOrder());
+        chunkRequest.setSortBy(pageRequest.getSortBy());
+        chunkRequest.setAfter(pageRequest.getAfter());
+        int chunkSize = perPage + 1;
+
+        // Collect one more pool than requested to know whether there is a next page.
+        List<Pool> resultingPools = new ArrayList<Pool>();
+        while (resultingPools.size() <= perPage && chunkRequest.getAfter() != null) {
+            chunkRequest.setPerPage(chunkSize);
+            Page<List<Pool>> chunk = poolCurator.listAvailableEntitlementPools(consumer,
+                owner, productId, activeOn, activeOnly, filters, chunkRequest, false);
+
+            resultingPools.addAll(filterAvailablePools(consumer, key, chunk.getPageData(),
+                includeWarnings));
+            chunkRequest.setAfter(chunk.getNextCursor());
+            chunkSize = Math.min(chunkSize * 2, MAX_POST_FILTER_CHUNK);
+        }
+
+        Page<List<Pool>> page = new Page<List<Pool>>();
+        page.setPageRequest(pageRequest);
+        if (resultingPools.size() > perPage) {
+            resultingPools = new ArrayList<Pool>(resultingPools.subList(0, perPage));
+            page.setNextCursor(resultingPools.get(perPage - 1).getId());
+        }
+        page.setPageData(resultingPools);
+        return page;
+    }
+
+    private List<Pool> filterAvailablePools(Consumer consumer, ActivationKey key,
+        List<Pool> pools, boolean includeWarnings) {
+        List<Pool> resultingPools = pools;
+        if (consumer != null) {
+            resultingPools = enforcer.filterPools(
+                consumer, resultingPools, includeWarnings);
+        }
+        if (key != null) {
+            resultingPools = this.filterPoolsForActKey(
+                key, resultingPools, includeWarnings);
+        }
+        return resultingPools;
+    }
+
     /**
      * Creates a Subscription object using information derived from the specified pool. Used to
      * support deprecated API calls that still require a subscription.
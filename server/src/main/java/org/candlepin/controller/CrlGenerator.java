@@ -26,15 +26,20 @@ import org.candlepin.util.Util;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
+import org.hibernate.ScrollableResults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 // TODO:  Clean up these protected methods - most are protected only for unit testing!
@@ -105,6 +110,94 @@ public class CrlGenerator {
             .add(BigInteger.ONE));
     }
 
+    /**
+     * Writes a CRL listing all revoked serials of the database, after collecting
+     * the newly revoked ones and deleting the expired ones. The serials are read
+     * through a cursor and written out one by one, so the CRL is never held in
+     * memory as a whole.
+     *
+     * @param crlNumber the number of the previous CRL
+     * @param out stream to write the PEM encoded CRL to
+     * @throws IOException if there is a problem writing the CRL
+     */
+    @Transactional
+    public void syncCRLWithDB(BigInteger crlNumber, OutputStream out) throws IOException {
+        Date now = new Date();
+        int collected = certificateSerialCurator.collectRevokedSerials(now);
+        log.debug("Collected {} newly revoked serials", collected);
+
+        // See syncCRLWithDB(X509CRL) for why errors are tolerated here:
+        try {
+            certificateSerialCurator.deleteExpiredSerials();
+        }
+        catch (RuntimeException e) {
+            log.error("Error deleting expired serials.", e);
+        }
+
+        ScrollableResults serials = certificateSerialCurator.scrollCollectedSerials();
+        try {
+            pkiUtility.writeX509CRL(new CRLEntryIterator(serials, now),
+                crlNumber.add(BigInteger.ONE), out);
+        }
+        finally {
+            serials.close();
+        }
+    }
+
+    /**
+     * Checks whether the CRL is missing revocations or still lists expired
+     * serials, i.e. whether syncCRLWithDB would change its entries.
+     *
+     * @return true if the CRL needs to be synchronized with the database
+     */
+    public boolean hasPendingChanges() {
+        return certificateSerialCurator.hasTobeCollectedSerials() ||
+            certificateSerialCurator.hasExpiredSerials();
+    }
+
+    /**
+     * Creates a delta CRL listing the changes from the given base CRL to the
+     * current one: serials revoked since, and serials of the base which are no
+     * longer revoked, with the removeFromCRL reason. The delta has the number of
+     * the current CRL, which it provides the same revocation information as.
+     *
+     * @param base the complete CRL the delta applies to
+     * @param current the current complete CRL
+     * @return the delta CRL
+     */
+    public X509CRL createDeltaCRL(X509CRL base, X509CRL current) {
+        List<X509CRLEntryWrapper> revoked = newList();
+        List<X509CRLEntryWrapper> removed = newList();
+
+        // Revoked entries are looked up by serial, no need to map them first:
+        Set<? extends X509CRLEntry> currentEntries = current.getRevokedCertificates();
+        if (currentEntries != null) {
+            for (X509CRLEntry entry : currentEntries) {
+                if (base.getRevokedCertificate(entry.getSerialNumber()) == null) {
+                    revoked.add(new X509CRLEntryWrapper(entry.getSerialNumber(),
+                        entry.getRevocationDate()));
+                }
+            }
+        }
+
+        Set<? extends X509CRLEntry> baseEntries = base.getRevokedCertificates();
+        if (baseEntries != null) {
+            for (X509CRLEntry entry : baseEntries) {
+                if (current.getRevokedCertificate(entry.getSerialNumber()) == null) {
+                    removed.add(new X509CRLEntryWrapper(entry.getSerialNumber(),
+                        current.getThisUpdate()));
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Delta CRL adds " + revoked.size() + " and removes " +
+                removed.size() + " entries");
+        }
+        return pkiUtility.createX509DeltaCRL(revoked, removed, getCRLNumber(current),
+            getCRLNumber(base));
+    }
+
     /**
      * Gets the new serials to append and set them consumed.
      *
@@ -253,4 +346,43 @@ public class CrlGenerator {
         return crlEntries;
     }
 
+    /*
+     * Turns rows of serial ID and collection time into CRL entries as they are
+     * read.
+     */
+    private static class CRLEntryIterator implements Iterator<X509CRLEntryWrapper> {
+        private final ScrollableResults results;
+        private final Date defaultDate;
+        private Boolean hasNext;
+
+        CRLEntryIterator(ScrollableResults results, Date defaultDate) {
+            this.results = results;
+            this.defaultDate = defaultDate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                hasNext = results.next();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public X509CRLEntryWrapper next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            Long id = (Long) results.get(0);
+            Date date = (Date) results.get(1);
+            return new X509CRLEntryWrapper(BigInteger.valueOf(id),
+                date == null ? defaultDate : date);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -86,6 +86,14 @@ public interface PoolManager {
      */
     void deletePool(Pool pool);
 
+    /**
+     * Cleanup entitlements and safely delete the given pools, flushing the
+     * deletes together.
+     *
+     * @param pools
+     */
+    void deletePools(Collection<Pool> pools);
+
     /**
      * Request an entitlement by pool..
      *
@@ -140,8 +148,22 @@ public interface PoolManager {
 
     void regenerateCertificatesOf(Environment env, Set<String> contentIds, boolean lazy);
 
+    /**
+     * Regenerates the certificates in the environment affected by the given content,
+     * counting them in the given progress.
+     */
+    void regenerateCertificatesOf(Environment env, Set<String> contentIds, boolean lazy,
+        RegenerationProgress progress);
+
     void regenerateCertificatesOf(Owner owner, String productId, boolean lazy);
 
+    /**
+     * Regenerates the certificates of the owner's entitlements to the given product,
+     * counting them in the given progress.
+     */
+    void regenerateCertificatesOf(Owner owner, String productId, boolean lazy,
+        RegenerationProgress progress);
+
     void regenerateEntitlementCertificates(Consumer consumer, boolean lazy);
 
     int revokeAllEntitlements(Consumer consumer);
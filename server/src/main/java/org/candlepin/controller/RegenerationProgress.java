@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RegenerationProgress
+ *
+ * Counts the entitlement certificates found to need regeneration, those
+ * regenerated so far and the rate at which they are.
+ */
+public class RegenerationProgress {
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger regenerated = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    void addTotal(int count) {
+        total.addAndGet(count);
+    }
+
+    void addRegenerated(int count) {
+        regenerated.addAndGet(count);
+    }
+
+    void addFailed(int count) {
+        failed.addAndGet(count);
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getRegenerated() {
+        return regenerated.get();
+    }
+
+    /**
+     * @return number of certificates which could not be regenerated, e.g. as they
+     * would have been too large
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of certificates still waiting to be regenerated
+     */
+    public int getBacklog() {
+        return total.get() - regenerated.get() - failed.get();
+    }
+
+    public double getCertsPerSecond() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        return (regenerated.get() + failed.get()) * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "Regenerated %d of %d certificates, %d failed, %d pending (%.1f certs/sec)",
+            regenerated.get(), total.get(), failed.get(), getBacklog(),
+            getCertsPerSecond());
+    }
+}
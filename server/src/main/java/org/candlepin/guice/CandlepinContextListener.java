@@ -30,9 +30,11 @@ import org.candlepin.resteasy.ResourceLocatorMap;
 import org.candlepin.util.Util;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Binding;
 import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.Stage;
+import com.google.inject.TypeLiteral;
 import com.google.inject.util.Modules;
 
 import org.hibernate.cfg.beanvalidation.BeanValidationEventListener;
@@ -50,6 +52,7 @@ import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import javax.persistence.EntityManagerFactory;
 import javax.servlet.ServletContext;
@@ -148,6 +151,12 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
         pinsetterListener.contextDestroyed();
         loggerListener.contextDestroyed();
 
+        // Stop the worker pools once the jobs using them are shut down.
+        for (Binding<ExecutorService> binding :
+            injector.findBindingsByType(TypeLiteral.get(ExecutorService.class))) {
+            binding.getProvider().get().shutdown();
+        }
+
         // if amqp is enabled, close all connections.
         if (config.getBoolean(ConfigProperties.AMQP_INTEGRATION_ENABLED)) {
             Util.closeSafely(injector.getInstance(AMQPBusPublisher.class),
@@ -46,10 +46,12 @@ import org.candlepin.common.resteasy.filter.LinkHeaderResponseFilter;
 import org.candlepin.common.resteasy.filter.PageRequestFilter;
 import org.candlepin.common.validation.CandlepinMessageInterpolator;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.CandidatePoolIndex;
 import org.candlepin.controller.CandlepinPoolManager;
 import org.candlepin.controller.CrlGenerator;
 import org.candlepin.controller.Entitler;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.model.OwnerInfoCache;
 import org.candlepin.model.UeberCertificateGenerator;
 import org.candlepin.pinsetter.core.GuiceJobFactory;
 import org.candlepin.pinsetter.core.PinsetterJobListener;
@@ -57,6 +59,7 @@ import org.candlepin.pinsetter.core.PinsetterKernel;
 import org.candlepin.pinsetter.tasks.CertificateRevocationListTask;
 import org.candlepin.pinsetter.tasks.EntitlerJob;
 import org.candlepin.pinsetter.tasks.ExportCleaner;
+import org.candlepin.pinsetter.tasks.HealEntireOrgJob;
 import org.candlepin.pinsetter.tasks.HypervisorUpdateJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
 import org.candlepin.pinsetter.tasks.RefreshPoolsJob;
@@ -69,6 +72,7 @@ import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.policy.criteria.CriteriaRules;
 import org.candlepin.policy.js.JsRunner;
 import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.EntitlementRules;
 import org.candlepin.policy.js.entitlement.EntitlementRulesTranslator;
@@ -104,6 +108,7 @@ import org.candlepin.resource.StatisticResource;
 import org.candlepin.resource.StatusResource;
 import org.candlepin.resource.SubscriptionResource;
 import org.candlepin.resource.UserResource;
+import org.candlepin.resource.util.HypervisorReportCache;
 import org.candlepin.resource.util.ResolverUtil;
 import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.resteasy.ResourceLocatorMap;
@@ -116,13 +121,16 @@ import org.candlepin.resteasy.filter.SuperAdminAuthorizationFilter;
 import org.candlepin.resteasy.filter.VerifyAuthorizationFilter;
 import org.candlepin.resteasy.filter.VersionResponseFilter;
 import org.candlepin.service.UniqueIdGenerator;
+import org.candlepin.service.impl.DefaultEntitlementCertServiceAdapter;
 import org.candlepin.service.impl.DefaultUniqueIdGenerator;
 import org.candlepin.sync.ConsumerExporter;
 import org.candlepin.sync.ConsumerTypeExporter;
 import org.candlepin.sync.EntitlementCertExporter;
+import org.candlepin.sync.ExportCache;
 import org.candlepin.sync.Exporter;
 import org.candlepin.sync.MetaExporter;
 import org.candlepin.sync.RulesExporter;
+import org.candlepin.util.ContentPayloadCache;
 import org.candlepin.util.DateSource;
 import org.candlepin.util.DateSourceImpl;
 import org.candlepin.util.ExpiryDateFunction;
@@ -144,6 +152,10 @@ import org.quartz.spi.JobFactory;
 import org.xnap.commons.i18n.I18n;
 
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Provider;
 import javax.validation.MessageInterpolator;
@@ -236,6 +248,12 @@ public class CandlepinModule extends AbstractModule {
         bind(Principal.class).toProvider(PrincipalProvider.class);
         bind(JsRunnerProvider.class).asEagerSingleton();
         bind(JsRunner.class).toProvider(JsRunnerProvider.class);
+        bind(ComplianceStatusCache.class).asEagerSingleton();
+        bind(CandidatePoolIndex.class).asEagerSingleton();
+        bind(ContentPayloadCache.class).asEagerSingleton();
+        bind(OwnerInfoCache.class).asEagerSingleton();
+        bind(ExportCache.class).asEagerSingleton();
+        bind(HypervisorReportCache.class).asEagerSingleton();
         bind(UserResource.class);
         bind(UniqueIdGenerator.class).to(DefaultUniqueIdGenerator.class);
         bind(DistributorVersionResource.class);
@@ -272,6 +290,37 @@ public class CandlepinModule extends AbstractModule {
 
     }
 
+    /*
+     * The worker threads are shared by all heal jobs and kept around, as the event
+     * sink holds a messaging session per thread. They are shut down with the context.
+     */
+    @Provides @Singleton @Named(HealEntireOrgJob.EXECUTOR)
+    protected ExecutorService getHealOrgExecutor() {
+        return newWorkerPool(config.getInt(ConfigProperties.HEAL_ORG_THREADS), "heal-org-");
+    }
+
+    /*
+     * Signing certificates generated in bulk is CPU bound, the threads are shared
+     * by all bulk generation.
+     */
+    @Provides @Singleton @Named(DefaultEntitlementCertServiceAdapter.SIGNERS)
+    protected ExecutorService getCertSigningExecutor() {
+        return newWorkerPool(config.getInt(ConfigProperties.CERT_REGEN_THREADS), "cert-signer-");
+    }
+
+    private static ExecutorService newWorkerPool(int threads, final String namePrefix) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     @Provides @Named("ValidationProperties")
     protected Properties getValidationProperties() {
         return new Properties();
@@ -16,6 +16,7 @@ package org.candlepin.model;
 
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.permissions.Permission;
+import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.ConcurrentModificationException;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
@@ -26,13 +27,19 @@ import com.google.inject.Provider;
 import com.google.inject.persist.Transactional;
 
 import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projection;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.internal.CriteriaImpl;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.SecondLevelCacheStatistics;
 import org.hibernate.transform.ResultTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,7 +48,9 @@ import org.xnap.commons.i18n.I18n;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
@@ -61,6 +70,14 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
     private int batchSize = 30;
     @Inject private PrincipalProvider principalProvider;
     private static Logger log = LoggerFactory.getLogger(AbstractHibernateCurator.class);
+    private static final String KEYSET_TIE_BREAKER = "id";
+    private static final int SCROLL_FETCH_SIZE = 1000;
+
+    /**
+     * Second-level cache region of the cacheable queries for reference data,
+     * such as products by owner and ID.
+     */
+    protected static final String REFERENCE_QUERY_REGION = "candlepin.reference_queries";
 
     public AbstractHibernateCurator(Class<E> entityType) {
         //entityType = (Class<E>) ((ParameterizedType)
@@ -114,6 +131,21 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return entity;
     }
 
+    /**
+     * @param entity to be created.
+     * @param flush whether to flush the session afterwards, rather than have the
+     * entity inserted with whatever is flushed next.
+     * @return newly created entity
+     */
+    @Transactional
+    public E create(E entity, boolean flush) {
+        getEntityManager().persist(entity);
+        if (flush) {
+            flush();
+        }
+        return entity;
+    }
+
     /**
      * @return all entities for a particular type.
      */
@@ -157,7 +189,10 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
     public Page<List<E>> listAll(PageRequest pageRequest) {
         Page<List<E>> page = new Page<List<E>>();
 
-        if (pageRequest != null) {
+        if (pageRequest != null && pageRequest.isKeyset()) {
+            return loadKeysetPage(createSecureCriteria(), pageRequest);
+        }
+        else if (pageRequest != null) {
             Criteria count = createSecureCriteria();
             page.setMaxRecords(findRowCount(count));
 
@@ -184,19 +219,83 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return c.list();
     }
 
-    private Order createPagingOrder(PageRequest p) {
-        String sortBy = (p.getSortBy() == null) ?
+    /**
+     * Loads the page of records following the one given by the request, seeking
+     * past it on the sort field and ID rather than skipping all previous records,
+     * and without counting the records. The sort field must not be null.
+     */
+    @SuppressWarnings("unchecked")
+    private Page<List<E>> loadKeysetPage(Criteria c, PageRequest pageRequest) {
+        String sortBy = getPagingSortField(pageRequest);
+        boolean ascending = isAscending(pageRequest);
+
+        if (!"".equals(pageRequest.getAfter())) {
+            c.add(createSeekCriterion(pageRequest.getAfter(), sortBy, ascending));
+        }
+
+        // The ID breaks ties between records with the same sort field value.
+        c.addOrder(createPagingOrder(pageRequest));
+        if (!KEYSET_TIE_BREAKER.equals(sortBy)) {
+            c.addOrder(ascending ? Order.asc(KEYSET_TIE_BREAKER) :
+                Order.desc(KEYSET_TIE_BREAKER));
+        }
+
+        // One more record than requested tells us whether there is a next page.
+        int perPage = pageRequest.getPerPage();
+        c.setMaxResults(perPage + 1);
+        List<E> pageData = c.list();
+
+        Page<List<E>> page = new Page<List<E>>();
+        page.setPageRequest(pageRequest);
+        if (pageData.size() > perPage) {
+            pageData = new ArrayList<E>(pageData.subList(0, perPage));
+            page.setNextCursor(String.valueOf(pageData.get(perPage - 1).getId()));
+        }
+        page.setPageData(pageData);
+        return page;
+    }
+
+    private Criterion createSeekCriterion(String after, String sortBy, boolean ascending) {
+        Object[] last = (Object[]) createSecureCriteria()
+            .add(Restrictions.idEq(after))
+            .setProjection(Projections.projectionList()
+                .add(Projections.property(KEYSET_TIE_BREAKER))
+                .add(Projections.property(sortBy)))
+            .uniqueResult();
+
+        if (last == null || last[1] == null) {
+            throw new BadRequestException(i18n.tr(
+                "Unable to page after record ''{0}'', it does not exist or has no " +
+                "value to sort by.", after));
+        }
+
+        if (KEYSET_TIE_BREAKER.equals(sortBy)) {
+            return ascending ? Restrictions.gt(sortBy, last[1]) :
+                Restrictions.lt(sortBy, last[1]);
+        }
+
+        Criterion beyond = ascending ? Restrictions.gt(sortBy, last[1]) :
+            Restrictions.lt(sortBy, last[1]);
+        Criterion tieBeyond = ascending ? Restrictions.gt(KEYSET_TIE_BREAKER, last[0]) :
+            Restrictions.lt(KEYSET_TIE_BREAKER, last[0]);
+        return Restrictions.or(beyond,
+            Restrictions.and(Restrictions.eq(sortBy, last[1]), tieBeyond));
+    }
+
+    private String getPagingSortField(PageRequest p) {
+        return (p.getSortBy() == null) ?
             AbstractHibernateObject.DEFAULT_SORT_FIELD : p.getSortBy();
+    }
+
+    private boolean isAscending(PageRequest p) {
         PageRequest.Order order = (p.getOrder() == null) ?
             PageRequest.DEFAULT_ORDER : p.getOrder();
+        return order == PageRequest.Order.ASCENDING;
+    }
 
-        switch (order) {
-            case ASCENDING:
-                return Order.asc(sortBy);
-            //DESCENDING
-            default:
-                return Order.desc(sortBy);
-        }
+    private Order createPagingOrder(PageRequest p) {
+        String sortBy = getPagingSortField(p);
+        return isAscending(p) ? Order.asc(sortBy) : Order.desc(sortBy);
     }
 
     private Integer findRowCount(Criteria c) {
@@ -310,7 +409,10 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         PageRequest pageRequest) {
         Page<List<E>> page = new Page<List<E>>();
 
-        if (pageRequest != null) {
+        if (pageRequest != null && pageRequest.isKeyset()) {
+            return loadKeysetPage(c, pageRequest);
+        }
+        else if (pageRequest != null) {
             // see https://forum.hibernate.org/viewtopic.php?t=974802
 
             // Save original Projection and ResultTransformer
@@ -337,6 +439,99 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return page;
     }
 
+    /**
+     * Streams the records matching the criteria in the order given by the
+     * request, evicting each record from the session once the next is read.
+     * Used to write out result sets too large to be listed at once.
+     *
+     * @return forward only results, to be closed by the caller
+     */
+    public ResultIterator<E> iterateByCriteria(Criteria c, PageRequest pageRequest) {
+        // Ordering by ID last keeps the rows of a record joined in more than once together.
+        if (pageRequest != null) {
+            c.addOrder(createPagingOrder(pageRequest));
+        }
+        if (pageRequest == null || !KEYSET_TIE_BREAKER.equals(getPagingSortField(pageRequest))) {
+            c.addOrder(Order.asc(KEYSET_TIE_BREAKER));
+        }
+
+        ScrollableResults results = c.setFetchSize(SCROLL_FETCH_SIZE)
+            .setReadOnly(true)
+            .scroll(ScrollMode.FORWARD_ONLY);
+        return new ResultIterator<E>(results, currentSession());
+    }
+
+    /**
+     * Evicts the entities of this curator's type, their collections and all
+     * cached query results from this node's second-level cache, for when they
+     * may have changed other than through the session, as on import or refresh.
+     */
+    public void evictCachedEntities() {
+        SessionFactoryImplementor factory = getSessionFactory();
+        if (log.isDebugEnabled()) {
+            for (Map.Entry<String, SecondLevelCacheStatistics> region :
+                getCacheStatistics().entrySet()) {
+                log.debug("Evicting cache region {}: {} hits, {} misses", region.getKey(),
+                    region.getValue().getHitCount(), region.getValue().getMissCount());
+            }
+        }
+
+        factory.getCache().evictEntityRegion(entityType);
+        for (String role : getCollectionRoles(factory)) {
+            factory.getCache().evictCollectionRegion(role);
+        }
+        factory.getCache().evictQueryRegions();
+    }
+
+    /**
+     * @return hit and miss counts of the second-level cache regions of the
+     * entities of this curator's type and their collections, by region name;
+     * empty if they are not cached or statistics are disabled
+     */
+    public Map<String, SecondLevelCacheStatistics> getCacheStatistics() {
+        SessionFactoryImplementor factory = getSessionFactory();
+        List<String> regions = new ArrayList<String>();
+
+        EntityPersister entityPersister = factory.getEntityPersister(entityType.getName());
+        if (entityPersister.hasCache()) {
+            regions.add(entityPersister.getCacheAccessStrategy().getRegion().getName());
+        }
+        for (String role : getCollectionRoles(factory)) {
+            CollectionPersister collectionPersister = factory.getCollectionPersister(role);
+            if (collectionPersister.hasCache()) {
+                regions.add(collectionPersister.getCacheAccessStrategy().getRegion().getName());
+            }
+        }
+
+        Map<String, SecondLevelCacheStatistics> statistics =
+            new HashMap<String, SecondLevelCacheStatistics>();
+        if (factory.getStatistics().isStatisticsEnabled()) {
+            for (String region : regions) {
+                SecondLevelCacheStatistics regionStatistics =
+                    factory.getStatistics().getSecondLevelCacheStatistics(region);
+                if (regionStatistics != null) {
+                    statistics.put(region, regionStatistics);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private SessionFactoryImplementor getSessionFactory() {
+        return (SessionFactoryImplementor) currentSession().getSessionFactory();
+    }
+
+    private List<String> getCollectionRoles(SessionFactoryImplementor factory) {
+        List<String> roles = new ArrayList<String>();
+        String prefix = entityType.getName() + ".";
+        for (Object role : factory.getAllCollectionMetadata().keySet()) {
+            if (((String) role).startsWith(prefix)) {
+                roles.add((String) role);
+            }
+        }
+        return roles;
+    }
+
     /**
      * @param entity to be deleted.
      */
@@ -397,6 +592,34 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return entityManager.get();
     }
 
+    /**
+     * Persists all of the given entities with a single flush, which allows their
+     * inserts to be sent in JDBC batches.
+     *
+     * @param entities entities to be created.
+     */
+    @Transactional
+    public void createAll(Collection<E> entities) {
+        createAll(entities, true);
+    }
+
+    /**
+     * Persists all of the given entities. Without flushing, they are only
+     * inserted with whatever is flushed next, e.g. entities referencing them.
+     *
+     * @param entities entities to be created.
+     * @param flush whether to flush the session afterwards.
+     */
+    @Transactional
+    public void createAll(Collection<E> entities, boolean flush) {
+        for (E entity : entities) {
+            getEntityManager().persist(entity);
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
     public void saveOrUpdateAll(List<E> entries) {
         try {
             Session session = currentSession();
@@ -16,6 +16,8 @@ package org.candlepin.model;
 
 import org.candlepin.util.Util;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
@@ -24,6 +26,7 @@ import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
 
+import java.util.Date;
 import java.util.List;
 
 
@@ -36,6 +39,9 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
     private static final Class[] CERTCLASSES = {IdentityCertificate.class,
         EntitlementCertificate.class, SubscriptionsCertificate.class, CdnCertificate.class};
 
+    private static final int SCROLL_FETCH_SIZE = 1000;
+    private static final int IN_OPERATOR_BLOCK_SIZE = 1000;
+
     public CertificateSerialCurator() {
         super(CertificateSerial.class);
     }
@@ -51,6 +57,80 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
             .add(Restrictions.eq("collected", false)).list();
     }
 
+    /**
+     * @return true if there are serials which are revoked but not yet collected
+     * and put into CRL
+     */
+    public boolean hasTobeCollectedSerials() {
+        return this.currentSession().createCriteria(CertificateSerial.class)
+            .add(getRevokedCriteria())
+            .add(Restrictions.eq("collected", false))
+            .setProjection(Projections.id())
+            .setMaxResults(1).uniqueResult() != null;
+    }
+
+    /**
+     * @return true if there are revoked serials which have expired and are to be
+     * removed from the CRL
+     */
+    public boolean hasExpiredSerials() {
+        return this.currentSession().createCriteria(CertificateSerial.class)
+            .add(Restrictions.le("expiration", Util.yesterday()))
+            .add(getRevokedCriteria())
+            .setProjection(Projections.id())
+            .setMaxResults(1).uniqueResult() != null;
+    }
+
+    /**
+     * Marks all serials which are revoked but not yet collected as collected,
+     * without loading them. The serials are updated in blocks, to stay within the
+     * limits databases put on IN lists.
+     *
+     * @param date the time of the collection
+     * @return the number of serials collected
+     */
+    public int collectRevokedSerials(Date date) {
+        @SuppressWarnings("unchecked")
+        List<Long> ids = this.currentSession().createCriteria(CertificateSerial.class)
+            .add(getRevokedCriteria())
+            .add(Restrictions.eq("collected", false))
+            .setProjection(Projections.id()).list();
+        String hql = "UPDATE CertificateSerial SET collected = true, updated = :updated " +
+            "WHERE id IN (:ids)";
+        int collected = 0;
+        for (int i = 0; i < ids.size(); i += IN_OPERATOR_BLOCK_SIZE) {
+            collected += this.currentSession()
+                .createQuery(hql)
+                .setTimestamp("updated", date)
+                .setParameterList("ids",
+                    ids.subList(i, Math.min(ids.size(), i + IN_OPERATOR_BLOCK_SIZE)))
+                .executeUpdate();
+        }
+        return collected;
+    }
+
+    /**
+     * Scrolls through the serials which are to be listed in the CRL: revoked,
+     * collected and not expired. Each row holds the serial ID and the time it
+     * was last updated, i.e. collected.
+     *
+     * @return forward only results, to be closed by the caller
+     */
+    public ScrollableResults scrollCollectedSerials() {
+        return this.currentSession().createCriteria(CertificateSerial.class)
+            .add(getRevokedCriteria())
+            .add(Restrictions.eq("collected", true))
+            .add(Restrictions.or(Restrictions.isNull("expiration"),
+                Restrictions.gt("expiration", Util.yesterday())))
+            .setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("updated")))
+            .addOrder(Order.asc("id"))
+            .setFetchSize(SCROLL_FETCH_SIZE)
+            .setReadOnly(true)
+            .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
     @SuppressWarnings("unchecked")
     public List<CertificateSerial> getExpiredSerials() {
         //TODO - Should date fields be truncated when checking expiration?
@@ -89,6 +89,25 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         return super.create(entity);
     }
 
+    /**
+     * Persists all of the given consumers with a single flush, after making sure
+     * each of them has a UUID and filtering their facts as {@link #create} does.
+     *
+     * @param consumers consumers to be created.
+     * @param flush whether to flush the session afterwards.
+     */
+    @Override
+    @Transactional
+    public void createAll(Collection<Consumer> consumers, boolean flush) {
+        for (Consumer consumer : consumers) {
+            consumer.ensureUUID();
+            if (consumer.getFacts() != null) {
+                consumer.setFacts(filterAndVerifyFacts(consumer));
+            }
+        }
+        super.createAll(consumers, flush);
+    }
+
     @Transactional
     public void delete(Consumer entity) {
         // save off the IDs before we delete
@@ -470,6 +489,96 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         return toReturn;
     }
 
+    /**
+     * Saves changes made to consumers attached to the current session with a single
+     * flush, rather than one per consumer as {@link #update} does. Facts are
+     * filtered the same way.
+     *
+     * @param consumers consumers attached to the current session
+     */
+    @Transactional
+    public void updateAll(Collection<Consumer> consumers) {
+        for (Consumer consumer : consumers) {
+            if (consumer.getFacts() != null) {
+                Map<String, String> newFacts = filterAndVerifyFacts(consumer);
+                if (factsChanged(newFacts, consumer.getFacts())) {
+                    consumer.setFacts(newFacts);
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Loads everything the compliance status of the given consumers is calculated
+     * from with a few queries per block of consumers, rather than lazily one consumer
+     * at a time: their entitlements with pools and products, facts, installed
+     * products and guest IDs. Pool attributes and provided products are fetched in
+     * batches once the first of them is accessed.
+     *
+     * @param consumers consumers attached to the current session
+     */
+    @Transactional
+    public void loadComplianceData(List<Consumer> consumers) {
+        String[] fetches = {
+            "left join fetch c.entitlements e left join fetch e.pool p " +
+                "left join fetch p.product",
+            "left join fetch c.facts",
+            "left join fetch c.installedProducts",
+            "left join fetch c.guestIds"
+        };
+
+        String[] queries = new String[fetches.length];
+        for (int i = 0; i < fetches.length; i++) {
+            queries[i] = "select distinct c from Consumer c " + fetches[i] +
+                " where c.id in (:ids)";
+        }
+        loadInBlocks(consumers, queries);
+    }
+
+    /**
+     * Loads the guest IDs of the given consumers, along with their attributes,
+     * with a couple of queries per block of consumers.
+     *
+     * @param consumers consumers attached to the current session
+     */
+    @Transactional
+    public void loadGuestIds(List<Consumer> consumers) {
+        loadInBlocks(consumers,
+            "select distinct c from Consumer c left join fetch c.guestIds " +
+                "where c.id in (:ids)",
+            "select distinct g from GuestId g left join fetch g.attributes " +
+                "where g.consumer.id in (:ids)");
+    }
+
+    /*
+     * Runs each query for every block of consumer IDs, leaving whatever they fetch
+     * initialized in the session.
+     */
+    private void loadInBlocks(List<Consumer> consumers, String... queries) {
+        List<String> ids = new ArrayList<String>();
+        for (Consumer consumer : consumers) {
+            ids.add(consumer.getId());
+        }
+
+        int fromIndex = 0;
+        int toIndex = fromIndex + MAX_IN_QUERY_LENGTH;
+
+        while (fromIndex < ids.size()) {
+            if (toIndex > ids.size()) {
+                toIndex = ids.size();
+            }
+            List<String> subList = ids.subList(fromIndex, toIndex);
+            for (String query : queries) {
+                currentSession().createQuery(query)
+                    .setParameterList("ids", subList)
+                    .list();
+            }
+            fromIndex = toIndex;
+            toIndex += MAX_IN_QUERY_LENGTH;
+        }
+    }
+
     /**
      * Get host consumer for a guest system id.
      *
@@ -677,6 +786,28 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
             List<KeyValueParameter> factFilters, List<String> skus,
             List<String> subscriptionIds, List<String> contracts, PageRequest pageRequest) {
+        return listByCriteria(createOwnerConsumersCriteria(owner, userName, types, uuids,
+            hypervisorIds, factFilters, skus, subscriptionIds, contracts), pageRequest);
+    }
+
+    /**
+     * Streams the consumers {@link #searchOwnerConsumers} would list, evicting
+     * each from the session as the next is read.
+     *
+     * @return forward only results, to be closed by the caller
+     */
+    public ResultIterator<Consumer> iterateOwnerConsumers(Owner owner, String userName,
+            Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
+            List<KeyValueParameter> factFilters, List<String> skus,
+            List<String> subscriptionIds, List<String> contracts, PageRequest pageRequest) {
+        return iterateByCriteria(createOwnerConsumersCriteria(owner, userName, types, uuids,
+            hypervisorIds, factFilters, skus, subscriptionIds, contracts), pageRequest);
+    }
+
+    private Criteria createOwnerConsumersCriteria(Owner owner, String userName,
+            Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
+            List<KeyValueParameter> factFilters, List<String> skus,
+            List<String> subscriptionIds, List<String> contracts) {
         Criteria crit = super.createSecureCriteria();
         if (owner != null) {
             crit.add(Restrictions.eq("owner", owner));
@@ -772,7 +903,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             }
         }
 
-        return listByCriteria(crit, pageRequest);
+        return crit;
     }
 
     /**
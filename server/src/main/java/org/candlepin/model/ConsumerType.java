@@ -14,6 +14,8 @@
  */
 package org.candlepin.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
 
@@ -35,6 +37,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlAccessorType(XmlAccessType.PROPERTY)
 @Entity
 @Table(name = "cp_consumer_type")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.consumer_type")
 public class ConsumerType extends AbstractHibernateObject {
 
     @Id
@@ -43,9 +43,20 @@ public class ConsumerTypeCurator extends AbstractHibernateCurator<ConsumerType>
     public ConsumerType lookupByLabel(String label) {
         return (ConsumerType) currentSession().createCriteria(
             ConsumerType.class).add(Restrictions.eq("label", label))
+            .setCacheable(true)
+            .setCacheRegion(REFERENCE_QUERY_REGION)
             .uniqueResult();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ConsumerType> listAll() {
+        return createSecureCriteria()
+            .setCacheable(true)
+            .setCacheRegion(REFERENCE_QUERY_REGION)
+            .list();
+    }
+
     /**
      * look up consumer types by their labels
      * @param labels
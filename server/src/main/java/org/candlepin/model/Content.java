@@ -18,6 +18,8 @@ import org.candlepin.service.UniqueIdGenerator;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
 
@@ -46,6 +48,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlAccessorType(XmlAccessType.PROPERTY)
 @Entity
 @Table(name = "cpo_content")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.content")
 public class Content extends AbstractHibernateObject {
 
     public static final  String UEBER_CONTENT_NAME = "ueber_content";
@@ -116,6 +119,7 @@ public class Content extends AbstractHibernateObject {
                      joinColumns = @JoinColumn(name = "content_uuid"))
     @Column(name = "element")
     @Size(max = 255)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.content.modified_products")
     private Set<String> modifiedProductIds = new HashSet<String>();
 
     @Column(nullable = true)
@@ -14,6 +14,8 @@
  */
 package org.candlepin.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.GenericGenerator;
 
@@ -45,6 +47,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlAccessorType(XmlAccessType.PROPERTY)
 @Entity
 @Table(name = "cp_dist_version")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.distributor_version")
 
 public class DistributorVersion extends AbstractHibernateObject {
 
@@ -69,6 +72,7 @@ public class DistributorVersion extends AbstractHibernateObject {
         DistributorVersionCapability.class)
     @Cascade({org.hibernate.annotations.CascadeType.ALL,
         org.hibernate.annotations.CascadeType.DELETE_ORPHAN})
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.distributor_version.capabilities")
     private Set<DistributorVersionCapability> capabilities;
 
     public DistributorVersion() {
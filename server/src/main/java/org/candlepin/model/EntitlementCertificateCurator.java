@@ -19,8 +19,11 @@ import com.google.inject.persist.Transactional;
 
 import org.hibernate.criterion.Restrictions;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /**
  * EntitlementCertificateCurator
@@ -54,6 +57,33 @@ public class EntitlementCertificateCurator extends
             .list();
     }
 
+    /**
+     * Deletes all of the given certificates with a single flush, which allows the
+     * deletes to be sent in JDBC batches.
+     *
+     * @param certs certificates to be deleted.
+     */
+    @Transactional
+    public void deleteAll(Collection<EntitlementCertificate> certs) {
+        for (EntitlementCertificate cert : certs) {
+            Set<EntitlementCertificate> entCerts = cert.getEntitlement().getCertificates();
+            if (!entCerts.remove(cert)) {
+                // Certificates added before they were assigned an ID are in the
+                // wrong hash bucket, rehash them to get this one removed:
+                List<EntitlementCertificate> others = new ArrayList<EntitlementCertificate>();
+                for (EntitlementCertificate other : entCerts) {
+                    if (other != cert) {
+                        others.add(other);
+                    }
+                }
+                entCerts.clear();
+                entCerts.addAll(others);
+            }
+            currentSession().delete(cert);
+        }
+        flush();
+    }
+
     @Transactional
     public void delete(EntitlementCertificate cert) {
         // make sure to delete it! else get ready to face
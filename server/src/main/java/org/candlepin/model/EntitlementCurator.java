@@ -120,21 +120,57 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
 
     public Page<List<Entitlement>> listByConsumer(Consumer consumer, String productId,
             EntitlementFilterBuilder filters, PageRequest pageRequest) {
-        return listFilteredPages(consumer, "consumer", productId, filters, pageRequest);
+        return listByCriteria(createFilteredCriteria(consumer, "consumer", productId, filters),
+            pageRequest);
     }
 
     public Page<List<Entitlement>> listByOwner(Owner owner, String productId,
             EntitlementFilterBuilder filters, PageRequest pageRequest) {
-        return listFilteredPages(owner, "owner", productId, filters, pageRequest);
+        return listByCriteria(createFilteredCriteria(owner, "owner", productId, filters),
+            pageRequest);
     }
 
     public Page<List<Entitlement>> listAll(EntitlementFilterBuilder filters, PageRequest pageRequest) {
-        return listFilteredPages(null, null, null, filters, pageRequest);
+        return listByCriteria(createFilteredCriteria(null, null, null, filters), pageRequest);
     }
 
-    private Page<List<Entitlement>> listFilteredPages(AbstractHibernateObject object, String objectType,
-            String productId, EntitlementFilterBuilder filters, PageRequest pageRequest) {
-        Page<List<Entitlement>> entitlementsPage;
+    /**
+     * Streams the entitlements {@link #listByConsumer} would list, evicting each
+     * from the session as the next is read.
+     *
+     * @return forward only results, to be closed by the caller
+     */
+    public ResultIterator<Entitlement> iterateByConsumer(Consumer consumer, String productId,
+            EntitlementFilterBuilder filters, PageRequest pageRequest) {
+        return iterateByCriteria(createFilteredCriteria(consumer, "consumer", productId, filters),
+            pageRequest);
+    }
+
+    /**
+     * Streams the entitlements {@link #listByOwner} would list, evicting each
+     * from the session as the next is read.
+     *
+     * @return forward only results, to be closed by the caller
+     */
+    public ResultIterator<Entitlement> iterateByOwner(Owner owner, String productId,
+            EntitlementFilterBuilder filters, PageRequest pageRequest) {
+        return iterateByCriteria(createFilteredCriteria(owner, "owner", productId, filters),
+            pageRequest);
+    }
+
+    /**
+     * Streams the entitlements {@link #listAll} would list, evicting each from
+     * the session as the next is read.
+     *
+     * @return forward only results, to be closed by the caller
+     */
+    public ResultIterator<Entitlement> iterateAll(EntitlementFilterBuilder filters,
+            PageRequest pageRequest) {
+        return iterateByCriteria(createFilteredCriteria(null, null, null, filters), pageRequest);
+    }
+
+    private Criteria createFilteredCriteria(AbstractHibernateObject object, String objectType,
+            String productId, EntitlementFilterBuilder filters) {
         Owner owner = null;
         if (object != null) {
             owner = (object instanceof Owner) ? (Owner) object : ((Consumer) object).getOwner();
@@ -147,18 +183,15 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
                 throw new BadRequestException(i18n.tr(
                     "Product with ID ''{0}'' could not be found.", productId));
             }
-            entitlementsPage = listByProduct(object, objectType, productId, pageRequest);
-        }
-        else {
-            // Build up any provided entitlement filters from query params.
-            Criteria criteria = createCriteriaFromFilters(filters);
-            if (object != null) {
-                criteria.add(Restrictions.eq(objectType, object));
-            }
-            entitlementsPage = listByCriteria(criteria, pageRequest);
+            return createProductCriteria(object, objectType, productId);
         }
 
-        return entitlementsPage;
+        // Build up any provided entitlement filters from query params.
+        Criteria criteria = createCriteriaFromFilters(filters);
+        if (object != null) {
+            criteria.add(Restrictions.eq(objectType, object));
+        }
+        return criteria;
     }
 
     public List<Entitlement> listByOwner(Owner owner) {
@@ -356,8 +389,12 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
     @Transactional
     private Page<List<Entitlement>> listByProduct(AbstractHibernateObject object, String objectType,
         String productId, PageRequest pageRequest) {
+        return listByCriteria(createProductCriteria(object, objectType, productId), pageRequest);
+    }
 
-        Criteria query = createSecureCriteria()
+    private Criteria createProductCriteria(AbstractHibernateObject object, String objectType,
+        String productId) {
+        return createSecureCriteria()
             .add(Restrictions.eq(objectType, object))
             .createAlias("pool", "p")
             .createAlias("p.product", "prod")
@@ -367,10 +404,6 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
             .add(Restrictions.ge("p.endDate", new Date()))
             .add(Restrictions.or(Restrictions.eq("prod.id", productId),
                 Restrictions.eq("pp.id", productId)));
-
-        Page<List<Entitlement>> page = listByCriteria(query, pageRequest);
-
-        return page;
     }
 
     @Transactional
@@ -24,6 +24,7 @@ import org.candlepin.pinsetter.core.model.JobStatus.TargetType;
 import org.candlepin.pinsetter.tasks.KingpinJob;
 
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
@@ -72,6 +73,22 @@ public class JobCurator extends AbstractHibernateCurator<JobStatus> {
         }
     }
 
+    /**
+     * Updates the result of a job while it is still running, e.g. to report its
+     * progress.
+     *
+     * @param jobId the ID of the job
+     * @param result the new result of the job
+     */
+    @Transactional
+    public void updateResult(String jobId, String result) {
+        this.currentSession().createQuery(
+            "update JobStatus j set j.result = :result where j.id = :jobid")
+            .setParameter("result", result)
+            .setParameter("jobid", jobId)
+            .executeUpdate();
+    }
+
     public int cleanupAllOldJobs(Date deadline) {
         return this.currentSession().createQuery(
             "delete from JobStatus where updated <= :date")
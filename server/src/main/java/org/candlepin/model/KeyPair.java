@@ -44,6 +44,12 @@ public class KeyPair extends AbstractHibernateObject{
     private PrivateKey privateKey;
     private PublicKey publicKey;
 
+    /**
+     * Set on key pairs generated ahead of time which no consumer has been given yet.
+     */
+    @Column(nullable = false)
+    private boolean spare;
+
     public KeyPair() {
     }
 
@@ -65,6 +71,14 @@ public class KeyPair extends AbstractHibernateObject{
         this.publicKey = publicKey;
     }
 
+    public boolean isSpare() {
+        return spare;
+    }
+
+    public void setSpare(boolean spare) {
+        this.spare = spare;
+    }
+
     public String getId() {
         return id;
     }
@@ -14,11 +14,20 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.pki.PKIUtility;
 
 import com.google.inject.Inject;
 
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * KeyPairCurator
@@ -26,12 +35,22 @@ import java.security.NoSuchAlgorithmException;
 public class KeyPairCurator extends
     AbstractHibernateCurator<KeyPair> {
 
+    private static Logger log = LoggerFactory.getLogger(KeyPairCurator.class);
+
+    /**
+     * Number of spare key pairs a consumer tries to claim before giving up and
+     * generating its own, in case concurrent registrations claim the same ones.
+     */
+    private static final int CLAIM_ATTEMPTS = 10;
+
     private PKIUtility pki;
+    private Configuration config;
 
     @Inject
-    public KeyPairCurator(PKIUtility pki) {
+    public KeyPairCurator(PKIUtility pki, Configuration config) {
         super(KeyPair.class);
         this.pki = pki;
+        this.config = config;
     }
 
     /**
@@ -44,18 +63,88 @@ public class KeyPairCurator extends
         // if multiple exist.
         KeyPair cpKeyPair = c.getKeyPair();
         if (cpKeyPair == null) {
-            try {
-                java.security.KeyPair newPair = pki.generateNewKeyPair();
-                cpKeyPair = new KeyPair(newPair.getPrivate(), newPair.getPublic());
-                create(cpKeyPair);
-                c.setKeyPair(cpKeyPair);
-            }
-            catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
+            cpKeyPair = claimSpareKeyPair();
+            if (cpKeyPair == null) {
+                cpKeyPair = create(generateKeyPair(false));
             }
+            c.setKeyPair(cpKeyPair);
         }
         java.security.KeyPair returnMe = new java.security.KeyPair(
             cpKeyPair.getPublicKey(), cpKeyPair.getPrivateKey());
         return returnMe;
     }
+
+    /**
+     * Takes one of the spare key pairs generated ahead of time out of the pool.
+     *
+     * @return a key pair no other consumer has, or null if the pool is disabled
+     * or there are no spare key pairs left
+     */
+    @SuppressWarnings("unchecked")
+    public KeyPair claimSpareKeyPair() {
+        if (config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE) <= 0) {
+            return null;
+        }
+
+        List<String> ids = currentSession().createCriteria(KeyPair.class)
+            .add(Restrictions.eq("spare", true))
+            .setProjection(Projections.id())
+            .setMaxResults(CLAIM_ATTEMPTS)
+            .list();
+        // Concurrent registrations see the same candidates, try them in a
+        // different order to avoid all going for the same one:
+        Collections.shuffle(ids);
+
+        for (String id : ids) {
+            int claimed = currentSession().createQuery(
+                "update KeyPair set spare = false where id = :id and spare = true")
+                .setParameter("id", id)
+                .executeUpdate();
+            if (claimed == 1) {
+                KeyPair keyPair = find(id);
+                // The session may still hold the key pair as it was before the claim:
+                keyPair.setSpare(false);
+                return keyPair;
+            }
+        }
+
+        log.debug("No spare key pair available, generating one");
+        return null;
+    }
+
+    /**
+     * @return number of spare key pairs left in the pool
+     */
+    public int getSpareCount() {
+        Long count = (Long) currentSession().createCriteria(KeyPair.class)
+            .add(Restrictions.eq("spare", true))
+            .setProjection(Projections.rowCount())
+            .uniqueResult();
+        return count.intValue();
+    }
+
+    /**
+     * Generates key pairs to be handed out to consumers later. Each one is
+     * stored as soon as it is generated, so it can be claimed while the rest
+     * are still being generated.
+     *
+     * @param count number of key pairs to generate
+     */
+    public void createSpareKeyPairs(int count) {
+        for (int i = 0; i < count; i++) {
+            create(generateKeyPair(true));
+        }
+    }
+
+    private KeyPair generateKeyPair(boolean spare) {
+        try {
+            java.security.KeyPair newPair = pki.generateNewKeyPair();
+            KeyPair keyPair = new KeyPair(newPair.getPrivate(), newPair.getPublic());
+            keyPair.setSpare(spare);
+            return keyPair;
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OwnerInfoCache
+ *
+ * Bounded cache of the aggregated info of owners. Events about an owner's
+ * consumers, entitlements and pools drop their info, see OwnerInfoListener. As
+ * events only reach the node which sent them, and the info also changes as pools
+ * start and expire, info older than the configured maximum age is recomputed as
+ * well, so all nodes converge on the database state.
+ */
+public class OwnerInfoCache {
+    private final int maxOwners;
+    private final long maxAge;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong versions = new AtomicLong();
+    private long clears;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public OwnerInfoCache(Configuration config) {
+        this(config.getInt(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS),
+            config.getInt(ConfigProperties.OWNER_INFO_CACHE_MAX_AGE) * 1000L);
+    }
+
+    OwnerInfoCache(final int maxOwners, long maxAge) {
+        this.maxOwners = maxOwners;
+        this.maxAge = maxAge;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxOwners;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxOwners > 0;
+    }
+
+    /**
+     * @param owner the owner
+     * @return the owner's info, or null if there is none which is still current
+     */
+    public OwnerInfo get(Owner owner) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(owner.getId());
+        }
+
+        if (entry == null || entry.info == null ||
+            System.currentTimeMillis() - entry.computed > maxAge) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.info;
+    }
+
+    /**
+     * @param owner the owner
+     * @return version to store the owner's info with, to be looked up before
+     * computing the info
+     */
+    public long getVersion(Owner owner) {
+        synchronized (entries) {
+            Entry entry = entries.get(owner.getId());
+            return entry == null ? -clears : entry.version;
+        }
+    }
+
+    /**
+     * Stores the owner's info, unless it was invalidated since the version was
+     * looked up, i.e. while the info was being computed.
+     *
+     * @param owner the owner
+     * @param info the owner's info
+     * @param version the version looked up before computing the info
+     */
+    public void put(Owner owner, OwnerInfo info, long version) {
+        synchronized (entries) {
+            if (getVersion(owner) == version) {
+                entries.put(owner.getId(), new Entry(info, version));
+            }
+        }
+    }
+
+    /**
+     * Drops the info of an owner, to be called whenever something it is
+     * aggregated from changed.
+     *
+     * @param ownerId ID of the owner
+     */
+    public void invalidate(String ownerId) {
+        synchronized (entries) {
+            // Keep a marker, so info computed before this is not stored:
+            entries.put(ownerId, new Entry(null, versions.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Drops the info of all owners.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            // Owners without an entry get a new version too:
+            clears++;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups for which the info had to be computed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final OwnerInfo info;
+        private final long version;
+        private final long computed = System.currentTimeMillis();
+
+        Entry(OwnerInfo info, long version) {
+            this.info = info;
+            this.version = version;
+        }
+    }
+}
@@ -42,15 +42,38 @@ public class OwnerInfoCurator {
     private ConsumerTypeCurator consumerTypeCurator;
     private ConsumerCurator consumerCurator;
     private PoolCurator poolCurator;
+    private OwnerInfoCache cache;
 
     @Inject
     public OwnerInfoCurator(Provider<EntityManager> entityManager,
         ConsumerCurator consumerCurator, ConsumerTypeCurator consumerTypeCurator,
-        PoolCurator poolCurator) {
+        PoolCurator poolCurator, OwnerInfoCache cache) {
         this.entityManager = entityManager;
         this.consumerCurator = consumerCurator;
         this.consumerTypeCurator = consumerTypeCurator;
         this.poolCurator = poolCurator;
+        this.cache = cache;
+    }
+
+    /**
+     * Looks up the owner's info like lookupByOwner, but serves it from the cache
+     * while none of the owner's consumers, entitlements or pools changed.
+     *
+     * @param owner the owner
+     * @return the owner's info
+     */
+    public OwnerInfo getOwnerInfo(Owner owner) {
+        if (!cache.isEnabled()) {
+            return lookupByOwner(owner);
+        }
+
+        OwnerInfo info = cache.get(owner);
+        if (info == null) {
+            long version = cache.getVersion(owner);
+            info = lookupByOwner(owner);
+            cache.put(owner, info, version);
+        }
+        return info;
     }
 
     public OwnerInfo lookupByOwner(Owner owner) {
@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -55,6 +56,22 @@ import java.util.TreeSet;
 public class PoolCurator extends AbstractHibernateCurator<Pool> {
 
     private static Logger log = LoggerFactory.getLogger(PoolCurator.class);
+    private static final int IN_OPERATOR_BLOCK_SIZE = 1000;
+
+    private static final String[] POOLS_VERSION_PROBES = {
+        "SELECT COUNT(P), MAX(P.updated), MAX(PR.updated) " +
+        "FROM Pool P INNER JOIN P.product AS PR WHERE P.owner = :owner",
+        "SELECT COUNT(A), MAX(A.updated) " +
+        "FROM Pool P INNER JOIN P.attributes AS A WHERE P.owner = :owner",
+        "SELECT COUNT(A), MAX(A.updated) " +
+        "FROM Pool P INNER JOIN P.product AS PR INNER JOIN PR.attributes AS A " +
+        "WHERE P.owner = :owner",
+        "SELECT COUNT(PR), MAX(PR.updated) " +
+        "FROM Pool P INNER JOIN P.providedProducts AS PR WHERE P.owner = :owner",
+        "SELECT COUNT(PR), MAX(PR.updated) " +
+        "FROM Pool P INNER JOIN P.derivedProvidedProducts AS PR WHERE P.owner = :owner"
+    };
+
     private CriteriaRules poolCriteria;
     @Inject
     protected Injector injector;
@@ -339,6 +356,24 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return criteriaToSelectEntitlementForPool(entitlementPool).list();
     }
 
+    /**
+     * @param pools pools to search.
+     * @return entitlements in any of the given pools.
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<Entitlement> entitlementsIn(Collection<Pool> pools) {
+        List<Pool> poolList = new ArrayList<Pool>(pools);
+        List<Entitlement> entitlements = new ArrayList<Entitlement>();
+        for (int i = 0; i < poolList.size(); i += IN_OPERATOR_BLOCK_SIZE) {
+            entitlements.addAll(this.currentSession().createCriteria(Entitlement.class)
+                .add(Restrictions.in("pool", poolList.subList(i,
+                    Math.min(poolList.size(), i + IN_OPERATOR_BLOCK_SIZE))))
+                .list());
+        }
+        return entitlements;
+    }
+
     /**
      * @param subId Subscription to look up pools by
      * @return pools from the given subscription, sorted by pool.id to avoid deadlocks
@@ -396,6 +431,24 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return pool;
     }
 
+    /**
+     * Persists all of the given pools with a single flush, fixing up their
+     * attributes as {@link #create(Pool)} does.
+     *
+     * @param pools pools to be created.
+     * @param flush whether to flush the session afterwards.
+     */
+    @Override
+    @Transactional
+    public void createAll(Collection<Pool> pools, boolean flush) {
+        for (Pool pool : pools) {
+            for (PoolAttribute attr : pool.getAttributes()) {
+                attr.setPool(pool);
+            }
+        }
+        super.createAll(pools, flush);
+    }
+
     @Transactional
     public Pool create(Pool entity) {
 
@@ -563,6 +616,27 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         }
     }
 
+    /**
+     * Deletes all of the given pools as {@link #delete(Pool)} does, but with a
+     * single flush, which allows the deletes to be sent in JDBC batches.
+     *
+     * @param pools pools to be deleted.
+     */
+    @Transactional
+    public void deleteAll(Collection<Pool> pools) {
+        for (Pool entity : pools) {
+            Pool toDelete = find(entity.getId());
+            if (toDelete != null) {
+                log.debug("DELETING POOL w/SUBSCRIPTION ID: {}", toDelete.getSubscriptionId());
+                currentSession().delete(toDelete);
+            }
+            else {
+                log.info("Pool " + entity.getId() + " not found. Skipping deletion. noop");
+            }
+        }
+        this.flush();
+    }
+
     /**
      * @param consumer
      * @param stackId
@@ -596,19 +670,44 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
      */
     @SuppressWarnings("unchecked")
     public List<Pool> getPoolsFromBadSubs(Owner owner, Collection<String> expectedSubIds) {
-        Criteria crit = currentSession().createCriteria(Pool.class)
-                .add(Restrictions.eq("owner", owner));
-
-        if (!expectedSubIds.isEmpty()) {
-            crit.createAlias("sourceSubscription", "sourceSub");
-            crit.add(Restrictions.and(
-                Restrictions.not(Restrictions.in("sourceSub.subscriptionId", expectedSubIds)),
-                Restrictions.isNotNull("sourceSub.subscriptionId")
-            ));
+        if (expectedSubIds.isEmpty()) {
+            return currentSession().createCriteria(Pool.class)
+                .add(Restrictions.eq("owner", owner))
+                .addOrder(Order.asc("id"))
+                .list();
         }
 
-        crit.addOrder(Order.asc("id"));
-        return crit.list();
+        // The expected subscriptions are filtered out here rather than with a
+        // NOT IN, which gets slow and runs into database limits on the number of
+        // values for owners with many subscriptions:
+        Set<String> expected = new HashSet<String>(expectedSubIds);
+        List<Object[]> subIdsByPool = currentSession().createCriteria(Pool.class)
+            .add(Restrictions.eq("owner", owner))
+            .createAlias("sourceSubscription", "sourceSub")
+            .add(Restrictions.isNotNull("sourceSub.subscriptionId"))
+            .setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("sourceSub.subscriptionId")))
+            .list();
+
+        List<String> badPoolIds = new ArrayList<String>();
+        for (Object[] row : subIdsByPool) {
+            if (!expected.contains((String) row[1])) {
+                badPoolIds.add((String) row[0]);
+            }
+        }
+
+        // Sorted so that the pools come back ordered by ID across blocks:
+        Collections.sort(badPoolIds);
+        List<Pool> pools = new ArrayList<Pool>(badPoolIds.size());
+        for (int i = 0; i < badPoolIds.size(); i += IN_OPERATOR_BLOCK_SIZE) {
+            pools.addAll(currentSession().createCriteria(Pool.class)
+                .add(Restrictions.in("id", badPoolIds.subList(i,
+                    Math.min(badPoolIds.size(), i + IN_OPERATOR_BLOCK_SIZE))))
+                .addOrder(Order.asc("id"))
+                .list());
+        }
+        return pools;
     }
 
     @SuppressWarnings("unchecked")
@@ -760,6 +859,76 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return result;
     }
 
+    /**
+     * Describes the current state of the owner's pools, the result changes whenever
+     * one of the pools, their attributes, their products or their products'
+     * attributes is created, updated or deleted, and whenever provided products are
+     * linked to or unlinked from the pools.
+     * <p>
+     * Links carry no timestamp, so replacing a provided product with another one
+     * which was not updated since, leaving the number of links as it was, is not
+     * detected.
+     *
+     * @param owner
+     *  The owner whose pools to check
+     *
+     * @return
+     *  a string identifying the current state of the owner's pools
+     */
+    public String getPoolsVersion(Owner owner) {
+        StringBuilder version = new StringBuilder();
+        for (String probe : POOLS_VERSION_PROBES) {
+            Object[] result = (Object[]) this.currentSession().createQuery(probe)
+                .setParameter("owner", owner).uniqueResult();
+
+            for (Object value : result) {
+                version.append(value instanceof Date ? ((Date) value).getTime() : value);
+                version.append(':');
+            }
+        }
+        return version.toString();
+    }
+
+    /**
+     * Lists the products of the owner's pools reached through the given association
+     * of the pool, one of product, providedProducts, derivedProduct and
+     * derivedProvidedProducts.
+     *
+     * @param owner
+     *  The owner whose pools to list
+     *
+     * @param association
+     *  The name of the pool's product association
+     *
+     * @return
+     *  a list of pool ID and product ID pairs
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> listPoolProductIds(Owner owner, String association) {
+        return this.currentSession().createQuery(
+            "SELECT P.id, PR.id " +
+            "FROM Pool P INNER JOIN P." + association + " AS PR " +
+            "WHERE P.owner = :owner"
+        ).setParameter("owner", owner).list();
+    }
+
+    /**
+     * @param owner
+     *  The owner whose pools to list
+     *
+     * @return
+     *  a list of pool ID and stacking ID pairs for the owner's pools of stackable
+     *  products
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> listPoolStackingIds(Owner owner) {
+        return this.currentSession().createQuery(
+            "SELECT P.id, A.value " +
+            "FROM Pool P INNER JOIN P.product AS PR INNER JOIN PR.attributes AS A " +
+            "WHERE P.owner = :owner AND A.name = 'stacking_id'"
+        ).setParameter("owner", owner).list();
+    }
+
     public Pool findDevPool(Consumer consumer) {
         PoolFilterBuilder filters = new PoolFilterBuilder();
         filters.addAttributeFilter(Pool.DEVELOPMENT_POOL_ATTRIBUTE, "true");
@@ -16,6 +16,8 @@ package org.candlepin.model;
 
 import org.candlepin.service.UniqueIdGenerator;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.LazyCollection;
@@ -57,6 +59,7 @@ import javax.xml.bind.annotation.XmlTransient;
 @XmlAccessorType(XmlAccessType.PROPERTY)
 @Entity
 @Table(name = "cpo_products")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.product")
 public class Product extends AbstractHibernateObject implements Linkable, Cloneable {
 
     public static final  String UEBER_PRODUCT_POSTFIX = "_ueber_product";
@@ -95,6 +98,7 @@ public class Product extends AbstractHibernateObject implements Linkable, Clonea
     @OneToMany(mappedBy = "product")
     @Cascade({ org.hibernate.annotations.CascadeType.ALL,
         org.hibernate.annotations.CascadeType.DELETE_ORPHAN })
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.product.attributes")
     private Set<ProductAttribute> attributes;
 
     @ElementCollection
@@ -102,6 +106,7 @@ public class Product extends AbstractHibernateObject implements Linkable, Clonea
                      joinColumns = @JoinColumn(name = "product_uuid"))
     @Column(name = "element")
     @LazyCollection(LazyCollectionOption.EXTRA) // allows .size() without loading all data
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.product.content")
     private List<ProductContent> productContent;
 
     /*
@@ -114,6 +119,7 @@ public class Product extends AbstractHibernateObject implements Linkable, Clonea
                      joinColumns = @JoinColumn(name = "product_uuid"))
     @Column(name = "element")
     @LazyCollection(LazyCollectionOption.FALSE)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.product.dependent_products")
     private Set<String> dependentProductIds; // Should these be product references?
 
     protected Product() {
@@ -19,6 +19,8 @@ import com.fasterxml.jackson.annotation.JsonFilter;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.Column;
@@ -38,6 +40,7 @@ import javax.xml.bind.annotation.XmlTransient;
  */
 @Entity
 @Table(name = "cpo_product_attributes")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.product_attribute")
 @Embeddable
 @JsonFilter("ProductAttributeFilter")
 public class ProductAttribute extends AbstractHibernateObject implements Attribute {
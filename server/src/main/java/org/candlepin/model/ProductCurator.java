@@ -101,7 +101,10 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
     public Product lookupById(Owner owner, String id) {
         return (Product) this.createSecureCriteria()
             .add(Restrictions.eq("owner", owner))
-            .add(Restrictions.eq("id", id)).uniqueResult();
+            .add(Restrictions.eq("id", id))
+            .setCacheable(true)
+            .setCacheRegion(REFERENCE_QUERY_REGION)
+            .uniqueResult();
     }
 
     /**
@@ -113,7 +116,10 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
     public Product lookupById(String ownerId, String productId) {
         return (Product) this.createSecureCriteria()
             .add(Restrictions.eq("owner.id", ownerId))
-            .add(Restrictions.eq("id", productId)).uniqueResult();
+            .add(Restrictions.eq("id", productId))
+            .setCacheable(true)
+            .setCacheRegion(REFERENCE_QUERY_REGION)
+            .uniqueResult();
     }
 
     /**
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ResultIterator
+ *
+ * Iterates over the entities of a forward only query as the database returns
+ * them. Each entity is evicted from the session once the caller moves on to
+ * the next one, so that writing out a large result set never holds more than
+ * one entity in the persistence context. Entities joined in more than once
+ * must come in consecutive rows, i.e. the query must be ordered by ID last,
+ * and are returned only once.
+ *
+ * @param <E> the entity type
+ */
+public class ResultIterator<E extends Persisted> implements Iterator<E>, Closeable {
+    private final ScrollableResults results;
+    private final Session session;
+    private E current;
+    private Boolean hasNext;
+
+    public ResultIterator(ScrollableResults results, Session session) {
+        this.results = results;
+        this.session = session;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        if (hasNext == null) {
+            E previous = current;
+            evictCurrent();
+
+            hasNext = false;
+            while (results.next()) {
+                E next = (E) results.get(0);
+                if (previous == null || !previous.getId().equals(next.getId())) {
+                    current = next;
+                    hasNext = true;
+                    break;
+                }
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        return current;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Evicts the last entity returned and releases the database cursor.
+     */
+    @Override
+    public void close() {
+        evictCurrent();
+        results.close();
+    }
+
+    private void evictCurrent() {
+        if (current != null) {
+            session.evict(current);
+            current = null;
+        }
+    }
+}
@@ -16,6 +16,8 @@ package org.candlepin.model;
 
 import org.candlepin.policy.js.RuleParseException;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 import java.io.Serializable;
@@ -41,6 +43,7 @@ import javax.xml.bind.annotation.XmlTransient;
  */
 @Entity
 @Table(name = "cp_rules")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "candlepin.rules")
 @Embeddable
 public class Rules extends AbstractHibernateObject implements Named {
 
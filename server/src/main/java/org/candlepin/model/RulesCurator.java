@@ -73,10 +73,14 @@ public class RulesCurator extends AbstractHibernateCurator<Rules> {
     }
 
     public Rules getDbRules() {
-        return (Rules) this.currentSession().createCriteria(Rules.class)
-        .addOrder(Order.desc("updated"))
-        .setMaxResults(1)
-        .uniqueResult();
+        // Rules are never changed in place, new rules are stored instead. So only
+        // the ID is read here, the rules themselves may come from the cache.
+        String id = (String) this.currentSession().createCriteria(Rules.class)
+            .setProjection(Projections.id())
+            .addOrder(Order.desc("updated"))
+            .setMaxResults(1)
+            .uniqueResult();
+        return id == null ? null : get(Rules.class, id);
     }
 
     public void updateDbRules() {
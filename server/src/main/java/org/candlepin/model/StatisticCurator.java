@@ -14,6 +14,7 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.audit.Event;
 import org.candlepin.model.Statistic.EntryType;
 import org.candlepin.model.Statistic.ValueType;
 
@@ -21,11 +22,13 @@ import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,17 +38,14 @@ import java.util.Map.Entry;
  */
 public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
 
-    private OwnerCurator ownerCurator;
-    private OwnerInfoCurator ownerInfoCurator;
+    private static final int SCROLL_FETCH_SIZE = 1000;
+    private static final int STATISTIC_BATCH_SIZE = 500;
+
     private StatisticCuratorQueries statisticCuratorQueries;
 
     @Inject
-    public StatisticCurator(OwnerCurator ownerCurator,
-        OwnerInfoCurator ownerInfoCurator,
-        StatisticCuratorQueries statisticCuratorQueries) {
+    public StatisticCurator(StatisticCuratorQueries statisticCuratorQueries) {
         super(Statistic.class);
-        this.ownerCurator = ownerCurator;
-        this.ownerInfoCurator = ownerInfoCurator;
         this.statisticCuratorQueries = statisticCuratorQueries;
     }
 
@@ -73,204 +73,207 @@ public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
         return statisticCuratorQueries.getStatisticsByProduct(owner, prodId, vType, from, to);
     }
 
+    /**
+     * Calculates the statistics of all owners at once: every statistic is
+     * aggregated for all owners, pools or products by a single grouped query, and
+     * the results are inserted in batches. The run is a single transaction, the
+     * pools are scrolled through while the batches are flushed and a commit
+     * would close the cursor.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
     public void executeStatisticRun() {
-        List<Owner> owners = ownerCurator.listAll();
-        for (Owner owner : owners) {
-            String ownerId = owner.getId();
-
-            systemCounts(owner);
-            totalConsumers(owner);
-            consumersPerSocketCount(owner);
-            int tsc = totalSubscriptionCount(ownerId);
-            totalSubscriptionConsumed(ownerId, tsc);
-            perPool(ownerId);
-            perProduct(ownerId);
-        }
-    }
+        List<String> ownerIds = currentSession().createQuery("select o.id from Owner o")
+            .list();
+
+        Map<String, Integer> consumers = countByOwner(currentSession().createSQLQuery(
+            "select owner_id, count(id) from cp_consumer group by owner_id"));
+        Map<String, Integer> guests = countByOwner(currentSession().createSQLQuery(
+            "select c.owner_id, count(c.id) from cp_consumer c " +
+            "inner join cp_consumer_facts f on c.id = f.cp_consumer_id " +
+            "where lower(f.mapkey) like 'virt.is_guest' " +
+            "and lower(f.element) like 'true' " +
+            "group by c.owner_id"));
+        Map<String, Map<String, Integer>> sockets = countByOwnerAndKey(
+            currentSession().createSQLQuery(
+            "select c.owner_id, f.element, count(c.id) from cp_consumer c " +
+            "left outer join cp_consumer_facts f on c.id = f.cp_consumer_id " +
+            "and f.mapkey = 'cpu.cpu_socket(s)' " +
+            "group by c.owner_id, f.element"));
+        Map<String, Integer> subscriptions = countByOwner(currentSession().createQuery(
+            "select p.owner.id, sum(p.quantity) from Pool p group by p.owner.id"));
+        Map<String, Integer> consumed = countByOwner(currentSession().createQuery(
+            "select e.owner.id, sum(e.quantity) from Entitlement e group by e.owner.id"));
+
+        StatisticBatch batch = new StatisticBatch();
+        for (String ownerId : ownerIds) {
+            int guestCount = count(guests, ownerId);
+            int consumerCount = count(consumers, ownerId);
+            batch.add(new Statistic(EntryType.SYSTEM, ValueType.VIRTUAL, null,
+                guestCount, ownerId));
+            batch.add(new Statistic(EntryType.SYSTEM, ValueType.PHYSICAL, null,
+                consumerCount - guestCount, ownerId));
+            batch.add(new Statistic(EntryType.TOTALCONSUMERS, ValueType.RAW, null,
+                consumerCount, ownerId));
+
+            Map<String, Integer> ownerSockets = sockets.get(ownerId);
+            if (ownerSockets != null) {
+                for (Entry<String, Integer> entry : ownerSockets.entrySet()) {
+                    batch.add(new Statistic(EntryType.CONSUMERSBYSOCKETCOUNT,
+                        ValueType.RAW, entry.getKey(), entry.getValue(), ownerId));
+                }
+            }
 
-    private void systemCounts(Owner owner) {
-        OwnerInfo oi = ownerInfoCurator.lookupByOwner(owner);
+            int subscriptionCount = count(subscriptions, ownerId);
+            int consumedCount = count(consumed, ownerId);
+            batch.add(new Statistic(EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW,
+                null, subscriptionCount, ownerId));
+            batch.add(new Statistic(EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW,
+                null, consumedCount, ownerId));
+            batch.add(new Statistic(EntryType.TOTALSUBSCRIPTIONCONSUMED,
+                ValueType.PERCENTAGECONSUMED, null,
+                percentage(consumedCount, subscriptionCount), ownerId));
+        }
 
-        Statistic consumerCountStatistic = new Statistic(EntryType.SYSTEM,
-            ValueType.VIRTUAL, null, oi.getConsumerGuestCounts().get(OwnerInfo.GUEST),
-            owner.getId());
-        create(consumerCountStatistic);
+        perPool(batch);
+        perProduct(batch);
+        batch.flush();
+    }
 
-        consumerCountStatistic = new Statistic(EntryType.SYSTEM,
-            ValueType.PHYSICAL, null, oi.getConsumerGuestCounts().get(OwnerInfo.PHYSICAL),
-            owner.getId());
-        create(consumerCountStatistic);
+    private void perPool(StatisticBatch batch) {
+        Map<String, Map<String, Integer>> events = countByOwnerAndKey(
+            currentSession().createQuery(
+            "select e.referenceId, e.type, count(e) from Event e " +
+            "where e.target = 'ENTITLEMENT' and e.referenceType = 'POOL' " +
+            "group by e.referenceId, e.type"));
+
+        ScrollableResults pools = currentSession().createQuery(
+            "select p.owner.id, p.id, p.quantity from Pool p")
+            .setFetchSize(SCROLL_FETCH_SIZE)
+            .setReadOnly(true)
+            .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (pools.next()) {
+                String ownerId = pools.getString(0);
+                String poolId = pools.getString(1);
+                Long quantity = pools.getLong(2);
+
+                int used = count(events.get(poolId), Event.Type.CREATED.toString());
+                int deleted = count(events.get(poolId), Event.Type.DELETED.toString());
+                int total = quantity == null ? 0 : quantity.intValue();
+                batch.add(new Statistic(EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED,
+                    poolId, percentage(used - deleted, total), ownerId));
+                batch.add(new Statistic(EntryType.PERPOOL, ValueType.USED, poolId,
+                    used, ownerId));
+                batch.add(new Statistic(EntryType.PERPOOL, ValueType.CONSUMED, poolId,
+                    used - deleted, ownerId));
+            }
+        }
+        finally {
+            pools.close();
+        }
     }
 
-    private void totalConsumers(Owner owner) {
-        int count = owner.getConsumers().size();
-        Statistic consumerCountStatistic = new Statistic(
-            EntryType.TOTALCONSUMERS, ValueType.RAW, null, count, owner.getId());
-        create(consumerCountStatistic);
+    /*
+     * Entitlement events and pool quantities are matched to products by product
+     * name, across all owners.
+     */
+    @SuppressWarnings("unchecked")
+    private void perProduct(StatisticBatch batch) {
+        Map<String, Map<String, Integer>> events = countByOwnerAndKey(
+            currentSession().createQuery(
+            "select e.targetName, e.type, count(e) from Event e " +
+            "where e.target = 'ENTITLEMENT' and e.referenceType = 'POOL' " +
+            "group by e.targetName, e.type"));
+        Map<String, Integer> totals = countByOwner(currentSession().createQuery(
+            "select p.product.name, sum(p.quantity) from Pool p group by p.product.name"));
+
+        List<Object[]> products = currentSession().createQuery(
+            "select distinct p.owner.id, p.product.name, p.product.id from Pool p")
+            .list();
+        for (Object[] product : products) {
+            String ownerId = (String) product[0];
+            String name = (String) product[1];
+            String productId = (String) product[2];
+
+            int used = count(events.get(name), Event.Type.CREATED.toString());
+            int deleted = count(events.get(name), Event.Type.DELETED.toString());
+            batch.add(new Statistic(EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
+                productId, percentage(used - deleted, count(totals, name)), ownerId));
+            batch.add(new Statistic(EntryType.PERPRODUCT, ValueType.USED, productId,
+                used, ownerId));
+            batch.add(new Statistic(EntryType.PERPRODUCT, ValueType.CONSUMED, productId,
+                used - deleted, ownerId));
+        }
     }
 
-    private void consumersPerSocketCount(Owner owner) {
-        Map<String, Integer> map = new HashMap<String, Integer>();
-        for (Consumer c : owner.getConsumers()) {
-            String sockets = c.getFact("cpu.cpu_socket(s)");
-            Integer count = map.get(sockets);
-            if (count == null) {
-                count = Integer.valueOf(0);
+    /*
+     * Reads rows of a key and a count, the key usually being an owner ID.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> countByOwner(Query query) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Object[] row : (List<Object[]>) query.list()) {
+            if (row[1] != null) {
+                counts.put((String) row[0], ((Number) row[1]).intValue());
             }
-            count++;
-            map.put(sockets, count);
         }
+        return counts;
+    }
 
-        for (Entry<String, Integer> entry : map.entrySet()) {
-            Statistic socketCountStatistic = new Statistic(
-                EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, entry.getKey(),
-                entry.getValue(), owner.getId());
-            create(socketCountStatistic);
+    /*
+     * Reads rows of a key, a second key and a count into a map of maps.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Integer>> countByOwnerAndKey(Query query) {
+        Map<String, Map<String, Integer>> counts =
+            new HashMap<String, Map<String, Integer>>();
+        for (Object[] row : (List<Object[]>) query.list()) {
+            String key = (String) row[0];
+            Map<String, Integer> keyCounts = counts.get(key);
+            if (keyCounts == null) {
+                keyCounts = new HashMap<String, Integer>();
+                counts.put(key, keyCounts);
+            }
+            keyCounts.put(row[1] == null ? null : row[1].toString(),
+                ((Number) row[2]).intValue());
         }
+        return counts;
     }
 
-    private int totalSubscriptionCount(String ownerId) {
-        int subscriptionCountTotal = 0;
-        String subscriptionCountString = "select sum(quantity) from Pool p" +
-            " where p.owner.id = :ownerId";
-        Query subscriptionCountQuery = currentSession().createQuery(
-            subscriptionCountString).setString("ownerId", ownerId);
-        Long subCount = (Long) subscriptionCountQuery.iterate().next();
-        subscriptionCountTotal = (subCount == null ? 0 : subCount.intValue());
-        Statistic subscriptionCountStatistic = new Statistic(
-            EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW, null,
-            subscriptionCountTotal, ownerId);
-        create(subscriptionCountStatistic);
-        return subscriptionCountTotal;
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts == null ? null : counts.get(key);
+        return count == null ? 0 : count;
     }
 
-    private void totalSubscriptionConsumed(String ownerId,
-        int subscriptionCountTotal) {
-
-        // Total Subscription Consumed (Raw Count and Percentage)
-        int entitlementCountTotal = 0;
-        String entitlementCountString = "select sum(quantity) from Entitlement e" +
-            " where e.owner.id = :ownerId";
-        Query entitlementCountQuery = currentSession().createQuery(
-            entitlementCountString).setString("ownerId", ownerId);
-        Long entCount = (Long) entitlementCountQuery.iterate().next();
-        entitlementCountTotal = (entCount == null ? 0 : entCount.intValue());
-        Statistic entitlementCountRawStatistic = new Statistic(
-            EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW, null,
-            entitlementCountTotal, ownerId);
-        create(entitlementCountRawStatistic);
-        int percentage = 0;
-        if (subscriptionCountTotal > 0) {
-            percentage = (entitlementCountTotal * 100 / subscriptionCountTotal);
-        }
-        Statistic entitlementCountPercentageStatistic = new Statistic(
-            EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.PERCENTAGECONSUMED,
-            null, percentage, ownerId);
-        create(entitlementCountPercentageStatistic);
+    private static int percentage(int consumed, int total) {
+        return total > 0 ? consumed * 100 / total : 0;
     }
 
-    private void perPool(String ownerId) {
-        String poolString = "select id from Pool p" +
-            " where p.owner.id = :ownerId";
-        Query poolQuery = currentSession().createQuery(poolString).setString(
-            "ownerId", ownerId);
-        Iterator poolIter = poolQuery.iterate();
-        String perPoolString = "select count(e) from Event e " +
-            "where e.target = 'ENTITLEMENT' and e.referenceType = 'POOL' " +
-            "and e.type = :type and e.referenceId = :referenceId";
-        while (poolIter.hasNext()) {
-            String poolId = (String) poolIter.next();
-
-            Query perPoolQuery = currentSession().createQuery(perPoolString);
-            perPoolQuery.setString("type", "CREATED");
-            perPoolQuery.setString("referenceId", poolId);
-            Long ppUCount = (Long) perPoolQuery.iterate().next();
-            int perPoolUsedCount = (ppUCount == null ? 0 : ppUCount.intValue());
-
-            perPoolQuery.setString("type", "DELETED");
-            Long ppDCount = (Long) perPoolQuery.iterate().next();
-            int perPoolDeletedCount = (ppDCount == null ? 0 : ppDCount
-                .intValue());
-            int perPoolConsumedCount = perPoolUsedCount - perPoolDeletedCount;
-
-            String totalPoolCountString = "select quantity from Pool p" +
-                " where p.id = :poolId";
-            Query totalPoolCountQuery = currentSession().createQuery(
-                totalPoolCountString).setString("poolId", poolId);
-
-            Long tpCount = (Long) totalPoolCountQuery.iterate().next();
-            int totalPoolCountTotal = (tpCount == null ? 0 : tpCount.intValue());
-            int poolPercentage = 0;
-            if (totalPoolCountTotal > 0) {
-                poolPercentage = (perPoolConsumedCount * 100 / totalPoolCountTotal);
+    /**
+     * Collects statistics and inserts them with one flush per batch, evicting
+     * them from the session afterwards so a run over many owners does not fill
+     * it up.
+     */
+    private class StatisticBatch {
+        private final List<Statistic> statistics = new ArrayList<Statistic>();
+
+        void add(Statistic statistic) {
+            statistics.add(statistic);
+            if (statistics.size() >= STATISTIC_BATCH_SIZE) {
+                flush();
             }
-            Statistic perPoolCountPercentageStatistic = new Statistic(
-                EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED, poolId,
-                poolPercentage, ownerId);
-            create(perPoolCountPercentageStatistic);
-            Statistic perPoolCountUsedStatistic = new Statistic(
-                EntryType.PERPOOL, ValueType.USED, poolId, perPoolUsedCount,
-                ownerId);
-            create(perPoolCountUsedStatistic);
-            Statistic perPoolCountConsumedStatistic = new Statistic(
-                EntryType.PERPOOL, ValueType.CONSUMED, poolId,
-                perPoolConsumedCount, ownerId);
-            create(perPoolCountConsumedStatistic);
         }
-    }
 
-    private void perProduct(String ownerId) {
-        String productString = "select distinct p.product.name, p.product.id from Pool p" +
-            " where p.owner.id = :ownerId";
-        Query productQuery = currentSession().createQuery(productString)
-            .setString("ownerId", ownerId);
-        Iterator productIter = productQuery.iterate();
-        String perProductString = "select count(e) from Event e " +
-            "where e.target = 'ENTITLEMENT' and e.referenceType = 'POOL' " +
-            "and e.type = :type and e.targetName = :productName";
-        while (productIter.hasNext()) {
-            Object[] productName = (Object[]) productIter.next();
-
-            Query perProductQuery = currentSession().createQuery(
-                perProductString);
-            perProductQuery.setString("type", "CREATED");
-            perProductQuery.setString("productName", (String) productName[0]);
-            Long ppUCount = (Long) perProductQuery.iterate().next();
-            int perProductUsedCount = (ppUCount == null ? 0 : ppUCount
-                .intValue());
-
-            perProductQuery.setString("type", "DELETED");
-            Long ppDCount = (Long) perProductQuery.iterate().next();
-            int perProductDeletedCount = (ppDCount == null ? 0 : ppDCount
-                .intValue());
-            int perProductConsumedCount = perProductUsedCount -
-                perProductDeletedCount;
-
-            String totalProductCountString = "select sum(quantity) from Pool p" +
-                " where p.product.name = :productName";
-            Query totalProductCountQuery = currentSession().createQuery(
-                totalProductCountString).setString("productName",
-                (String) productName[0]);
-            Long tpCount = (Long) totalProductCountQuery.iterate().next();
-            int totalProductCountTotal = (tpCount == null ? 0 : tpCount
-                .intValue());
-            int productPercentage = 0;
-            if (totalProductCountTotal > 0) {
-                productPercentage = (perProductConsumedCount * 100 /
-                                     totalProductCountTotal);
+        void flush() {
+            if (statistics.isEmpty()) {
+                return;
+            }
+            createAll(statistics);
+            for (Statistic statistic : statistics) {
+                currentSession().evict(statistic);
             }
-            Statistic perPoolCountPercentageStatistic = new Statistic(
-                EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
-                (String) productName[1], productPercentage, ownerId);
-            create(perPoolCountPercentageStatistic);
-            Statistic perPoolCountUsedStatistic = new Statistic(
-                EntryType.PERPRODUCT, ValueType.USED, (String) productName[1],
-                perProductUsedCount, ownerId);
-            create(perPoolCountUsedStatistic);
-            Statistic perPoolCountConsumedStatistic = new Statistic(
-                EntryType.PERPRODUCT, ValueType.CONSUMED,
-                (String) productName[1], perProductConsumedCount, ownerId);
-            create(perPoolCountConsumedStatistic);
+            statistics.clear();
         }
     }
 
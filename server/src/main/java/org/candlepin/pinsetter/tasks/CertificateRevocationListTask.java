@@ -28,9 +28,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.cert.CRLException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 
 /**
  * CertificateRevocationListTask synchronizes the CRL with the DB, we add newly
@@ -72,17 +69,10 @@ public class CertificateRevocationListTask extends KingpinJob {
         }
         try {
             File crlFile = new File(filePath);
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            crlFileUtil.writeCRLFile(crlFile, crl);
-        }
-        catch (CRLException e) {
-            log.error("CRLException:", e);
-            throw new JobExecutionException(e, false);
-        }
-        catch (CertificateException e) {
-            log.error("CertificateException:", e);
-            throw new JobExecutionException(e, false);
+            crlFileUtil.syncCRLFile(crlFile, crlGenerator);
+
+            // Delta CRLs are issued against the complete CRL of the last run:
+            crlFileUtil.publishBaseCRLFile(crlFile);
         }
         catch (IOException e) {
             log.error("IOException:", e);
@@ -16,44 +16,76 @@ package org.candlepin.pinsetter.tasks;
 
 import static org.quartz.JobBuilder.*;
 
+import org.candlepin.auth.Principal;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.Entitler;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.OwnerCurator;
+import org.candlepin.pinsetter.core.PinsetterJobListener;
 import org.candlepin.pinsetter.core.model.JobStatus;
 import org.candlepin.resource.dto.AutobindData;
 import org.candlepin.util.Util;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import com.google.inject.persist.Transactional;
 
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.PersistenceException;
 
 /**
  * HealEntireOrgJob
+ *
+ * Heals the consumers of an owner concurrently on a bounded pool of worker
+ * threads. Every consumer is healed in a unit of work and transaction of its own,
+ * so a failure only rolls back the consumer at hand. Entitlements lock their pools
+ * in the order getBestPools sorts them in, consumers which still lose a deadlock
+ * are retried once.
  */
 public class HealEntireOrgJob extends UniqueByOwnerJob {
     private static Logger log = LoggerFactory.getLogger(HealEntireOrgJob.class);
+
+    // Milliseconds between progress updates of the job status:
+    private static final long PROGRESS_INTERVAL = 10000;
+    private static final int MAX_ATTEMPTS = 2;
+
+    /** Name of the executor the consumers are healed on. */
+    public static final String EXECUTOR = "HealOrgExecutor";
+
     protected OwnerCurator ownerCurator;
     protected Entitler entitler;
     protected ConsumerCurator consumerCurator;
+    protected JobCurator jobCurator;
+    protected ExecutorService executor;
     protected static String prefix = "heal_entire_org_";
 
     @Inject
     public HealEntireOrgJob(Entitler e,
-            ConsumerCurator c, OwnerCurator o) {
+            ConsumerCurator c, OwnerCurator o, JobCurator j,
+            @Named(EXECUTOR) ExecutorService executor) {
         this.entitler = e;
         this.consumerCurator = c;
         this.ownerCurator = o;
+        this.jobCurator = j;
+        this.executor = executor;
     }
 
     @Override
@@ -62,26 +94,86 @@ public class HealEntireOrgJob extends UniqueByOwnerJob {
             JobDataMap map = ctx.getMergedJobDataMap();
             String ownerId = (String) map.get("ownerId");
             Date entitleDate = (Date) map.get("entitle_date");
+            Principal principal = (Principal) map.get(PinsetterJobListener.PRINCIPAL_KEY);
+            String jobId = ctx.getJobDetail().getKey().getName();
+
             List<String> uuids = ownerCurator.getConsumerUuids(ownerId);
-            for (String uuid : uuids) {
+            HealProgress progress = new HealProgress(uuids.size());
+            healConsumers(jobId, uuids, entitleDate, principal, progress);
+
+            log.info("Finished healing owner {}: {}", ownerId, progress);
+            ctx.setResult(progress.toString());
+        }
+        catch (Exception e) {
+            log.error("EntitlerJob encountered a problem.", e);
+            ctx.setResult(e.getMessage());
+            throw new JobExecutionException(e.getMessage(), e, false);
+        }
+    }
+
+    private void healConsumers(String jobId, List<String> uuids, Date entitleDate,
+        Principal principal, HealProgress progress) throws InterruptedException {
+        int threads = Math.max(1, config.getInt(ConfigProperties.HEAL_ORG_THREADS));
+        int workers = Math.min(threads, uuids.size());
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(workers);
+
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new HealWorker(jobId, uuids, next, entitleDate, principal,
+                progress, done));
+        }
+
+        while (!done.await(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+            log.info("Healing job {}: {}", jobId, progress);
+            jobCurator.updateResult(jobId, progress.toString());
+        }
+    }
+
+    private void healConsumer(String uuid, Date entitleDate, HealProgress progress) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            boolean startedUow = startUnitOfWork();
+            try {
                 // Do not send in product IDs.  CandlepinPoolManager will take care
                 // of looking up the non or partially compliant products to bind.
-                try {
-                    Consumer consumer = consumerCurator.getConsumer(uuid);
-                    healSingleConsumer(consumer, entitleDate);
+                healSingleConsumer(uuid, entitleDate);
+                if (eventSink != null) {
+                    eventSink.sendEvents();
+                }
+                progress.healed.incrementAndGet();
+                return;
+            }
+            catch (PersistenceException e) {
+                rollbackEvents();
+                if (attempt < MAX_ATTEMPTS) {
+                    log.debug("Retrying to heal UUID " + uuid + " after: " + e.getMessage());
+                    continue;
                 }
-                // We want to catch everything and continue.
-                // Perhaps add something to surface errors later
-                catch (Exception e) {
-                    log.debug("Healing failed for UUID " + uuid +
-                        " with message: " + e.getMessage());
+                healingFailed(uuid, e, progress);
+            }
+            // We want to catch everything and continue.
+            // Perhaps add something to surface errors later
+            catch (Exception e) {
+                rollbackEvents();
+                healingFailed(uuid, e, progress);
+                return;
+            }
+            finally {
+                if (startedUow) {
+                    endUnitOfWork();
                 }
             }
         }
-        catch (Exception e) {
-            log.error("EntitlerJob encountered a problem.", e);
-            ctx.setResult(e.getMessage());
-            throw new JobExecutionException(e.getMessage(), e, false);
+    }
+
+    private void healingFailed(String uuid, Exception e, HealProgress progress) {
+        progress.failed.incrementAndGet();
+        log.debug("Healing failed for UUID " + uuid +
+            " with message: " + e.getMessage());
+    }
+
+    private void rollbackEvents() {
+        if (eventSink != null) {
+            eventSink.rollback();
         }
     }
 
@@ -89,7 +181,8 @@ public class HealEntireOrgJob extends UniqueByOwnerJob {
      * Each consumer heal should be a separate transaction
      */
     @Transactional
-    private void healSingleConsumer(Consumer consumer, Date date) {
+    protected void healSingleConsumer(String uuid, Date date) {
+        Consumer consumer = consumerCurator.getConsumer(uuid);
         List<Entitlement> ents = entitler.bindByProducts(AutobindData.create(consumer).on(date), true);
         entitler.sendEvents(ents);
     }
@@ -109,4 +202,81 @@ public class HealEntireOrgJob extends UniqueByOwnerJob {
 
         return detail;
     }
+
+    /*
+     * Takes the next consumer to heal until there are none left. Runs with the
+     * principal and logging context of the job, events are sent per consumer
+     * through the session of the worker thread.
+     */
+    private class HealWorker implements Runnable {
+        private final String jobId;
+        private final List<String> uuids;
+        private final AtomicInteger next;
+        private final Date entitleDate;
+        private final Principal principal;
+        private final HealProgress progress;
+        private final CountDownLatch done;
+
+        HealWorker(String jobId, List<String> uuids, AtomicInteger next, Date entitleDate,
+            Principal principal, HealProgress progress, CountDownLatch done) {
+            this.jobId = jobId;
+            this.uuids = uuids;
+            this.next = next;
+            this.entitleDate = entitleDate;
+            this.principal = principal;
+            this.progress = progress;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            ResteasyProviderFactory.pushContext(Principal.class, principal);
+            MDC.put("requestType", "job");
+            MDC.put("requestUuid", jobId);
+            try {
+                for (int i = next.getAndIncrement(); i < uuids.size();
+                    i = next.getAndIncrement()) {
+                    healConsumer(uuids.get(i), entitleDate, progress);
+                }
+            }
+            finally {
+                MDC.clear();
+                ResteasyProviderFactory.popContextData(Principal.class);
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Counts the consumers healed so far and the rate at which they are.
+     */
+    static class HealProgress {
+        private final int total;
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicInteger healed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        HealProgress(int total) {
+            this.total = total;
+        }
+
+        public int getHealed() {
+            return healed.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public double getConsumersPerSecond() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            return (healed.get() + failed.get()) * 1000.0 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Healed %d of %d consumers, %d failed (%.1f consumers/sec)",
+                healed.get(), total, failed.get(), getConsumersPerSecond());
+        }
+    }
 }
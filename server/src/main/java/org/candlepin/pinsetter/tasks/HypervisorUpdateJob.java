@@ -19,17 +19,14 @@ import static org.quartz.JobBuilder.newJob;
 import org.candlepin.auth.Principal;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
-import org.candlepin.model.ConsumerType;
-import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
-import org.candlepin.model.GuestId;
-import org.candlepin.model.HypervisorId;
 import org.candlepin.model.JobCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.VirtConsumerMap;
 import org.candlepin.pinsetter.core.model.JobStatus;
-import org.candlepin.resource.ConsumerResource;
 import org.candlepin.resource.dto.HypervisorUpdateResult;
+import org.candlepin.resource.util.HypervisorCheckInUtil;
+import org.candlepin.resource.util.HypervisorReportCache;
 import org.candlepin.util.Util;
 
 import com.google.inject.Inject;
@@ -69,7 +66,8 @@ public class HypervisorUpdateJob extends KingpinJob {
     private static Logger log = LoggerFactory.getLogger(HypervisorUpdateJob.class);
     private OwnerCurator ownerCurator;
     private ConsumerCurator consumerCurator;
-    private ConsumerResource consumerResource;
+    private HypervisorCheckInUtil hypervisorCheckInUtil;
+    private HypervisorReportCache reportCache;
 
     public static final String CREATE = "create";
     public static final String REPORTER_ID = "reporter_id";
@@ -79,10 +77,11 @@ public class HypervisorUpdateJob extends KingpinJob {
 
     @Inject
     public HypervisorUpdateJob(OwnerCurator ownerCurator, ConsumerCurator consumerCurator,
-            ConsumerResource consumerResource) {
+            HypervisorCheckInUtil hypervisorCheckInUtil, HypervisorReportCache reportCache) {
         this.ownerCurator = ownerCurator;
         this.consumerCurator = consumerCurator;
-        this.consumerResource = consumerResource;
+        this.hypervisorCheckInUtil = hypervisorCheckInUtil;
+        this.reportCache = reportCache;
     }
 
     @SuppressWarnings("unchecked")
@@ -109,14 +108,15 @@ public class HypervisorUpdateJob extends KingpinJob {
     /**
      * {@inheritDoc}
      *
-     * Executes {@link ConsumerResource#create(org.candlepin.model.Consumer, org.candlepin.auth.Principal,
-     *  java.utl.String, java.utl.String, java.utl.String)}
-     * Executes (@link ConusmerResource#performConsumerUpdates(java.utl.String, org.candlepin.model.Consumer)}
-     * as a pinsetter job.
+     * Executes {@link HypervisorCheckInUtil#checkIn} for the reported hypervisors
+     * as a pinsetter job. Reports and hosts reported unchanged since they were last
+     * applied for the same reporter are skipped, see {@link HypervisorReportCache}.
+     *
+     * The check-in runs in a transaction of its own, reports and hosts are only
+     * recorded as applied once it has been committed.
      *
      * @param context the job's execution context
      */
-    @Transactional
     public void toExecute(JobExecutionContext context) throws JobExecutionException {
         try {
             JobDataMap map = context.getMergedJobDataMap();
@@ -125,8 +125,6 @@ public class HypervisorUpdateJob extends KingpinJob {
             Principal principal = (Principal) map.get(PRINCIPAL);
             String jobReporterId = map.getString(REPORTER_ID);
 
-            HypervisorUpdateResult result = new HypervisorUpdateResult();
-
             Owner owner = ownerCurator.lookupByKey(ownerKey);
             if (owner == null) {
                 context.setResult("Nothing to do. Owner does not exist");
@@ -135,88 +133,61 @@ public class HypervisorUpdateJob extends KingpinJob {
             }
             byte[] data = (byte[]) map.get(DATA);
             String json = decompress(data);
+            String reportDigest = HypervisorReportCache.digest(json, create);
+            if (reportCache.isApplied(owner.getId(), jobReporterId, reportDigest)) {
+                context.setResult("Nothing to do. Hypervisor report is unchanged");
+                log.info("Hypervisor report for org {} is unchanged, skipping update " +
+                        "({} reports skipped in total)", ownerKey, reportCache.getSkippedReports());
+                return;
+            }
+
             HypervisorList hypervisors = (HypervisorList) Util.fromJson(json, HypervisorList.class);
             log.info("Hypervisor consumers for create/update: " + hypervisors.getHypervisors().size());
             log.info("Updating hypervisor consumers for org ''{0}''", ownerKey);
 
-            Set<String> hosts = new HashSet<String>();
-            Set<String> guests = new HashSet<String>();
+            Map<String, String> appliedHosts = reportCache.getAppliedHosts(owner.getId(),
+                    jobReporterId);
+            Map<String, String> hostDigests = new HashMap<String, String>();
             Map<String, Consumer> incomingHosts = new HashMap<String, Consumer>();
-
             for (Consumer hypervisor : hypervisors.getHypervisors()) {
                 if (hypervisor.getHypervisorId() != null &&
                         hypervisor.getHypervisorId().getHypervisorId() != null) {
-                    incomingHosts.put(hypervisor.getHypervisorId().getHypervisorId(), hypervisor);
-                    hosts.add(hypervisor.getHypervisorId().getHypervisorId());
-                    if (hypervisor.getGuestIds() != null && !hypervisor.getGuestIds().isEmpty()) {
-                        for (GuestId guestId : hypervisor.getGuestIds()) {
-                            guests.add(guestId.getGuestId());
-                        }
+                    String hypervisorId = hypervisor.getHypervisorId().getHypervisorId();
+                    String digest = HypervisorReportCache.digest(hypervisorId, hypervisor);
+                    hostDigests.put(hypervisorId, digest);
+                    if (!digest.equals(appliedHosts.get(hypervisorId))) {
+                        incomingHosts.put(hypervisorId, hypervisor);
                     }
                 }
             }
+            int skipped = hostDigests.size() - incomingHosts.size();
 
-            // Maps virt hypervisor ID to registered consumer for that hypervisor, should one exist:
-            VirtConsumerMap hypervisorConsumersMap =
-                    consumerCurator.getHostConsumersMap(owner, hosts);
-
-            // Maps virt guest ID to registered consumer for guest, if one exists:
-            VirtConsumerMap guestConsumersMap = consumerCurator.getGuestConsumersMap(
-                    owner, guests);
+            HypervisorUpdateResult result = checkIn(owner, principal, incomingHosts, create,
+                    jobReporterId);
 
-            for (String hypervisorId : hosts) {
-                Consumer knownHost = hypervisorConsumersMap.get(hypervisorId);
-                Consumer incoming = incomingHosts.get(hypervisorId);
-                Consumer reportedOnConsumer = null;
-                if (knownHost == null) {
-                    if (!create) {
-                        result.failed(hypervisorId, "Unable to find hypervisor with id " +
-                                            hypervisorId + " in org " + ownerKey);
-                    }
-                    else {
-                        log.info("Registering new host consumer for hypervisor ID: {}", hypervisorId);
-                        Consumer newHost = createConsumerForHypervisorId(hypervisorId, owner, principal);
-                        consumerResource.performConsumerUpdates(incoming, newHost, guestConsumersMap,
-                                false);
-                        consumerResource.create(newHost, principal, null, owner.getKey(), null, false);
-                        hypervisorConsumersMap.add(hypervisorId, newHost);
-                        result.created(newHost);
-                        reportedOnConsumer = newHost;
-                    }
-                }
-                else {
-                    reportedOnConsumer = knownHost;
-                    if (jobReporterId != null && knownHost.getHypervisorId() != null &&
-                            hypervisorId.equalsIgnoreCase(knownHost.getHypervisorId().getHypervisorId()) &&
-                            knownHost.getHypervisorId().getReporterId() != null &&
-                            !jobReporterId.equalsIgnoreCase(
-                                    knownHost.getHypervisorId().getReporterId())) {
-                        log.warn("Reporter changed for Hypervisor {} of Owner {} from {} to {}",
-                                hypervisorId, ownerKey, knownHost.getHypervisorId().getReporterId(),
-                                jobReporterId);
-                    }
-                    if (consumerResource.performConsumerUpdates(incoming, knownHost, guestConsumersMap,
-                            false)) {
-                        consumerCurator.update(knownHost);
-                        result.updated(knownHost);
-                    }
-                    else {
-                        result.unchanged(knownHost);
-                    }
-                }
-                // update reporter id if it changed
-                if (jobReporterId != null && reportedOnConsumer != null &&
-                        reportedOnConsumer.getHypervisorId() != null &&
-                        (reportedOnConsumer.getHypervisorId().getReporterId() == null || !jobReporterId
-                                .contentEquals(reportedOnConsumer.getHypervisorId().getReporterId()))) {
-                    reportedOnConsumer.getHypervisorId().setReporterId(jobReporterId);
-                }
-                else if (jobReporterId == null) {
-                    log.debug("hypervisor checkin reported asynchronously" +
-                              " without reporter id for hypervisor:{} of owner:{}",
-                            hypervisorId, ownerKey);
+            // The check-in is committed, only hosts it applied are skipped next time:
+            List<Consumer> committed = new ArrayList<Consumer>(result.getCreated());
+            committed.addAll(result.getUpdated());
+            committed.addAll(result.getUnchanged());
+            Set<String> committedHosts = new HashSet<String>();
+            for (Consumer host : committed) {
+                committedHosts.add(host.getHypervisorId().getHypervisorId());
+            }
+            for (String hypervisorId : incomingHosts.keySet()) {
+                if (!committedHosts.contains(hypervisorId)) {
+                    hostDigests.remove(hypervisorId);
                 }
             }
+            reportCache.put(owner.getId(), jobReporterId,
+                    result.getFailedUpdate().isEmpty() ? reportDigest : null, hostDigests,
+                    incomingHosts.size(), skipped);
+            log.info("Hypervisor report for org {}: {} hosts applied, {} skipped as unchanged " +
+                    "({} applied, {} skipped in total)", ownerKey, incomingHosts.size(), skipped,
+                    reportCache.getAppliedHosts(), reportCache.getSkippedHosts());
+            if (jobReporterId == null) {
+                log.debug("hypervisor checkin reported asynchronously" +
+                          " without reporter id for owner:{}", ownerKey);
+            }
             context.setResult(result);
         }
         catch (Exception e) {
@@ -226,6 +197,30 @@ public class HypervisorUpdateJob extends KingpinJob {
         }
     }
 
+    /**
+     * Applies the hosts to the owner's hypervisor consumers. Without create,
+     * hosts without a consumer are reported as failed.
+     */
+    @Transactional
+    protected HypervisorUpdateResult checkIn(Owner owner, Principal principal,
+        Map<String, Consumer> incomingHosts, boolean create, String reporterId) {
+        // Maps virt hypervisor ID to registered consumer for that hypervisor, should one exist:
+        VirtConsumerMap hypervisorConsumersMap =
+                consumerCurator.getHostConsumersMap(owner, incomingHosts.keySet());
+
+        HypervisorUpdateResult result = hypervisorCheckInUtil.checkIn(owner, principal,
+                incomingHosts, hypervisorConsumersMap, create, reporterId);
+        if (!create) {
+            for (String hypervisorId : incomingHosts.keySet()) {
+                if (hypervisorConsumersMap.get(hypervisorId) == null) {
+                    result.failed(hypervisorId, "Unable to find hypervisor with id " +
+                                        hypervisorId + " in org " + owner.getKey());
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Creates a {@link JobDetail} that runs this job for the given {@link Owner}.
      *
@@ -286,23 +281,6 @@ public class HypervisorUpdateJob extends KingpinJob {
         }
     }
 
-    /*
-     * Create a new hypervisor type consumer to represent the incoming hypervisorId
-     */
-    private Consumer createConsumerForHypervisorId(String incHypervisorId,
-            Owner owner, Principal principal) {
-        Consumer consumer = new Consumer();
-        consumer.setName(incHypervisorId);
-        consumer.setType(new ConsumerType(ConsumerTypeEnum.HYPERVISOR));
-        consumer.setFact("uname.machine", "x86_64");
-        consumer.setGuestIds(new ArrayList<GuestId>());
-        consumer.setOwner(owner);
-        // Create HypervisorId
-        HypervisorId hypervisorId = new HypervisorId(consumer, incHypervisorId);
-        consumer.setHypervisorId(hypervisorId);
-        return consumer;
-    }
-
     /**
      * Class for holding the list of consumers in the stored json text
      *
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.KeyPairCurator;
+
+import com.google.inject.Inject;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * KeyPairRefillJob: Tops up the pool of consumer key pairs generated ahead of
+ * time, so registering consumers can be handed one instead of waiting for a new
+ * key pair to be generated.
+ */
+@DisallowConcurrentExecution
+public class KeyPairRefillJob extends KingpinJob {
+
+    // Every minute:
+    public static final String DEFAULT_SCHEDULE = "0 0/1 * * * ?";
+
+    private static Logger log = LoggerFactory.getLogger(KeyPairRefillJob.class);
+
+    private KeyPairCurator keyPairCurator;
+
+    @Inject
+    public KeyPairRefillJob(KeyPairCurator keyPairCurator, Configuration config) {
+        this.keyPairCurator = keyPairCurator;
+        this.config = config;
+    }
+
+    @Override
+    public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
+        int size = config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE);
+        if (size <= 0) {
+            return;
+        }
+
+        int available = keyPairCurator.getSpareCount();
+        int lowWatermark = config.getInt(ConfigProperties.KEYPAIR_POOL_LOW_WATERMARK);
+        if (available < lowWatermark) {
+            log.warn("Only {} spare consumer key pairs left, below the low watermark " +
+                "of {}. Consider increasing {}.", available, lowWatermark,
+                ConfigProperties.KEYPAIR_POOL_SIZE);
+        }
+
+        int missing = Math.max(0, size - available);
+        keyPairCurator.createSpareKeyPairs(missing);
+
+        String result = String.format(
+            "Generated %d consumer key pairs, %d were left of %d", missing,
+            available, size);
+        log.info(result);
+        ctx.setResult(result);
+    }
+}
@@ -52,7 +52,7 @@ public abstract class KingpinJob implements Job {
     private static Logger log = LoggerFactory.getLogger(KingpinJob.class);
     @Inject protected UnitOfWork unitOfWork;
     @Inject protected Configuration config;
-    @Inject private EventSink eventSink;
+    @Inject protected EventSink eventSink;
 
     protected static String prefix = "job";
 
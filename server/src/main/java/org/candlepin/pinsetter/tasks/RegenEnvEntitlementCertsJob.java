@@ -15,12 +15,15 @@
 package org.candlepin.pinsetter.tasks;
 
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.RegenerationProgress;
 import org.candlepin.model.Environment;
 
 import com.google.inject.Inject;
 
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Set;
 
@@ -31,6 +34,7 @@ import java.util.Set;
  * promotion/demotion of the given content sets.
  */
 public class RegenEnvEntitlementCertsJob extends KingpinJob {
+    private static Logger log = LoggerFactory.getLogger(RegenEnvEntitlementCertsJob.class);
 
     public static final String ENV = "env_id";
     public static final String CONTENT = "content_ids";
@@ -51,6 +55,13 @@ public class RegenEnvEntitlementCertsJob extends KingpinJob {
             arg0.getJobDetail().getJobDataMap().get(CONTENT);
         Boolean lazy = arg0.getMergedJobDataMap().getBoolean(LAZY_REGEN);
 
-        this.poolManager.regenerateCertificatesOf(env, contentIds, lazy);
+        RegenerationProgress progress = new RegenerationProgress();
+        this.poolManager.regenerateCertificatesOf(env, contentIds, lazy, progress);
+
+        if (!lazy) {
+            log.info("Finished regenerating certificates in environment {}: {}",
+                env.getId(), progress);
+            arg0.setResult(progress.toString());
+        }
     }
 }
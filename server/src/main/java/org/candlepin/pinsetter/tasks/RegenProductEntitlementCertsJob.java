@@ -15,6 +15,7 @@
 package org.candlepin.pinsetter.tasks;
 
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.RegenerationProgress;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 
@@ -22,11 +23,14 @@ import com.google.inject.Inject;
 
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The Class RegenEntitlementCertsJob.
  */
 public class RegenProductEntitlementCertsJob extends KingpinJob {
+    private static Logger log = LoggerFactory.getLogger(RegenProductEntitlementCertsJob.class);
 
     public static final String PROD_ID = "product_id";
     public static final String LAZY_REGEN = "lazy_regen";
@@ -48,8 +52,15 @@ public class RegenProductEntitlementCertsJob extends KingpinJob {
         boolean lazy = arg0.getJobDetail().getJobDataMap().getBoolean(LAZY_REGEN);
 
         // Regenerate entitlement for every owner
+        RegenerationProgress progress = new RegenerationProgress();
         for (Owner owner : this.ownerCurator.listAll()) {
-            this.poolManager.regenerateCertificatesOf(owner, productId, lazy);
+            this.poolManager.regenerateCertificatesOf(owner, productId, lazy, progress);
+        }
+
+        if (!lazy) {
+            log.info("Finished regenerating certificates of product {}: {}", productId,
+                progress);
+            arg0.setResult(progress.toString());
         }
     }
 }
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.Key;
@@ -41,7 +42,9 @@ import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -53,6 +56,7 @@ public abstract class PKIUtility {
 
     // TODO : configurable?
     private static final int RSA_KEY_SIZE = 2048;
+    private static final int BUFFER_SIZE = 64 * 1024;
     protected static final String SIGNATURE_ALGO = "SHA1WITHRSA";
     protected PKIReader reader;
     protected SubjectKeyIdentifierWriter subjectKeyWriter;
@@ -77,6 +81,40 @@ public abstract class PKIUtility {
     public abstract X509CRL createX509CRL(List<X509CRLEntryWrapper> entries,
         BigInteger crlNumber);
 
+    /**
+     * Generate a delta CRL, listing the changes since a complete base CRL.
+     *
+     * @param revoked the entries revoked since the base CRL
+     * @param removed the entries of the base CRL which are to be removed from it
+     * @param crlNumber the number of the complete CRL the delta brings the base up to
+     * @param baseCrlNumber the number of the base CRL
+     * @return the x509 delta CRL
+     */
+    public abstract X509CRL createX509DeltaCRL(List<X509CRLEntryWrapper> revoked,
+        List<X509CRLEntryWrapper> removed, BigInteger crlNumber, BigInteger baseCrlNumber);
+
+    /**
+     * Write a PEM encoded CRL, taking the entries one at a time from the given
+     * iterator. Unlike {@link #createX509CRL(List, BigInteger)} the entries are never
+     * all held in memory, so this is to be used for CRLs of any size.
+     *
+     * @param entries the entries
+     * @param crlNumber the number of the CRL
+     * @param out stream to write the CRL to, left open
+     * @throws IOException if there is a problem writing the CRL
+     */
+    public abstract void writeX509CRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, OutputStream out) throws IOException;
+
+    /**
+     * Read the number of a PEM encoded CRL, without parsing its entries.
+     *
+     * @param in stream of the PEM encoded CRL
+     * @return the CRL number, zero if the CRL has none
+     * @throws IOException if there is a problem reading the CRL
+     */
+    public abstract BigInteger readCRLNumber(InputStream in) throws IOException;
+
     public KeyPair decodeKeys(byte[] privKeyBits, byte[] pubKeyBits)
         throws InvalidKeySpecException, NoSuchAlgorithmException {
 
@@ -124,9 +162,7 @@ public abstract class PKIUtility {
 
     public byte[] getSHA256WithRSAHash(InputStream input) {
         try {
-            Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(reader.getCaKey());
-
+            Signature signature = getSHA256WithRSASigner();
             updateSignature(input, signature);
             return signature.sign();
         }
@@ -135,21 +171,82 @@ public abstract class PKIUtility {
         }
     }
 
+    /**
+     * @return a signature initialized with the CA key, for signing data which
+     * is produced as it is written rather than read from a stream.
+     */
+    public Signature getSHA256WithRSASigner() {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(reader.getCaKey());
+            return signature;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public boolean verifySHA256WithRSAHashAgainstCACerts(
         File input, byte[] signedHash) throws CertificateException, IOException {
-        log.debug("Verify against: " + reader.getCACert().getSerialNumber());
-        if (verifySHA256WithRSAHash(new FileInputStream(input), signedHash,
-            reader.getCACert())) {
-            return true;
+        InputStream in = new FileInputStream(input);
+        try {
+            return verifySHA256WithRSAHashAgainstCACerts(in, signedHash);
         }
-        for (X509Certificate cert : reader.getUpstreamCACerts()) {
-            log.debug("Verify against: " + cert.getSerialNumber());
-            if (verifySHA256WithRSAHash(new FileInputStream(input), signedHash,
-                cert)) {
-                return true;
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Verifies the signed hash of the input against the CA certificate and
+     * each upstream CA certificate. The input is read to its end exactly once,
+     * whatever the number of certificates, so it may be a stream that can not
+     * be rewound.
+     *
+     * @param input the signed data.
+     * @param signedHash the signature to verify.
+     * @return true if any of the certificates verifies the signature.
+     * @throws CertificateException if the certificates can not be read.
+     * @throws IOException if the input can not be read.
+     */
+    public boolean verifySHA256WithRSAHashAgainstCACerts(
+        InputStream input, byte[] signedHash) throws CertificateException, IOException {
+        List<X509Certificate> certs = new ArrayList<X509Certificate>();
+        certs.add(reader.getCACert());
+        certs.addAll(reader.getUpstreamCACerts());
+
+        try {
+            List<Signature> signatures = new ArrayList<Signature>(certs.size());
+            for (X509Certificate cert : certs) {
+                Signature signature = Signature.getInstance("SHA256withRSA");
+                signature.initVerify(cert);
+                signatures.add(signature);
+            }
+
+            byte[] dataBytes = new byte[BUFFER_SIZE];
+            int nread = 0;
+            while ((nread = input.read(dataBytes)) != -1) {
+                for (Signature signature : signatures) {
+                    signature.update(dataBytes, 0, nread);
+                }
             }
+
+            for (int i = 0; i < certs.size(); i++) {
+                log.debug("Verify against: " + certs.get(i).getSerialNumber());
+                try {
+                    if (signatures.get(i).verify(signedHash)) {
+                        return true;
+                    }
+                }
+                catch (SignatureException se) {
+                    // not signed by this certificate
+                }
+            }
+            return false;
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
         }
-        return false;
     }
 
     public boolean verifySHA256WithRSAHash(
@@ -171,7 +268,7 @@ public abstract class PKIUtility {
 
     private void updateSignature(InputStream input, Signature signature)
         throws IOException, SignatureException {
-        byte[] dataBytes = new byte[4096];
+        byte[] dataBytes = new byte[BUFFER_SIZE];
         int nread = 0;
         while ((nread = input.read(dataBytes)) != -1) {
             signature.update(dataBytes, 0, nread);
@@ -24,11 +24,23 @@ import org.candlepin.util.Util;
 
 import com.google.inject.Inject;
 
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
 import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.misc.MiscObjectIdentifiers;
 import org.bouncycastle.asn1.misc.NetscapeCertType;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
@@ -36,7 +48,10 @@ import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.X509Extension;
 import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509ExtensionsGenerator;
 import org.bouncycastle.openssl.PEMWriter;
 import org.bouncycastle.x509.X509V2CRLGenerator;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
@@ -44,16 +59,26 @@ import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyPair;
+import java.security.Signature;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -91,6 +116,11 @@ import javax.security.auth.x500.X500Principal;
 public class BouncyCastlePKIUtility extends PKIUtility {
     private static Logger log = LoggerFactory.getLogger(BouncyCastlePKIUtility.class);
 
+    private static final int DER_SEQUENCE = 0x30;
+    private static final int CRL_EXTENSIONS_TAG = 0xa0;
+    private static final int MAX_CRL_EXTENSIONS_LENGTH = 64 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
     @Inject
     public BouncyCastlePKIUtility(PKIReader reader,
         SubjectKeyIdentifierWriter subjectKeyWriter) {
@@ -174,22 +204,13 @@ public class BouncyCastlePKIUtility extends PKIUtility {
     public X509CRL createX509CRL(List<X509CRLEntryWrapper> entries, BigInteger crlNumber) {
 
         try {
-            X509Certificate caCert = reader.getCACert();
-            X509V2CRLGenerator generator = new X509V2CRLGenerator();
-            generator.setIssuerDN(caCert.getIssuerX500Principal());
-            generator.setThisUpdate(new Date());
-            generator.setNextUpdate(Util.tomorrow());
-            generator.setSignatureAlgorithm(SIGNATURE_ALGO);
+            X509V2CRLGenerator generator = createCRLGenerator(crlNumber);
             // add all the CRL entries.
             for (X509CRLEntryWrapper entry : entries) {
                 generator.addCRLEntry(entry.getSerialNumber(), entry.getRevocationDate(),
                     CRLReason.privilegeWithdrawn);
             }
             log.info("Completed adding CRL numbers to the certificate.");
-            generator.addExtension(X509Extensions.AuthorityKeyIdentifier,
-                false, new AuthorityKeyIdentifierStructure(caCert));
-            generator.addExtension(X509Extensions.CRLNumber, false,
-                new CRLNumber(crlNumber));
             return generator.generate(reader.getCaKey());
         }
         catch (Exception e) {
@@ -197,6 +218,315 @@ public class BouncyCastlePKIUtility extends PKIUtility {
         }
     }
 
+    @Override
+    public X509CRL createX509DeltaCRL(List<X509CRLEntryWrapper> revoked,
+        List<X509CRLEntryWrapper> removed, BigInteger crlNumber, BigInteger baseCrlNumber) {
+
+        try {
+            X509V2CRLGenerator generator = createCRLGenerator(crlNumber);
+            for (X509CRLEntryWrapper entry : revoked) {
+                generator.addCRLEntry(entry.getSerialNumber(), entry.getRevocationDate(),
+                    CRLReason.privilegeWithdrawn);
+            }
+            for (X509CRLEntryWrapper entry : removed) {
+                generator.addCRLEntry(entry.getSerialNumber(), entry.getRevocationDate(),
+                    CRLReason.removeFromCRL);
+            }
+            generator.addExtension(X509Extensions.DeltaCRLIndicator, true,
+                new CRLNumber(baseCrlNumber));
+            return generator.generate(reader.getCaKey());
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /*
+     * DER needs the length of the revoked certificates up front, so the entries are
+     * encoded to a temporary file first, and then streamed twice from there: once
+     * to sign the TBSCertList and once more to write the CRL. The structure is the
+     * same X509V2CRLGenerator produces.
+     */
+    @Override
+    public void writeX509CRL(Iterator<X509CRLEntryWrapper> entries, BigInteger crlNumber,
+        OutputStream out) throws IOException {
+
+        File revoked = File.createTempFile("crl-entries", ".der");
+        try {
+            long revokedLength = writeCRLEntries(entries, revoked);
+
+            X509Certificate caCert = reader.getCACert();
+            AlgorithmIdentifier sigAlg = new AlgorithmIdentifier(
+                PKCSObjectIdentifiers.sha1WithRSAEncryption, new DERNull());
+            X509ExtensionsGenerator extensions = new X509ExtensionsGenerator();
+            extensions.addExtension(X509Extensions.AuthorityKeyIdentifier, false,
+                new AuthorityKeyIdentifierStructure(caCert));
+            extensions.addExtension(X509Extensions.CRLNumber, false,
+                new CRLNumber(crlNumber));
+
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            head.write(new DERInteger(1).getDEREncoded());
+            head.write(sigAlg.getDEREncoded());
+            head.write(caCert.getIssuerX500Principal().getEncoded());
+            head.write(new Time(new Date()).getDEREncoded());
+            head.write(new Time(Util.tomorrow()).getDEREncoded());
+            if (revokedLength > 0) {
+                head.write(derHeader(DER_SEQUENCE, revokedLength));
+            }
+            byte[] tail = new DERTaggedObject(0, extensions.generate()).getDEREncoded();
+            byte[] tbsHead = head.toByteArray();
+            byte[] tbsHeader = derHeader(DER_SEQUENCE,
+                tbsHead.length + revokedLength + tail.length);
+
+            Signature signer = Signature.getInstance(SIGNATURE_ALGO);
+            signer.initSign(reader.getCaKey());
+            signer.update(tbsHeader);
+            signer.update(tbsHead);
+            InputStream in = new FileInputStream(revoked);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    signer.update(buffer, 0, read);
+                }
+            }
+            finally {
+                in.close();
+            }
+            signer.update(tail);
+            byte[] signature = new DERBitString(signer.sign()).getDEREncoded();
+            byte[] sigAlgEncoded = sigAlg.getDEREncoded();
+
+            PemOutputStream pem = new PemOutputStream(out, "X509 CRL");
+            pem.write(derHeader(DER_SEQUENCE, tbsHeader.length + tbsHead.length +
+                revokedLength + tail.length + sigAlgEncoded.length + signature.length));
+            pem.write(tbsHeader);
+            pem.write(tbsHead);
+            in = new FileInputStream(revoked);
+            try {
+                IOUtils.copy(in, pem);
+            }
+            finally {
+                in.close();
+            }
+            pem.write(tail);
+            pem.write(sigAlgEncoded);
+            pem.write(signature);
+            pem.finish();
+            log.info("Completed writing CRL with {} bytes of entries.", revokedLength);
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            if (!revoked.delete()) {
+                log.warn("Unable to delete temporary CRL file: {}", revoked);
+            }
+        }
+    }
+
+    private long writeCRLEntries(Iterator<X509CRLEntryWrapper> entries, File file)
+        throws IOException {
+
+        X509ExtensionsGenerator reason = new X509ExtensionsGenerator();
+        reason.addExtension(X509Extensions.ReasonCode, false,
+            new CRLReason(CRLReason.privilegeWithdrawn));
+        X509Extensions entryExtensions = reason.generate();
+
+        long length = 0;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            while (entries.hasNext()) {
+                X509CRLEntryWrapper entry = entries.next();
+                ASN1EncodableVector v = new ASN1EncodableVector();
+                v.add(new DERInteger(entry.getSerialNumber()));
+                v.add(new Time(entry.getRevocationDate()));
+                v.add(entryExtensions);
+                byte[] encoded = new DERSequence(v).getDEREncoded();
+                out.write(encoded);
+                length += encoded.length;
+            }
+        }
+        finally {
+            out.close();
+        }
+        return length;
+    }
+
+    /*
+     * Only walks the headers of the CRL up to its extensions, skipping over
+     * the contents of everything else.
+     */
+    @Override
+    public BigInteger readCRLNumber(InputStream in) throws IOException {
+        // Skip the PEM header line:
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new EOFException("Not a PEM encoded CRL");
+            }
+        }
+        DataInputStream der = new DataInputStream(new Base64InputStream(in));
+
+        readDERHeader(der, DER_SEQUENCE);
+        long tbsLength = readDERHeader(der, DER_SEQUENCE);
+        long read = 0;
+        while (read < tbsLength) {
+            int tag = der.readUnsignedByte();
+            long[] length = readDERLength(der);
+            read += 1 + length[1] + length[0];
+            if (tag == CRL_EXTENSIONS_TAG) {
+                if (length[0] > MAX_CRL_EXTENSIONS_LENGTH) {
+                    throw new IOException("CRL extensions too long: " + length[0]);
+                }
+                byte[] encoded = new byte[(int) length[0]];
+                der.readFully(encoded);
+                X509Extension number = X509Extensions.getInstance(
+                    ASN1Object.fromByteArray(encoded)).getExtension(X509Extensions.CRLNumber);
+                if (number == null) {
+                    return BigInteger.ZERO;
+                }
+                return DERInteger.getInstance(ASN1Object.fromByteArray(
+                    number.getValue().getOctets())).getValue();
+            }
+            skipFully(der, length[0]);
+        }
+        return BigInteger.ZERO;
+    }
+
+    private static long readDERHeader(DataInputStream der, int expectedTag)
+        throws IOException {
+        int tag = der.readUnsignedByte();
+        if (tag != expectedTag) {
+            throw new IOException("Unexpected DER tag: " + tag);
+        }
+        return readDERLength(der)[0];
+    }
+
+    /*
+     * Returns the length, and the number of bytes its encoding took.
+     */
+    private static long[] readDERLength(DataInputStream der) throws IOException {
+        int first = der.readUnsignedByte();
+        if ((first & 0x80) == 0) {
+            return new long[] {first, 1};
+        }
+        int bytes = first & 0x7f;
+        if (bytes > 8) {
+            throw new IOException("DER length too long: " + bytes);
+        }
+        long length = 0;
+        for (int i = 0; i < bytes; i++) {
+            length = (length << 8) | der.readUnsignedByte();
+        }
+        return new long[] {length, 1 + bytes};
+    }
+
+    private static byte[] derHeader(int tag, long length) {
+        if (length < 0x80) {
+            return new byte[] {(byte) tag, (byte) length};
+        }
+        int bytes = 0;
+        for (long l = length; l > 0; l >>= 8) {
+            bytes++;
+        }
+        byte[] header = new byte[2 + bytes];
+        header[0] = (byte) tag;
+        header[1] = (byte) (0x80 | bytes);
+        for (int i = 0; i < bytes; i++) {
+            header[header.length - 1 - i] = (byte) (length >> (8 * i));
+        }
+        return header;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private X509V2CRLGenerator createCRLGenerator(BigInteger crlNumber) throws Exception {
+        X509Certificate caCert = reader.getCACert();
+        X509V2CRLGenerator generator = new X509V2CRLGenerator();
+        generator.setIssuerDN(caCert.getIssuerX500Principal());
+        generator.setThisUpdate(new Date());
+        generator.setNextUpdate(Util.tomorrow());
+        generator.setSignatureAlgorithm(SIGNATURE_ALGO);
+        generator.addExtension(X509Extensions.AuthorityKeyIdentifier,
+            false, new AuthorityKeyIdentifierStructure(caCert));
+        generator.addExtension(X509Extensions.CRLNumber, false,
+            new CRLNumber(crlNumber));
+        return generator;
+    }
+
+    /*
+     * Base64 encodes everything written to it in lines of 64 characters, between
+     * the PEM header and footer, the same as PEMWriter does for objects in memory.
+     */
+    private static class PemOutputStream extends OutputStream {
+        private static final int LINE_BYTES = 48;
+
+        private final OutputStream out;
+        private final String type;
+        private final byte[] line = new byte[LINE_BYTES];
+        private int pos;
+
+        PemOutputStream(OutputStream out, String type) throws IOException {
+            this.out = out;
+            this.type = type;
+            out.write(("-----BEGIN " + type + "-----\n").getBytes("US-ASCII"));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            line[pos++] = (byte) b;
+            if (pos == LINE_BYTES) {
+                writeLine();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, LINE_BYTES - pos);
+                System.arraycopy(b, off, line, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+                if (pos == LINE_BYTES) {
+                    writeLine();
+                }
+            }
+        }
+
+        public void finish() throws IOException {
+            if (pos > 0) {
+                writeLine();
+            }
+            out.write(("-----END " + type + "-----\n").getBytes("US-ASCII"));
+            out.flush();
+        }
+
+        private void writeLine() throws IOException {
+            byte[] chunk = line;
+            if (pos < LINE_BYTES) {
+                chunk = new byte[pos];
+                System.arraycopy(line, 0, chunk, 0, pos);
+            }
+            out.write(Base64.encodeBase64(chunk));
+            out.write('\n');
+            pos = 0;
+        }
+    }
+
     private byte[] getPemEncoded(Object obj) throws IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         OutputStreamWriter oswriter = new OutputStreamWriter(byteArrayOutputStream);
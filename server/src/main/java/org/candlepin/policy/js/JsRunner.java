@@ -19,26 +19,27 @@ import org.mozilla.javascript.Function;
 import org.mozilla.javascript.RhinoException;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
-import org.mozilla.javascript.Undefined;
-import org.mozilla.javascript.Wrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * JsRunner - Responsible for running the javascript rules methods in all namespaces.
  * Used by the various "Rules" classes.
+ *
+ * Execution scopes are borrowed from the {@link JsScopePool} of the rules version this
+ * runner was created for, for the duration of a single invocation only.
  */
 public class JsRunner {
     private static Logger log = LoggerFactory.getLogger(JsRunner.class);
 
     private Object rulesNameSpace;
     private String namespace;
-    private Scriptable scope;
+    private JsScopePool scopePool;
 
     private boolean initialized = false;
 
-    public JsRunner(Scriptable scope) {
-        this.scope = scope;
+    JsRunner(JsScopePool scopePool) {
+        this.scopePool = scopePool;
     }
 
     /**
@@ -51,22 +52,8 @@ public class JsRunner {
         this.namespace = namespace;
 
         if (!initialized) {
-
-            Context context = Context.enter();
-            try {
-                Object func = ScriptableObject.getProperty(scope, namespace);
-                this.rulesNameSpace = unwrapReturnValue(((Function) func).call(context,
-                    scope, scope, Context.emptyArgs));
-
-                this.initialized = true;
-            }
-            catch (RhinoException ex) {
-                this.initialized = false;
-                throw new RuleParseException(ex);
-            }
-            finally {
-                Context.exit();
-            }
+            this.rulesNameSpace = scopePool.getNamespace(namespace);
+            this.initialized = true;
         }
     }
 
@@ -76,44 +63,58 @@ public class JsRunner {
     }
 
     Object unwrapReturnValue(Object result) {
-        if (result instanceof Wrapper) {
-            result = ((Wrapper) result).unwrap();
-        }
-
-        return result instanceof Undefined ? null : result;
+        return JsScopePool.unwrap(result);
     }
 
     @SuppressWarnings("unchecked")
-    public <T> T invokeMethod(String method) throws NoSuchMethodException,
+    private <T> T invoke(String method, JsContext jsContext) throws NoSuchMethodException,
             RhinoException {
-        Scriptable localScope = Context.toObject(this.rulesNameSpace, scope);
-        Object func = ScriptableObject.getProperty(localScope, method);
-        if (!(func instanceof Function)) {
-            throw new NoSuchMethodException("no such javascript method: " + method);
-        }
         Context context = Context.enter();
         try {
-            return (T) unwrapReturnValue(((Function) func).call(context, scope, localScope,
-                Context.emptyArgs));
+            Scriptable localScope = Context.toObject(this.rulesNameSpace,
+                scopePool.getGlobalScope());
+            Object func = ScriptableObject.getProperty(localScope, method);
+            if (!(func instanceof Function)) {
+                throw new NoSuchMethodException("no such javascript method: " + method);
+            }
+
+            Scriptable scope = scopePool.borrow(context);
+            try {
+                if (jsContext != null) {
+                    jsContext.applyTo(scope);
+                }
+                return (T) unwrapReturnValue(((Function) func).call(context, scope,
+                    localScope, Context.emptyArgs));
+            }
+            finally {
+                scopePool.release(scope);
+            }
         }
         finally {
             Context.exit();
         }
     }
 
-    @SuppressWarnings("unchecked")
+    public <T> T invokeMethod(String method) throws NoSuchMethodException,
+            RhinoException {
+        return invoke(method, null);
+    }
+
     public <T> T invokeMethod(String method, JsContext context)
         throws NoSuchMethodException, RhinoException {
-        context.applyTo(scope);
-        return (T) invokeMethod(method);
+        return invoke(method, context);
     }
 
     public <T> T invokeRule(String ruleName) {
+        return invokeRule(ruleName, null);
+    }
+
+    public <T> T invokeRule(String ruleName, JsContext context) {
         log.debug("Running rule: " + ruleName + " in namespace: " + namespace);
 
         T returner = null;
         try {
-            returner = this.invokeMethod(ruleName);
+            returner = this.invoke(ruleName, context);
         }
         catch (NoSuchMethodException ex) {
             log.info("No rule found: " + ruleName + " in namespace: " + namespace);
@@ -124,11 +125,6 @@ public class JsRunner {
         return returner;
     }
 
-    public <T> T invokeRule(String ruleName, JsContext context) {
-        context.applyTo(scope);
-        return invokeRule(ruleName);
-    }
-
     public <T extends Object> T runJsFunction(Class<T> clazz, String function,
         JsContext context) {
         T returner = null;
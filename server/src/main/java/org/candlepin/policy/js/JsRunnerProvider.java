@@ -14,6 +14,8 @@
  */
 package org.candlepin.policy.js;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Rules;
 import org.candlepin.model.Rules.RulesSourceEnum;
 import org.candlepin.model.RulesCurator;
@@ -30,13 +32,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Reads/compiles our javascript rules and the standard js objects only
- * once across the JVM lifetime (and whenever the rules require a recompile), and creates
- * lightweight execution scopes per thread/request.
+ * once across the JVM lifetime (and whenever the rules require a recompile), and hands
+ * out lightweight execution scopes from a per-thread pool.
+ *
+ * Rules freshness is checked against the database at most once per configured
+ * interval; uploading, deleting or importing rules triggers an explicit recompile.
  */
 public class JsRunnerProvider implements Provider<JsRunner> {
     private static Logger log = LoggerFactory.getLogger(JsRunnerProvider.class);
@@ -44,14 +51,23 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     private RulesCurator rulesCurator;
 
     private Script script;
-    private Scriptable scope;
+    private volatile JsScopePool scopePool;
     private volatile Date updated;
+    private long generation = 0;
+
+    private final long freshnessInterval;
+    private final int scopePoolSize;
+    private volatile long lastFreshnessCheck;
+
+    private final AtomicLong scopeHits = new AtomicLong();
+    private final AtomicLong scopeMisses = new AtomicLong();
+    private final AtomicLong recompiles = new AtomicLong();
 
     // Store the version and source of the compiled rules:
     private String rulesVersion;
     private RulesSourceEnum rulesSource;
 
-    // Use this lock to access script, scope and updated
+    // Use this lock to access script, scopePool and updated
     private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
 
     /**
@@ -74,9 +90,22 @@ public class JsRunnerProvider implements Provider<JsRunner> {
         ContextFactory.initGlobal(new DynamicScopeContextFactory());
     }
 
-    @Inject
     public JsRunnerProvider(RulesCurator rulesCurator) {
+        this(rulesCurator, 0, Integer.parseInt(ConfigProperties.DEFAULT_PROPERTIES.get(
+            ConfigProperties.RULES_SCOPE_POOL_SIZE)));
+    }
+
+    @Inject
+    public JsRunnerProvider(RulesCurator rulesCurator, Configuration config) {
+        this(rulesCurator,
+            TimeUnit.SECONDS.toMillis(config.getLong(ConfigProperties.RULES_FRESHNESS_INTERVAL)),
+            config.getInt(ConfigProperties.RULES_SCOPE_POOL_SIZE));
+    }
+
+    JsRunnerProvider(RulesCurator rulesCurator, long freshnessInterval, int scopePoolSize) {
         this.rulesCurator = rulesCurator;
+        this.freshnessInterval = freshnessInterval;
+        this.scopePoolSize = scopePoolSize;
 
         log.debug("Compiling rules for initial load");
         this.rulesCurator.updateDbRules();
@@ -108,7 +137,7 @@ public class JsRunnerProvider implements Provider<JsRunner> {
 
             Context context = Context.enter();
             context.setOptimizationLevel(9);
-            scope = context.initStandardObjects(null, true);
+            Scriptable scope = context.initStandardObjects(null, true);
             try {
                 Rules rules = rulesCurator.getRules();
                 rulesVersion = rules.getVersion();
@@ -117,7 +146,13 @@ public class JsRunnerProvider implements Provider<JsRunner> {
                     rules.getRules(), "rules", 1, null);
                 script.exec(context, scope);
                 ((ScriptableObject) scope).sealObject();
+
+                // Idle scopes of the previous pool are dropped along with it:
+                this.scopePool = new JsScopePool(scope, ++generation, scopePoolSize,
+                    scopeHits, scopeMisses);
                 this.updated = newUpdated;
+                this.lastFreshnessCheck = System.currentTimeMillis();
+                recompiles.incrementAndGet();
             }
             finally {
                 Context.exit();
@@ -130,27 +165,67 @@ public class JsRunnerProvider implements Provider<JsRunner> {
 
     public JsRunner get() {
         /*
-         * Create a new thread/request local javascript scope for the JsRules,
-         * based on the preinitialized global one (which contains our js rules).
+         * Hand out a runner bound to the currently compiled rules. Execution scopes
+         * are borrowed from the per-thread pool on each invocation, so creating the
+         * runner itself is cheap.
          */
-        // Avoid a write lock if we can
-        if (!rulesCurator.getUpdated().equals(this.updated)) {
-            compileRules();
-        }
-        Scriptable rulesScope;
+        checkFreshness();
+
+        JsScopePool pool;
         scriptLock.readLock().lock();
         try {
-            Context context = Context.enter();
-            rulesScope = context.newObject(scope);
-            rulesScope.setPrototype(scope);
-            rulesScope.setParentScope(null);
-            Context.exit();
+            pool = this.scopePool;
         }
         finally {
             scriptLock.readLock().unlock();
         }
 
-        return new JsRunner(rulesScope);
+        return new JsRunner(pool);
+    }
+
+    /*
+     * Only go to the database for the rules timestamp once per freshness interval,
+     * rules changes made through this node recompile explicitly.
+     */
+    private void checkFreshness() {
+        long now = System.currentTimeMillis();
+        if (now - lastFreshnessCheck < freshnessInterval) {
+            return;
+        }
+        lastFreshnessCheck = now;
+
+        // Avoid a write lock if we can
+        if (!rulesCurator.getUpdated().equals(this.updated)) {
+            compileRules();
+        }
+    }
+
+    /**
+     * @return number of rules invocations that reused an idle execution scope
+     */
+    public long getScopePoolHits() {
+        return scopeHits.get();
+    }
+
+    /**
+     * @return number of rules invocations that had to create a new execution scope
+     */
+    public long getScopePoolMisses() {
+        return scopeMisses.get();
+    }
+
+    /**
+     * @return number of times the rules have been compiled by this provider
+     */
+    public long getRecompileCount() {
+        return recompiles.get();
+    }
+
+    /**
+     * @return identifies the currently compiled rules, changes on every recompile
+     */
+    public long getRulesGeneration() {
+        return scopePool.getGeneration();
     }
 
     public String getRulesVersion() {
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JsScopePool - hands out execution scopes for one compiled version of the rules.
+ *
+ * Each thread keeps a small, bounded stack of idle scopes (children of the sealed
+ * global scope) which are cleared and reused across rules invocations instead of
+ * being created for every injected JsRunner. Namespace objects are resolved once
+ * per compiled version and shared, as they live in the sealed global scope.
+ *
+ * A pool is discarded as a whole whenever the rules are recompiled.
+ */
+class JsScopePool {
+
+    private final Scriptable globalScope;
+    private final long generation;
+    private final int maxIdle;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    private final ConcurrentMap<String, Object> namespaces =
+        new ConcurrentHashMap<String, Object>();
+
+    private final ThreadLocal<Deque<Scriptable>> idle = new ThreadLocal<Deque<Scriptable>>() {
+        @Override
+        protected Deque<Scriptable> initialValue() {
+            return new ArrayDeque<Scriptable>();
+        }
+    };
+
+    JsScopePool(Scriptable globalScope, long generation, int maxIdle,
+        AtomicLong hits, AtomicLong misses) {
+        this.globalScope = globalScope;
+        this.generation = generation;
+        this.maxIdle = maxIdle;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    Scriptable getGlobalScope() {
+        return globalScope;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Looks up the rules object for the given namespace, running the namespace
+     * function in the global scope the first time it is requested.
+     *
+     * @param namespace name of the javascript namespace function
+     * @return the rules object returned by the namespace function
+     */
+    Object getNamespace(String namespace) {
+        Object rulesNameSpace = namespaces.get(namespace);
+        if (rulesNameSpace != null) {
+            return rulesNameSpace;
+        }
+
+        Context context = Context.enter();
+        try {
+            Object func = ScriptableObject.getProperty(globalScope, namespace);
+            if (!(func instanceof Function)) {
+                throw new RuleParseException("no such javascript namespace: " + namespace);
+            }
+            rulesNameSpace = unwrap(((Function) func).call(context, globalScope, globalScope,
+                Context.emptyArgs));
+        }
+        catch (RhinoException ex) {
+            throw new RuleParseException(ex);
+        }
+        finally {
+            Context.exit();
+        }
+
+        if (rulesNameSpace != null) {
+            namespaces.putIfAbsent(namespace, rulesNameSpace);
+        }
+        return rulesNameSpace;
+    }
+
+    /**
+     * Borrows an execution scope for the current thread. Must be called with an
+     * entered Context, and the scope must be handed back with {@link #release}.
+     *
+     * @param context the entered rhino context
+     * @return an empty scope whose prototype is the global rules scope
+     */
+    Scriptable borrow(Context context) {
+        Scriptable scope = idle.get().pollFirst();
+        if (scope != null) {
+            hits.incrementAndGet();
+            return scope;
+        }
+
+        misses.incrementAndGet();
+        scope = context.newObject(globalScope);
+        scope.setPrototype(globalScope);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    /**
+     * Clears everything a rules invocation put into the scope and keeps it for reuse
+     * by the current thread, unless the thread already holds enough idle scopes.
+     *
+     * @param scope a scope previously returned by {@link #borrow}
+     */
+    void release(Scriptable scope) {
+        for (Object id : scope.getIds()) {
+            if (id instanceof String) {
+                scope.delete((String) id);
+            }
+            else if (id instanceof Integer) {
+                scope.delete((Integer) id);
+            }
+        }
+
+        Deque<Scriptable> scopes = idle.get();
+        if (scopes.size() < maxIdle) {
+            scopes.push(scope);
+        }
+    }
+
+    static Object unwrap(Object result) {
+        if (result instanceof Wrapper) {
+            result = ((Wrapper) result).unwrap();
+        }
+
+        return result instanceof Undefined ? null : result;
+    }
+}
@@ -14,7 +14,10 @@
  */
 package org.candlepin.policy.js;
 
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 
 /**
  * JsonContext
@@ -23,6 +26,10 @@ import org.mozilla.javascript.Scriptable;
  * a single JSON string. It also provides the ability to specify
  * non-serializable objects which are passed directly to the called
  * JS function.
+ *
+ * Rules which read their context through get_context() are given the
+ * serialized args as native javascript objects in native_context instead,
+ * which saves rendering and parsing a JSON string for every call.
  */
 public class JsonJsContext extends JsContext {
 
@@ -36,7 +43,14 @@ public class JsonJsContext extends JsContext {
 
     @Override
     public void applyTo(Scriptable scope) {
-        scope.put("json_context", scope, this.rulesObjectMapper.toJsonString(contextArgs));
+        Context cx = Context.getCurrentContext();
+        if (cx != null && ScriptableObject.getProperty(scope, "get_context") instanceof Function) {
+            scope.put("native_context", scope,
+                this.rulesObjectMapper.toScriptable(contextArgs, cx, scope));
+        }
+        else {
+            scope.put("json_context", scope, this.rulesObjectMapper.toJsonString(contextArgs));
+        }
         nonSerializableContext.applyTo(scope);
     }
 
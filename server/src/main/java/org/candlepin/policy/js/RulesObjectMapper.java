@@ -16,7 +16,11 @@ package org.candlepin.policy.js;
 
 import org.candlepin.common.exceptions.IseException;
 
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -26,12 +30,20 @@ import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.hibernate4.Hibernate4Module;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -102,18 +114,117 @@ public class RulesObjectMapper {
     }
 
     public String toJsonString(Map<String, Object> toSerialize) {
+        try {
+            return this.mapper.writeValueAsString(createMainNode(toSerialize));
+        }
+        catch (Exception e) {
+            log.error("Unable to serialize objects to JSON.", e);
+            throw new IseException("Unable to serialize objects to JSON.", e);
+        }
+    }
+
+    /**
+     * Builds the javascript object JSON.parse would return for the JSON string
+     * created by {@link #toJsonString(Map)}, without writing out the JSON text.
+     * The objects are serialized into a token buffer, which references the strings
+     * of the model objects rather than copying them, and the rhino objects are
+     * created straight from the tokens.
+     *
+     * @param toSerialize the objects to serialize, by name
+     * @param cx the current rhino context
+     * @param scope the scope to create the javascript objects in
+     * @return a javascript object with a property for each serialized object
+     */
+    public Scriptable toScriptable(Map<String, Object> toSerialize, Context cx,
+        Scriptable scope) {
+        try {
+            return (Scriptable) readScriptable(tokenize(createMainNode(toSerialize)), cx,
+                scope);
+        }
+        catch (Exception e) {
+            log.error("Unable to serialize objects for the rules.", e);
+            throw new IseException("Unable to serialize objects for the rules.", e);
+        }
+    }
+
+    private ObjectNode createMainNode(Map<String, Object> toSerialize) {
         ObjectNode mainNode = this.mapper.createObjectNode();
         for (Entry<String, Object> entry : toSerialize.entrySet()) {
             mainNode.putPOJO(entry.getKey(), entry.getValue());
         }
+        return mainNode;
+    }
 
-        try {
-            return this.mapper.writeValueAsString(mainNode);
+    private JsonParser tokenize(Object value) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(this.mapper);
+        this.mapper.writeValue(tokens, value);
+        JsonParser parser = tokens.asParser();
+        parser.nextToken();
+        return parser;
+    }
+
+    /*
+     * Mirrors what rhino's JSON.parse creates: integral numbers within the int
+     * range become Integers and any other number a Double, property names which
+     * are array indexes are stored as indexes.
+     */
+    private Object readScriptable(JsonParser parser, Context cx, Scriptable scope)
+        throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                Scriptable object = cx.newObject(scope);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    Object value = readScriptable(parser, cx, scope);
+                    long index = ScriptRuntime.indexFromString(name);
+                    if (index < 0) {
+                        object.put(name, object, value);
+                    }
+                    else {
+                        object.put((int) index, object, value);
+                    }
+                }
+                return object;
+            case START_ARRAY:
+                List<Object> items = new ArrayList<Object>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    items.add(readScriptable(parser, cx, scope));
+                }
+                return cx.newArray(scope, items.toArray());
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return toJsNumber(parser.getNumberValue().doubleValue());
+            case VALUE_NUMBER_FLOAT:
+                // Parse the text the number would be written as, floats would
+                // otherwise gain digits when widened:
+                return toJsNumber(Double.parseDouble(parser.getText()));
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case VALUE_EMBEDDED_OBJECT:
+                Object embedded = parser.getEmbeddedObject();
+                if (embedded instanceof byte[]) {
+                    return Base64Variants.getDefaultVariant().encode((byte[]) embedded);
+                }
+                // Objects handed to the generator as is, e.g. POJO nodes:
+                return readScriptable(tokenize(embedded), cx, scope);
+            default:
+                throw new JsonParseException("Unexpected token: " + parser.getCurrentToken(),
+                    parser.getCurrentLocation());
         }
-        catch (Exception e) {
-            log.error("Unable to serialize objects to JSON.", e);
-            throw new IseException("Unable to serialize objects to JSON.", e);
+    }
+
+    private static Object toJsNumber(double value) {
+        int intValue = (int) value;
+        if (intValue == value) {
+            return Integer.valueOf(intValue);
         }
+        return Double.valueOf(value);
     }
 
     public <T extends Object> T toObject(String json, Class<T> clazz) {
@@ -15,6 +15,8 @@
 package org.candlepin.policy.js.compliance;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
@@ -27,11 +29,16 @@ import org.candlepin.policy.js.compliance.hash.ComplianceStatusHasher;
 
 import com.google.inject.Inject;
 
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * ComplianceRules
@@ -48,17 +55,31 @@ public class ComplianceRules {
     private EventSink eventSink;
     // Use the curator to update consumer entitlement status every time we run compliance (with null date)
     private ConsumerCurator consumerCurator;
+    // Set when compliance is calculated natively rather than by the javascript rules
+    private NativeComplianceCalculator nativeCalculator;
+    private ComplianceStatusCache statusCache;
 
     @Inject
     public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
         StatusReasonMessageGenerator generator, EventSink eventSink,
-        ConsumerCurator consumerCurator) {
+        ConsumerCurator consumerCurator, Configuration config,
+        ComplianceStatusCache statusCache) {
         this.entCurator = entCurator;
+        this.statusCache = statusCache;
         this.jsRules = jsRules;
         this.generator = generator;
         this.eventSink = eventSink;
         this.consumerCurator = consumerCurator;
 
+        String engine = config.getString(ConfigProperties.COMPLIANCE_ENGINE,
+            ConfigProperties.COMPLIANCE_ENGINE_JAVASCRIPT);
+        if (ConfigProperties.COMPLIANCE_ENGINE_NATIVE.equalsIgnoreCase(engine)) {
+            nativeCalculator = new NativeComplianceCalculator();
+        }
+        else if (!ConfigProperties.COMPLIANCE_ENGINE_JAVASCRIPT.equalsIgnoreCase(engine)) {
+            log.warn("Unknown compliance engine \"{}\", using the javascript rules.", engine);
+        }
+
         mapper = RulesObjectMapper.instance();
         jsRules.init("compliance_name_space");
     }
@@ -134,19 +155,23 @@ public class ComplianceRules {
             return new ComplianceStatus(new Date());
         }
 
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("consumer", c);
-        args.put("entitlements", c.getEntitlements());
-        args.put("ondate", date);
-        args.put("calculateCompliantUntil", calculateCompliantUntil);
-        args.put("log", log, false);
-
-        // Convert the JSON returned into a ComplianceStatus object:
-        String json = jsRules.runJsFunction(String.class, "get_status", args);
         try {
-            ComplianceStatus result = mapper.toObject(json, ComplianceStatus.class);
-            for (ComplianceReason reason : result.getReasons()) {
-                generator.setMessage(c, reason, result.getDate());
+            // Only the current status is cached, it is what check-ins and lookups ask for:
+            ComplianceStatus result = null;
+            String stateHash = null;
+            if (currentCompliance && statusCache.isEnabled() && c.getUuid() != null) {
+                stateHash = statusCache.getStateHash(c);
+                result = statusCache.get(c, stateHash, date, calculateCompliantUntil);
+            }
+
+            if (result == null) {
+                result = calculateStatus(c, date, calculateCompliantUntil);
+                for (ComplianceReason reason : result.getReasons()) {
+                    generator.setMessage(c, reason, result.getDate());
+                }
+                if (stateHash != null) {
+                    statusCache.put(c, stateHash, result, calculateCompliantUntil);
+                }
             }
             if (currentCompliance) {
                 String newHash = getComplianceStatusHash(result, c);
@@ -174,8 +199,77 @@ public class ComplianceRules {
         }
     }
 
+    /**
+     * Check the current compliance status of many consumers at once, including
+     * compliantUntil. The data the rules need is loaded for all consumers up
+     * front, and consumers whose status changed are updated together at the end.
+     *
+     * @param consumers Consumers to check.
+     * @return Compliance status of each consumer by consumer UUID, in the order
+     *         the consumers were given.
+     */
+    public Map<String, ComplianceStatus> getStatuses(List<Consumer> consumers) {
+        Map<String, ComplianceStatus> results =
+            new LinkedHashMap<String, ComplianceStatus>();
+        if (consumers.isEmpty()) {
+            return results;
+        }
+
+        consumerCurator.loadComplianceData(consumers);
+
+        Set<Consumer> changed = new HashSet<Consumer>();
+        for (Consumer c : consumers) {
+            String oldHash = c.getComplianceStatusHash();
+            String oldStatus = c.getEntitlementStatus();
+            results.put(c.getUuid(), getStatus(c, null, true, false));
+
+            if (!StringUtils.equals(oldHash, c.getComplianceStatusHash()) ||
+                !StringUtils.equals(oldStatus, c.getEntitlementStatus())) {
+                changed.add(c);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            consumerCurator.bulkUpdate(changed);
+        }
+        return results;
+    }
+
+    private ComplianceStatus calculateStatus(Consumer c, Date date,
+        boolean calculateCompliantUntil) {
+        if (nativeCalculator != null) {
+            return nativeCalculator.getStatus(c, c.getEntitlements(), date,
+                calculateCompliantUntil);
+        }
+
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("consumer", c);
+        args.put("entitlements", c.getEntitlements());
+        args.put("ondate", date);
+        args.put("calculateCompliantUntil", calculateCompliantUntil);
+        args.put("log", log, false);
+
+        // Convert the JSON returned into a ComplianceStatus object:
+        String json = jsRules.runJsFunction(String.class, "get_status", args);
+        return mapper.toObject(json, ComplianceStatus.class);
+    }
+
+    /**
+     * Drops any cached compliance status of the consumer, to be called whenever its
+     * entitlements or the consumer itself are modified.
+     *
+     * @param c Consumer whose status changes.
+     */
+    public void invalidateStatus(Consumer c) {
+        statusCache.invalidate(c);
+    }
+
     public boolean isStackCompliant(Consumer consumer, String stackId,
         List<Entitlement> entsToConsider) {
+        if (nativeCalculator != null) {
+            return nativeCalculator.isStackCompliant(consumer, stackId, entsToConsider);
+        }
+
         JsonJsContext args = new JsonJsContext(mapper);
         args.put("stack_id", stackId);
         args.put("consumer", consumer);
@@ -186,6 +280,9 @@ public class ComplianceRules {
 
     public boolean isEntitlementCompliant(Consumer consumer, Entitlement ent, Date onDate) {
         List<Entitlement> ents = entCurator.listByConsumerAndDate(consumer, onDate);
+        if (nativeCalculator != null) {
+            return nativeCalculator.isEntitlementCompliant(consumer, ent, ents);
+        }
 
         JsonJsContext args = new JsonJsContext(mapper);
         args.put("consumer", consumer);
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.compliance.hash.ConsumerStateHasher;
+
+import com.google.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ComplianceStatusCache
+ *
+ * Bounded cache of the current compliance status of consumers. An entry is only
+ * used while the consumer state hash it was calculated for still matches, i.e.
+ * nothing the rules look at has changed, and until the next start or end date of
+ * one of the consumer's entitlements, after which the status may be different.
+ *
+ * The rules generation is part of the state hash, so recompiled rules never see
+ * statuses calculated by a previous version.
+ */
+public class ComplianceStatusCache {
+    private static Logger log = LoggerFactory.getLogger(ComplianceStatusCache.class);
+
+    private final JsRunnerProvider jsProvider;
+    private final Map<String, Entry> entries;
+    private final int maxSize;
+    private long rulesGeneration;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ComplianceStatusCache(Configuration config, JsRunnerProvider jsProvider) {
+        this(config.getInt(ConfigProperties.COMPLIANCE_CACHE_MAX), jsProvider);
+    }
+
+    ComplianceStatusCache(final int maxSize, JsRunnerProvider jsProvider) {
+        this.maxSize = maxSize;
+        this.jsProvider = jsProvider;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Hashes everything the compliance status of the consumer depends on.
+     *
+     * @param consumer the consumer
+     * @return the consumer state hash to look up and store statuses with
+     */
+    public String getStateHash(Consumer consumer) {
+        long generation = jsProvider.getRulesGeneration();
+        synchronized (entries) {
+            if (generation != rulesGeneration) {
+                // Statuses of the previous rules can no longer match, free them up:
+                entries.clear();
+                rulesGeneration = generation;
+            }
+        }
+
+        String rules = jsProvider.getRulesVersion() + ":" + generation;
+        return new ConsumerStateHasher(consumer, rules).hash();
+    }
+
+    /**
+     * Looks up the status of a consumer for the given date.
+     *
+     * @param consumer the consumer
+     * @param stateHash the current state hash of the consumer
+     * @param date the date the status is requested for
+     * @param calculateCompliantUntil whether the status must include compliantUntil
+     * @return the cached status for the date, or null if there is none
+     */
+    public ComplianceStatus get(Consumer consumer, String stateHash, Date date,
+        boolean calculateCompliantUntil) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(consumer.getUuid());
+        }
+
+        if (entry == null || !entry.stateHash.equals(stateHash) ||
+            date.getTime() < entry.validFrom || date.getTime() >= entry.validUntil ||
+            (calculateCompliantUntil && !entry.compliantUntilCalculated)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.toStatus(consumer, date, calculateCompliantUntil);
+    }
+
+    /**
+     * Caches the status calculated for a consumer.
+     *
+     * @param consumer the consumer
+     * @param stateHash the state hash of the consumer the status was calculated for
+     * @param status the calculated status
+     * @param calculateCompliantUntil whether compliantUntil was calculated
+     */
+    public void put(Consumer consumer, String stateHash, ComplianceStatus status,
+        boolean calculateCompliantUntil) {
+        Entry entry = new Entry(stateHash, status, calculateCompliantUntil);
+        entry.validUntil = nextEntitlementChange(consumer, entry.validFrom);
+
+        synchronized (entries) {
+            entries.put(consumer.getUuid(), entry);
+        }
+    }
+
+    /**
+     * Drops the cached status of a consumer.
+     *
+     * @param consumer the consumer
+     */
+    public void invalidate(Consumer consumer) {
+        if (consumer.getUuid() != null) {
+            synchronized (entries) {
+                entries.remove(consumer.getUuid());
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        log.debug("Clearing compliance status cache.");
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups which required the status to be calculated
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /*
+     * Entitlements are valid from their start date up to and including their end
+     * date. Returns the first moment after the given time at which the set of valid
+     * entitlements changes.
+     */
+    private long nextEntitlementChange(Consumer consumer, long time) {
+        long next = Long.MAX_VALUE;
+        for (Entitlement ent : consumer.getEntitlements()) {
+            Date start = ent.getStartDate();
+            Date end = ent.getEndDate();
+            if (start != null && start.getTime() > time) {
+                next = Math.min(next, start.getTime());
+            }
+            if (end != null && end.getTime() + 1 > time) {
+                next = Math.min(next, end.getTime() + 1);
+            }
+        }
+        return next;
+    }
+
+    /*
+     * Entitlements are referenced by ID only, a status served from the cache is
+     * rebuilt with the consumer's current entitlement objects. Their IDs are
+     * guaranteed to match as they are part of the state hash.
+     */
+    private static class Entry {
+        private final String stateHash;
+        private final boolean compliantUntilCalculated;
+        private final long validFrom;
+        private long validUntil;
+
+        private final Set<String> nonCompliantProducts;
+        private final Map<String, Set<String>> compliantProducts;
+        private final Map<String, Set<String>> partiallyCompliantProducts;
+        private final Map<String, Set<String>> partialStacks;
+        private final Set<ComplianceReason> reasons;
+        private final Date compliantUntil;
+
+        Entry(String stateHash, ComplianceStatus status, boolean compliantUntilCalculated) {
+            this.stateHash = stateHash;
+            this.compliantUntilCalculated = compliantUntilCalculated;
+            this.validFrom = status.getDate().getTime();
+            this.nonCompliantProducts = new HashSet<String>(status.getNonCompliantProducts());
+            this.compliantProducts = toIds(status.getCompliantProducts());
+            this.partiallyCompliantProducts = toIds(status.getPartiallyCompliantProducts());
+            this.partialStacks = toIds(status.getPartialStacks());
+            this.reasons = new HashSet<ComplianceReason>(status.getReasons());
+            this.compliantUntil = status.getCompliantUntil();
+        }
+
+        ComplianceStatus toStatus(Consumer consumer, Date date, boolean withCompliantUntil) {
+            Map<String, Entitlement> ents = new HashMap<String, Entitlement>();
+            for (Entitlement ent : consumer.getEntitlements()) {
+                ents.put(ent.getId(), ent);
+            }
+
+            ComplianceStatus status = new ComplianceStatus(date);
+            status.getNonCompliantProducts().addAll(nonCompliantProducts);
+            for (Map.Entry<String, Set<String>> entry : compliantProducts.entrySet()) {
+                for (String entId : entry.getValue()) {
+                    status.addCompliantProduct(entry.getKey(), ents.get(entId));
+                }
+            }
+            for (Map.Entry<String, Set<String>> entry : partiallyCompliantProducts.entrySet()) {
+                for (String entId : entry.getValue()) {
+                    status.addPartiallyCompliantProduct(entry.getKey(), ents.get(entId));
+                }
+            }
+            for (Map.Entry<String, Set<String>> entry : partialStacks.entrySet()) {
+                for (String entId : entry.getValue()) {
+                    status.addPartialStack(entry.getKey(), ents.get(entId));
+                }
+            }
+            status.getReasons().addAll(reasons);
+            if (withCompliantUntil) {
+                status.setCompliantUntil(compliantUntil);
+            }
+            return status;
+        }
+
+        private static Map<String, Set<String>> toIds(Map<String, Set<Entitlement>> map) {
+            Map<String, Set<String>> ids = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, Set<Entitlement>> entry : map.entrySet()) {
+                Set<String> entIds = new HashSet<String>();
+                for (Entitlement ent : entry.getValue()) {
+                    entIds.add(ent.getId());
+                }
+                ids.put(entry.getKey(), entIds);
+            }
+            return ids;
+        }
+    }
+}
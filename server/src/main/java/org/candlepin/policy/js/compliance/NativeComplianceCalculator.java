@@ -0,0 +1,841 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolAttribute;
+import org.candlepin.model.ProductAttribute;
+import org.candlepin.model.ProvidedProduct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * NativeComplianceCalculator
+ *
+ * A Java port of the compliance namespace of the javascript rules. It walks the
+ * model objects directly instead of serializing the consumer and all of its
+ * entitlements to JSON and evaluating the rules in Rhino for every status check.
+ *
+ * The results must stay identical to those produced by the rules file, including
+ * the javascript number coercions used when comparing consumer facts with product
+ * attributes. Any change to the compliance section of rules.js has to be mirrored
+ * here. (see NativeComplianceCalculatorTest)
+ */
+public class NativeComplianceCalculator {
+
+    private static Logger log = LoggerFactory.getLogger(NativeComplianceCalculator.class);
+
+    // Consumer fact names
+    private static final String SOCKET_FACT = "cpu.cpu_socket(s)";
+    private static final String RAM_FACT = "memory.memtotal";
+    private static final String CORES_FACT = "cpu.core(s)_per_socket";
+    private static final String ARCH_FACT = "uname.machine";
+    private static final String IS_VIRT_GUEST_FACT = "virt.is_guest";
+    private static final String STORAGE_BAND_USAGE = "band.storage.usage";
+
+    // Product attribute names
+    private static final String SOCKETS_ATTRIBUTE = "sockets";
+    private static final String CORES_ATTRIBUTE = "cores";
+    private static final String ARCH_ATTRIBUTE = "arch";
+    private static final String RAM_ATTRIBUTE = "ram";
+    private static final String VCPU_ATTRIBUTE = "vcpu";
+    private static final String GUEST_LIMIT_ATTRIBUTE = "guest_limit";
+    private static final String STORAGE_BAND_ATTRIBUTE = "storage_band";
+    private static final String INSTANCE_ATTRIBUTE = "instance_multiplier";
+    private static final String REQUIRES_HOST_ATTRIBUTE = "requires_host";
+    private static final String UNMAPPED_GUESTS_ONLY = "unmapped_guests_only";
+    private static final String STACKING_ID_ATTRIBUTE = "stacking_id";
+
+    private static final Map<String, String> ATTRIBUTES_TO_CONSUMER_FACTS;
+    static {
+        Map<String, String> facts = new HashMap<String, String>();
+        facts.put(SOCKETS_ATTRIBUTE, SOCKET_FACT);
+        facts.put(CORES_ATTRIBUTE, CORES_FACT);
+        facts.put(ARCH_ATTRIBUTE, ARCH_FACT);
+        facts.put(RAM_ATTRIBUTE, RAM_FACT);
+        facts.put(VCPU_ATTRIBUTE, CORES_FACT);
+        facts.put(STORAGE_BAND_ATTRIBUTE, STORAGE_BAND_USAGE);
+        ATTRIBUTES_TO_CONSUMER_FACTS = Collections.unmodifiableMap(facts);
+    }
+
+    private static final List<String> PHYSICAL_ATTRIBUTES = Collections.unmodifiableList(
+        Arrays.asList(SOCKETS_ATTRIBUTE, CORES_ATTRIBUTE, RAM_ATTRIBUTE, ARCH_ATTRIBUTE,
+            GUEST_LIMIT_ATTRIBUTE, STORAGE_BAND_ATTRIBUTE));
+
+    private static final List<String> VIRT_ATTRIBUTES = Collections.unmodifiableList(
+        Arrays.asList(VCPU_ATTRIBUTE, RAM_ATTRIBUTE, ARCH_ATTRIBUTE,
+            GUEST_LIMIT_ATTRIBUTE, STORAGE_BAND_ATTRIBUTE));
+
+    private static final List<String> UNCHECKED_WHEN_HOST_RESTRICTED =
+        Arrays.asList(RAM_ATTRIBUTE, VCPU_ATTRIBUTE);
+
+    private static final Pattern JS_DECIMAL = Pattern.compile(
+        "[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    /**
+     * Calculates the compliance status of a consumer on the given date, the
+     * equivalent of Compliance.get_status in the rules.
+     *
+     * @param consumer consumer to check
+     * @param entitlements all entitlements attached to the consumer
+     * @param onDate date to check compliance status for
+     * @param calculateCompliantUntil whether to determine how long the consumer stays compliant
+     * @return compliance status
+     */
+    public ComplianceStatus getStatus(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate, boolean calculateCompliantUntil) {
+        ConsumerView view = new ConsumerView(consumer);
+        List<Entitlement> ents = entitlements == null ?
+            new ArrayList<Entitlement>() : new ArrayList<Entitlement>(entitlements);
+
+        StatusBuilder status = getStatusOnDate(view, ents, onDate);
+        ComplianceStatus result = status.status;
+        if (status.isCompliant() && calculateCompliantUntil && !ents.isEmpty()) {
+            result.setCompliantUntil(determineCompliantUntilDate(view, ents, onDate));
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given entitlements fully cover the consumer for a stack.
+     *
+     * @param consumer consumer to check
+     * @param stackId stack to check
+     * @param entitlements entitlements to consider
+     * @return true if the stack covers the consumer
+     */
+    public boolean isStackCompliant(Consumer consumer, String stackId,
+        List<Entitlement> entitlements) {
+        ConsumerView view = new ConsumerView(consumer);
+        return getStackCoverage(view, stackId, entitlements).covered;
+    }
+
+    /**
+     * Checks whether a single entitlement fully covers the consumer.
+     *
+     * @param consumer consumer to check
+     * @param ent entitlement to check
+     * @param entitlements all entitlements of the consumer, used for global attributes
+     * @return true if the entitlement covers the consumer
+     */
+    public boolean isEntitlementCompliant(Consumer consumer, Entitlement ent,
+        List<Entitlement> entitlements) {
+        ConsumerView view = new ConsumerView(consumer);
+        return getEntitlementCoverage(view, ent, entitlements).covered;
+    }
+
+    private StatusBuilder getStatusOnDate(ConsumerView consumer, List<Entitlement> entitlements,
+        Date onDate) {
+        StatusBuilder compStatus = new StatusBuilder(onDate);
+        log.debug("Checking compliance status for consumer: {} on date: {}", consumer.uuid,
+            onDate);
+
+        // Track the stack IDs we've already checked to save some time:
+        Set<String> compliantStackIds = new HashSet<String>();
+        Set<String> nonCompliantStackIds = new HashSet<String>();
+        Map<Entitlement, Coverage> entCoverage = new IdentityHashMap<Entitlement, Coverage>();
+
+        List<Entitlement> entitlementsOnDate = filterEntitlementsByDate(entitlements, onDate);
+        for (Entitlement e : entitlementsOnDate) {
+            List<String> relevantPids = consumer.findRelevantPids(e.getPool());
+
+            boolean partiallyStacked = false;
+            boolean entIsStacked = isStacked(e.getPool());
+            if (entIsStacked) {
+                String stackId = getProductAttribute(e.getPool(), STACKING_ID_ATTRIBUTE);
+                // A stacking_id of "0" is unset, the rules then key the stack as "null":
+                String stackKey = String.valueOf(stackId);
+                if (nonCompliantStackIds.contains(stackId)) {
+                    partiallyStacked = true;
+                    compStatus.status.addPartialStack(stackKey, e);
+                }
+                else if (!compliantStackIds.contains(stackId)) {
+                    Coverage stackCoverage = getStackCoverage(consumer, stackId,
+                        entitlementsOnDate);
+                    if (!stackCoverage.covered) {
+                        partiallyStacked = true;
+                        compStatus.status.addPartialStack(stackKey, e);
+                        nonCompliantStackIds.add(stackId);
+                        compStatus.addReasons(stackCoverage);
+                    }
+                    else {
+                        compliantStackIds.add(stackId);
+                    }
+                }
+            }
+
+            // If we have no installed products and the entitlement
+            // is partially covered, we want the system to be partial.
+            if (relevantPids.isEmpty() && !entIsStacked) {
+                Coverage coverage = getCachedCoverage(entCoverage, consumer, e,
+                    entitlementsOnDate);
+                if (!coverage.covered) {
+                    compStatus.addReasons(coverage);
+                }
+            }
+
+            // If the consumer has an entitlement from a pool marked
+            // unmapped_guests_only it can only hope to be yellow
+            if ("true".equalsIgnoreCase(getAttribute(e.getPool(), UNMAPPED_GUESTS_ONLY))) {
+                compStatus.addReason(buildUnmappedEntitlementReason(e.getId()));
+            }
+
+            for (String relevantPid : relevantPids) {
+                if (partiallyStacked) {
+                    compStatus.status.addPartiallyCompliantProduct(relevantPid, e);
+                    continue;
+                }
+
+                Coverage coverage = getCachedCoverage(entCoverage, consumer, e,
+                    entitlementsOnDate);
+                if (!coverage.covered && !entIsStacked) {
+                    compStatus.status.addPartiallyCompliantProduct(relevantPid, e);
+                    compStatus.addReasons(coverage);
+                }
+                else {
+                    compStatus.status.addCompliantProduct(relevantPid, e);
+                }
+            }
+        }
+
+        // A product covered by a regular entitlement is not partially compliant, even
+        // if a partial stack provides it as well. The stack stays in partial stacks.
+        Map<String, Set<Entitlement>> partial = compStatus.status.getPartiallyCompliantProducts();
+        for (Iterator<String> it = partial.keySet().iterator(); it.hasNext();) {
+            if (compStatus.status.getCompliantProducts().containsKey(it.next())) {
+                it.remove();
+            }
+        }
+
+        for (String installedPid : consumer.installedPids) {
+            if (!compStatus.status.getCompliantProducts().containsKey(installedPid) &&
+                !partial.containsKey(installedPid)) {
+                compStatus.status.addNonCompliantProduct(installedPid);
+                compStatus.addReason(buildInstalledProductReason(installedPid));
+            }
+        }
+        return compStatus;
+    }
+
+    private Coverage getCachedCoverage(Map<Entitlement, Coverage> cache, ConsumerView consumer,
+        Entitlement ent, List<Entitlement> entitlements) {
+        Coverage coverage = cache.get(ent);
+        if (coverage == null) {
+            coverage = getEntitlementCoverage(consumer, ent, entitlements);
+            cache.put(ent, coverage);
+        }
+        return coverage;
+    }
+
+    private Date determineCompliantUntilDate(ConsumerView consumer,
+        List<Entitlement> entitlements, Date startDate) {
+        if (consumer.installedPids.isEmpty()) {
+            return null;
+        }
+
+        List<Long> dates = new ArrayList<Long>();
+        for (Entitlement ent : entitlements) {
+            for (String pid : consumer.installedPids) {
+                if (consumer.provides(ent.getPool(), pid)) {
+                    dates.add(time(ent.getEndDate()));
+                    break;
+                }
+            }
+        }
+        Collections.sort(dates);
+
+        long lastDate = startDate.getTime();
+        for (Long endDate : dates) {
+            // Ignore past dates and duplicates
+            if (endDate <= lastDate) {
+                continue;
+            }
+
+            // Need to check if we are still compliant after the end date,
+            // so we add one second.
+            lastDate = endDate + 1000L;
+            Date dateToCheck = new Date(lastDate);
+            if (!getStatusOnDate(consumer, entitlements, dateToCheck).isCompliant()) {
+                return dateToCheck;
+            }
+        }
+        return null;
+    }
+
+    private List<Entitlement> filterEntitlementsByDate(List<Entitlement> entitlements,
+        Date date) {
+        List<Entitlement> filtered = new ArrayList<Entitlement>(entitlements.size());
+        long onDate = date.getTime();
+        for (Entitlement ent : entitlements) {
+            if (time(ent.getStartDate()) <= onDate && time(ent.getEndDate()) >= onDate) {
+                filtered.add(ent);
+            }
+        }
+        return filtered;
+    }
+
+    private Coverage getStackCoverage(ConsumerView consumer, String stackId,
+        List<Entitlement> entitlements) {
+        Tracker tracker = new Tracker(consumer, stackId);
+        for (Entitlement ent : entitlements) {
+            if (isStacked(ent.getPool()) &&
+                jsEquals(getProductAttribute(ent.getPool(), STACKING_ID_ATTRIBUTE), stackId)) {
+                tracker.updateAccumulatedFromEnt(ent);
+            }
+        }
+        return getCoverage(tracker, consumer, entitlements);
+    }
+
+    private Coverage getEntitlementCoverage(ConsumerView consumer, Entitlement ent,
+        List<Entitlement> entitlements) {
+        Tracker tracker = new Tracker(consumer, null);
+        tracker.updateAccumulatedFromEnt(ent);
+        return getCoverage(tracker, consumer, entitlements);
+    }
+
+    private Coverage getCoverage(Tracker tracker, ConsumerView consumer,
+        List<Entitlement> entitlements) {
+        // Global attributes are accumulated across every entitlement of the consumer:
+        if (tracker.enforces(GUEST_LIMIT_ATTRIBUTE)) {
+            tracker.accumulated.put(GUEST_LIMIT_ATTRIBUTE, globalGuestLimit(entitlements));
+        }
+
+        Coverage coverage = new Coverage();
+        for (String attr : consumer.complianceAttributes) {
+            // if the value doesn't exist we do not enforce it.
+            if (!tracker.enforces(attr)) {
+                continue;
+            }
+
+            ComplianceReason reason;
+            if (ARCH_ATTRIBUTE.equals(attr)) {
+                reason = checkArch(tracker, consumer);
+            }
+            else {
+                reason = checkQuantity(tracker, attr, consumer);
+            }
+
+            if (reason != null) {
+                coverage.reasons.add(reason);
+            }
+        }
+        coverage.covered = coverage.reasons.isEmpty();
+        return coverage;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ComplianceReason checkArch(Tracker tracker, ConsumerView consumer) {
+        List<String> supportedArchs = (List<String>) tracker.accumulated.get(ARCH_ATTRIBUTE);
+        String consumerArch = consumer.facts.get(ARCH_FACT);
+        for (String archString : supportedArchs) {
+            if (!architectureMatches(archString, consumerArch, consumer.typeLabel)) {
+                return buildReason(ARCH_ATTRIBUTE, tracker, consumerArch, archString);
+            }
+        }
+        return null;
+    }
+
+    private ComplianceReason checkQuantity(Tracker tracker, String attr, ConsumerView consumer) {
+        Object consumerQuantity = consumer.getFact(attr);
+        Object sourceValue = tracker.accumulated.get(attr);
+
+        boolean covered = parseInt(sourceValue) >= toNumber(consumerQuantity);
+        if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+            // -1 is unlimited
+            covered = covered || toNumber(sourceValue) == -1;
+        }
+
+        if (!covered) {
+            return buildReason(attr, tracker, consumerQuantity, sourceValue);
+        }
+        return null;
+    }
+
+    private Object globalGuestLimit(List<Entitlement> entitlements) {
+        Double total = null;
+        for (Entitlement ent : entitlements) {
+            String value = getProductAttribute(ent.getPool(), GUEST_LIMIT_ATTRIBUTE);
+            if (value != null) {
+                if (total == null) {
+                    total = 0.0;
+                }
+                double poolValue = parseInt(value);
+                if (poolValue == -1) {
+                    return poolValue;
+                }
+                if (poolValue > total) {
+                    total = poolValue;
+                }
+            }
+        }
+        return total;
+    }
+
+    static boolean architectureMatches(String productArchStr, String consumerUnameMachine,
+        String consumerType) {
+        // Non-system consumers without an architecture fact can pass this rule
+        // regardless what arch the product requires.
+        boolean noArch = consumerUnameMachine == null || consumerUnameMachine.length() == 0;
+        if (noArch && !"system".equals(consumerType)) {
+            return true;
+        }
+
+        if (productArchStr != null) {
+            List<String> supportedArches = new ArrayList<String>(
+                Arrays.asList(productArchStr.toUpperCase().split(",", -1)));
+            if (supportedArches.contains("X86")) {
+                supportedArches.add("I386");
+                supportedArches.add("I586");
+                supportedArches.add("I686");
+            }
+
+            if (!supportedArches.contains("ALL") && (noArch ||
+                !supportedArches.contains(consumerUnameMachine.toUpperCase()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ComplianceReason buildReason(String attr, Tracker tracker, Object has,
+        Object covered) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey(attr.toUpperCase());
+        reason.setMessage(reason.getKey());
+        reason.getAttributes().put("has", jsonValue(has));
+        reason.getAttributes().put("covered", jsonValue(covered));
+        reason.getAttributes().put(tracker.isStack ? "stack_id" : "entitlement_id", tracker.id);
+        return reason;
+    }
+
+    private static ComplianceReason buildInstalledProductReason(String installedPid) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey("NOTCOVERED");
+        reason.setMessage(reason.getKey());
+        reason.getAttributes().put("product_id", installedPid);
+        return reason;
+    }
+
+    private static ComplianceReason buildUnmappedEntitlementReason(String entId) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey("UNMAPPEDGUEST");
+        reason.setMessage(reason.getKey());
+        reason.getAttributes().put("entitlement_id", entId);
+        return reason;
+    }
+
+    /*
+     * Pool attribute lookups, matching createPool() in the rules. An attribute
+     * with a value of "0" is considered not set.
+     */
+
+    private static String findPoolAttribute(Pool pool, String name) {
+        for (PoolAttribute attr : pool.getAttributes()) {
+            if (name.equals(attr.getName())) {
+                return attrValue(attr.getValue());
+            }
+        }
+        return null;
+    }
+
+    private static String findProductAttribute(Pool pool, String name) {
+        for (ProductAttribute attr : pool.getProductAttributes()) {
+            if (name.equals(attr.getName())) {
+                return attrValue(attr.getValue());
+            }
+        }
+        return null;
+    }
+
+    private static String attrValue(String value) {
+        return "0".equals(value) ? null : value;
+    }
+
+    static String getAttribute(Pool pool, String name) {
+        String value = findPoolAttribute(pool, name);
+        return value != null ? value : findProductAttribute(pool, name);
+    }
+
+    static String getProductAttribute(Pool pool, String name) {
+        String value = findProductAttribute(pool, name);
+        return value != null ? value : findPoolAttribute(pool, name);
+    }
+
+    static boolean isStacked(Pool pool) {
+        for (ProductAttribute attr : pool.getProductAttributes()) {
+            if (STACKING_ID_ATTRIBUTE.equals(attr.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long time(Date date) {
+        return date == null ? 0L : date.getTime();
+    }
+
+    private static boolean jsEquals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /*
+     * Javascript number semantics. Consumer facts and product attributes are
+     * strings, the rules coerce them with parseInt() or implicitly through
+     * relational operators.
+     */
+
+    static double toNumber(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        String str = value.toString().trim();
+        if (str.length() == 0) {
+            return 0;
+        }
+        if (str.startsWith("0x") || str.startsWith("0X")) {
+            try {
+                return Long.parseLong(str.substring(2), 16);
+            }
+            catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        if ("Infinity".equals(str) || "+Infinity".equals(str)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if ("-Infinity".equals(str)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (!JS_DECIMAL.matcher(str).matches()) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(str);
+    }
+
+    static double parseInt(Object value) {
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return Double.NaN;
+            }
+            return d < 0 ? Math.ceil(d) : Math.floor(d);
+        }
+
+        String str = String.valueOf(value).trim();
+        int i = 0;
+        boolean negative = false;
+        if (i < str.length() && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+            negative = str.charAt(i) == '-';
+            i++;
+        }
+
+        int radix = 10;
+        if (str.startsWith("0x", i) || str.startsWith("0X", i)) {
+            radix = 16;
+            i += 2;
+        }
+
+        double result = 0;
+        int start = i;
+        for (; i < str.length(); i++) {
+            int digit = Character.digit(str.charAt(i), radix);
+            if (digit < 0) {
+                break;
+            }
+            result = result * radix + digit;
+        }
+        if (i == start) {
+            return Double.NaN;
+        }
+        return negative ? -result : result;
+    }
+
+    private static int toInt32(Object value) {
+        double d = value instanceof Number ? ((Number) value).doubleValue() : 0;
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return 0;
+        }
+        return (int) (long) d;
+    }
+
+    /*
+     * Renders a value the way it comes back from the rules as a reason attribute.
+     */
+    private static String jsonValue(Object value) {
+        if (!(value instanceof Number)) {
+            return value == null ? null : value.toString();
+        }
+
+        double d = ((Number) value).doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return null;
+        }
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+            return Long.toString((long) d);
+        }
+        return Double.toString(d);
+    }
+
+    /**
+     * The consumer as seen by the rules, with computed fact values memoized for the
+     * duration of a single check.
+     */
+    private static class ConsumerView {
+        private final String uuid;
+        private final Map<String, String> facts;
+        private final List<String> installedPids;
+        private final List<GuestId> guestIds;
+        private final String typeLabel;
+        private final boolean guest;
+        private final List<String> complianceAttributes;
+        private final Map<String, Object> factValues = new HashMap<String, Object>();
+        private final Map<Pool, Set<String>> poolProducts = new IdentityHashMap<Pool, Set<String>>();
+
+        ConsumerView(Consumer consumer) {
+            this.uuid = consumer.getUuid();
+            this.facts = consumer.getFacts() == null ?
+                new HashMap<String, String>() : consumer.getFacts();
+            this.installedPids = new ArrayList<String>();
+            if (consumer.getInstalledProducts() != null) {
+                for (ConsumerInstalledProduct cip : consumer.getInstalledProducts()) {
+                    installedPids.add(cip.getProductId());
+                }
+            }
+            this.guestIds = consumer.getGuestIds();
+            this.typeLabel = consumer.getType() == null ? null : consumer.getType().getLabel();
+            String isGuest = facts.get(IS_VIRT_GUEST_FACT);
+            this.guest = isGuest != null && "true".equalsIgnoreCase(isGuest);
+            this.complianceAttributes = guest ? VIRT_ATTRIBUTES : PHYSICAL_ATTRIBUTES;
+        }
+
+        boolean provides(Pool pool, String productId) {
+            Set<String> products = poolProducts.get(pool);
+            if (products == null) {
+                products = new HashSet<String>();
+                products.add(pool.getProductId());
+                for (ProvidedProduct provided : pool.getProvidedProductDtos()) {
+                    products.add(provided.getProductId());
+                }
+                poolProducts.put(pool, products);
+            }
+            return products.contains(productId);
+        }
+
+        List<String> findRelevantPids(Pool pool) {
+            List<String> relevant = new ArrayList<String>();
+            for (String pid : installedPids) {
+                if (provides(pool, pid)) {
+                    relevant.add(pid);
+                }
+            }
+            return relevant;
+        }
+
+        /*
+         * The FactValueCalculator: returns the raw fact string or a computed number.
+         */
+        Object getFact(String attr) {
+            if (factValues.containsKey(attr)) {
+                return factValues.get(attr);
+            }
+
+            Object value;
+            if (RAM_ATTRIBUTE.equals(attr)) {
+                double ramGb = parseInt(rawFact(attr)) / 1024 / 1024;
+                value = Double.isNaN(ramGb) ? ramGb : Math.floor(ramGb + 0.5);
+            }
+            else if (CORES_ATTRIBUTE.equals(attr)) {
+                value = toNumber(rawFact(attr)) * toNumber(getFact(SOCKETS_ATTRIBUTE));
+            }
+            else if (VCPU_ATTRIBUTE.equals(attr)) {
+                value = getFact(CORES_ATTRIBUTE);
+            }
+            else if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+                value = (double) countActiveGuests();
+            }
+            else {
+                value = rawFact(attr);
+            }
+            factValues.put(attr, value);
+            return value;
+        }
+
+        private Object rawFact(String attr) {
+            String value = facts.get(ATTRIBUTES_TO_CONSUMER_FACTS.get(attr));
+            return value != null && value.length() > 0 ? value : (Object) 1.0;
+        }
+
+        private int countActiveGuests() {
+            if (guestIds == null) {
+                return 0;
+            }
+            int active = 0;
+            for (GuestId guestId : guestIds) {
+                Map<String, String> attrs = guestId.getAttributes();
+                if (attrs != null && "libvirt".equals(attrs.get("virtWhoType")) &&
+                    "1".equals(attrs.get("active"))) {
+                    active++;
+                }
+            }
+            return active;
+        }
+    }
+
+    /**
+     * Tracks the values accumulated by an entitlement or a stack of entitlements,
+     * mapped from product attribute to the accumulated value.
+     */
+    private static class Tracker {
+        private final ConsumerView consumer;
+        private final boolean isStack;
+        private String id;
+        private boolean hasEntitlements;
+        private boolean hostRestricted;
+        private final Map<String, Object> accumulated = new HashMap<String, Object>();
+
+        Tracker(ConsumerView consumer, String id) {
+            this.consumer = consumer;
+            this.id = id;
+            this.isStack = id != null;
+        }
+
+        boolean enforces(String attr) {
+            // Guests are not subjected to RAM/vcpu limitations if using a
+            // host-restricted sub-pool.
+            if (hostRestricted && consumer.guest && UNCHECKED_WHEN_HOST_RESTRICTED.contains(attr)) {
+                return false;
+            }
+            return accumulated.containsKey(attr);
+        }
+
+        void updateAccumulatedFromEnt(Entitlement ent) {
+            if (!isStack && !hasEntitlements) {
+                id = ent.getId();
+            }
+            hasEntitlements = true;
+
+            // If quantity is > 1 but the entitlement is not stacked
+            // only calculate compliance for quantity 1
+            double quantity = ent.getQuantity() == null ? 0 : ent.getQuantity();
+            if (!isStacked(ent.getPool()) && quantity > 1) {
+                quantity = 1;
+            }
+            updateAccumulatedFromPool(ent.getPool(), quantity);
+        }
+
+        void updateAccumulatedFromPool(Pool pool, double quantity) {
+            String requiresHost = getAttribute(pool, REQUIRES_HOST_ATTRIBUTE);
+            if (requiresHost != null && requiresHost.length() > 0) {
+                hostRestricted = true;
+            }
+
+            for (String attr : consumer.complianceAttributes) {
+                String poolValue = getProductAttribute(pool, attr);
+                if (poolValue != null) {
+                    Object stackValue = enforces(attr) ? accumulated.get(attr) : null;
+                    accumulated.put(attr, accumulate(attr, stackValue, poolValue, pool, quantity));
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object accumulate(String attr, Object stackValue, String poolValue, Pool pool,
+            double quantity) {
+            if (ARCH_ATTRIBUTE.equals(attr)) {
+                List<String> archs = stackValue == null ?
+                    new ArrayList<String>() : (List<String>) stackValue;
+                archs.add(poolValue);
+                return archs;
+            }
+            if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+                // Value doesn't matter, it only needs to be enforced
+                return -1.0;
+            }
+            if (SOCKETS_ATTRIBUTE.equals(attr)) {
+                double increment = parseInt(getProductAttribute(pool, INSTANCE_ATTRIBUTE));
+                if (Double.isNaN(increment) || increment == 0) {
+                    increment = 1;
+                }
+                // use lowest quantity evenly divisible by the instance multiplier
+                double adjustedQuantity = quantity - (quantity % increment);
+                return toInt32(stackValue) + (parseInt(poolValue) * adjustedQuantity) / increment;
+            }
+            return toInt32(stackValue) + parseInt(poolValue) * quantity;
+        }
+    }
+
+    /**
+     * Whether a tracker covers the consumer, and the reasons if it does not.
+     */
+    private static class Coverage {
+        private boolean covered;
+        private final List<ComplianceReason> reasons = new ArrayList<ComplianceReason>();
+    }
+
+    /**
+     * Wraps the status being built, keeping the rules' notion of compliance: no
+     * non-compliant and no partially compliant products.
+     */
+    private static class StatusBuilder {
+        private final ComplianceStatus status;
+
+        StatusBuilder(Date date) {
+            this.status = new ComplianceStatus(date);
+        }
+
+        void addReason(ComplianceReason reason) {
+            status.getReasons().add(reason);
+        }
+
+        void addReasons(Coverage coverage) {
+            // Every occurrence gets its own reason, as the rules build a new one each time:
+            for (ComplianceReason reason : coverage.reasons) {
+                ComplianceReason copy = new ComplianceReason();
+                copy.setKey(reason.getKey());
+                copy.setMessage(reason.getMessage());
+                copy.setAttributes(new HashMap<String, String>(reason.getAttributes()));
+                addReason(copy);
+            }
+        }
+
+        boolean isCompliant() {
+            return status.getNonCompliantProducts().isEmpty() &&
+                status.getPartiallyCompliantProducts().isEmpty();
+        }
+    }
+}
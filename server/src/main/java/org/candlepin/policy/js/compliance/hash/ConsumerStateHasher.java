@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance.hash;
+
+import org.candlepin.model.Consumer;
+
+/**
+ * Creates an SHA256 hash of everything a consumer's compliance status is
+ * calculated from: facts, installed products, guests, entitlements along with
+ * their pools and products, and the version of the rules doing the calculation.
+ *
+ * Two consumers with the same hash will get the same compliance status on
+ * the same date.
+ */
+public class ConsumerStateHasher extends Hasher {
+
+    public ConsumerStateHasher(Consumer consumer, String rulesVersion) {
+        putObject(rulesVersion, HashableStringGenerators.STRING);
+        putObject(consumer, HashableStringGenerators.CONSUMER_STATE);
+    }
+
+}
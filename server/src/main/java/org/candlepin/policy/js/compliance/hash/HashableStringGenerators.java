@@ -15,12 +15,16 @@
 
 package org.candlepin.policy.js.compliance.hash;
 
+import org.candlepin.model.Attribute;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
 import org.candlepin.model.Pool;
+import org.candlepin.model.ProvidedProduct;
 import org.candlepin.policy.js.compliance.ComplianceReason;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -45,6 +49,11 @@ public class HashableStringGenerators {
     public static final ConsumerGenerator CONSUMER = new ConsumerGenerator();
     public static final ConsumerInstalledProductGenerator INSTALLED_PRODUCT =
         new ConsumerInstalledProductGenerator();
+    public static final ConsumerStateGenerator CONSUMER_STATE = new ConsumerStateGenerator();
+    public static final EntitlementStateGenerator ENTITLEMENT_STATE =
+        new EntitlementStateGenerator();
+    public static final AttributeGenerator ATTRIBUTE = new AttributeGenerator();
+    public static final GuestIdGenerator GUEST_ID = new GuestIdGenerator();
 
 
     private HashableStringGenerators() {
@@ -239,4 +248,108 @@ public class HashableStringGenerators {
 
     }
 
+    /**
+     * Generates a String from everything about a {@link Consumer} that compliance is
+     * calculated from, intended for use in a hash of the consumer's state.
+     */
+    private static class ConsumerStateGenerator implements HashableStringGenerator<Consumer> {
+
+        @Override
+        public String generate(Consumer target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getUuid();
+            generated += target.getType() == null ? null : target.getType().getLabel();
+            if (target.getFacts() != null) {
+                generated += generateFromCollection(target.getFacts().entrySet(), STRING_ENTRY);
+            }
+            if (target.getInstalledProducts() != null) {
+                // Product names end up in the status reason messages:
+                List<String> installed = new ArrayList<String>();
+                for (ConsumerInstalledProduct product : target.getInstalledProducts()) {
+                    installed.add(generateFromObject(product, INSTALLED_PRODUCT) +
+                        product.getProductName());
+                }
+                generated += generateFromCollection(installed, STRING);
+            }
+            generated += generateFromCollection(target.getGuestIds(), GUEST_ID);
+            generated += generateFromCollection(target.getEntitlements(), ENTITLEMENT_STATE);
+            return generated;
+        }
+
+    }
+
+    /**
+     * Generates a string from an {@link Entitlement}, including its dates and the
+     * attributes of its pool and product, intended for use in a hash.
+     */
+    private static class EntitlementStateGenerator implements HashableStringGenerator<Entitlement> {
+
+        @Override
+        public String generate(Entitlement target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = generateFromObject(target, ENTITLEMENT);
+            generated += getTime(target.getStartDate()) + "-" + getTime(target.getEndDate());
+
+            Pool pool = target.getPool();
+            if (pool != null) {
+                generated += pool.getProductId() + pool.getProductName();
+                generated += generateFromCollection(
+                    new ArrayList<Attribute>(pool.getAttributes()), ATTRIBUTE);
+                generated += generateFromCollection(
+                    new ArrayList<Attribute>(pool.getProductAttributes()), ATTRIBUTE);
+
+                List<String> provided = new ArrayList<String>();
+                for (ProvidedProduct product : pool.getProvidedProductDtos()) {
+                    provided.add(product.getProductId());
+                }
+                generated += generateFromCollection(provided, STRING);
+            }
+            return generated;
+        }
+
+        private Long getTime(Date date) {
+            return date == null ? null : date.getTime();
+        }
+
+    }
+
+    /**
+     * Generates a string from an {@link Attribute} intended for use in a hash.
+     */
+    private static class AttributeGenerator implements HashableStringGenerator<Attribute> {
+
+        @Override
+        public String generate(Attribute target) {
+            return target == null ? null : target.getName() + "=" + target.getValue() + ";";
+        }
+
+    }
+
+    /**
+     * Generates a string from a {@link GuestId} and its attributes intended for use in a hash.
+     */
+    private static class GuestIdGenerator implements HashableStringGenerator<GuestId> {
+
+        @Override
+        public String generate(GuestId target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getGuestId();
+            if (target.getAttributes() != null) {
+                generated += generateFromCollection(target.getAttributes().entrySet(),
+                    STRING_ENTRY);
+            }
+            return generated;
+        }
+
+    }
+
 }
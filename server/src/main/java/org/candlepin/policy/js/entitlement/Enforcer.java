@@ -20,7 +20,9 @@ import org.candlepin.model.Pool;
 import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.pool.PoolHelper;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Enforces the entitlement rules definitions.
@@ -87,6 +89,19 @@ public interface Enforcer {
     ValidationResult preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity, CallerType caller);
 
+    /**
+     * Run pre-entitlement checks for a number of pools at once, with a quantity
+     * of one each. Equivalent to calling preEntitlement for every pool, but the
+     * consumer is only handed to the rules once.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param pools Entitlement pools to potentially consume from.
+     * @param caller the context calling the rules.
+     * @return the validation result of each pool, keyed by pool ID.
+     */
+    Map<String, ValidationResult> preEntitlement(Consumer consumer, Collection<Pool> pools,
+        CallerType caller);
+
     /**
      * @param consumer Consumer who wishes to consume an entitlement.
      * @param pools Entitlement pools to potentially consume from.
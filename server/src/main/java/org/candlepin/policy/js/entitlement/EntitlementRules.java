@@ -33,6 +33,7 @@ import com.google.inject.Inject;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -102,7 +103,8 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
     }
 
     @Override
-    public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
+    public Map<String, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, CallerType caller) {
         JsonJsContext args = new JsonJsContext(objectMapper);
         args.put("consumer", consumer);
         args.put("hostConsumer", consumer.hasFact("virt.uuid") ?
@@ -111,7 +113,7 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         args.put("consumerEntitlements", consumer.getEntitlements());
         args.put("standalone", config.getBoolean(ConfigProperties.STANDALONE));
         args.put("pools", pools);
-        args.put("caller", CallerType.LIST_POOLS.getLabel());
+        args.put("caller", caller.getLabel());
         args.put("log", log, false);
 
         String json = jsRules.runJsFunction(String.class, "validate_pools_list", args);
@@ -125,10 +127,20 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
             throw new RuleExecutionException(e);
         }
 
+        for (Pool pool : pools) {
+            finishValidation(resultMap.get(pool.getId()), pool, 1);
+        }
+        return resultMap;
+    }
+
+    @Override
+    public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
+        Map<String, ValidationResult> resultMap = preEntitlement(consumer, pools,
+            CallerType.LIST_POOLS);
+
         List<Pool> filteredPools = new LinkedList<Pool>();
         for (Pool pool : pools) {
             ValidationResult result = resultMap.get(pool.getId());
-            finishValidation(result, pool, 1);
 
             if (result.isSuccessful() && (!result.hasWarnings() || showAll)) {
                 filteredPools.add(pool);
@@ -118,6 +118,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -532,6 +533,92 @@ public class ConsumerResource {
         }
     }
 
+    /**
+     * Registers hypervisor consumers reported during a hypervisor check-in, the
+     * way {@link #create} would register each of them without activation keys or
+     * an identity certificate, but with the owner, type and service level checked
+     * once and a single flush for all of them. Unlike {@link #create}, creation
+     * events and compliance are left to the caller, which handles them in bulk
+     * once the check-in has been applied.
+     * <p>
+     * Each consumer is validated before anything is persisted, those failing
+     * validation are left out and returned. Failing to persist the others is not
+     * caught, the caller's transaction has to be rolled back then.
+     *
+     * @param consumers new hypervisor consumers
+     * @param principal principal performing the check-in
+     * @param owner owner the hypervisors are created in
+     * @return the consumers which were not registered, with the reason why
+     */
+    @Transactional
+    public Map<Consumer, String> createHypervisors(List<Consumer> consumers,
+        Principal principal, Owner owner) {
+        Map<Consumer, String> failed = new IdentityHashMap<Consumer, String>();
+        if (consumers.isEmpty()) {
+            return failed;
+        }
+
+        owner = setupOwner(principal, owner.getKey());
+        ConsumerType type = lookupConsumerType(ConsumerTypeEnum.HYPERVISOR.getLabel());
+
+        List<Consumer> valid = new ArrayList<Consumer>(consumers.size());
+        Map<String, String> invalidLevels = new HashMap<String, String>();
+        Set<String> validLevels = new HashSet<String>();
+        for (Consumer consumer : consumers) {
+            setUserName(consumer, principal, null);
+            consumer.setOwner(owner);
+            consumer.setType(type);
+            consumer.setAutoheal(true);
+            if (consumer.getServiceLevel() == null) { consumer.setServiceLevel(""); }
+            if (consumer.getServiceLevel().equals("") &&
+                owner.getDefaultServiceLevel() != null) {
+                consumer.setServiceLevel(owner.getDefaultServiceLevel());
+            }
+
+            String level = consumer.getServiceLevel();
+            String reason = invalidLevels.get(level);
+            if (reason == null && !validLevels.contains(level)) {
+                try {
+                    consumerBindUtil.validateServiceLevel(owner, level);
+                    validLevels.add(level);
+                }
+                catch (BadRequestException e) {
+                    reason = e.getMessage();
+                    invalidLevels.put(level, reason);
+                }
+            }
+            if (reason == null) {
+                try {
+                    checkConsumerName(consumer);
+                }
+                catch (BadRequestException e) {
+                    reason = e.getMessage();
+                }
+            }
+            if (reason != null) {
+                log.warn("Hypervisor consumer {} not created: {}", consumer.getName(), reason);
+                failed.put(consumer, reason);
+                continue;
+            }
+
+            consumer.setCanActivate(subAdapter.canActivateSubscription(consumer));
+            updateCapabilities(consumer, null);
+            if (consumer.getGuestIds() != null) {
+                for (GuestId g : consumer.getGuestIds()) {
+                    g.setConsumer(consumer);
+                }
+            }
+            if (consumer.getHypervisorId() != null) {
+                consumer.getHypervisorId().setConsumer(consumer);
+            }
+            valid.add(consumer);
+        }
+
+        consumerCurator.createAll(valid);
+        log.info("{} hypervisor consumers created in org {}", valid.size(), owner.getKey());
+        return failed;
+    }
+
     private List<ActivationKey>  checkActivationKeys(Principal principal, Owner owner,
             Set<String> keyStrings) throws BadRequestException {
         List<ActivationKey> keys = new ArrayList<ActivationKey>();
@@ -624,12 +711,12 @@ public class ConsumerResource {
     }
 
     /**
-     * @param consumer
-     * @param principal
-     * @param userName
-     * @return a String object
+     * Checks the consumer's name can go into its identity certificate.
+     *
+     * @param consumer consumer with the name to check, a null name is allowed
+     * @throws BadRequestException if the name is not valid
      */
-    private void checkConsumerName(Consumer consumer) {
+    public void checkConsumerName(Consumer consumer) {
         // for now this applies to both types consumer
         if (consumer.getName() != null &&
             consumer.getName().indexOf('#') == 0) {
@@ -960,6 +1047,7 @@ public class ConsumerResource {
             toUpdate.setUpdated(new Date());
 
             // this should update compliance on toUpdate, but not call the curator
+            complianceRules.invalidateStatus(toUpdate);
             complianceRules.getStatus(toUpdate, null, false, false);
 
             Event event = eventBuilder.setNewEntity(toUpdate).buildEvent();
@@ -1246,6 +1334,7 @@ public class ConsumerResource {
         Event event = eventFactory.consumerDeleted(toDelete);
         consumerCurator.delete(toDelete);
         identityCertService.deleteIdentityCert(toDelete);
+        complianceRules.invalidateStatus(toDelete);
         sink.queueEvent(event);
     }
 
@@ -2063,14 +2152,7 @@ public class ConsumerResource {
             List<String> uuids) {
         List<Consumer> consumers = uuids == null ? new LinkedList<Consumer>() :
             consumerCurator.findByUuids(uuids);
-        Map<String, ComplianceStatus> results = new HashMap<String, ComplianceStatus>();
-
-        for (Consumer consumer : consumers) {
-            ComplianceStatus status = complianceRules.getStatus(consumer, null);
-            results.put(consumer.getUuid(), status);
-        }
-
-        return results;
+        return complianceRules.getStatuses(consumers);
     }
 
     private void addDataToInstalledProducts(Consumer consumer) {
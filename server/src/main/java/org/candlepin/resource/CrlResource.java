@@ -46,6 +46,9 @@ import javax.ws.rs.core.MediaType;
 @Path("/crl")
 public class CrlResource {
 
+    // CRLs are valid for a day, they are signed again after half of that:
+    private static final long CRL_MAX_AGE = 12 * 60 * 60 * 1000L;
+
     private CrlGenerator crlGenerator;
     private CrlFileUtil crlFileUtil;
     private Configuration config;
@@ -76,21 +79,62 @@ public class CrlResource {
     public String getCurrentCrl(@Context Principal principal)
         throws CRLException, IOException {
 
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
+        File crlFile = new File(getCrlFilePath());
+        return new String(getCrlBytes(crlFile));
+    }
+
+    /**
+     * Retrieves the delta Certificate Revocation List, listing the changes since
+     * the last complete CRL published by the CRL job
+     *
+     * @return a String object
+     * @throws CRLException if there is issue generating the CRL
+     * @throws IOException if there is a problem serializing the CRL
+     * @httpcode 200
+     */
+    @GET
+    @Path("delta")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
+    public String getDeltaCrl(@Context Principal principal)
+        throws CRLException, IOException {
 
-        byte[] encoded = null;
+        File crlFile = new File(getCrlFilePath());
 
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            encoded = crlFileUtil.writeCRLFile(crlFile, crl);
+            // Writing a new complete CRL drops the delta of the previous one:
+            getCrlBytes(crlFile);
+            File deltaFile = crlFileUtil.getDeltaFile(crlFile);
+            if (deltaFile.length() > 0) {
+                return new String(crlFileUtil.readCRLBytes(deltaFile));
+            }
+
+            File baseFile = crlFileUtil.getBaseFile(crlFile);
+            if (baseFile.length() == 0) {
+                crlFileUtil.publishBaseCRLFile(crlFile);
+            }
+            X509CRL base = crlFileUtil.readCRLFile(baseFile);
+            X509CRL current = crlFileUtil.readCRLFile(crlFile);
+            X509CRL delta = crlGenerator.createDeltaCRL(base, current);
+            return new String(crlFileUtil.writeDeltaCRLFile(crlFile, delta));
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
+    }
+
+    /*
+     * The CRL file is served as it is while it lists all revocations and is not
+     * about to expire, otherwise it is synchronized and signed again.
+     */
+    private byte[] getCrlBytes(File crlFile) throws IOException {
+        if (crlFile.length() > 0 &&
+            System.currentTimeMillis() - crlFile.lastModified() < CRL_MAX_AGE &&
+            !crlGenerator.hasPendingChanges()) {
+            return crlFileUtil.readCRLBytes(crlFile);
+        }
 
-        return new String(encoded);
+        crlFileUtil.syncCRLFile(crlFile, crlGenerator);
+        return crlFileUtil.readCRLBytes(crlFile);
     }
 
     /**
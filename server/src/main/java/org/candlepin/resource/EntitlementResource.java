@@ -38,6 +38,7 @@ import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.Enforcer.CallerType;
 import org.candlepin.policy.js.entitlement.EntitlementRulesTranslator;
 import org.candlepin.resource.util.EntitlementFinderUtil;
+import org.candlepin.resource.util.StreamedResultsUtil;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.util.Util;
@@ -55,6 +56,7 @@ import org.xnap.commons.i18n.I18n;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
@@ -146,7 +148,7 @@ public class EntitlementResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Paginate
-    public List<Entitlement> listAllForConsumer(
+    public Iterator<Entitlement> listAllForConsumer(
         @QueryParam("consumer") String consumerUuid,
         @QueryParam("matches") String matches,
         @QueryParam("attribute") @CandlepinParam(type = KeyValueParameter.class)
@@ -154,14 +156,25 @@ public class EntitlementResource {
         @Context PageRequest pageRequest) {
 
         EntitlementFilterBuilder filters = EntitlementFinderUtil.createFilter(matches, attrFilters);
-        Page<List<Entitlement>> p;
+        Consumer consumer = null;
         if (consumerUuid != null) {
-
-            Consumer consumer = consumerCurator.findByUuid(consumerUuid);
+            consumer = consumerCurator.findByUuid(consumerUuid);
             if (consumer == null) {
                 throw new BadRequestException(
                     i18n.tr("Unit with ID ''{0}'' could not be found.", consumerUuid));
             }
+        }
+
+        if (StreamedResultsUtil.isStreamed(pageRequest)) {
+            ResteasyProviderFactory.pushContext(Page.class,
+                StreamedResultsUtil.streamedPage(pageRequest));
+            return consumer != null ?
+                entitlementCurator.iterateByConsumer(consumer, null, filters, pageRequest) :
+                entitlementCurator.iterateAll(filters, pageRequest);
+        }
+
+        Page<List<Entitlement>> p;
+        if (consumer != null) {
             p = entitlementCurator.listByConsumer(consumer, null, filters, pageRequest);
         }
         else {
@@ -170,7 +183,7 @@ public class EntitlementResource {
 
         // Store the page for the LinkHeaderResponseFilter
         ResteasyProviderFactory.pushContext(Page.class, p);
-        return p.getPageData();
+        return p.getPageData().iterator();
     }
 
     /**
@@ -22,15 +22,15 @@ import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotFoundException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
-import org.candlepin.model.ConsumerType;
-import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.candlepin.model.GuestId;
-import org.candlepin.model.HypervisorId;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.VirtConsumerMap;
 import org.candlepin.pinsetter.tasks.HypervisorUpdateJob;
 import org.candlepin.resource.dto.HypervisorCheckInResult;
+import org.candlepin.resource.dto.HypervisorUpdateResult;
+import org.candlepin.resource.util.HypervisorCheckInUtil;
+import org.candlepin.resource.util.HypervisorReportCache;
 
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
@@ -40,12 +40,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
@@ -64,17 +62,20 @@ import javax.ws.rs.core.MediaType;
 public class HypervisorResource {
     private static Logger log = LoggerFactory.getLogger(HypervisorResource.class);
     private ConsumerCurator consumerCurator;
-    private ConsumerResource consumerResource;
+    private HypervisorCheckInUtil hypervisorCheckInUtil;
     private I18n i18n;
     private OwnerCurator ownerCurator;
+    private HypervisorReportCache reportCache;
 
     @Inject
-    public HypervisorResource(ConsumerResource consumerResource,
-        ConsumerCurator consumerCurator, I18n i18n, OwnerCurator ownerCurator) {
-        this.consumerResource = consumerResource;
+    public HypervisorResource(HypervisorCheckInUtil hypervisorCheckInUtil,
+        ConsumerCurator consumerCurator, I18n i18n, OwnerCurator ownerCurator,
+        HypervisorReportCache reportCache) {
+        this.hypervisorCheckInUtil = hypervisorCheckInUtil;
         this.consumerCurator = consumerCurator;
         this.i18n = i18n;
         this.ownerCurator = ownerCurator;
+        this.reportCache = reportCache;
     }
 
     /**
@@ -127,63 +128,40 @@ public class HypervisorResource {
         VirtConsumerMap hypervisorConsumersMap =
                 consumerCurator.getHostConsumersMap(owner, hostGuestMap.keySet());
 
-        Set<String> allGuestIds = new HashSet<String>();
+        Map<String, Consumer> incomingHosts = new HashMap<String, Consumer>();
         for (Entry<String, List<GuestId>> hostEntry : hostGuestMap.entrySet()) {
-            for (GuestId gid : hostEntry.getValue()) {
-                allGuestIds.add(gid.getGuestId());
-            }
+            Consumer withIds = new Consumer();
+            withIds.setGuestIds(hostEntry.getValue());
+            incomingHosts.put(hostEntry.getKey(), withIds);
         }
-        // Maps virt guest ID to registered consumer for guest, if one exists:
-        VirtConsumerMap guestConsumersMap = consumerCurator.getGuestConsumersMap(
-                owner, allGuestIds);
 
         HypervisorCheckInResult result = new HypervisorCheckInResult();
-        for (Entry<String, List<GuestId>> hostEntry : hostGuestMap.entrySet()) {
-            String hypervisorId = hostEntry.getKey();
-            try {
-                log.info("Syncing virt host: " + hypervisorId +
-                        " (" + hostEntry.getValue().size() + " guest IDs)");
-
-                boolean hostConsumerCreated = false;
-                // Attempt to find a consumer for the given hypervisorId
-                Consumer consumer = null;
+        if (!createMissing) {
+            for (String hypervisorId : hostGuestMap.keySet()) {
                 if (hypervisorConsumersMap.get(hypervisorId) == null) {
-                    if (!createMissing) {
-                        log.info("Unable to find hypervisor with id " +
-                            hypervisorId + " in org " + ownerKey);
-                        result.failed(hypervisorId, i18n.tr(
-                            "Unable to find hypervisor in org ''{0}''", ownerKey));
-                        continue;
-                    }
-                    log.info("Registering new host consumer for hypervisor ID: {}",
-                            hypervisorId);
-                    // Create new consumer
-                    consumer = createConsumerForHypervisorId(hypervisorId, owner, principal);
-                    hostConsumerCreated = true;
-                }
-                else {
-                    consumer = hypervisorConsumersMap.get(hypervisorId);
-                }
-
-                boolean guestIdsUpdated = addGuestIds(consumer, hostEntry.getValue(),
-                        guestConsumersMap);
-
-                // Populate the result with the processed consumer.
-                if (hostConsumerCreated) {
-                    result.created(consumer);
-                }
-                else if (guestIdsUpdated) {
-                    result.updated(consumer);
-                }
-                else {
-                    result.unchanged(consumer);
+                    log.info("Unable to find hypervisor with id " +
+                        hypervisorId + " in org " + ownerKey);
+                    result.failed(hypervisorId, i18n.tr(
+                        "Unable to find hypervisor in org ''{0}''", ownerKey));
                 }
             }
-            catch (Exception e) {
-                log.error("Hypervisor checkin failed", e);
-                result.failed(hypervisorId, e.getMessage());
-            }
         }
+
+        HypervisorUpdateResult checkIn = hypervisorCheckInUtil.checkIn(owner, principal,
+            incomingHosts, hypervisorConsumersMap, createMissing, null);
+        for (Consumer consumer : checkIn.getCreated()) {
+            result.created(consumer);
+        }
+        for (Consumer consumer : checkIn.getUpdated()) {
+            result.updated(consumer);
+        }
+        for (Consumer consumer : checkIn.getUnchanged()) {
+            result.unchanged(consumer);
+        }
+        result.getFailedUpdate().addAll(checkIn.getFailedUpdate());
+
+        // The hosts may no longer match the reports applied asynchronously:
+        reportCache.evict(owner.getId());
         return result;
     }
 
@@ -247,39 +225,4 @@ public class HypervisorResource {
         return owner;
     }
 
-    /*
-     * Add a list of guestIds to the given consumer,
-     * return whether or not there was any change
-     */
-    private boolean addGuestIds(Consumer consumer, List<GuestId> guestIds,
-            VirtConsumerMap guestConsumerMap) {
-        Consumer withIds = new Consumer();
-        withIds.setGuestIds(guestIds);
-        boolean guestIdsUpdated =
-            consumerResource.performConsumerUpdates(withIds, consumer,
-                    guestConsumerMap);
-        if (guestIdsUpdated) {
-            consumerCurator.update(consumer);
-        }
-        return guestIdsUpdated;
-    }
-
-    /*
-     * Create a new hypervisor type consumer to represent the incoming hypervisorId
-     */
-    private Consumer createConsumerForHypervisorId(String incHypervisorId,
-            Owner owner, Principal principal) {
-        Consumer consumer = new Consumer();
-        consumer.setName(incHypervisorId);
-        consumer.setType(new ConsumerType(ConsumerTypeEnum.HYPERVISOR));
-        consumer.setFact("uname.machine", "x86_64");
-        consumer.setGuestIds(new ArrayList<GuestId>());
-        consumer.setOwner(owner);
-        // Create HypervisorId
-        HypervisorId hypervisorId = new HypervisorId(consumer, incHypervisorId);
-        consumer.setHypervisorId(hypervisorId);
-        // Create Consumer
-        return consumerResource.create(consumer, principal, null, owner.getKey(), null, false);
-    }
-
 }
@@ -77,10 +77,13 @@ import org.candlepin.model.dto.Subscription;
 import org.candlepin.pinsetter.tasks.HealEntireOrgJob;
 import org.candlepin.pinsetter.tasks.RefreshPoolsJob;
 import org.candlepin.pinsetter.tasks.UndoImportsJob;
+import org.candlepin.policy.js.compliance.ComplianceRules;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.resource.util.CalculatedAttributesUtil;
 import org.candlepin.resource.util.EntitlementFinderUtil;
 import org.candlepin.resource.util.ResolverUtil;
 import org.candlepin.resource.util.ResourceDateParser;
+import org.candlepin.resource.util.StreamedResultsUtil;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.OwnerServiceAdapter;
@@ -115,6 +118,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -144,6 +148,7 @@ public class OwnerResource {
     private static Logger log = LoggerFactory.getLogger(OwnerResource.class);
 
     private static final int FEED_LIMIT = 1000;
+    private static final int COMPLIANCE_PAGE_SIZE = 100;
 
     private OwnerCurator ownerCurator;
     private OwnerInfoCurator ownerInfoCurator;
@@ -173,6 +178,7 @@ public class OwnerResource {
     private Configuration config;
     private ContentCurator contentCurator;
     private ResolverUtil resolverUtil;
+    private ComplianceRules complianceRules;
 
     @Inject
     public OwnerResource(OwnerCurator ownerCurator,
@@ -202,7 +208,8 @@ public class OwnerResource {
         ProductCurator productCurator,
         Configuration config,
         ContentCurator contentCurator,
-        ResolverUtil resolverUtil) {
+        ResolverUtil resolverUtil,
+        ComplianceRules complianceRules) {
 
         this.ownerCurator = ownerCurator;
         this.ownerInfoCurator = ownerInfoCurator;
@@ -232,6 +239,7 @@ public class OwnerResource {
         this.config = config;
         this.contentCurator = contentCurator;
         this.resolverUtil = resolverUtil;
+        this.complianceRules = complianceRules;
     }
 
     /**
@@ -303,7 +311,7 @@ public class OwnerResource {
     public OwnerInfo getOwnerInfo(@PathParam("owner_key")
         @Verify(value = Owner.class, subResource = SubResource.CONSUMERS) String ownerKey) {
         Owner owner = findOwner(ownerKey);
-        return ownerInfoCurator.lookupByOwner(owner);
+        return ownerInfoCurator.getOwnerInfo(owner);
     }
 
     /**
@@ -460,7 +468,7 @@ public class OwnerResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/entitlements")
     @Paginate
-    public List<Entitlement> ownerEntitlements(
+    public Iterator<Entitlement> ownerEntitlements(
         @PathParam("owner_key") @Verify(Owner.class) String ownerKey,
         @QueryParam("product") String productId,
         @QueryParam("matches") String matches,
@@ -471,13 +479,19 @@ public class OwnerResource {
         Owner owner = findOwner(ownerKey);
 
         EntitlementFilterBuilder filters = EntitlementFinderUtil.createFilter(matches, attrFilters);
+        if (StreamedResultsUtil.isStreamed(pageRequest)) {
+            ResteasyProviderFactory.pushContext(Page.class,
+                StreamedResultsUtil.streamedPage(pageRequest));
+            return entitlementCurator.iterateByOwner(owner, productId, filters, pageRequest);
+        }
+
         Page<List<Entitlement>> entitlementsPage = entitlementCurator.listByOwner(owner, productId, filters,
                 pageRequest);
 
         // Store the page for the LinkHeaderPostInterceptor
         ResteasyProviderFactory.pushContext(Page.class, entitlementsPage);
 
-        return entitlementsPage.getPageData();
+        return entitlementsPage.getPageData().iterator();
     }
 
     /**
@@ -693,7 +707,7 @@ public class OwnerResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/consumers")
     @Paginate
-    public List<Consumer> listConsumers(
+    public Iterator<Consumer> listConsumers(
             @PathParam("owner_key")
             @Verify(value = Owner.class,
                 subResource = SubResource.CONSUMERS) String ownerKey,
@@ -714,16 +728,62 @@ public class OwnerResource {
             types = consumerTypeCurator.lookupConsumerTypes(typeLabels);
         }
 
+        if (StreamedResultsUtil.isStreamed(pageRequest)) {
+            ResteasyProviderFactory.pushContext(Page.class,
+                StreamedResultsUtil.streamedPage(pageRequest));
+            return consumerCurator.iterateOwnerConsumers(owner, userName, types, uuids,
+                hypervisorIds, attrFilters, skus, subscriptionIds, contracts, pageRequest);
+        }
+
         Page<List<Consumer>> page = consumerCurator.searchOwnerConsumers(
             owner, userName, types, uuids, hypervisorIds, attrFilters, skus,
             subscriptionIds, contracts, pageRequest);
 
         // Store the page for the LinkHeaderResponseFilter
         ResteasyProviderFactory.pushContext(Page.class, page);
-        return page.getPageData();
+        return page.getPageData().iterator();
     }
 
 
+    /**
+     * Retrieves the current compliance status of the Owner's Consumers
+     * <p>
+     * Meant for reports on a whole organization, which are requested a page of
+     * consumers at a time. The consumers of a page are checked together. Without
+     * paging parameters the first page of 100 consumers is returned, the link
+     * header points to the following pages.
+     *
+     * @param ownerKey id of the owner whose consumers are checked.
+     * @return a map of consumer UUID to ComplianceStatus
+     * @httpcode 404
+     * @httpcode 200
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("{owner_key}/consumers/compliance")
+    @Paginate
+    @Transactional
+    public Map<String, ComplianceStatus> getConsumersComplianceStatus(
+        @PathParam("owner_key")
+        @Verify(value = Owner.class, subResource = SubResource.CONSUMERS) String ownerKey,
+        @Context PageRequest pageRequest) {
+        Owner owner = findOwner(ownerKey);
+        if (pageRequest == null) {
+            pageRequest = new PageRequest();
+            pageRequest.setOrder(PageRequest.DEFAULT_ORDER);
+        }
+        if (!pageRequest.isPaging() && !pageRequest.isKeyset()) {
+            pageRequest.setPage(PageRequest.DEFAULT_PAGE);
+            pageRequest.setPerPage(COMPLIANCE_PAGE_SIZE);
+        }
+        Page<List<Consumer>> page = consumerCurator.searchOwnerConsumers(
+            owner, null, null, null, null, null, null, null, null, pageRequest);
+
+        // Store the page for the LinkHeaderResponseFilter
+        ResteasyProviderFactory.pushContext(Page.class, page);
+        return complianceRules.getStatuses(page.getPageData());
+    }
+
     /**
      * Retrieves a list of Pools for an Owner
      *
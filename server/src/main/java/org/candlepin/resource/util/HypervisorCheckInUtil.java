@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resource.util;
+
+import org.candlepin.audit.Event.Target;
+import org.candlepin.audit.Event.Type;
+import org.candlepin.audit.EventBuilder;
+import org.candlepin.audit.EventFactory;
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
+import org.candlepin.common.exceptions.BadRequestException;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.HypervisorId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.VirtConsumerMap;
+import org.candlepin.policy.js.compliance.ComplianceRules;
+import org.candlepin.resource.ConsumerResource;
+import org.candlepin.resource.dto.HypervisorUpdateResult;
+
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Applies a hypervisor check-in, i.e. the guest IDs reported for each host of an
+ * owner, for {@link org.candlepin.resource.HypervisorResource} and
+ * {@link org.candlepin.pinsetter.tasks.HypervisorUpdateJob}.
+ * <p>
+ * The guest IDs of all known hosts are loaded up front and diffed against the
+ * report in memory. Missing hosts are registered together, and every change is
+ * written with a single flush so that guest ID inserts and deletes go out in
+ * JDBC batches. Compliance and events of the changed hosts are only handled once
+ * everything has been written.
+ */
+public class HypervisorCheckInUtil {
+    private static Logger log = LoggerFactory.getLogger(HypervisorCheckInUtil.class);
+
+    private ConsumerResource consumerResource;
+    private ConsumerCurator consumerCurator;
+    private ComplianceRules complianceRules;
+    private EventFactory eventFactory;
+    private EventSink sink;
+
+    @Inject
+    public HypervisorCheckInUtil(ConsumerResource consumerResource,
+        ConsumerCurator consumerCurator, ComplianceRules complianceRules,
+        EventFactory eventFactory, EventSink sink) {
+        this.consumerResource = consumerResource;
+        this.consumerCurator = consumerCurator;
+        this.complianceRules = complianceRules;
+        this.eventFactory = eventFactory;
+        this.sink = sink;
+    }
+
+    /**
+     * Brings the owner's hypervisor consumers in line with the reported hosts.
+     * Guest IDs, facts and name of a reported host are only updated when they were
+     * reported. Hosts without a consumer are registered when createMissing is set
+     * and skipped otherwise, leaving it to the caller to report them. A host reported
+     * with an invalid name is not updated and reported as failed.
+     *
+     * @param owner owner of the hypervisors
+     * @param principal principal performing the check-in
+     * @param incomingHosts reported hosts, by hypervisor ID
+     * @param hostConsumers the owner's consumers for the reported hypervisor IDs
+     * @param createMissing whether to register hosts without a consumer
+     * @param reporterId ID of the reporter of the check-in, may be null
+     * @return the created, updated and unchanged hosts, and the hosts which could
+     * not be created because they failed validation. Failing to write the check-in
+     * is not caught, so that the transaction is rolled back.
+     */
+    @Transactional
+    public HypervisorUpdateResult checkIn(Owner owner, Principal principal,
+        Map<String, Consumer> incomingHosts, VirtConsumerMap hostConsumers,
+        boolean createMissing, String reporterId) {
+        HypervisorUpdateResult result = new HypervisorUpdateResult();
+
+        List<Consumer> knownHosts = new ArrayList<Consumer>();
+        for (String hypervisorId : incomingHosts.keySet()) {
+            Consumer knownHost = hostConsumers.get(hypervisorId);
+            if (knownHost != null) {
+                knownHosts.add(knownHost);
+            }
+        }
+        consumerCurator.loadGuestIds(knownHosts);
+
+        List<Consumer> changedHosts = new ArrayList<Consumer>();
+        List<EventBuilder> changedHostEvents = new ArrayList<EventBuilder>();
+        List<GuestId> addedGuests = new ArrayList<GuestId>();
+        List<GuestId> removedGuests = new ArrayList<GuestId>();
+        Map<String, Consumer> newHosts = new HashMap<String, Consumer>();
+
+        for (Entry<String, Consumer> entry : incomingHosts.entrySet()) {
+            String hypervisorId = entry.getKey();
+            Consumer incoming = entry.getValue();
+            Consumer knownHost = hostConsumers.get(hypervisorId);
+
+            if (knownHost == null) {
+                if (createMissing) {
+                    log.info("Registering new host consumer for hypervisor ID: {}", hypervisorId);
+                    Consumer newHost = createConsumerForHypervisorId(hypervisorId, owner,
+                        reporterId);
+                    applyDetails(newHost, incoming);
+                    if (incoming.getGuestIds() != null) {
+                        for (GuestId guestId : incoming.getGuestIds()) {
+                            newHost.addGuestId(guestId);
+                        }
+                    }
+                    newHosts.put(hypervisorId, newHost);
+                }
+                continue;
+            }
+
+            if (incoming.getName() != null && !incoming.getName().equals(knownHost.getName())) {
+                try {
+                    consumerResource.checkConsumerName(incoming);
+                }
+                catch (BadRequestException e) {
+                    log.warn("Hypervisor {} not updated: {}", hypervisorId, e.getMessage());
+                    result.failed(hypervisorId, e.getMessage());
+                    continue;
+                }
+            }
+
+            GuestIdChanges guestChanges = diffGuestIds(knownHost.getGuestIds(),
+                incoming.getGuestIds());
+            boolean hypervisorIdChanged = knownHost.getHypervisorId() != null &&
+                !hypervisorId.equals(knownHost.getHypervisorId().getHypervisorId());
+            boolean changed = !guestChanges.isEmpty() || hypervisorIdChanged ||
+                detailsChanged(knownHost, incoming);
+
+            if (changed) {
+                // Snapshot the host for its event before it is modified.
+                changedHostEvents.add(eventFactory.getEventBuilder(Target.CONSUMER, Type.MODIFIED)
+                    .setOldEntity(knownHost));
+
+                applyGuestIdChanges(knownHost, guestChanges);
+                if (hypervisorIdChanged) {
+                    knownHost.getHypervisorId().setHypervisorId(hypervisorId);
+                }
+                applyDetails(knownHost, incoming);
+                knownHost.setUpdated(new Date());
+
+                addedGuests.addAll(guestChanges.added);
+                removedGuests.addAll(guestChanges.removed);
+                changedHosts.add(knownHost);
+                result.updated(knownHost);
+            }
+            else {
+                result.unchanged(knownHost);
+            }
+            updateReporterId(knownHost, hypervisorId, owner, reporterId);
+        }
+
+        List<Consumer> created = new ArrayList<Consumer>();
+        if (!newHosts.isEmpty()) {
+            Map<Consumer, String> failed = consumerResource.createHypervisors(
+                new ArrayList<Consumer>(newHosts.values()), principal, owner);
+            for (Entry<String, Consumer> entry : newHosts.entrySet()) {
+                Consumer newHost = entry.getValue();
+                if (failed.containsKey(newHost)) {
+                    result.failed(entry.getKey(), failed.get(newHost));
+                }
+                else {
+                    created.add(newHost);
+                    result.created(newHost);
+                    addedGuests.addAll(newHost.getGuestIds());
+                }
+            }
+        }
+        consumerCurator.updateAll(changedHosts);
+
+        log.info("Hypervisor check-in for org {}: {} guest IDs added, {} removed",
+            owner.getKey(), addedGuests.size(), removedGuests.size());
+
+        // Compliance goes first, so that the events carry the new status:
+        List<Consumer> complianceHosts = new ArrayList<Consumer>(changedHosts);
+        complianceHosts.addAll(created);
+        for (Consumer host : complianceHosts) {
+            complianceRules.invalidateStatus(host);
+        }
+        complianceRules.getStatuses(complianceHosts);
+
+        for (GuestId guestId : removedGuests) {
+            sink.queueEvent(eventFactory.guestIdDeleted(guestId));
+        }
+        for (GuestId guestId : addedGuests) {
+            sink.queueEvent(eventFactory.guestIdCreated(guestId));
+        }
+        for (int i = 0; i < changedHosts.size(); i++) {
+            sink.queueEvent(changedHostEvents.get(i).setNewEntity(changedHosts.get(i))
+                .buildEvent());
+        }
+        for (Consumer newHost : created) {
+            sink.emitConsumerCreated(newHost);
+        }
+
+        return result;
+    }
+
+    /*
+     * Finds the reported guest IDs the host does not have yet, and the host's guest
+     * IDs which were not reported. Guest IDs match when they are equal, comparing
+     * the IDs regardless of case.
+     */
+    private GuestIdChanges diffGuestIds(List<GuestId> existing, List<GuestId> incoming) {
+        GuestIdChanges changes = new GuestIdChanges();
+        if (incoming == null) {
+            return changes;
+        }
+
+        Map<String, List<GuestId>> existingById = new HashMap<String, List<GuestId>>();
+        if (existing != null) {
+            for (GuestId guestId : existing) {
+                String key = key(guestId);
+                List<GuestId> sameId = existingById.get(key);
+                if (sameId == null) {
+                    sameId = new ArrayList<GuestId>(1);
+                    existingById.put(key, sameId);
+                }
+                sameId.add(guestId);
+            }
+        }
+
+        Set<GuestId> matched = Collections.newSetFromMap(new IdentityHashMap<GuestId, Boolean>());
+        for (GuestId guestId : incoming) {
+            boolean found = false;
+            List<GuestId> sameId = existingById.get(key(guestId));
+            if (sameId != null) {
+                for (GuestId candidate : sameId) {
+                    if (candidate.equals(guestId)) {
+                        matched.add(candidate);
+                        found = true;
+                    }
+                }
+            }
+            if (!found) {
+                changes.added.add(guestId);
+            }
+        }
+
+        if (existing != null) {
+            for (GuestId guestId : existing) {
+                if (!matched.contains(guestId)) {
+                    changes.removed.add(guestId);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static String key(GuestId guestId) {
+        return guestId.getGuestId() == null ? null : guestId.getGuestId().toLowerCase();
+    }
+
+    private void applyGuestIdChanges(Consumer host, GuestIdChanges changes) {
+        if (!changes.removed.isEmpty()) {
+            Set<GuestId> removed =
+                Collections.newSetFromMap(new IdentityHashMap<GuestId, Boolean>());
+            removed.addAll(changes.removed);
+            for (Iterator<GuestId> it = host.getGuestIds().iterator(); it.hasNext();) {
+                if (removed.contains(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+        for (GuestId guestId : changes.added) {
+            host.addGuestId(guestId);
+        }
+    }
+
+    /*
+     * Facts and name are only updated when they were reported.
+     */
+    private boolean detailsChanged(Consumer host, Consumer incoming) {
+        return (incoming.getFacts() != null && !host.factsAreEqual(incoming)) ||
+            (incoming.getName() != null && !incoming.getName().equals(host.getName()));
+    }
+
+    private void applyDetails(Consumer host, Consumer incoming) {
+        if (incoming.getFacts() != null && !host.factsAreEqual(incoming)) {
+            host.setFacts(incoming.getFacts());
+        }
+        if (incoming.getName() != null && !incoming.getName().equals(host.getName())) {
+            host.setName(incoming.getName());
+        }
+    }
+
+    private void updateReporterId(Consumer host, String hypervisorId, Owner owner,
+        String reporterId) {
+        HypervisorId hostId = host.getHypervisorId();
+        if (reporterId == null || hostId == null) {
+            return;
+        }
+        if (hostId.getReporterId() != null && !reporterId.equalsIgnoreCase(hostId.getReporterId())) {
+            log.warn("Reporter changed for Hypervisor {} of Owner {} from {} to {}",
+                hypervisorId, owner.getKey(), hostId.getReporterId(), reporterId);
+        }
+        if (!reporterId.equals(hostId.getReporterId())) {
+            hostId.setReporterId(reporterId);
+        }
+    }
+
+    /*
+     * Create a new hypervisor type consumer to represent the incoming hypervisorId
+     */
+    private Consumer createConsumerForHypervisorId(String incHypervisorId, Owner owner,
+        String reporterId) {
+        Consumer consumer = new Consumer();
+        consumer.setName(incHypervisorId);
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.HYPERVISOR));
+        consumer.setFact("uname.machine", "x86_64");
+        consumer.setGuestIds(new ArrayList<GuestId>());
+        consumer.setOwner(owner);
+        // Create HypervisorId
+        HypervisorId hypervisorId = new HypervisorId(consumer, incHypervisorId);
+        hypervisorId.setReporterId(reporterId);
+        consumer.setHypervisorId(hypervisorId);
+        return consumer;
+    }
+
+    /**
+     * Guest IDs to add to and remove from a host.
+     */
+    private static class GuestIdChanges {
+        private final List<GuestId> added = new ArrayList<GuestId>();
+        private final List<GuestId> removed = new ArrayList<GuestId>();
+
+        boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
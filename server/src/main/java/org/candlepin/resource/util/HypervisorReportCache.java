@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resource.util;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.GuestId;
+
+import com.google.inject.Inject;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HypervisorReportCache
+ *
+ * Digests of the last hypervisor report applied for each owner and reporter,
+ * and of each host in it, so a report or host reported again unchanged can be
+ * skipped. Only what was applied without failures is kept. Deleting a consumer
+ * drops the owner's digests, see HypervisorReportListener, and so does a
+ * synchronous check-in, see HypervisorResource. As that only happens on the
+ * node which made the change, and a report may be applied by another node in the
+ * meantime, digests older than the configured maximum age are not trusted, so
+ * every node applies a report again at least that often.
+ * <p>
+ * Totals of the reports and hosts skipped and applied are logged along with each
+ * report by HypervisorUpdateJob.
+ */
+public class HypervisorReportCache {
+    private final int maxReports;
+    private final long maxAge;
+    private final Map<String, Report> reports;
+
+    private final AtomicLong skippedReports = new AtomicLong();
+    private final AtomicLong skippedHosts = new AtomicLong();
+    private final AtomicLong appliedHosts = new AtomicLong();
+
+    @Inject
+    public HypervisorReportCache(Configuration config) {
+        this(config.getInt(ConfigProperties.HYPERVISOR_REPORT_CACHE_MAX_REPORTS),
+            config.getInt(ConfigProperties.HYPERVISOR_REPORT_CACHE_MAX_AGE) * 1000L);
+    }
+
+    HypervisorReportCache(final int maxReports, long maxAge) {
+        this.maxReports = maxReports;
+        this.maxAge = maxAge;
+        this.reports = new LinkedHashMap<String, Report>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Report> eldest) {
+                return size() > maxReports;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxReports > 0;
+    }
+
+    /**
+     * @param report the report as sent by the reporter
+     * @param createMissing whether missing hosts are to be created
+     * @return digest of the report
+     */
+    public static String digest(String report, boolean createMissing) {
+        return DigestUtils.sha256Hex(createMissing + "\n" + report);
+    }
+
+    /**
+     * @param hypervisorId ID of the reported host
+     * @param host the reported host
+     * @return digest of what is reported for the host: its name, facts and guest IDs
+     */
+    public static String digest(String hypervisorId, Consumer host) {
+        StringBuilder data = new StringBuilder(hypervisorId).append('\n');
+        data.append(host.getName()).append('\n');
+        if (host.getFacts() != null) {
+            data.append(new TreeMap<String, String>(host.getFacts()));
+        }
+        data.append('\n');
+        if (host.getGuestIds() != null) {
+            for (GuestId guestId : host.getGuestIds()) {
+                data.append(guestId.getGuestId());
+                if (guestId.getAttributes() != null) {
+                    data.append(new TreeMap<String, String>(guestId.getAttributes()));
+                }
+                data.append('\n');
+            }
+        }
+        else {
+            data.append("null");
+        }
+        return DigestUtils.sha256Hex(data.toString());
+    }
+
+    /**
+     * Looks up whether the report is the last one applied for the owner and
+     * reporter, counting it and its hosts as skipped if it is.
+     *
+     * @param ownerId ID of the owner
+     * @param reporterId ID of the reporter, may be null
+     * @param digest digest of the report
+     * @return whether the report was applied already
+     */
+    public boolean isApplied(String ownerId, String reporterId, String digest) {
+        Report report = getReport(ownerId, reporterId);
+        if (report == null || !digest.equals(report.digest)) {
+            return false;
+        }
+        skippedReports.incrementAndGet();
+        skippedHosts.addAndGet(report.hosts.size());
+        return true;
+    }
+
+    /**
+     * @param ownerId ID of the owner
+     * @param reporterId ID of the reporter, may be null
+     * @return digests of the hosts last applied for the owner and reporter, by
+     * hypervisor ID
+     */
+    public Map<String, String> getAppliedHosts(String ownerId, String reporterId) {
+        Report report = getReport(ownerId, reporterId);
+        if (report == null) {
+            return Collections.emptyMap();
+        }
+        return report.hosts;
+    }
+
+    /**
+     * Keeps the digests of an applied report.
+     *
+     * @param ownerId ID of the owner
+     * @param reporterId ID of the reporter, may be null
+     * @param digest digest of the report, null if some of its hosts failed
+     * @param hosts digests of the hosts applied or skipped as unchanged, by
+     * hypervisor ID
+     * @param applied number of hosts applied
+     * @param skipped number of hosts skipped as unchanged
+     */
+    public void put(String ownerId, String reporterId, String digest,
+        Map<String, String> hosts, int applied, int skipped) {
+        appliedHosts.addAndGet(applied);
+        skippedHosts.addAndGet(skipped);
+        if (!isEnabled()) {
+            return;
+        }
+
+        Report report = new Report(digest, new HashMap<String, String>(hosts));
+        synchronized (reports) {
+            reports.put(key(ownerId, reporterId), report);
+        }
+    }
+
+    /**
+     * Drops the digests of all reports for an owner.
+     *
+     * @param ownerId ID of the owner
+     */
+    public void evict(String ownerId) {
+        String prefix = ownerId + "\n";
+        synchronized (reports) {
+            for (Iterator<String> it = reports.keySet().iterator(); it.hasNext();) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (reports) {
+            return reports.size();
+        }
+    }
+
+    /**
+     * @return number of reports skipped as unchanged
+     */
+    public long getSkippedReports() {
+        return skippedReports.get();
+    }
+
+    /**
+     * @return number of hosts skipped as unchanged, including the hosts of
+     * skipped reports
+     */
+    public long getSkippedHosts() {
+        return skippedHosts.get();
+    }
+
+    /**
+     * @return number of hosts applied
+     */
+    public long getAppliedHosts() {
+        return appliedHosts.get();
+    }
+
+    private Report getReport(String ownerId, String reporterId) {
+        Report report;
+        synchronized (reports) {
+            report = reports.get(key(ownerId, reporterId));
+        }
+        if (report == null || System.currentTimeMillis() - report.applied > maxAge) {
+            return null;
+        }
+        return report;
+    }
+
+    private static String key(String ownerId, String reporterId) {
+        return ownerId + "\n" + (reporterId == null ? "" : reporterId);
+    }
+
+    /**
+     * Digests of an applied report and its hosts.
+     */
+    private static class Report {
+        private final String digest;
+        private final Map<String, String> hosts;
+        private final long applied = System.currentTimeMillis();
+
+        Report(String digest, Map<String, String> hosts) {
+            this.digest = digest;
+            this.hosts = Collections.unmodifiableMap(hosts);
+        }
+    }
+}
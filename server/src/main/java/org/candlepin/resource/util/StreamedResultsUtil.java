@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resource.util;
+
+import org.candlepin.common.paging.Page;
+import org.candlepin.common.paging.PageRequest;
+
+/**
+ * StreamedResultsUtil
+ *
+ * Requests for all the records of a listing, rather than a page of them, are
+ * answered by streaming the records out as the database returns them.
+ */
+public class StreamedResultsUtil {
+
+    private StreamedResultsUtil() {
+    }
+
+    /**
+     * @return true if the request asks for all records, in whatever order
+     */
+    public static boolean isStreamed(PageRequest pageRequest) {
+        return pageRequest == null || !(pageRequest.isPaging() || pageRequest.isKeyset());
+    }
+
+    /**
+     * @return a page without data standing for a streamed listing, to be stored
+     * for the LinkHeaderResponseFilter
+     */
+    public static <T> Page<T> streamedPage(PageRequest pageRequest) {
+        Page<T> page = new Page<T>();
+        page.setPageRequest(pageRequest);
+        return page;
+    }
+}
@@ -20,6 +20,7 @@ import org.candlepin.common.jackson.HateoasBeanPropertyFilter;
 import org.candlepin.common.jackson.MultiFilter;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.jackson.DateSerializer;
+import org.candlepin.model.ResultIterator;
 
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
@@ -38,10 +39,16 @@ import com.google.inject.Inject;
 import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
 import java.util.Date;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.Provider;
 
 /**
@@ -82,6 +89,27 @@ public class JsonProvider extends JacksonJsonProvider {
         configureHateoasObjectMapper(mapper, indentJson);
         setMapper(mapper);
     }
+
+    /**
+     * Streamed results are written out element by element as the database
+     * returns them, and their cursor is released once the response is written.
+     */
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType,
+        Annotation[] annotations, MediaType mediaType,
+        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+        throws IOException {
+        try {
+            super.writeTo(value, type, genericType, annotations, mediaType, httpHeaders,
+                entityStream);
+        }
+        finally {
+            if (value instanceof ResultIterator) {
+                ((ResultIterator<?>) value).close();
+            }
+        }
+    }
+
     private void configureHateoasObjectMapper(ObjectMapper mapper, boolean indentJson) {
         mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
 
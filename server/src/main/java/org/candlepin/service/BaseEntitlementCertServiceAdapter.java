@@ -15,10 +15,19 @@
 package org.candlepin.service;
 
 import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCertificate;
 import org.candlepin.model.EntitlementCertificateCurator;
+import org.candlepin.util.CertificateSizeException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * BaseEntitlementCertServiceAdapter
@@ -29,8 +38,31 @@ import java.util.List;
 public abstract class BaseEntitlementCertServiceAdapter implements
     EntitlementCertServiceAdapter {
 
+    private static Logger log = LoggerFactory.getLogger(BaseEntitlementCertServiceAdapter.class);
+
     protected EntitlementCertificateCurator entCertCurator;
 
+    /*
+     * Generates the certificates one at a time, adapters able to do better override
+     * this.
+     */
+    @Override
+    public Map<String, EntitlementCertificate> generateEntitlementCerts(
+        List<Entitlement> entitlements) throws GeneralSecurityException, IOException {
+        Map<String, EntitlementCertificate> certs =
+            new LinkedHashMap<String, EntitlementCertificate>();
+        for (Entitlement ent : entitlements) {
+            try {
+                certs.put(ent.getId(), generateEntitlementCert(ent, ent.getPool().getProduct()));
+            }
+            catch (CertificateSizeException cse) {
+                log.warn("The certificate cannot be regenerated at this time: {}",
+                    cse.getMessage());
+            }
+        }
+        return certs;
+    }
+
     @Override
     public List<EntitlementCertificate> listForConsumer(
         Consumer consumer) {
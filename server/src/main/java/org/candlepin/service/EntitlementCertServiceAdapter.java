@@ -22,6 +22,7 @@ import org.candlepin.model.Product;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface to the Certificate Service.
@@ -57,6 +58,22 @@ public interface EntitlementCertServiceAdapter {
     EntitlementCertificate generateUeberCert(Entitlement entitlement, Product product)
         throws GeneralSecurityException, IOException;
 
+    /**
+     * Generate entitlement certificates for a number of entitlements at once, each for
+     * the product of its pool. The certificates are persisted and added to their
+     * entitlements, like those of generateEntitlementCert.
+     *
+     * Entitlements whose certificate would be too large are skipped and keep their
+     * current certificates.
+     *
+     * @param entitlements entitlements to generate certificates for.
+     * @return the generated certificates, keyed by entitlement ID.
+     * @throws IOException thrown if there's a problem reading the cert.
+     * @throws GeneralSecurityException thrown security problem
+     */
+    Map<String, EntitlementCertificate> generateEntitlementCerts(List<Entitlement> entitlements)
+        throws GeneralSecurityException, IOException;
+
     /**
      * Return a list of all entitlement certificates for a given consumer.
      *
@@ -41,6 +41,7 @@ import org.candlepin.util.X509V3ExtensionUtil;
 
 import com.google.common.collect.Collections2;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.slf4j.Logger;
@@ -54,13 +55,19 @@ import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * DefaultEntitlementCertServiceAdapter
@@ -76,6 +83,10 @@ public class DefaultEntitlementCertServiceAdapter extends
     private EntitlementCurator entCurator;
     private I18n i18n;
     private Configuration config;
+    private ExecutorService signers;
+
+    /** Name of the executor certificates generated in bulk are signed on. */
+    public static final String SIGNERS = "CertSigningExecutor";
 
     private static Logger log =
         LoggerFactory.getLogger(DefaultEntitlementCertServiceAdapter.class);
@@ -88,7 +99,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         KeyPairCurator keyPairCurator,
         CertificateSerialCurator serialCurator,
         EntitlementCurator entCurator, I18n i18n,
-        Configuration config) {
+        Configuration config, @Named(SIGNERS) ExecutorService signers) {
 
         this.pki = pki;
         this.extensionUtil = extensionUtil;
@@ -99,6 +110,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         this.entCurator = entCurator;
         this.i18n = i18n;
         this.config = config;
+        this.signers = signers;
     }
 
 
@@ -137,6 +149,16 @@ public class DefaultEntitlementCertServiceAdapter extends
         KeyPair keyPair, boolean useContentPrefix)
         throws GeneralSecurityException, IOException {
 
+        PreparedCert prepared = prepareX509Certificate(ent, product, products,
+            productModels, keyPair, useContentPrefix);
+        return createX509Certificate(prepared, serialNumber);
+    }
+
+    private PreparedCert prepareX509Certificate(Entitlement ent,
+        Product product, Set<Product> products,
+        List<org.candlepin.model.dto.Product> productModels,
+        KeyPair keyPair, boolean useContentPrefix) throws IOException {
+
         // oidutil is busted at the moment, so do this manually
         Set<X509ExtensionWrapper> extensions;
         Set<X509ByteExtensionWrapper> byteExtensions =
@@ -158,9 +180,17 @@ public class DefaultEntitlementCertServiceAdapter extends
         }
 
         setupEntitlementEndDate(ent);
+        return new PreparedCert(ent, keyPair, createDN(ent), extensions, byteExtensions);
+    }
+
+    /*
+     * Only signs what was prepared, so this may run on any thread.
+     */
+    private X509Certificate createX509Certificate(PreparedCert prepared,
+        BigInteger serialNumber) throws GeneralSecurityException, IOException {
         X509Certificate x509Cert =  this.pki.createX509Certificate(
-                createDN(ent), extensions, byteExtensions, ent.getStartDate(),
-                ent.getEndDate(), keyPair, serialNumber, null);
+                prepared.dn, prepared.extensions, prepared.byteExtensions,
+                prepared.startDate, prepared.endDate, prepared.keyPair, serialNumber, null);
         return x509Cert;
     }
 
@@ -334,9 +364,73 @@ public class DefaultEntitlementCertServiceAdapter extends
 
         KeyPair keyPair = keyPairCurator.getConsumerKeyPair(entitlement.getConsumer());
         CertificateSerial serial = new CertificateSerial(entitlement.getEndDate());
-        // We need the sequence generated id before we create the EntitlementCertificate,
-        // otherwise we could have used cascading create
-        serial = serialCurator.create(serial);
+        // Persisting assigns the serial its number, the row is inserted along with
+        // the certificate:
+        serialCurator.create(serial, false);
+
+        PreparedCert prepared = prepareEntitlementCert(entitlement, product, keyPair,
+            thisIsUeberCert);
+        EntitlementCertificate cert = signEntitlementCert(prepared, serial);
+
+        log.info("Persisting cert.");
+        entitlement.getCertificates().add(cert);
+        entCertCurator.create(cert);
+        return cert;
+    }
+
+    /**
+     * Generates the certificates of the entitlements in stages: everything which
+     * needs the database is prepared on the calling thread, the certificates are
+     * signed in parallel and finally persisted together with their serials, so
+     * inserts go out in JDBC batches.
+     */
+    @Override
+    public Map<String, EntitlementCertificate> generateEntitlementCerts(
+        List<Entitlement> entitlements) throws GeneralSecurityException, IOException {
+
+        log.info("Generating entitlement certs for {} entitlements", entitlements.size());
+        List<PreparedCert> prepared = new ArrayList<PreparedCert>();
+        List<CertificateSerial> serials = new ArrayList<CertificateSerial>();
+        for (Entitlement entitlement : entitlements) {
+            KeyPair keyPair = keyPairCurator.getConsumerKeyPair(entitlement.getConsumer());
+            try {
+                prepared.add(prepareEntitlementCert(entitlement,
+                    entitlement.getPool().getProduct(), keyPair, false));
+                serials.add(new CertificateSerial(entitlement.getEndDate()));
+            }
+            catch (CertificateSizeException cse) {
+                log.warn("The certificate cannot be regenerated at this time: {}",
+                    cse.getMessage());
+            }
+        }
+        serialCurator.createAll(serials, false);
+
+        List<Future<EntitlementCertificate>> signed =
+            new ArrayList<Future<EntitlementCertificate>>();
+        for (int i = 0; i < prepared.size(); i++) {
+            signed.add(signers.submit(new SignTask(prepared.get(i), serials.get(i))));
+        }
+
+        Map<String, EntitlementCertificate> certs =
+            new LinkedHashMap<String, EntitlementCertificate>();
+        for (int i = 0; i < prepared.size(); i++) {
+            Entitlement entitlement = prepared.get(i).entitlement;
+            EntitlementCertificate cert = getSigned(signed.get(i));
+            entitlement.getCertificates().add(cert);
+            certs.put(entitlement.getId(), cert);
+        }
+
+        log.info("Persisting {} certs.", certs.size());
+        entCertCurator.createAll(certs.values());
+        return certs;
+    }
+
+    /*
+     * Gathers everything going into the certificate, this needs the database and
+     * must run on the thread of the current unit of work.
+     */
+    private PreparedCert prepareEntitlementCert(Entitlement entitlement, Product product,
+        KeyPair keyPair, boolean thisIsUeberCert) throws IOException {
 
         Set<Product> products = new HashSet<Product>(entitlement.getPool().getProvidedProducts());
 
@@ -356,23 +450,37 @@ public class DefaultEntitlementCertServiceAdapter extends
                         promotedContent,
                         entitlement.getConsumer(), entitlement);
 
-        X509Certificate x509Cert = createX509Certificate(entitlement,
-            product, products, productModels, BigInteger.valueOf(serial.getId()), keyPair,
-            !thisIsUeberCert);
+        PreparedCert prepared = prepareX509Certificate(entitlement,
+            product, products, productModels, keyPair, !thisIsUeberCert);
+
+        if (shouldGenerateV3(entitlement)) {
+            log.debug("Generating v3 entitlement data");
+
+            prepared.payloadBytes = v3extensionUtil.createEntitlementDataPayload(product,
+                    productModels, entitlement, contentPrefix, promotedContent);
+        }
+        return prepared;
+    }
+
+    /*
+     * Signs the prepared certificate and its entitlement data, without touching the
+     * database.
+     */
+    private EntitlementCertificate signEntitlementCert(PreparedCert prepared,
+        CertificateSerial serial) throws GeneralSecurityException, IOException {
+
+        X509Certificate x509Cert = createX509Certificate(prepared,
+            BigInteger.valueOf(serial.getId()));
 
         EntitlementCertificate cert = new EntitlementCertificate();
         cert.setSerial(serial);
-        cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
+        cert.setKeyAsBytes(pki.getPemEncoded(prepared.keyPair.getPrivate()));
 
         log.info("Getting PEM encoded cert.");
         String pem = new String(this.pki.getPemEncoded(x509Cert));
 
-        if (shouldGenerateV3(entitlement)) {
-            log.debug("Generating v3 entitlement data");
-
-            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(product,
-                    productModels, entitlement, contentPrefix, promotedContent);
-
+        if (prepared.payloadBytes != null) {
+            byte[] payloadBytes = prepared.payloadBytes;
             String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
             payload += Util.toBase64(payloadBytes);
             payload += "-----END ENTITLEMENT DATA-----\n";
@@ -386,23 +494,87 @@ public class DefaultEntitlementCertServiceAdapter extends
         }
 
         cert.setCert(pem);
-        cert.setEntitlement(entitlement);
+        cert.setEntitlement(prepared.entitlement);
 
         if (log.isDebugEnabled()) {
             log.debug("Generated cert serial number: " + serial.getId());
             log.debug("Key: " + cert.getKey());
             log.debug("Cert: " + cert.getCert());
         }
-
-        log.info("Persisting cert.");
-        entitlement.getCertificates().add(cert);
-        entCertCurator.create(cert);
         return cert;
     }
 
+    private static EntitlementCertificate getSigned(Future<EntitlementCertificate> future)
+        throws GeneralSecurityException, IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     private String createDN(Entitlement ent) {
         StringBuilder sb = new StringBuilder("CN=");
         sb.append(ent.getId());
         return sb.toString();
     }
+
+    /**
+     * Everything going into an entitlement certificate, ready to be signed.
+     */
+    private static class PreparedCert {
+        private final Entitlement entitlement;
+        private final KeyPair keyPair;
+        private final String dn;
+        private final Set<X509ExtensionWrapper> extensions;
+        private final Set<X509ByteExtensionWrapper> byteExtensions;
+        private final Date startDate;
+        private final Date endDate;
+        private byte[] payloadBytes;
+
+        PreparedCert(Entitlement entitlement, KeyPair keyPair, String dn,
+            Set<X509ExtensionWrapper> extensions,
+            Set<X509ByteExtensionWrapper> byteExtensions) {
+            this.entitlement = entitlement;
+            this.keyPair = keyPair;
+            this.dn = dn;
+            this.extensions = extensions;
+            this.byteExtensions = byteExtensions;
+            this.startDate = entitlement.getStartDate();
+            this.endDate = entitlement.getEndDate();
+        }
+    }
+
+    private class SignTask implements Callable<EntitlementCertificate> {
+        private final PreparedCert prepared;
+        private final CertificateSerial serial;
+
+        SignTask(PreparedCert prepared, CertificateSerial serial) {
+            this.prepared = prepared;
+            this.serial = serial;
+        }
+
+        @Override
+        public EntitlementCertificate call() throws Exception {
+            return signEntitlementCert(prepared, serial);
+        }
+    }
 }
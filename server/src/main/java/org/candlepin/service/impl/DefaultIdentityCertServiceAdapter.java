@@ -124,9 +124,9 @@ public class DefaultIdentityCertServiceAdapter implements
         Date endDate = this.endDateGenerator.apply(startDate);
 
         CertificateSerial serial = new CertificateSerial(endDate);
-        // We need the sequence generated id before we create the EntitlementCertificate,
-        // otherwise we could have used cascading create
-        serialCurator.create(serial);
+        // Persisting assigns the serial its number, the row is inserted along with
+        // the certificate:
+        serialCurator.create(serial, false);
 
         String dn = createDN(consumer);
         IdentityCertificate identityCert = new IdentityCertificate();
@@ -68,5 +68,10 @@ public class DistributorVersionImporter {
                 log.debug("Updating distributor version: " + distVer.getName());
             }
         }
+
+        // Don't serve the imported versions from this node's cache in their old state.
+        if (!distVers.isEmpty()) {
+            curator.evictCachedEntities();
+        }
     }
 }
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ExportCache
+ *
+ * The last signed manifest exported for each distributor consumer, along with
+ * the version of the content it was exported from. As long as the version
+ * computed for a new export is the same, the archive already on disk is copied
+ * instead of being rebuilt. Archives are only read through {@link #open}, never
+ * served as they are. Each archive sits alone in a directory of the sync work
+ * directory, which is deleted once the archive is replaced or evicted.
+ */
+public class ExportCache {
+    private static Logger log = LoggerFactory.getLogger(ExportCache.class);
+
+    private final int maxConsumers;
+    private final Map<String, Export> exports;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ExportCache(Configuration config) {
+        this(config.getInt(ConfigProperties.EXPORT_CACHE_MAX_CONSUMERS));
+    }
+
+    public ExportCache(final int maxConsumers) {
+        this.maxConsumers = maxConsumers;
+        this.exports = new LinkedHashMap<String, Export>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Export> eldest) {
+                if (size() > maxConsumers) {
+                    delete(eldest.getValue().archive);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxConsumers > 0;
+    }
+
+    /**
+     * Opens the consumer's last export while it is still in the cache. An
+     * archive replaced or evicted afterwards is only unlinked, so the stream
+     * can be read to the end.
+     *
+     * @param consumerUuid UUID of the distributor consumer
+     * @param version version of the content to export
+     * @return a stream over the archive exported from that version of the
+     * content, or null if the consumer's last export was made from another
+     * version or is gone from disk
+     */
+    public InputStream open(String consumerUuid, String version) {
+        synchronized (exports) {
+            Export export = exports.get(consumerUuid);
+            if (export != null && export.version.equals(version)) {
+                try {
+                    InputStream in = new FileInputStream(export.archive);
+                    hits.incrementAndGet();
+                    return in;
+                }
+                catch (FileNotFoundException e) {
+                    log.debug("Cached export is gone: " + export.archive.getAbsolutePath());
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Keeps the archive as the consumer's last export, deleting the one it
+     * replaces. The cache takes over the archive's directory, so the archive
+     * must not be handed out to anyone else.
+     *
+     * @param consumerUuid UUID of the distributor consumer
+     * @param version version of the content the archive was exported from
+     * @param archive the signed archive
+     */
+    public void put(String consumerUuid, String version, File archive) {
+        Export replaced;
+        synchronized (exports) {
+            replaced = exports.put(consumerUuid, new Export(version, archive));
+        }
+
+        if (replaced != null && !replaced.archive.equals(archive)) {
+            delete(replaced.archive);
+        }
+    }
+
+    /**
+     * Drops and deletes the consumer's last export.
+     *
+     * @param consumerUuid UUID of the distributor consumer
+     */
+    public void evict(String consumerUuid) {
+        Export evicted;
+        synchronized (exports) {
+            evicted = exports.remove(consumerUuid);
+        }
+
+        if (evicted != null) {
+            delete(evicted.archive);
+        }
+    }
+
+    public int size() {
+        synchronized (exports) {
+            return exports.size();
+        }
+    }
+
+    /**
+     * @return number of exports served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of exports which had to be built
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static void delete(File archive) {
+        try {
+            FileUtils.deleteDirectory(archive.getParentFile());
+        }
+        catch (IOException e) {
+            log.warn("Unable to delete cached export " + archive.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * An archive and the version of the content it was exported from.
+     */
+    private static class Export {
+        private final String version;
+        private final File archive;
+
+        Export(String version, File archive) {
+            this.version = version;
+            this.archive = archive;
+        }
+    }
+}
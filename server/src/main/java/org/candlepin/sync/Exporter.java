@@ -32,6 +32,7 @@ import org.candlepin.model.IdentityCertificate;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductCertificate;
+import org.candlepin.model.ProductContent;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.policy.js.export.ExportRules;
 import org.candlepin.service.EntitlementCertServiceAdapter;
@@ -40,24 +41,34 @@ import org.candlepin.service.ProductServiceAdapter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 /**
@@ -89,8 +100,14 @@ public class Exporter {
     private Configuration config;
     private ExportRules exportRules;
     private PrincipalProvider principalProvider;
+    private ExportCache exportCache;
 
     private static final String LEGACY_RULES_FILE = "/rules/default-rules.js";
+    private static final String EXPORT_FILE_NAME = "export.zip";
+    private static final String CONSUMER_EXPORT_ENTRY = "consumer_export.zip";
+    private static final String META_FILE = "meta.json";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     @Inject
     public Exporter(ConsumerTypeCurator consumerTypeCurator, MetaExporter meta,
@@ -103,7 +120,7 @@ public class Exporter {
         PrincipalProvider principalProvider, DistributorVersionCurator distVerCurator,
         DistributorVersionExporter distVerExporter,
         CdnCurator cdnCurator,
-        CdnExporter cdnExporter) {
+        CdnExporter cdnExporter, ExportCache exportCache) {
 
         this.consumerTypeCurator = consumerTypeCurator;
 
@@ -126,6 +143,7 @@ public class Exporter {
         this.distVerExporter = distVerExporter;
         this.cdnCurator = cdnCurator;
         this.cdnExporter = cdnExporter;
+        this.exportCache = exportCache;
 
         mapper = SyncUtils.getObjectMapper(this.config);
     }
@@ -137,43 +155,54 @@ public class Exporter {
     public File getFullExport(Consumer consumer, String cdnKey, String webAppPrefix,
         String apiUrl)
         throws ExportCreationException {
-        // TODO: need to delete tmpDir (which contains the archive,
-        // which we need to return...)
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
-
-            exportMeta(baseDir, cdnKey);
-            exportConsumer(baseDir, consumer, webAppPrefix, apiUrl);
-            exportIdentityCertificate(baseDir, consumer);
-            exportEntitlements(baseDir, consumer);
-            exportEntitlementsCerts(baseDir, consumer, null, true);
-            exportProducts(baseDir, consumer);
-            exportConsumerTypes(baseDir);
-            exportRules(baseDir);
-            exportDistributorVersions(baseDir);
-            exportContentDeliveryNetworks(baseDir);
-            return makeArchive(consumer, tmpDir, baseDir);
-        }
-        catch (IOException e) {
-            log.error("Error generating entitlement export", e);
-            throw new ExportCreationException("Unable to create export archive", e);
-        }
-    }
+            String version = null;
+            if (exportCache.isEnabled()) {
+                version = getExportVersion(consumer, cdnKey, webAppPrefix, apiUrl);
+                InputStream cached = exportCache.open(consumer.getUuid(), version);
+                if (cached != null) {
+                    log.info("Re-signing unchanged export for consumer " +
+                        consumer.getUuid() + " with new metadata");
+                    return getCachedExport(cached, consumer, cdnKey);
+                }
+            }
 
-    public File getEntitlementExport(Consumer consumer,
-                        Set<Long> serials) throws ExportCreationException {
-        // TODO: need to delete tmpDir (which contains the archive,
-        // which we need to return...)
-        try {
+            // TODO: need to delete tmpDir (which contains the archive,
+            // which we need to return...)
             File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
+            File archive = new File(tmpDir, EXPORT_FILE_NAME);
+            ZipOutputStream out = openArchive(archive, consumer);
+            try {
+                Signature signature = pki.getSHA256WithRSASigner();
+                ZipOutputStream export = openConsumerExport(out, consumer, signature);
+
+                exportMeta(export, cdnKey);
+                exportConsumer(export, consumer, webAppPrefix, apiUrl);
+                exportIdentityCertificate(export, consumer);
+                exportEntitlements(export, consumer);
+                exportEntitlementsCerts(export, consumer, null, true);
+                exportProducts(export, consumer);
+                exportConsumerTypes(export);
+                exportRules(export);
+                exportDistributorVersions(export);
+                exportContentDeliveryNetworks(export);
+
+                closeConsumerExport(out, export, signature);
+            }
+            finally {
+                out.close();
+            }
 
-            exportMeta(baseDir, null);
-            exportEntitlementsCerts(baseDir, consumer, serials, false);
-            return makeArchive(consumer, tmpDir, baseDir);
+            if (version != null) {
+                // The cache keeps a copy of its own, the archive returned belongs
+                // to this request and is never deleted along with a cache entry:
+                File copy = new File(new SyncUtils(config).makeTempDir("export"),
+                    EXPORT_FILE_NAME);
+                FileUtils.copyFile(archive, copy);
+                exportCache.put(consumer.getUuid(), version, copy);
+            }
+            log.debug("Returning file: " + archive.getAbsolutePath());
+            return archive;
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
@@ -181,152 +210,151 @@ public class Exporter {
         }
     }
 
-    /**
-     * Create a tar.gz archive of the exported directory.
-     *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive zip.
+    /*
+     * Copies the consumer export of the cached archive into a new archive, with
+     * new metadata, and signs it. Every export carries its own creation date, so
+     * a downstream importing it again does not find it to be the same manifest
+     * as the last one imported.
      */
-    private File makeArchive(Consumer consumer, File tempDir, File exportDir)
+    private File getCachedExport(InputStream cached, Consumer consumer, String cdnKey)
         throws IOException {
-        String exportFileName = exportDir.getName() + ".zip";
-        log.info("Creating archive of " + exportDir.getAbsolutePath() + " in: " +
-            exportFileName);
-
-        File archive = createZipArchiveWithDir(
-            tempDir, exportDir, "consumer_export.zip",
-            "Candlepin export for " + consumer.getUuid());
-
-        InputStream archiveInputStream = null;
+        File archive = new File(new SyncUtils(config).makeTempDir("export"),
+            EXPORT_FILE_NAME);
+        ZipInputStream in = new ZipInputStream(new BufferedInputStream(cached, BUFFER_SIZE));
         try {
-            archiveInputStream = new FileInputStream(archive);
-            File signedArchive = createSignedZipArchive(
-                tempDir, archive, exportFileName,
-                pki.getSHA256WithRSAHash(archiveInputStream),
-                "signed Candlepin export for " + consumer.getUuid());
-
-            log.debug("Returning file: " + archive.getAbsolutePath());
-            return signedArchive;
-        }
-        finally {
-            if (archiveInputStream != null) {
-                try {
-                    archiveInputStream.close();
-                }
-                catch (Exception e) {
-                    // nothing to do
-                }
+            ZipEntry entry = in.getNextEntry();
+            while (entry != null && !entry.getName().equals(CONSUMER_EXPORT_ENTRY)) {
+                entry = in.getNextEntry();
+            }
+            if (entry == null) {
+                throw new IOException("Cached export has no " + CONSUMER_EXPORT_ENTRY);
             }
-        }
-    }
 
-    private File createZipArchiveWithDir(File tempDir, File exportDir,
-        String exportFileName, String comment)
-        throws FileNotFoundException, IOException {
+            ZipOutputStream out = openArchive(archive, consumer);
+            try {
+                Signature signature = pki.getSHA256WithRSASigner();
+                ZipOutputStream export = openConsumerExport(out, consumer, signature);
+
+                exportMeta(export, cdnKey);
+                ZipInputStream cachedExport = new ZipInputStream(in);
+                for (entry = cachedExport.getNextEntry(); entry != null;
+                    entry = cachedExport.getNextEntry()) {
+                    if (!entry.getName().equals("export/" + META_FILE)) {
+                        export.putNextEntry(new ZipEntry(entry.getName()));
+                        IOUtils.copy(cachedExport, export);
+                        export.closeEntry();
+                    }
+                }
 
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
-        try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFilesToArchive(out, exportDir.getParent().length() + 1, exportDir);
-        }
-        finally {
-            if (out != null) {
+                closeConsumerExport(out, export, signature);
+            }
+            finally {
                 out.close();
             }
         }
+        finally {
+            in.close();
+        }
+
+        log.debug("Returning file: " + archive.getAbsolutePath());
         return archive;
     }
 
-    private File createSignedZipArchive(File tempDir, File toAdd,
-        String exportFileName, byte[] signature, String comment)
-        throws FileNotFoundException, IOException {
-
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
+    public File getEntitlementExport(Consumer consumer,
+                        Set<Long> serials) throws ExportCreationException {
+        // TODO: need to delete tmpDir (which contains the archive,
+        // which we need to return...)
         try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFileToArchive(out, toAdd.getParent().length() + 1, toAdd);
-            addSignatureToArchive(out, signature);
-        }
-        finally {
-            if (out != null) {
+            File tmpDir = new SyncUtils(config).makeTempDir("export");
+            File archive = new File(tmpDir, EXPORT_FILE_NAME);
+            ZipOutputStream out = openArchive(archive, consumer);
+            try {
+                Signature signature = pki.getSHA256WithRSASigner();
+                ZipOutputStream export = openConsumerExport(out, consumer, signature);
+
+                exportMeta(export, null);
+                exportEntitlementsCerts(export, consumer, serials, false);
+
+                closeConsumerExport(out, export, signature);
+            }
+            finally {
                 out.close();
             }
+
+            log.debug("Returning file: " + archive.getAbsolutePath());
+            return archive;
+        }
+        catch (IOException e) {
+            log.error("Error generating entitlement export", e);
+            throw new ExportCreationException("Unable to create export archive", e);
         }
-        return archive;
     }
 
-
-
     /**
-     * @param out
-     * @param exportDir
-     * @throws IOException
+     * Opens the signed archive. The consumer export zip is written straight
+     * into its first entry, and signed as it is written, so neither the export
+     * directory nor the unsigned zip is ever written to disk.
      */
-    private void addFilesToArchive(ZipOutputStream out, int charsToDropFromName,
-        File directory) throws IOException {
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                addFilesToArchive(out, charsToDropFromName, file);
-            }
-            else {
-                addFileToArchive(out, charsToDropFromName, file);
-            }
-        }
+    private ZipOutputStream openArchive(File archive, Consumer consumer)
+        throws IOException {
+        log.info("Creating archive: " + archive.getAbsolutePath());
+        ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(
+            new FileOutputStream(archive), BUFFER_SIZE));
+        out.setComment("signed Candlepin export for " + consumer.getUuid());
+        return out;
     }
 
-    private void addFileToArchive(ZipOutputStream out, int charsToDropFromName,
-        File file) throws IOException, FileNotFoundException {
-        log.debug("Adding file to archive: " +
-            file.getAbsolutePath().substring(charsToDropFromName));
-        out.putNextEntry(new ZipEntry(
-            file.getAbsolutePath().substring(charsToDropFromName)));
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(file);
+    private ZipOutputStream openConsumerExport(ZipOutputStream out, Consumer consumer,
+        Signature signature) throws IOException {
+        out.putNextEntry(new ZipEntry(CONSUMER_EXPORT_ENTRY));
+        ZipOutputStream export = new ZipOutputStream(new SigningOutputStream(out, signature));
+        export.setComment("Candlepin export for " + consumer.getUuid());
+        return export;
+    }
 
-            byte [] buf = new byte[1024];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
-            }
-            out.closeEntry();
-        }
-        finally {
-            if (in != null) {
-                in.close();
-            }
-        }
+    private void closeConsumerExport(ZipOutputStream out, ZipOutputStream export,
+        Signature signature) throws IOException {
+        // finish() rather than close(), which would close the signed archive as well
+        export.finish();
+        out.closeEntry();
+        addSignatureToArchive(out, signature);
     }
 
-    private void addSignatureToArchive(ZipOutputStream out, byte[] signature)
-        throws IOException, FileNotFoundException {
+    private void addSignatureToArchive(ZipOutputStream out, Signature signature)
+        throws IOException {
 
         log.debug("Adding signature to archive.");
+        byte[] signed;
+        try {
+            signed = signature.sign();
+        }
+        catch (SignatureException e) {
+            throw new IOException("Unable to sign export archive", e);
+        }
         out.putNextEntry(new ZipEntry("signature"));
-        out.write(signature, 0, signature.length);
+        out.write(signed, 0, signed.length);
         out.closeEntry();
     }
 
-    private void exportMeta(File baseDir, String cdnKey)
+    /**
+     * Adds a file below the export directory of the consumer export zip.
+     */
+    private void addToArchive(ZipOutputStream export, String path, StringWriter contents)
         throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "meta.json");
-        FileWriter writer = null;
-        try {
-            writer = new FileWriter(file);
-            Meta m = new Meta(getVersion(), new Date(),
-                principalProvider.get().getPrincipalName(),
-                null, cdnKey);
-            meta.export(mapper, writer, m);
-        }
-        finally {
-            if (writer != null) {
-                writer.close();
-            }
-        }
+        log.debug("Adding file to archive: export/" + path);
+        export.putNextEntry(new ZipEntry("export/" + path));
+        export.write(contents.toString().getBytes(UTF8));
+        export.closeEntry();
+    }
+
+    private void exportMeta(ZipOutputStream export, String cdnKey)
+        throws IOException {
+        StringWriter writer = new StringWriter();
+        Meta m = new Meta(getVersion(), new Date(),
+            principalProvider.get().getPrincipalName(),
+            null, cdnKey);
+        meta.export(mapper, writer, m);
+        addToArchive(export, META_FILE, writer);
     }
 
     private String getPrefixWebUrl(String override) {
@@ -356,32 +384,21 @@ public class Exporter {
         return map.get("version") + "-" + map.get("release");
     }
 
-    private void exportConsumer(File baseDir, Consumer consumer, String webAppPrefix,
-        String apiUrl)
+    private void exportConsumer(ZipOutputStream export, Consumer consumer,
+        String webAppPrefix, String apiUrl)
         throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "consumer.json");
-        FileWriter writer = null;
-        try {
-            writer = new FileWriter(file);
-            this.consumerExporter.export(mapper, writer, consumer,
-                getPrefixWebUrl(webAppPrefix), getPrefixApiUrl(apiUrl));
-        }
-        finally {
-            if (writer != null) {
-                writer.close();
-            }
-        }
+        StringWriter writer = new StringWriter();
+        this.consumerExporter.export(mapper, writer, consumer,
+            getPrefixWebUrl(webAppPrefix), getPrefixApiUrl(apiUrl));
+        addToArchive(export, "consumer.json", writer);
     }
 
-    private void exportEntitlementsCerts(File baseDir,
+    private void exportEntitlementsCerts(ZipOutputStream export,
                                          Consumer consumer,
                                          Set<Long> serials,
                                          boolean manifest)
         throws IOException {
 
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlement_certificates");
-        entCertDir.mkdir();
-
         for (EntitlementCertificate cert : entCertAdapter.listForConsumer(consumer)) {
             if (manifest && !this.exportRules.canExport(cert.getEntitlement())) {
                 if (log.isDebugEnabled()) {
@@ -393,50 +410,28 @@ public class Exporter {
 
             if ((serials == null) || (serials.contains(cert.getSerial().getId()))) {
                 log.debug("Exporting entitlement certificate: " + cert.getSerial());
-                File file = new File(entCertDir.getCanonicalPath(),
-                    cert.getSerial().getId() + ".pem");
-                FileWriter writer = null;
-                try {
-                    writer = new FileWriter(file);
-                    entCert.export(writer, cert);
-                }
-                finally {
-                    if (writer != null) {
-                        writer.close();
-                    }
-                }
+                StringWriter writer = new StringWriter();
+                entCert.export(writer, cert);
+                addToArchive(export, "entitlement_certificates/" +
+                    cert.getSerial().getId() + ".pem", writer);
             }
         }
     }
 
-    private void exportIdentityCertificate(File baseDir, Consumer consumer)
+    private void exportIdentityCertificate(ZipOutputStream export, Consumer consumer)
         throws IOException {
 
-        File idcertdir = new File(baseDir.getCanonicalPath(), "upstream_consumer");
-        idcertdir.mkdir();
-
         IdentityCertificate cert = consumer.getIdCert();
-        File file = new File(idcertdir.getCanonicalPath(),
-            cert.getSerial().getId() + ".json");
 
         // paradigm dictates this should go in an exporter.export method
-        FileWriter writer = null;
-
-        try {
-            writer = new FileWriter(file);
-            mapper.writeValue(writer, cert);
-        }
-        finally {
-            if (writer != null) {
-                writer.close();
-            }
-        }
+        StringWriter writer = new StringWriter();
+        mapper.writeValue(writer, cert);
+        addToArchive(export, "upstream_consumer/" + cert.getSerial().getId() + ".json",
+            writer);
     }
 
-    private void exportEntitlements(File baseDir, Consumer consumer)
+    private void exportEntitlements(ZipOutputStream export, Consumer consumer)
         throws IOException, ExportCreationException {
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlements");
-        entCertDir.mkdir();
 
         for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
             if (ent.getDirty()) {
@@ -456,24 +451,13 @@ public class Exporter {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting entitlement for product" + ent.getPool().getProductId());
             }
-            FileWriter writer = null;
-            try {
-                File file = new File(entCertDir.getCanonicalPath(), ent.getId() + ".json");
-                writer = new FileWriter(file);
-                entExporter.export(mapper, writer, ent);
-            }
-            finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
+            StringWriter writer = new StringWriter();
+            entExporter.export(mapper, writer, ent);
+            addToArchive(export, "entitlements/" + ent.getId() + ".json", writer);
         }
     }
 
-    private void exportProducts(File baseDir, Consumer consumer) throws IOException {
-        File productDir = new File(baseDir.getCanonicalPath(), "products");
-        productDir.mkdir();
-
+    private Map<String, Product> getExportedProducts(Consumer consumer) {
         Map<String, Product> products = new HashMap<String, Product>();
         for (Entitlement entitlement : consumer.getEntitlements()) {
             Pool pool = entitlement.getPool();
@@ -496,25 +480,20 @@ public class Exporter {
                 products.put(derivedProvidedProduct.getId(), derivedProvidedProduct);
             }
         }
+        return products;
+    }
 
-        for (Product product : products.values()) {
+    private void exportProducts(ZipOutputStream export, Consumer consumer)
+        throws IOException {
+        for (Product product : getExportedProducts(consumer).values()) {
             // Clear the owner and UUID so they can be re-generated/assigned on import
             // product.setUuid(null);
             // product.setOwner(null);
 
-            String path = productDir.getCanonicalPath();
             String productId = product.getId();
-            File file = new File(path, productId + ".json");
-            FileWriter writer = null;
-            try {
-                writer = new FileWriter(file);
-                productExporter.export(mapper, writer, product);
-            }
-            finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
+            StringWriter writer = new StringWriter();
+            productExporter.export(mapper, writer, product);
+            addToArchive(export, "products/" + productId + ".json", writer);
 
             // Real products have a numeric id.
             if (StringUtils.isNumeric(product.getId())) {
@@ -523,117 +502,204 @@ public class Exporter {
                 // so just skip over this if we get null back
                 // XXX: need to decide if the cert should always be in the export, or never.
                 if (cert != null) {
-                    file = new File(productDir.getCanonicalPath(),
-                        product.getId() + ".pem");
-                    writer = new FileWriter(file);
+                    writer = new StringWriter();
                     productCertExporter.export(writer, cert);
-                    writer.close();
+                    addToArchive(export, "products/" + productId + ".pem", writer);
                 }
             }
         }
     }
 
-    private void exportConsumerTypes(File baseDir) throws IOException {
-        File typeDir = new File(baseDir.getCanonicalPath(), "consumer_types");
-        typeDir.mkdir();
-
+    private void exportConsumerTypes(ZipOutputStream export) throws IOException {
         for (ConsumerType type : consumerTypeCurator.listAll()) {
-            File file = new File(typeDir.getCanonicalPath(), type.getLabel() + ".json");
-            FileWriter writer = null;
-            try {
-                writer = new FileWriter(file);
-                consumerType.export(mapper, writer, type);
-            }
-            finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
+            StringWriter writer = new StringWriter();
+            consumerType.export(mapper, writer, type);
+            addToArchive(export, "consumer_types/" + type.getLabel() + ".json", writer);
         }
     }
 
-    private void exportRules(File baseDir) throws IOException {
+    private void exportRules(ZipOutputStream export) throws IOException {
         // Because old candlepin servers assume to import a file in rules dir, we had to
         // move to a new directory for versioned rules file:
-        File newRulesDir = new File(baseDir.getCanonicalPath(), "rules2");
-        newRulesDir.mkdir();
-        File newRulesFile = new File(newRulesDir.getCanonicalPath(), "rules.js");
-        FileWriter writer = null;
-        try {
-            writer = new FileWriter(newRulesFile);
-            rules.export(writer);
-        }
-        finally {
-            if (writer != null) {
-                writer.close();
-            }
-        }
+        StringWriter writer = new StringWriter();
+        rules.export(writer);
+        addToArchive(export, "rules2/rules.js", writer);
 
-        exportLegacyRules(baseDir);
+        exportLegacyRules(export);
     }
 
     /*
      * We still need to export a copy of the deprecated default-rules.js so new manifests
      * can still be imported by old candlepin servers.
      */
-    private void exportLegacyRules(File baseDir) throws IOException {
-        File oldRulesDir = new File(baseDir.getCanonicalPath(), "rules");
-        oldRulesDir.mkdir();
-        File oldRulesFile = new File(oldRulesDir.getCanonicalPath(), "default-rules.js");
-
+    private void exportLegacyRules(ZipOutputStream export) throws IOException {
         // TODO: does this need a "exporter" object as well?
-        FileUtils.copyFile(new File(
-            this.getClass().getResource(LEGACY_RULES_FILE).getPath()),
-            oldRulesFile);
+        InputStream in = this.getClass().getResourceAsStream(LEGACY_RULES_FILE);
+        try {
+            export.putNextEntry(new ZipEntry("export/rules/default-rules.js"));
+            IOUtils.copy(in, export);
+            export.closeEntry();
+        }
+        finally {
+            in.close();
+        }
     }
 
-    private void exportDistributorVersions(File baseDir) throws IOException {
+    private void exportDistributorVersions(ZipOutputStream export) throws IOException {
         List<DistributorVersion> versions = distVerCurator.findAll();
         if (versions == null || versions.isEmpty()) { return; }
 
-        File distVerDir = new File(baseDir.getCanonicalPath(), "distributor_version");
-        distVerDir.mkdir();
-
-        FileWriter writer = null;
         for (DistributorVersion dv : versions) {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting Distributor Version" + dv.getName());
             }
-            try {
-                File file = new File(distVerDir.getCanonicalPath(), dv.getName() + ".json");
-                writer = new FileWriter(file);
-                distVerExporter.export(mapper, writer, dv);
-            }
-            finally {
-                if (writer != null) {
-                    writer.close();
-                }
-            }
+            StringWriter writer = new StringWriter();
+            distVerExporter.export(mapper, writer, dv);
+            addToArchive(export, "distributor_version/" + dv.getName() + ".json", writer);
         }
     }
 
-    private void exportContentDeliveryNetworks(File baseDir) throws IOException {
+    private void exportContentDeliveryNetworks(ZipOutputStream export) throws IOException {
         List<Cdn> cdns = cdnCurator.list();
         if (cdns == null || cdns.isEmpty()) { return; }
 
-        File cdnDir = new File(baseDir.getCanonicalPath(), "content_delivery_network");
-        cdnDir.mkdir();
-
-        FileWriter writer = null;
         for (Cdn cdn : cdns) {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting Content Delivery Network" + cdn.getName());
             }
+            StringWriter writer = new StringWriter();
+            cdnExporter.export(mapper, writer, cdn);
+            addToArchive(export, "content_delivery_network/" + cdn.getLabel() + ".json",
+                writer);
+        }
+    }
+
+    /**
+     * Computes the version of everything a full export of the consumer would be
+     * made of, without serializing any of it. Two exports with the same version
+     * carry the same data, so the cached one is copied with new metadata and a
+     * new signature instead of exporting all of it again.
+     */
+    private String getExportVersion(Consumer consumer, String cdnKey, String webAppPrefix,
+        String apiUrl) throws ExportCreationException {
+        ExportVersion version = new ExportVersion();
+        version.add(getVersion())
+            .add(principalProvider.get().getPrincipalName())
+            .add(cdnKey)
+            .add(getPrefixWebUrl(webAppPrefix))
+            .add(getPrefixApiUrl(apiUrl));
+
+        version.add(consumer.getUuid()).add(consumer.getName());
+        if (consumer.getType() != null) {
+            version.add(consumer.getType().getLabel());
+        }
+        if (consumer.getOwner() != null) {
+            version.add(consumer.getOwner().getKey()).add(consumer.getOwner().getUpdated());
+        }
+        IdentityCertificate idCert = consumer.getIdCert();
+        if (idCert != null) {
+            version.add(idCert.getSerial().getId()).add(idCert.getUpdated());
+        }
+
+        for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
+            if (ent.getDirty()) {
+                log.error("Entitlement " + ent.getId() + " is marked as dirty.");
+                throw new ExportCreationException("Attempted to export dirty entitlements");
+            }
+            version.add(ent.getId()).add(ent.getUpdated()).add(ent.getQuantity());
+            if (ent.getPool() != null) {
+                version.add(ent.getPool().getId()).add(ent.getPool().getUpdated());
+            }
+        }
+        for (EntitlementCertificate cert : entCertAdapter.listForConsumer(consumer)) {
+            version.add(cert.getSerial().getId()).add(cert.getUpdated());
+        }
+
+        for (Product product : getExportedProducts(consumer).values()) {
+            version.add(product.getId()).add(product.getUpdated());
+            for (ProductContent pc : product.getProductContent()) {
+                version.add(pc.getContent().getId()).add(pc.getContent().getUpdated())
+                    .add(pc.getEnabled());
+            }
+        }
+
+        for (ConsumerType type : consumerTypeCurator.listAll()) {
+            version.add(type.getLabel());
+        }
+        version.add(rules.getUpdated());
+
+        List<DistributorVersion> versions = distVerCurator.findAll();
+        if (versions != null) {
+            for (DistributorVersion dv : versions) {
+                version.add(dv.getName()).add(dv.getUpdated());
+            }
+        }
+        List<Cdn> cdns = cdnCurator.list();
+        if (cdns != null) {
+            for (Cdn cdn : cdns) {
+                version.add(cdn.getLabel()).add(cdn.getUpdated());
+            }
+        }
+        return version.toString();
+    }
+
+    /**
+     * Digest of the values an export is made of, in the order they are added.
+     * Collections are added in the order they are loaded in, so a change in
+     * that order only costs a rebuilt export.
+     */
+    private static class ExportVersion {
+        private final MessageDigest digest;
+
+        ExportVersion() {
             try {
-                File file = new File(cdnDir.getCanonicalPath(), cdn.getLabel() + ".json");
-                writer = new FileWriter(file);
-                cdnExporter.export(mapper, writer, cdn);
+                digest = MessageDigest.getInstance("SHA-256");
             }
-            finally {
-                if (writer != null) {
-                    writer.close();
-                }
+            catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        ExportVersion add(Object value) {
+            if (value instanceof Date) {
+                value = ((Date) value).getTime();
+            }
+            digest.update(String.valueOf(value).getBytes(UTF8));
+            digest.update((byte) 0);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return new String(Hex.encodeHex(digest.digest()));
+        }
+    }
+
+    /**
+     * Updates a signature with everything written through it.
+     */
+    private static class SigningOutputStream extends FilterOutputStream {
+        private final Signature signature;
+
+        SigningOutputStream(OutputStream out, Signature signature) {
+            super(out);
+            this.signature = signature;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                signature.update(b, off, len);
+            }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export archive", e);
             }
+            out.write(b, off, len);
         }
     }
 }
@@ -44,6 +44,7 @@ import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
@@ -51,12 +52,14 @@ import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -66,7 +69,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 import javax.persistence.PersistenceException;
 
@@ -76,6 +80,7 @@ import javax.persistence.PersistenceException;
  */
 public class Importer {
     private static Logger log = LoggerFactory.getLogger(Importer.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     /**
      *
@@ -163,16 +168,16 @@ public class Importer {
      * Check to make sure the meta data is newer than the imported data.
      * @param type ExporterMetadata.TYPE_PER_USER or TYPE_SYSTEM
      * @param owner Owner in the case of PER_USER
-     * @param meta meta.json file
+     * @param meta meta.json entry
      * @param forcedConflicts Conflicts we will override if encountered
      * @throws IOException thrown if there's a problem reading the file
      * @throws ImporterException thrown if the metadata is invalid.
      */
-    public void validateMetadata(String type, Owner owner, File meta,
+    public void validateMetadata(String type, Owner owner, ManifestEntry meta,
         ConflictOverrides forcedConflicts)
         throws IOException, ImporterException {
 
-        Meta m = mapper.readValue(meta, Meta.class);
+        Meta m = readMeta(meta);
         if (type == null) {
             throw new ImporterException(i18n.tr("Wrong metadata type"));
         }
@@ -235,20 +240,30 @@ public class Importer {
         ConflictOverrides overrides)
         throws ImporterException {
         File tmpDir = null;
+        ZipFile archive = null;
+        ManifestArchive consumerExport = null;
         Map<String, Object> result = new HashMap<String, Object>();
         try {
             tmpDir = new SyncUtils(config).makeTempDir("import");
-            extractArchive(tmpDir, exportFile);
+            archive = openArchive(exportFile);
 
-            File signature = new File(tmpDir, "signature");
-            if (signature.length() == 0) {
+            byte[] signature = loadSignature(archive);
+            if (signature.length == 0) {
                 throw new ImportExtractionException(i18n.tr("The archive does not " +
                                           "contain the required signature file"));
             }
 
-            boolean verifiedSignature = pki.verifySHA256WithRSAHashAgainstCACerts(
-                new File(tmpDir, "consumer_export.zip"),
-                loadSignature(new File(tmpDir, "signature")));
+            ZipEntry consumerExportEntry = archive.getEntry("consumer_export.zip");
+            if (consumerExportEntry == null) {
+                throw new FileNotFoundException("consumer_export.zip");
+            }
+
+            // The nested archive is read from the upload exactly once: the
+            // signature is checked on the same pass that copies it out, and the
+            // copy is only kept so its entries can be read in import order.
+            File consumerExportFile = new File(tmpDir, "consumer_export.zip");
+            boolean verifiedSignature = copyAndVerify(
+                archive.getInputStream(consumerExportEntry), consumerExportFile, signature);
             if (!verifiedSignature) {
                 log.warn("Archive signature check failed.");
                 if (!overrides
@@ -270,26 +285,19 @@ public class Importer {
                 }
             }
 
-            File consumerExport = new File(tmpDir, "consumer_export.zip");
-            File exportDir = extractArchive(tmpDir, consumerExport);
-
-            Map<String, File> importFiles = new HashMap<String, File>();
-            File[] listFiles = exportDir.listFiles();
-            if (listFiles == null || listFiles.length == 0) {
+            consumerExport = openManifestArchive(consumerExportFile);
+            Map<String, ManifestEntry> importFiles = consumerExport.getEntries();
+            if (importFiles.isEmpty()) {
                 throw new ImportExtractionException(i18n.tr("The consumer_export " +
                     "archive has no contents"));
             }
-            for (File file : listFiles) {
-                importFiles.put(file.getName(), file);
-            }
 
             // Need the rules file as well which is in a nested dir:
-            File rulesFile = new File(exportDir, ImportFile.RULES_FILE.fileName());
-            importFiles.put(ImportFile.RULES_FILE.fileName(), rulesFile);
+            importFiles.put(ImportFile.RULES_FILE.fileName(),
+                consumerExport.getEntry(ImportFile.RULES_FILE.fileName()));
 
             ConsumerDto consumer = importObjects(owner, importFiles, overrides);
-            Meta m = mapper.readValue(importFiles.get(ImportFile.META.fileName()),
-                Meta.class);
+            Meta m = readMeta(importFiles.get(ImportFile.META.fileName()));
             result.put("consumer", consumer);
             result.put("meta", m);
             return result;
@@ -320,6 +328,15 @@ public class Importer {
                 i18n.tr("Certificate exception checking archive signature"), e);
         }
         finally {
+            closeQuietly(consumerExport);
+            if (archive != null) {
+                try {
+                    archive.close();
+                }
+                catch (IOException e) {
+                    log.error("Failed to close export archive", e);
+                }
+            }
             if (tmpDir != null) {
                 try {
                     FileUtils.deleteDirectory(tmpDir);
@@ -334,29 +351,29 @@ public class Importer {
     @Transactional(rollbackOn = {IOException.class, ImporterException.class,
             RuntimeException.class, ImportConflictException.class})
     // WARNING: Keep this method public, otherwise @Transactional is ignored:
-    ConsumerDto importObjects(Owner owner, Map<String, File> importFiles,
+    ConsumerDto importObjects(Owner owner, Map<String, ManifestEntry> importFiles,
         ConflictOverrides overrides)
         throws IOException, ImporterException {
 
         log.debug("Importing objects for owner: {}", owner);
 
-        File metadata = importFiles.get(ImportFile.META.fileName());
+        ManifestEntry metadata = importFiles.get(ImportFile.META.fileName());
         if (metadata == null) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                                    "required meta.json file"));
         }
-        File consumerTypes = importFiles.get(ImportFile.CONSUMER_TYPE.fileName());
+        ManifestEntry consumerTypes = importFiles.get(ImportFile.CONSUMER_TYPE.fileName());
         if (consumerTypes == null) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                                     "required consumer_types directory"));
         }
-        File consumerFile = importFiles.get(ImportFile.CONSUMER.fileName());
+        ManifestEntry consumerFile = importFiles.get(ImportFile.CONSUMER.fileName());
         if (consumerFile == null) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                 "required consumer.json file"));
         }
-        File products = importFiles.get(ImportFile.PRODUCTS.fileName());
-        File entitlements = importFiles.get(ImportFile.ENTITLEMENTS.fileName());
+        ManifestEntry products = importFiles.get(ImportFile.PRODUCTS.fileName());
+        ManifestEntry entitlements = importFiles.get(ImportFile.ENTITLEMENTS.fileName());
         if (products != null && entitlements == null) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                                         "required entitlements directory"));
@@ -377,19 +394,19 @@ public class Importer {
         List<ImportConflictException> conflictExceptions =
             new LinkedList<ImportConflictException>();
 
-        File rules = importFiles.get(ImportFile.RULES_FILE.fileName());
+        ManifestEntry rules = importFiles.get(ImportFile.RULES_FILE.fileName());
         importRules(rules, metadata);
 
-        importConsumerTypes(consumerTypes.listFiles());
+        importConsumerTypes(consumerTypes.listEntries());
 
-        File distributorVersions = importFiles.get(ImportFile.DISTRIBUTOR_VERSIONS.fileName());
+        ManifestEntry distributorVersions = importFiles.get(ImportFile.DISTRIBUTOR_VERSIONS.fileName());
         if (distributorVersions != null) {
-            importDistributorVersions(distributorVersions.listFiles());
+            importDistributorVersions(distributorVersions.listEntries());
         }
 
-        File cdns = importFiles.get(ImportFile.CONTENT_DELIVERY_NETWORKS.fileName());
+        ManifestEntry cdns = importFiles.get(ImportFile.CONTENT_DELIVERY_NETWORKS.fileName());
         if (cdns != null) {
-            importContentDeliveryNetworks(cdns.listFiles());
+            importContentDeliveryNetworks(cdns.listEntries());
         }
 
         // per user elements
@@ -403,11 +420,12 @@ public class Importer {
 
         ConsumerDto consumer = null;
         try {
-            Meta m = mapper.readValue(metadata, Meta.class);
-            File upstreamFile = importFiles.get(ImportFile.UPSTREAM_CONSUMER.fileName());
-            File[] dafiles = new File[0];
+            Meta m = readMeta(metadata);
+            ManifestEntry upstreamFile =
+                importFiles.get(ImportFile.UPSTREAM_CONSUMER.fileName());
+            List<ManifestEntry> dafiles = new ArrayList<ManifestEntry>();
             if (upstreamFile != null) {
-                dafiles = upstreamFile.listFiles();
+                dafiles = upstreamFile.listEntries();
             }
             consumer = importConsumer(owner, consumerFile,
                 dafiles, overrides, m);
@@ -427,23 +445,24 @@ public class Importer {
 
         // If the consumer has no entitlements, this products directory will end up empty.
         // This also implies there will be no entitlements to import.
-        Meta meta = mapper.readValue(metadata, Meta.class);
+        Meta meta = readMeta(metadata);
         List<Subscription> importSubs = new ArrayList<Subscription>();
         if (importFiles.get(ImportFile.PRODUCTS.fileName()) != null) {
             ProductImporter importer = new ProductImporter(productCurator, contentCurator);
 
             Set<Product> productsToImport = importProducts(
-                importFiles.get(ImportFile.PRODUCTS.fileName()).listFiles(), importer, owner
+                importFiles.get(ImportFile.PRODUCTS.fileName()).listEntries(), importer, owner
             );
 
-            meta = mapper.readValue(metadata, Meta.class);
+            meta = readMeta(metadata);
             importSubs = importEntitlements(owner, productsToImport,
-                    entitlements.listFiles(), consumer, meta);
+                    entitlements.listEntries(), consumer, meta);
         }
         else {
             log.warn("No products found to import, skipping product import.");
             log.warn("No entitlements in manifest, removing all subscriptions for owner.");
-            importEntitlements(owner, new HashSet<Product>(), new File[]{}, consumer, meta);
+            importEntitlements(owner, new HashSet<Product>(),
+                new ArrayList<ManifestEntry>(), consumer, meta);
         }
 
         // Setup our import subscription adapter with the subscriptions imported:
@@ -456,11 +475,18 @@ public class Importer {
         return consumer;
     }
 
-    public void importRules(File rulesFile, File metadata) throws IOException {
+    public void importRules(ManifestEntry rulesFile, ManifestEntry metadata)
+        throws IOException {
+
+        if (rulesFile == null) {
+            log.warn("Skipping rules import, manifest does not contain rules file: " +
+                ImportFile.RULES_FILE.fileName());
+            return;
+        }
 
         Reader reader = null;
         try {
-            reader = new FileReader(rulesFile);
+            reader = rulesFile.openReader();
             rulesImporter.importObject(reader);
         }
         catch (FileNotFoundException fnfe) {
@@ -475,13 +501,13 @@ public class Importer {
         }
     }
 
-    public void importConsumerTypes(File[] consumerTypes) throws IOException {
+    public void importConsumerTypes(List<ManifestEntry> consumerTypes) throws IOException {
         ConsumerTypeImporter importer = new ConsumerTypeImporter(consumerTypeCurator);
         Set<ConsumerType> consumerTypeObjs = new HashSet<ConsumerType>();
-        for (File consumerType : consumerTypes) {
+        for (ManifestEntry consumerType : consumerTypes) {
             Reader reader = null;
             try {
-                reader = new FileReader(consumerType);
+                reader = consumerType.openReader();
                 consumerTypeObjs.add(importer.createObject(mapper, reader));
             }
             finally {
@@ -493,18 +519,18 @@ public class Importer {
         importer.store(consumerTypeObjs);
     }
 
-    public ConsumerDto importConsumer(Owner owner, File consumerFile,
-        File[] upstreamConsumer, ConflictOverrides forcedConflicts, Meta meta)
+    public ConsumerDto importConsumer(Owner owner, ManifestEntry consumerFile,
+        List<ManifestEntry> upstreamConsumer, ConflictOverrides forcedConflicts, Meta meta)
         throws IOException, SyncDataFormatException {
 
         IdentityCertificate idcert = null;
-        for (File uc : upstreamConsumer) {
+        for (ManifestEntry uc : upstreamConsumer) {
             if (uc.getName().endsWith(".json")) {
                 log.debug("Import upstream consumeridentity certificate: " +
                     uc.getName());
                 Reader reader = null;
                 try {
-                    reader = new FileReader(uc);
+                    reader = uc.openReader();
                     idcert = mapper.readValue(reader, IdentityCertificate.class);
                 }
                 finally {
@@ -524,7 +550,7 @@ public class Importer {
         Reader reader = null;
         ConsumerDto consumer = null;
         try {
-            reader = new FileReader(consumerFile);
+            reader = consumerFile.openReader();
             consumer = importer.createObject(mapper, reader);
             // we can not rely on the actual ConsumerType in the ConsumerDto
             // because it could have an id not in our database. We need to
@@ -550,17 +576,18 @@ public class Importer {
         return consumer;
     }
 
-    public Set<Product> importProducts(File[] products, ProductImporter importer, Owner owner)
+    public Set<Product> importProducts(List<ManifestEntry> products, ProductImporter importer,
+        Owner owner)
         throws IOException {
         Set<Product> productsToImport = new HashSet<Product>();
-        for (File product : products) {
+        for (ManifestEntry product : products) {
             // Skip product.pem's, we just need the json to import:
             if (product.getName().endsWith(".json")) {
                 log.debug("Importing product {} for owner {}", product.getName(), owner.getKey());
 
                 Reader reader = null;
                 try {
-                    reader = new FileReader(product);
+                    reader = product.openReader();
                     productsToImport.add(importer.createObject(mapper, reader, owner));
                 }
                 finally {
@@ -578,8 +605,8 @@ public class Importer {
         return productsToImport;
     }
 
-    public List<Subscription> importEntitlements(Owner owner, Set<Product> products, File[] entitlements,
-        ConsumerDto consumer, Meta meta)
+    public List<Subscription> importEntitlements(Owner owner, Set<Product> products,
+        List<ManifestEntry> entitlements, ConsumerDto consumer, Meta meta)
         throws IOException, SyncDataFormatException {
 
         log.debug("Importing entitlements for owner: {}", owner);
@@ -597,11 +624,11 @@ public class Importer {
         }
 
         List<Subscription> subscriptionsToImport = new ArrayList<Subscription>();
-        for (File entitlement : entitlements) {
+        for (ManifestEntry entitlement : entitlements) {
             Reader reader = null;
             try {
                 log.debug("Import entitlement: " + entitlement.getName());
-                reader = new FileReader(entitlement);
+                reader = entitlement.openReader();
                 subscriptionsToImport.add(importer.importObject(mapper, reader, owner,
                     productsById, consumer, meta));
             }
@@ -615,104 +642,108 @@ public class Importer {
         return subscriptionsToImport;
     }
 
-    /**
-     * Create a tar.gz archive of the exported directory.
-     *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive tar.gz.
-     */
-    private File extractArchive(File tempDir, File exportFile)
-        throws IOException, ImportExtractionException {
-        log.debug("Extracting archive to: " + tempDir.getAbsolutePath());
-        byte[] buf = new byte[1024];
-
-        ZipInputStream zipinputstream = null;
+    private Meta readMeta(ManifestEntry metadata) throws IOException {
+        InputStream in = metadata.open();
+        try {
+            return mapper.readValue(in, Meta.class);
+        }
+        finally {
+            in.close();
+        }
+    }
 
+    private ZipFile openArchive(File exportFile)
+        throws IOException, ImportExtractionException {
+        log.debug("Opening archive: " + exportFile.getAbsolutePath());
+        ZipFile archive = null;
         try {
-            zipinputstream = new ZipInputStream(new FileInputStream(exportFile));
-            ZipEntry zipentry = zipinputstream.getNextEntry();
+            archive = new ZipFile(exportFile);
+        }
+        catch (ZipException e) {
+            log.debug("Not a zip archive: " + exportFile.getName(), e);
+        }
 
-            if (zipentry == null) {
-                throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
-                    "a properly compressed file or is empty", exportFile.getName()));
+        if (archive == null || archive.size() == 0) {
+            if (archive != null) {
+                archive.close();
             }
+            throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                "a properly compressed file or is empty", exportFile.getName()));
+        }
+        return archive;
+    }
 
-            while (zipentry != null) {
-                //for each entry to be extracted
-                String entryName = zipentry.getName();
-                if (log.isDebugEnabled()) {
-                    log.debug("entryname " + entryName);
-                }
-                File newFile = new File(entryName);
-                String directory = newFile.getParent();
-                if (directory != null) {
-                    new File(tempDir, directory).mkdirs();
-                }
+    private ManifestArchive openManifestArchive(File consumerExport)
+        throws IOException, ImportExtractionException {
+        try {
+            return new ManifestArchive(consumerExport);
+        }
+        catch (ZipException e) {
+            log.debug("Not a zip archive: " + consumerExport.getName(), e);
+            throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                "a properly compressed file or is empty", consumerExport.getName()));
+        }
+    }
 
-                FileOutputStream fileoutputstream = null;
-                try {
-                    fileoutputstream = new FileOutputStream(new File(tempDir, entryName));
-                    int n;
-                    while ((n = zipinputstream.read(buf, 0, 1024)) > -1) {
-                        fileoutputstream.write(buf, 0, n);
-                    }
-                }
-                finally {
-                    if (fileoutputstream != null) {
-                        fileoutputstream.close();
-                    }
-                }
+    private byte[] loadSignature(ZipFile archive) throws IOException {
+        ZipEntry entry = archive.getEntry("signature");
+        if (entry == null) {
+            return new byte[0];
+        }
 
-                zipinputstream.closeEntry();
-                zipentry = zipinputstream.getNextEntry();
-            }
+        InputStream signature = archive.getInputStream(entry);
+        try {
+            return IOUtils.toByteArray(signature);
         }
         finally {
-            if (zipinputstream != null) {
-                zipinputstream.close();
-            }
+            signature.close();
         }
-
-        return new File(tempDir.getAbsolutePath(), "export");
     }
 
-    private byte[] loadSignature(File signatureFile) throws IOException {
-        FileInputStream signature = null;
-        // signature is never going to be a huge file, therefore cast is a-okay
-        byte[] signatureBytes = new byte[(int) signatureFile.length()];
-
+    /**
+     * Copies the input to the destination file while its signature is
+     * verified, so the input is read only once.
+     */
+    private boolean copyAndVerify(InputStream input, File destination, byte[] signature)
+        throws IOException, CertificateException {
+        FileOutputStream out = new FileOutputStream(destination);
         try {
-            signature = new FileInputStream(signatureFile);
-
-            int offset = 0;
-            int numRead = 0;
-            while (offset < signatureBytes.length && numRead >= 0) {
-                numRead = signature.read(signatureBytes, offset,
-                    signatureBytes.length - offset);
-                offset += numRead;
+            InputStream in = new CopyingInputStream(input, out.getChannel());
+            boolean verified = pki.verifySHA256WithRSAHashAgainstCACerts(in, signature);
+
+            // Drain whatever the check left unread so the copy is complete:
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (in.read(buf) != -1) {
+                // copied as it is read
             }
-            return signatureBytes;
+            return verified;
         }
         finally {
-            if (signature != null) {
-                try {
-                    signature.close();
-                }
-                catch (IOException e) {
-                    // nothing we can do about this
-                }
+            out.close();
+            input.close();
+        }
+    }
+
+    private void closeQuietly(ManifestArchive archive) {
+        if (archive != null) {
+            try {
+                archive.close();
+            }
+            catch (IOException e) {
+                log.error("Failed to close consumer export archive", e);
             }
         }
     }
 
-    public void importDistributorVersions(File[] versionFiles) throws IOException {
+    public void importDistributorVersions(List<ManifestEntry> versionFiles)
+        throws IOException {
         DistributorVersionImporter importer =
             new DistributorVersionImporter(distVerCurator);
         Set<DistributorVersion> distVers = new HashSet<DistributorVersion>();
-        for (File verFile : versionFiles) {
+        for (ManifestEntry verFile : versionFiles) {
             Reader reader = null;
             try {
-                reader = new FileReader(verFile);
+                reader = verFile.openReader();
                 distVers.add(importer.createObject(mapper, reader));
             }
             finally {
@@ -724,14 +755,15 @@ public class Importer {
         importer.store(distVers);
     }
 
-    public void importContentDeliveryNetworks(File[] cdnFiles) throws IOException {
+    public void importContentDeliveryNetworks(List<ManifestEntry> cdnFiles)
+        throws IOException {
         CdnImporter importer =
             new CdnImporter(cdnCurator);
         Set<Cdn> cdns = new HashSet<Cdn>();
-        for (File cdnFile : cdnFiles) {
+        for (ManifestEntry cdnFile : cdnFiles) {
             Reader reader = null;
             try {
-                reader = new FileReader(cdnFile);
+                reader = cdnFile.openReader();
                 cdns.add(importer.createObject(mapper, reader));
             }
             finally {
@@ -742,4 +774,48 @@ public class Importer {
         }
         importer.store(cdns);
     }
+
+    /**
+     * Writes everything read from the wrapped stream to a channel.
+     */
+    private static class CopyingInputStream extends FilterInputStream {
+        private final WritableByteChannel channel;
+
+        CopyingInputStream(InputStream in, WritableByteChannel channel) {
+            super(in);
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, n);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the copy, read them instead
+            byte[] buf = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(buf, 0, buf.length);
+            return read == -1 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
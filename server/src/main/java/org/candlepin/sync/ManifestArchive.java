@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ManifestArchive
+ *
+ * The consumer_export.zip of a manifest, read in place. The entries below the
+ * export directory are indexed once when the archive is opened, and each file
+ * is then inflated straight from the zip when it is imported, so nothing is
+ * extracted to disk.
+ */
+public class ManifestArchive implements Closeable {
+    private static final String EXPORT_DIR = "export";
+
+    private final ZipFile zip;
+    private final ArchiveEntry root;
+
+    /**
+     * @param file the consumer_export.zip of a manifest.
+     * @throws java.util.zip.ZipException if the file is not a zip archive.
+     * @throws IOException if the file can not be read.
+     */
+    public ManifestArchive(File file) throws IOException {
+        this.zip = new ZipFile(file);
+        this.root = new ArchiveEntry(EXPORT_DIR, null);
+
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry zipEntry = zipEntries.nextElement();
+            if (!zipEntry.isDirectory()) {
+                index(zipEntry);
+            }
+        }
+    }
+
+    /**
+     * @return the files and directories directly below the export directory,
+     * by name. The map may be modified by the caller.
+     */
+    public Map<String, ManifestEntry> getEntries() {
+        return new LinkedHashMap<String, ManifestEntry>(root.children);
+    }
+
+    /**
+     * @param path the path of an entry below the export directory, i.e.
+     * "rules2/rules.js".
+     * @return the entry, or null if the archive does not contain it.
+     */
+    public ManifestEntry getEntry(String path) {
+        ArchiveEntry entry = root;
+        for (String name : path.split("/")) {
+            entry = entry.children.get(name);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    private void index(ZipEntry zipEntry) {
+        String[] path = zipEntry.getName().split("/");
+        if (path.length < 2 || !EXPORT_DIR.equals(path[0])) {
+            return;
+        }
+
+        ArchiveEntry parent = root;
+        for (int i = 1; i < path.length - 1; i++) {
+            ArchiveEntry dir = parent.children.get(path[i]);
+            if (dir == null) {
+                dir = new ArchiveEntry(path[i], null);
+                parent.children.put(path[i], dir);
+            }
+            parent = dir;
+        }
+
+        String name = path[path.length - 1];
+        parent.children.put(name, new ArchiveEntry(name, zipEntry));
+    }
+
+    /**
+     * A file or directory of the archive. Directories only exist implicitly,
+     * as the parents of the files in them.
+     */
+    private class ArchiveEntry extends ManifestEntry {
+        private final String name;
+        private final ZipEntry zipEntry;
+        private final Map<String, ArchiveEntry> children =
+            new LinkedHashMap<String, ArchiveEntry>();
+
+        ArchiveEntry(String name, ZipEntry zipEntry) {
+            this.name = name;
+            this.zipEntry = zipEntry;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<ManifestEntry> listEntries() {
+            return new ArrayList<ManifestEntry>(children.values());
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (zipEntry == null) {
+                throw new IOException("Not a file: " + name);
+            }
+            return zip.getInputStream(zipEntry);
+        }
+    }
+}
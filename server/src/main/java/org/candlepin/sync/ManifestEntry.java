@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ManifestEntry
+ *
+ * A file or directory of a manifest, read in place rather than extracted
+ * first. Entries of a {@link ManifestArchive} are read straight from the zip,
+ * entries created with {@link #forFile(File)} from the file system.
+ */
+public abstract class ManifestEntry {
+
+    /**
+     * @return the name of this entry, without the directories above it.
+     */
+    public abstract String getName();
+
+    /**
+     * @return the entries directly below this directory, or an empty list if
+     * this entry is a file.
+     */
+    public abstract List<ManifestEntry> listEntries();
+
+    /**
+     * Opens the contents of this file. The caller must close the stream.
+     *
+     * @return the contents of this entry.
+     * @throws IOException if the entry can not be read.
+     */
+    public abstract InputStream open() throws IOException;
+
+    /**
+     * Opens the contents of this file as UTF-8 text. The caller must close
+     * the reader.
+     *
+     * @return a reader over the contents of this entry.
+     * @throws IOException if the entry can not be read.
+     */
+    public Reader openReader() throws IOException {
+        return new InputStreamReader(open(), "UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    public static ManifestEntry forFile(File file) {
+        return new FileEntry(file);
+    }
+
+    /**
+     * An entry backed by a file or directory on disk.
+     */
+    private static class FileEntry extends ManifestEntry {
+        private final File file;
+
+        FileEntry(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public List<ManifestEntry> listEntries() {
+            File[] files = file.listFiles();
+            if (files == null) {
+                return Collections.emptyList();
+            }
+
+            List<ManifestEntry> entries = new ArrayList<ManifestEntry>(files.length);
+            for (File child : files) {
+                entries.add(new FileEntry(child));
+            }
+            return entries;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return new FileInputStream(file);
+        }
+    }
+}
@@ -16,15 +16,15 @@ package org.candlepin.sync;
 
 import org.candlepin.model.ProductCertificate;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 /**
  * ProductCertExporter
  */
 public class ProductCertExporter {
 
-    public void export(FileWriter writer, ProductCertificate productCert)
+    public void export(Writer writer, ProductCertificate productCert)
         throws IOException {
         writer.write(productCert.getCert());
     }
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.dto.Content;
+
+import com.google.inject.Inject;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContentPayloadCache
+ *
+ * Bounded cache of encoded v3 content payloads, keyed by a fingerprint of the
+ * content paths they were encoded from. The paths are taken after the content
+ * prefix was applied and the content was filtered for the consumer's environment,
+ * architecture and entitled products, so all entitlements ending up with the same
+ * content sets share one payload, whichever pool or consumer they belong to.
+ */
+public class ContentPayloadCache {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int maxSize;
+    private final Map<String, byte[]> payloads;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ContentPayloadCache(Configuration config) {
+        this(config.getInt(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX));
+    }
+
+    public ContentPayloadCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.payloads = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Fingerprints the paths of the given content, in order, which is all the
+     * content payload is encoded from.
+     *
+     * @param contentList the content going into the payload
+     * @return the key to look up and store the payload with
+     */
+    public String fingerprint(List<Content> contentList) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (Content content : contentList) {
+            digest.update(content.getPath().getBytes(UTF8));
+            digest.update((byte) 0);
+        }
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the content
+     * @return a copy of the cached payload, or null if there is none
+     */
+    public byte[] get(String fingerprint) {
+        byte[] payload;
+        synchronized (payloads) {
+            payload = payloads.get(fingerprint);
+        }
+
+        if (payload == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return payload.clone();
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the content
+     * @param payload the payload encoded for the content
+     */
+    public void put(String fingerprint, byte[] payload) {
+        synchronized (payloads) {
+            payloads.put(fingerprint, payload.clone());
+        }
+    }
+
+    public int size() {
+        synchronized (payloads) {
+            return payloads.size();
+        }
+    }
+
+    /**
+     * @return number of payloads served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of payloads which had to be encoded
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
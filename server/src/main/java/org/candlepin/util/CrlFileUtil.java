@@ -14,6 +14,7 @@
  */
 package org.candlepin.util;
 
+import org.candlepin.controller.CrlGenerator;
 import org.candlepin.pki.PKIUtility;
 
 import com.google.inject.Inject;
@@ -23,14 +24,25 @@ import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -42,6 +54,7 @@ public class CrlFileUtil {
     private static Logger log = LoggerFactory.getLogger(CrlFileUtil.class);
     private final PKIUtility pkiUtility;
     private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final Map<File, MappedFile> mappedFiles = new HashMap<File, MappedFile>();
 
     @Inject
     public CrlFileUtil(PKIUtility pkiUtility) {
@@ -93,30 +106,222 @@ public class CrlFileUtil {
         }
     }
 
+    /**
+     * Reads the bytes of a CRL file as they are, without parsing the CRL. The
+     * file is memory-mapped, and the mapping kept until the file changes.
+     *
+     * @param file to the CRL
+     * @return the bytes of the CRL file
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public byte[] readCRLBytes(File file) throws IOException {
+        lock.readLock().lock();
+        try {
+            ByteBuffer buffer = getMappedFile(file);
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a complete CRL. Any delta CRL written for the previous one is
+     * removed, as it no longer applies.
+     *
+     * @param file to the CRL
+     * @param crl the complete CRL
+     * @return the PEM encoded CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
     public byte[] writeCRLFile(File file, X509CRL crl)
         throws CRLException, CertificateException, IOException {
 
         byte[] encoded = pkiUtility.getPemEncoded(crl);
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
         lock.writeLock().lock();
         try {
-            stream.write(encoded);
             log.info("Completed generating CRL. Writing it to disk");
-            FileUtils.writeByteArrayToFile(file, stream.toByteArray());
+            writeFile(file, encoded);
+            deleteFile(getDeltaFile(file));
         }
         finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                }
-                catch (IOException e) {
-                    log.error(
-                        "exception when closing a CRL file: {}", file.getAbsolutePath());
-                }
-            }
             lock.writeLock().unlock();
         }
 
         return encoded;
     }
+
+    /**
+     * Synchronizes the CRL file with the database, writing the new CRL to a
+     * temporary file first, which then replaces the CRL. Any delta CRL written for
+     * the previous one is removed, as it no longer applies.
+     *
+     * @param file to the CRL
+     * @param crlGenerator generator writing the CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public void syncCRLFile(File file, CrlGenerator crlGenerator) throws IOException {
+        BigInteger crlNumber = readCRLNumber(file);
+        File dir = file.getAbsoluteFile().getParentFile();
+        FileUtils.forceMkdir(dir);
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                crlGenerator.syncCRLWithDB(crlNumber, out);
+            }
+            finally {
+                out.close();
+            }
+
+            lock.writeLock().lock();
+            try {
+                log.info("Completed generating CRL. Replacing {}", file);
+                replaceFile(tmp, file);
+                deleteFile(getDeltaFile(file));
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+        finally {
+            if (tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the number of the CRL in the given file, without parsing the
+     * entries of the CRL.
+     *
+     * @param file to the CRL
+     * @return the CRL number, zero if the file does not exist or is empty
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public BigInteger readCRLNumber(File file) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!file.exists() || file.length() == 0) {
+                return BigInteger.ZERO;
+            }
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                return pkiUtility.readCRLNumber(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the delta CRL of the given complete CRL file.
+     *
+     * @param file to the complete CRL
+     * @param delta the delta CRL
+     * @return the PEM encoded delta CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public byte[] writeDeltaCRLFile(File file, X509CRL delta) throws IOException {
+        byte[] encoded = pkiUtility.getPemEncoded(delta);
+        lock.writeLock().lock();
+        try {
+            writeFile(getDeltaFile(file), encoded);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        return encoded;
+    }
+
+    /**
+     * Makes the current complete CRL the base which delta CRLs are issued
+     * against, until it is published again.
+     *
+     * @param file to the complete CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public void publishBaseCRLFile(File file) throws IOException {
+        lock.writeLock().lock();
+        try {
+            writeFile(getBaseFile(file), FileUtils.readFileToByteArray(file));
+            deleteFile(getDeltaFile(file));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public File getBaseFile(File file) {
+        return new File(file.getPath() + ".base");
+    }
+
+    public File getDeltaFile(File file) {
+        return new File(file.getPath() + ".delta");
+    }
+
+    /*
+     * Files are replaced rather than overwritten, mappings of the previous file
+     * stay valid for whoever still reads them.
+     */
+    private void writeFile(File file, byte[] bytes) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileUtils.writeByteArrayToFile(tmp, bytes);
+        replaceFile(tmp, file);
+    }
+
+    private void replaceFile(File tmp, File file) throws IOException {
+        if (!tmp.renameTo(file)) {
+            FileUtils.copyFile(tmp, file);
+            tmp.delete();
+        }
+        synchronized (mappedFiles) {
+            mappedFiles.remove(file);
+        }
+    }
+
+    private void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Unable to delete CRL file: {}", file);
+        }
+        synchronized (mappedFiles) {
+            mappedFiles.remove(file);
+        }
+    }
+
+    private ByteBuffer getMappedFile(File file) throws IOException {
+        synchronized (mappedFiles) {
+            MappedFile mapped = mappedFiles.get(file);
+            if (mapped == null || mapped.lastModified != file.lastModified() ||
+                mapped.length != file.length()) {
+                mapped = new MappedFile(file);
+                mappedFiles.put(file, mapped);
+            }
+            return mapped.buffer.duplicate();
+        }
+    }
+
+    private static class MappedFile {
+        private final long lastModified;
+        private final long length;
+        private final MappedByteBuffer buffer;
+
+        MappedFile(File file) throws IOException {
+            this.lastModified = file.lastModified();
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                this.length = raf.length();
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            finally {
+                raf.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * SerialNumberAllocator
+ *
+ * Hands out certificate serial numbers from blocks of consecutive numbers, each
+ * block picked at random among all block aligned ranges of positive longs. A
+ * node only touches the random number generator once per block, while numbers
+ * within a block are handed out without locking.
+ *
+ * Nodes pick their blocks independently, so two nodes only hand out the same
+ * number if they pick the same block. With blocks of size B, that is even less
+ * likely than two of N random serials colliding as described in
+ * {@link Util#generateUniqueLong()}: N serials use N/B blocks out of 2**63/B,
+ * which collide with probability of about N**2/(2 * B * 2**63).
+ */
+public class SerialNumberAllocator {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int blockSize;
+    private final long blocks;
+    private final AtomicReference<Block> current = new AtomicReference<Block>();
+    private final AtomicLong blocksReserved = new AtomicLong();
+
+    public SerialNumberAllocator(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.blocks = Long.MAX_VALUE / blockSize;
+        this.current.set(reserveBlock());
+    }
+
+    /**
+     * @return a positive serial number not handed out by this allocator before
+     */
+    public long next() {
+        while (true) {
+            Block block = current.get();
+            int offset = block.next.getAndIncrement();
+            if (offset < blockSize) {
+                return block.base + offset;
+            }
+            // Block used up, whoever gets here first installs the next one:
+            current.compareAndSet(block, reserveBlock());
+        }
+    }
+
+    /**
+     * @return number of blocks reserved so far, including the one in use
+     */
+    public long getBlocksReserved() {
+        return blocksReserved.get();
+    }
+
+    private Block reserveBlock() {
+        long base = ((RANDOM.nextLong() & Long.MAX_VALUE) % blocks) * blockSize;
+        blocksReserved.incrementAndGet();
+        // Zero is not a valid serial number:
+        return new Block(base, base == 0 ? 1 : 0);
+    }
+
+    /**
+     * Block of serial numbers starting at base, next holding the offset of the
+     * next one to hand out.
+     */
+    private static class Block {
+        private final long base;
+        private final AtomicInteger next;
+
+        Block(long base, int next) {
+            this.base = base;
+            this.next = new AtomicInteger(next);
+        }
+    }
+}
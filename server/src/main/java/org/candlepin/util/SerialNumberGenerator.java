@@ -21,10 +21,20 @@ import org.hibernate.id.IdentifierGenerator;
 import java.io.Serializable;
 
 /**
- * SerialNumberGenerator
+ * SerialNumberGenerator: assigns certificate serials their numbers as soon as
+ * they are persisted, from blocks shared by all sessions of this node.
  */
 public class SerialNumberGenerator implements IdentifierGenerator {
 
+    /**
+     * Numbers reserved at once. Serials issued by a node are consecutive within
+     * a block, the blocks themselves are random.
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    private static final SerialNumberAllocator ALLOCATOR =
+        new SerialNumberAllocator(BLOCK_SIZE);
+
     /*
      * (non-Javadoc)
      * @seeorg.hibernate.id.IdentifierGenerator#generate(org.hibernate.engine.
@@ -33,7 +43,7 @@ public class SerialNumberGenerator implements IdentifierGenerator {
     @Override
     public Serializable generate(SessionImplementor arg0, Object arg1)
         throws HibernateException {
-        return Util.generateUniqueLong();
+        return ALLOCATOR.next();
     }
 
 }
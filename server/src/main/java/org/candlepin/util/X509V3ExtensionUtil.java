@@ -45,16 +45,18 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.zip.Deflater;
@@ -70,17 +72,33 @@ public class X509V3ExtensionUtil extends X509Util {
     private static Logger log = LoggerFactory.getLogger(X509V3ExtensionUtil.class);
     private Configuration config;
     private EntitlementCurator entCurator;
+    private ContentPayloadCache payloadCache;
     private String thisVersion = "3.2";
 
     private long pathNodeId = 0;
     private long huffNodeId = 0;
     private static final Object END_NODE = new Object();
     private static boolean treeDebug = false;
-    @Inject
+
+    // Deflaters hold native memory, the path dictionary reuses one per thread:
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_COMPRESSION);
+        }
+    };
+
     public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator) {
+        this(config, entCurator, new ContentPayloadCache(0));
+    }
+
+    @Inject
+    public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator,
+        ContentPayloadCache payloadCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
+        this.payloadCache = payloadCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Entitlement ent,
@@ -131,6 +149,21 @@ public class X509V3ExtensionUtil extends X509Util {
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+        if (!payloadCache.isEnabled()) {
+            return createContentPayload(contentList);
+        }
+
+        // Entitlements with the same content sets get the same payload:
+        String fingerprint = payloadCache.fingerprint(contentList);
+        byte[] payload = payloadCache.get(fingerprint);
+        if (payload == null) {
+            payload = createContentPayload(contentList);
+            payloadCache.put(fingerprint, payload);
+        }
+        return payload;
+    }
+
+    protected byte[] createContentPayload(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -583,9 +616,8 @@ public class X509V3ExtensionUtil extends X509Util {
             String childVal = st.nextToken();
             if (childVal.equals("")) { return; }
             boolean isNew = true;
-            for (NodePair child : parent.getChildren()) {
-                if (child.getName().equals(childVal) &&
-                    !child.getConnection().equals(endMarker)) {
+            for (NodePair child : parent.getChildren(childVal)) {
+                if (!child.getConnection().equals(endMarker)) {
                     makePathForURL(st, child.getConnection(), endMarker);
                     isNew = false;
                 }
@@ -600,9 +632,7 @@ public class X509V3ExtensionUtil extends X509Util {
                 }
                 else {
                     parent.addChild(new NodePair(childVal, endMarker));
-                    if (!endMarker.getParents().contains(parent)) {
-                        endMarker.addParent(parent);
-                    }
+                    endMarker.addParent(parent);
                 }
             }
         }
@@ -610,14 +640,13 @@ public class X509V3ExtensionUtil extends X509Util {
 
     private void condenseSubTreeNodes(PathNode location) {
         // "equivalent" parents are merged
-        List<PathNode> parentResult = new ArrayList<PathNode>();
-        parentResult.addAll(location.getParents());
+        Set<PathNode> removed = new HashSet<PathNode>();
         for (PathNode parent1 : location.getParents()) {
-            if (!parentResult.contains(parent1)) {
+            if (removed.contains(parent1)) {
                 continue;
             }
             for (PathNode parent2 : location.getParents()) {
-                if (!parentResult.contains(parent2) ||
+                if (removed.contains(parent2) ||
                     parent2.getId() == parent1.getId()) {
                     continue;
                 }
@@ -651,41 +680,44 @@ public class X509V3ExtensionUtil extends X509Util {
                             }
                         }
                     }
-                    parentResult.remove(toRemove);
+                    removed.add(toRemove);
                 }
             }
         }
+        List<PathNode> parentResult = new ArrayList<PathNode>();
+        for (PathNode parent : location.getParents()) {
+            if (!removed.contains(parent)) {
+                parentResult.add(parent);
+            }
+        }
         location.setParents(parentResult);
         for (PathNode pn : location.getParents()) {
             condenseSubTreeNodes(pn);
         }
     }
 
+    /*
+     * Orders the segments by the number of times they are used, least used
+     * first. Segments used equally often stay in the order of the segment map,
+     * the sort is stable.
+     */
     public List<String> orderStrings(PathNode parent) throws IOException {
         List<String> parts = new ArrayList<String>();
         // walk tree to make string map
-        Map<String, Integer> segments =  new HashMap<String, Integer>();
+        final Map<String, Integer> segments =  new HashMap<String, Integer>();
         Set<PathNode> nodes =  new HashSet<PathNode>();
         buildSegments(segments, nodes, parent);
-        for (Entry<String, Integer> entry : segments.entrySet()) {
-            String part = entry.getKey();
+        for (String part : segments.keySet()) {
             if (!part.equals("")) {
-                int count = entry.getValue();
-                if (parts.size() == 0) {
-                    parts.add(part);
-                }
-                else {
-                    int pos = parts.size();
-                    for (int i = 0; i < parts.size(); i++) {
-                        if (count < segments.get(parts.get(i))) {
-                            pos = i;
-                            break;
-                        }
-                    }
-                    parts.add(pos, part);
-                }
+                parts.add(part);
             }
         }
+        Collections.sort(parts, new Comparator<String>() {
+            @Override
+            public int compare(String part1, String part2) {
+                return segments.get(part1).compareTo(segments.get(part2));
+            }
+        });
         if (treeDebug) {
             log.debug("Parts List: " + parts);
         }
@@ -707,42 +739,46 @@ public class X509V3ExtensionUtil extends X509Util {
         }
     }
 
+    /*
+     * Orders the nodes by their number of parents, fewest first. Nodes with the
+     * same number of parents are in reverse order of the tree walk, as they
+     * always were when this was an insertion sort.
+     */
     private List<PathNode> orderNodes(PathNode treeRoot) {
-        List<PathNode> result = new ArrayList<PathNode>();
-
-        // walk tree to make string map
-        Set<PathNode> nodes =  getPathNodes(treeRoot);
-        for (PathNode pn : nodes) {
-            int count = pn.getParents().size();
-            if (nodes.size() == 0) {
-                nodes.add(pn);
-            }
-            else {
-                int pos = result.size();
-                for (int i = 0; i < result.size(); i++) {
-                    if (count <= result.get(i).getParents().size()) {
-                        pos = i;
-                        break;
-                    }
-                }
-                result.add(pos, pn);
+        List<PathNode> result = new ArrayList<PathNode>(getPathNodes(treeRoot));
+        Collections.reverse(result);
+        Collections.sort(result, new Comparator<PathNode>() {
+            @Override
+            public int compare(PathNode node1, PathNode node2) {
+                int parents1 = node1.getParents().size();
+                int parents2 = node2.getParents().size();
+                return parents1 < parents2 ? -1 : (parents1 == parents2 ? 0 : 1);
             }
-        }
+        });
         if (treeDebug) {
             log.debug("{}", result);
         }
         return result;
     }
 
+    /*
+     * Nodes in the order of a depth first walk of the tree. Nodes shared by
+     * several parents are only walked the first time they are reached.
+     */
     private Set<PathNode> getPathNodes(PathNode treeRoot) {
-        Set<PathNode> nodes = new HashSet<PathNode>();
-        nodes.add(treeRoot);
-        for (NodePair np : treeRoot.getChildren()) {
-            nodes.addAll(getPathNodes(np.getConnection()));
-        }
+        Set<PathNode> nodes = new LinkedHashSet<PathNode>();
+        addPathNodes(nodes, treeRoot);
         return nodes;
     }
 
+    private void addPathNodes(Set<PathNode> nodes, PathNode node) {
+        if (nodes.add(node)) {
+            for (NodePair np : node.getChildren()) {
+                addPathNodes(nodes, np.getConnection());
+            }
+        }
+    }
+
     private byte[] makeNodeDictionary(HuffNode stringParent,
         HuffNode pathNodeParent, List<PathNode> pathNodes)
         throws UnsupportedEncodingException, IOException {
@@ -768,37 +804,18 @@ public class X509V3ExtensionUtil extends X509Util {
         else {
             baos.write(nodeSize);
         }
-        StringBuffer bits = new StringBuffer();
-        String endNodeLocation = findHuffPath(stringParent, END_NODE);
+        Map<Object, HuffCode> stringCodes = getHuffCodes(stringParent);
+        Map<Object, HuffCode> pathNodeCodes = getHuffCodes(pathNodeParent);
+        HuffCode endNodeCode = stringCodes.get(END_NODE);
+        BitWriter bits = new BitWriter(baos);
         for (PathNode pn : pathNodes) {
             for (NodePair np : pn.getChildren()) {
-                bits.append(findHuffPath(stringParent, np.getName()));
-                bits.append(findHuffPath(pathNodeParent, np.getConnection()));
-            }
-            bits.append(endNodeLocation);
-            while (bits.length() >= 8) {
-                int next = 0;
-                for (int i = 0; i < 8; i++) {
-                    next = (byte) next << 1;
-                    if (bits.charAt(i) == '1') {
-                        next++;
-                    }
-                }
-                baos.write(next);
-                bits.delete(0, 8);
-            }
-        }
-
-        if (bits.length() > 0) {
-            int next = 0;
-            for (int i = 0;  i < 8; i++) {
-                next = (byte) next << 1;
-                if (i < bits.length() && bits.charAt(i) == '1') {
-                    next++;
-                }
+                bits.write(stringCodes.get(np.getName()));
+                bits.write(pathNodeCodes.get(np.getConnection()));
             }
-            baos.write(next);
+            bits.write(endNodeCode);
         }
+        bits.flush();
         byte[] result = baos.toByteArray();
         if (treeDebug) {
             ByteArrayInputStream bais = new ByteArrayInputStream(result);
@@ -848,6 +865,33 @@ public class X509V3ExtensionUtil extends X509Util {
         return "";
     }
 
+    /*
+     * Maps the value of each leaf of the trie to its code, the same code
+     * findHuffPath returns for it.
+     */
+    private Map<Object, HuffCode> getHuffCodes(HuffNode trie) {
+        Map<Object, HuffCode> codes = new HashMap<Object, HuffCode>();
+        addHuffCodes(codes, trie, 0L, 0);
+        return codes;
+    }
+
+    private void addHuffCodes(Map<Object, HuffCode> codes, HuffNode node, long bits,
+        int length) {
+        if (node.getValue() != null) {
+            codes.put(node.getValue(), new HuffCode(bits, length));
+            return;
+        }
+        if (length >= HuffCode.MAX_LENGTH) {
+            throw new IllegalStateException("Huffman code too long: " + length);
+        }
+        if (node.getLeft() != null) {
+            addHuffCodes(codes, node.getLeft(), bits << 1, length + 1);
+        }
+        if (node.getRight() != null) {
+            addHuffCodes(codes, node.getRight(), (bits << 1) | 1, length + 1);
+        }
+    }
+
     public static String toJson(Object anObject) {
         String output = "";
         ObjectMapper mapper = new ObjectMapper();
@@ -865,11 +909,12 @@ public class X509V3ExtensionUtil extends X509Util {
     private byte[] byteProcess(List<String> entries)
         throws IOException, UnsupportedEncodingException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DeflaterOutputStream dos = new DeflaterOutputStream(baos,
-            new Deflater(Deflater.BEST_COMPRESSION));
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        DeflaterOutputStream dos = new DeflaterOutputStream(baos, deflater);
         for (String segment : entries) {
             dos.write(segment.getBytes("UTF-8"));
-            dos.write("\0".getBytes("UTF-8"));
+            dos.write(0);
         }
         dos.finish();
         dos.close();
@@ -895,37 +940,35 @@ public class X509V3ExtensionUtil extends X509Util {
         return nodes;
     }
 
+    /*
+     * Repeatedly merges the two lightest nodes. Of nodes with the same weight the
+     * one earliest in the list is taken, merged nodes count as appended to the
+     * list in the order they were made. The trie has to come out the same for the
+     * same nodes every time, clients rebuild it to decode the payload.
+     */
     public HuffNode makeTrie(List<HuffNode> nodesList) {
         // drop the first node if path node value, it is not needed
         if (nodesList.get(0).getValue() instanceof PathNode) {
             nodesList.remove(0);
         }
-        while (nodesList.size() > 1) {
-            int node1 = findSmallest(-1, nodesList);
-            int node2 = findSmallest(node1, nodesList);
-            HuffNode hn1 = nodesList.get(node1);
-            HuffNode hn2 = nodesList.get(node2);
-            HuffNode merged = mergeNodes(hn1, hn2);
-            nodesList.remove(hn1);
-            nodesList.remove(hn2);
-            nodesList.add(merged);
+        PriorityQueue<QueuedHuffNode> queue =
+            new PriorityQueue<QueuedHuffNode>(nodesList.size());
+        long sequence = 0;
+        for (HuffNode node : nodesList) {
+            queue.add(new QueuedHuffNode(node, sequence++));
         }
-        if (treeDebug) {
-            printTrie(nodesList.get(0), 0);
+        while (queue.size() > 1) {
+            HuffNode hn1 = queue.poll().node;
+            HuffNode hn2 = queue.poll().node;
+            queue.add(new QueuedHuffNode(mergeNodes(hn1, hn2), sequence++));
         }
-        return nodesList.get(0);
-    }
-
-    private int findSmallest(int exclude, List<HuffNode> nodes) {
-        int smallest = -1;
-        for (int index = 0; index < nodes.size(); index++) {
-            if (index == exclude) { continue; }
-            if (smallest == -1 || nodes.get(index).getWeight() <
-                nodes.get(smallest).getWeight()) {
-                smallest = index;
-            }
+        HuffNode root = queue.poll().node;
+        nodesList.clear();
+        nodesList.add(root);
+        if (treeDebug) {
+            printTrie(root, 0);
         }
-        return smallest;
+        return root;
     }
 
     private HuffNode mergeNodes(HuffNode node1, HuffNode node2) {
@@ -1111,6 +1154,76 @@ public class X509V3ExtensionUtil extends X509Util {
         return baos.toByteArray();
     }
 
+    /*
+     * A node waiting to be merged into the trie, ordered by weight and then by
+     * the position it was queued at.
+     */
+    private static class QueuedHuffNode implements Comparable<QueuedHuffNode> {
+        private final HuffNode node;
+        private final long sequence;
+
+        QueuedHuffNode(HuffNode node, long sequence) {
+            this.node = node;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedHuffNode other) {
+            if (node.getWeight() != other.node.getWeight()) {
+                return node.getWeight() < other.node.getWeight() ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /*
+     * The code of a trie leaf, its bits right aligned in a long.
+     */
+    private static class HuffCode {
+        private static final int MAX_LENGTH = 64;
+
+        private final long bits;
+        private final int length;
+
+        HuffCode(long bits, int length) {
+            this.bits = bits;
+            this.length = length;
+        }
+    }
+
+    /*
+     * Packs codes into bytes, most significant bit first. The last byte is
+     * padded with zeros.
+     */
+    private static class BitWriter {
+        private final OutputStream out;
+        private int buffer;
+        private int count;
+
+        BitWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(HuffCode code) throws IOException {
+            for (int i = code.length - 1; i >= 0; i--) {
+                buffer = (buffer << 1) | (int) ((code.bits >>> i) & 1);
+                if (++count == 8) {
+                    out.write(buffer);
+                    buffer = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            if (count > 0) {
+                out.write(buffer << (8 - count));
+                buffer = 0;
+                count = 0;
+            }
+        }
+    }
+
     /**
      *
      * HuffNode
@@ -1172,7 +1285,11 @@ public class X509V3ExtensionUtil extends X509Util {
     public class PathNode {
         private long id = 0;
         private List<NodePair> children = new ArrayList<NodePair>();
+        private boolean childrenSorted = true;
+        private Map<String, List<NodePair>> childrenByName =
+            new HashMap<String, List<NodePair>>();
         private List<PathNode> parents = new ArrayList<PathNode>();
+        private Set<PathNode> parentSet = new HashSet<PathNode>();
 
         public PathNode() {
             this.id = pathNodeId++;
@@ -1184,25 +1301,49 @@ public class X509V3ExtensionUtil extends X509Util {
 
         void addChild(NodePair cp) {
             this.children.add(cp);
+            this.childrenSorted = false;
+
+            List<NodePair> named = childrenByName.get(cp.getName());
+            if (named == null) {
+                named = new ArrayList<NodePair>(1);
+                childrenByName.put(cp.getName(), named);
+            }
+            named.add(cp);
         }
 
         void addParent(PathNode cp) {
-            if (!parents.contains(cp)) {
+            if (parentSet.add(cp)) {
                 this.parents.add(cp);
             }
         }
 
+        /*
+         * Children sorted by name. The sort is stable, so it only needs to be
+         * done again once children were added.
+         */
         public List<NodePair> getChildren() {
-            Collections.sort(this.children);
+            if (!childrenSorted) {
+                Collections.sort(this.children);
+                childrenSorted = true;
+            }
             return this.children;
         }
 
+        /*
+         * Children with the given name, in the order they were added.
+         */
+        List<NodePair> getChildren(String name) {
+            List<NodePair> named = childrenByName.get(name);
+            return named == null ? Collections.<NodePair>emptyList() : named;
+        }
+
         List<PathNode> getParents() {
             return this.parents;
         }
 
         void setParents(List<PathNode> parents) {
             this.parents = parents;
+            this.parentSet = new HashSet<PathNode>(parents);
         }
 
         void addParents(List<PathNode> parents) {
@@ -1220,19 +1361,10 @@ public class X509V3ExtensionUtil extends X509Util {
                 return false;
             }
             for (NodePair thisnp : this.getChildren()) {
-                boolean found = false;
-                for (NodePair thatnp : that.getChildren()) {
-                    if (thisnp.getName().equals(thatnp.getName())) {
-                        if (thisnp.getConnection().isEquivalentTo(thatnp.getConnection())) {
-                            found = true;
-                            break;
-                        }
-                        else {
-                            return false;
-                        }
-                    }
-                }
-                if (!found) {
+                // compared to the first child of that node with the same name
+                List<NodePair> named = that.getChildren(thisnp.getName());
+                if (named.isEmpty() ||
+                    !thisnp.getConnection().isEquivalentTo(named.get(0).getConnection())) {
                     return false;
                 }
             }
@@ -1,4 +1,4 @@
-// Version: 5.19
+// Version: 5.20
 
 /*
  * Default Candlepin rule set.
@@ -38,6 +38,18 @@ function pool_type_name_space() {
     return PoolType;
 }
 
+/*
+ * Returns the objects the engine passed to the current rules call. Engines
+ * which find this function provide them as native objects, older engines
+ * only as a JSON string.
+ */
+function get_context() {
+    if (typeof(native_context) != "undefined") {
+        return native_context;
+    }
+    return JSON.parse(json_context);
+}
+
 // consumer types
 var SYSTEM_TYPE = "system";
 var HYPERVISOR_TYPE = "hypervisor";
@@ -1220,7 +1232,7 @@ function isLevelExempt (level, exemptList) {
 var ActivationKey = {
 
     get_attribute_context: function() {
-        context = JSON.parse(json_context);
+        context = get_context();
 
         // Pool to validate
         context.pool = createPool(context.pool);
@@ -1323,7 +1335,7 @@ var Entitlement = {
     },
 
     get_attribute_context: function() {
-        context = JSON.parse(json_context);
+        context = get_context();
 
         if ("pool" in context) {
             context.pool = createPool(context.pool);
@@ -2214,7 +2226,7 @@ var Autobind = {
     },
 
     create_autobind_context: function() {
-        var context = JSON.parse(json_context);
+        var context = get_context();
 
         // The considerDerived property indicates if we should look to derived
         // provided products rather than the usual set. Used in situations where
@@ -2630,7 +2642,7 @@ function find_relevant_pids(entitlement, consumer) {
  */
 var Compliance = {
     get_status_context: function() {
-        context = JSON.parse(json_context);
+        context = get_context();
         context.ondate = new Date(context.ondate);
 
         // Add some methods to the various Pool objects:
@@ -2972,7 +2984,7 @@ var Compliance = {
 
 var Quantity = {
     get_quantity_context: function() {
-        context = JSON.parse(json_context);
+        context = get_context();
 
         if ("pool" in context) {
             context.pool = createPool(context.pool);
@@ -3071,7 +3083,7 @@ var Quantity = {
 var PoolType = {
 
     get_pool_type_context: function() {
-        context = JSON.parse(json_context);
+        context = get_context();
         context.pool = createPool(context.pool);
         return context;
     },
@@ -3125,7 +3137,7 @@ var PoolType = {
  */
 var Override = {
     get_override_context: function() {
-        context = JSON.parse(json_context);
+        context = get_context();
         return context;
     },
 
@@ -25,6 +25,7 @@ import org.candlepin.common.guice.HttpMethodMatcher;
 import org.candlepin.common.guice.JPAInitializer;
 import org.candlepin.common.validation.CandlepinMessageInterpolator;
 import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.controller.CandidatePoolIndex;
 import org.candlepin.controller.CandlepinPoolManager;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.guice.CandlepinSingletonScope;
@@ -34,6 +35,7 @@ import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.guice.ScriptEngineProvider;
 import org.candlepin.guice.TestPrincipalProvider;
 import org.candlepin.guice.ValidationListenerProvider;
+import org.candlepin.model.OwnerInfoCache;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
 import org.candlepin.pinsetter.core.GuiceJobFactory;
@@ -47,6 +49,7 @@ import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
 import org.candlepin.policy.criteria.CriteriaRules;
 import org.candlepin.policy.js.JsRunner;
 import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.pool.PoolRules;
 import org.candlepin.resource.ActivationKeyResource;
@@ -57,6 +60,7 @@ import org.candlepin.resource.OwnerResource;
 import org.candlepin.resource.PoolResource;
 import org.candlepin.resource.ProductResource;
 import org.candlepin.resource.SubscriptionResource;
+import org.candlepin.resource.util.HypervisorReportCache;
 import org.candlepin.resteasy.ResourceLocatorMap;
 import org.candlepin.resteasy.filter.StoreFactory;
 import org.candlepin.service.EntitlementCertServiceAdapter;
@@ -73,10 +77,12 @@ import org.candlepin.service.impl.DefaultUniqueIdGenerator;
 import org.candlepin.service.impl.DefaultUserServiceAdapter;
 import org.candlepin.service.impl.ImportSubscriptionServiceAdapter;
 import org.candlepin.service.impl.stub.StubEntitlementCertServiceAdapter;
+import org.candlepin.sync.ExportCache;
 import org.candlepin.test.VerifyAuthorizationFilterFactory;
 import org.candlepin.test.DateSourceForTesting;
 import org.candlepin.test.EnforcerForTesting;
 import org.candlepin.test.PKIReaderForTesting;
+import org.candlepin.util.ContentPayloadCache;
 import org.candlepin.util.DateSource;
 import org.candlepin.util.ExpiryDateFunction;
 import org.candlepin.util.Util;
@@ -272,6 +278,12 @@ public class TestingModules {
 
             bind(JsRunnerProvider.class).asEagerSingleton();
             bind(JsRunner.class).toProvider(JsRunnerProvider.class);
+            bind(ComplianceStatusCache.class).asEagerSingleton();
+            bind(CandidatePoolIndex.class).asEagerSingleton();
+            bind(ContentPayloadCache.class).asEagerSingleton();
+            bind(OwnerInfoCache.class).asEagerSingleton();
+            bind(ExportCache.class).asEagerSingleton();
+            bind(HypervisorReportCache.class).asEagerSingleton();
 
             bind(PrincipalProvider.class).to(TestPrincipalProvider.class);
             bind(Principal.class).toProvider(TestPrincipalProvider.class);
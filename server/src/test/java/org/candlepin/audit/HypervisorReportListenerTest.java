@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.mockito.Mockito.*;
+
+import org.candlepin.resource.util.HypervisorReportCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * HypervisorReportListenerTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HypervisorReportListenerTest {
+    @Mock private HypervisorReportCache cache;
+    private HypervisorReportListener listener;
+
+    @Before
+    public void init() {
+        listener = new HypervisorReportListener(cache);
+    }
+
+    @Test
+    public void consumerDeletionEvictsOwner() {
+        listener.onEvent(event(Event.Target.CONSUMER, Event.Type.DELETED));
+        verify(cache).evict("owner1");
+    }
+
+    @Test
+    public void consumerModificationIgnored() {
+        listener.onEvent(event(Event.Target.CONSUMER, Event.Type.MODIFIED));
+        listener.onEvent(event(Event.Target.GUESTID, Event.Type.DELETED));
+        verifyZeroInteractions(cache);
+    }
+
+    private Event event(Event.Target target, Event.Type type) {
+        Event event = new Event();
+        event.setTarget(target);
+        event.setType(type);
+        event.setOwnerId("owner1");
+        return event;
+    }
+}
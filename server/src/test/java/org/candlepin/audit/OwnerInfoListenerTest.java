@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.OwnerInfoCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * OwnerInfoListenerTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class OwnerInfoListenerTest {
+    @Mock private OwnerInfoCache cache;
+    private OwnerInfoListener listener;
+
+    @Before
+    public void init() {
+        listener = new OwnerInfoListener(cache);
+    }
+
+    @Test
+    public void entitlementEventInvalidatesOwner() {
+        listener.onEvent(event(Event.Target.ENTITLEMENT, "owner1"));
+        verify(cache).invalidate("owner1");
+    }
+
+    @Test
+    public void eventWithoutOwnerInvalidatesAll() {
+        listener.onEvent(event(Event.Target.POOL, null));
+        verify(cache).invalidateAll();
+    }
+
+    @Test
+    public void unrelatedEventIgnored() {
+        listener.onEvent(event(Event.Target.USER, "owner1"));
+        verifyZeroInteractions(cache);
+    }
+
+    private Event event(Event.Target target, String ownerId) {
+        Event event = new Event();
+        event.setTarget(target);
+        event.setOwnerId(ownerId);
+        return event;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolCurator;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProductCurator;
+import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+/**
+ * CandidatePoolIndexTest
+ */
+public class CandidatePoolIndexTest extends DatabaseTestFixture {
+    @Inject private ProductCurator productCurator;
+    @Inject private PoolCurator poolCurator;
+
+    private CandidatePoolIndex index;
+    private Owner owner;
+    private Product provided;
+    private Pool providingPool;
+    private Pool stackedPool;
+    private Pool derivedPool;
+
+    @Before
+    public void setUp() {
+        index = new CandidatePoolIndex(poolCurator, 10);
+        owner = createOwner();
+
+        provided = createProduct("provided");
+        providingPool = createPool(createProduct("product"), provided, null);
+
+        Product stacked = createProduct("stacked");
+        stacked.setAttribute("stacking_id", "stack1");
+        productCurator.merge(stacked);
+        stackedPool = createPool(stacked, null, null);
+
+        derivedPool = createPool(createProduct("host"), null, createProduct("guest"));
+
+        // A pool of another owner providing the same product:
+        Owner other = createOwner();
+        Product otherProduct = TestUtil.createProduct("product", "product", other);
+        productCurator.create(otherProduct);
+        poolCurator.create(TestUtil.createPool(other, otherProduct));
+    }
+
+    @Test
+    public void candidatesByProductAndStack() {
+        assertEquals(ids(providingPool), index.getCandidates(owner,
+            Arrays.asList("product"), null));
+        assertEquals(ids(providingPool), index.getCandidates(owner,
+            Arrays.asList("provided"), null));
+        assertEquals(ids(providingPool, stackedPool), index.getCandidates(owner,
+            Arrays.asList("provided"), Arrays.asList("stack1")));
+        assertEquals(ids(), index.getCandidates(owner,
+            Arrays.asList("unknown"), Arrays.asList("unknown")));
+    }
+
+    @Test
+    public void derivedCandidatesProvideDerivedProductsToGuests() {
+        assertEquals(ids(derivedPool), index.getDerivedCandidates(owner,
+            Arrays.asList("guest")));
+        assertEquals(ids(), index.getDerivedCandidates(owner, Arrays.asList("host")));
+        assertEquals(ids(providingPool), index.getDerivedCandidates(owner,
+            Arrays.asList("provided")));
+    }
+
+    @Test
+    public void indexReusedUntilPoolsChange() {
+        index.getCandidates(owner, Arrays.asList("product"), null);
+        index.getCandidates(owner, Arrays.asList("product"), null);
+        assertEquals(1, index.getRebuilds());
+        assertEquals(1, index.getHits());
+
+        Pool added = createPool(createProduct("added"), provided, null);
+        assertEquals(ids(providingPool, added), index.getCandidates(owner,
+            Arrays.asList("provided"), null));
+        assertEquals(2, index.getRebuilds());
+    }
+
+    @Test
+    public void invalidateRebuildsIndex() {
+        index.getCandidates(owner, Arrays.asList("product"), null);
+        index.invalidate(owner);
+        index.getCandidates(owner, Arrays.asList("product"), null);
+        assertEquals(2, index.getRebuilds());
+        assertEquals(0, index.getHits());
+    }
+
+    @Test
+    public void disabledWithoutOwners() {
+        assertTrue(index.isEnabled());
+        assertFalse(new CandidatePoolIndex(poolCurator, 0).isEnabled());
+    }
+
+    private Product createProduct(String id) {
+        Product product = TestUtil.createProduct(id, id, owner);
+        productCurator.create(product);
+        return product;
+    }
+
+    private Pool createPool(Product product, Product providedProduct, Product derived) {
+        Set<Product> providedProducts = new HashSet<Product>();
+        if (providedProduct != null) {
+            providedProducts.add(providedProduct);
+        }
+        Pool pool = TestUtil.createPool(owner, product, providedProducts, 10);
+        pool.setDerivedProduct(derived);
+        return poolCurator.create(pool);
+    }
+
+    private Set<String> ids(Pool... pools) {
+        Set<String> ids = new HashSet<String>();
+        for (Pool pool : pools) {
+            ids.add(pool.getId());
+        }
+        return ids;
+    }
+}
@@ -30,21 +30,27 @@ import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.X509Extensions;
 import org.bouncycastle.x509.X509V2CRLGenerator;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.hibernate.ScrollableResults;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -61,6 +67,7 @@ public class CrlGeneratorTest {
 
     private static final KeyPair KP = generateKP();
     private static final X509Certificate CERT = generateCertificate();
+    private static final String DELTA_CRL_INDICATOR = "2.5.29.27";
 
     @Mock private PKIReader pkiReader;
     @Mock private CertificateSerialCurator curator;
@@ -255,6 +262,38 @@ public class CrlGeneratorTest {
         assertEquals(2, revoked.size());
     }
 
+    @Test
+    public void deltaCRLListsChangesSinceBase() {
+        X509CRL base = pkiUtility.createX509CRL(crlEntries(1L, 2L, 3L), BigInteger.TEN);
+        X509CRL current = pkiUtility.createX509CRL(crlEntries(2L, 3L, 4L),
+            BigInteger.valueOf(11));
+
+        X509CRL delta = generator.createDeltaCRL(base, current);
+
+        assertEquals(BigInteger.valueOf(11), generator.getCRLNumber(delta));
+        assertTrue(delta.getCriticalExtensionOIDs().contains(DELTA_CRL_INDICATOR));
+        assertEquals(2, delta.getRevokedCertificates().size());
+        assertNotNull(delta.getRevokedCertificate(BigInteger.valueOf(4L)));
+        assertNotNull(delta.getRevokedCertificate(BigInteger.valueOf(1L)));
+        assertNull(delta.getRevokedCertificate(BigInteger.valueOf(2L)));
+    }
+
+    @Test
+    public void pendingChangesFromDatabase() {
+        assertFalse(generator.hasPendingChanges());
+
+        when(curator.hasExpiredSerials()).thenReturn(true);
+        assertTrue(generator.hasPendingChanges());
+    }
+
+    private List<X509CRLEntryWrapper> crlEntries(Long... serials) {
+        List<X509CRLEntryWrapper> entries = new ArrayList<X509CRLEntryWrapper>();
+        for (Long serial : serials) {
+            entries.add(new X509CRLEntryWrapper(BigInteger.valueOf(serial), new Date()));
+        }
+        return entries;
+    }
+
     @Test
     public void updateCRLWithNullInput() {
         List<CertificateSerial> serials = getStubCSList();
@@ -349,6 +388,114 @@ public class CrlGeneratorTest {
             X509Extensions.CRLNumber.getId())));
     }
 
+    @Test
+    public void streamedCRLMatchesGeneratedOne() throws Exception {
+        Date revoked = new Date(System.currentTimeMillis() / 1000 * 1000);
+        ScrollableResults results = mock(ScrollableResults.class);
+        when(results.next()).thenReturn(true, true, true, false);
+        when(results.get(0)).thenReturn(1L, 100L, 1235465L);
+        when(results.get(1)).thenReturn(revoked);
+        when(curator.scrollCollectedSerials()).thenReturn(results);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.syncCRLWithDB(BigInteger.TEN, out);
+        verify(curator).collectRevokedSerials(any(Date.class));
+        verify(curator).deleteExpiredSerials();
+        verify(results).close();
+
+        X509CRL streamed = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(out.toByteArray()));
+        streamed.verify(KP.getPublic());
+        X509CRL expected = pkiUtility.createX509CRL(Arrays.asList(
+            new X509CRLEntryWrapper(BigInteger.ONE, revoked),
+            new X509CRLEntryWrapper(BigInteger.valueOf(100L), revoked),
+            new X509CRLEntryWrapper(BigInteger.valueOf(1235465L), revoked)),
+            BigInteger.valueOf(11));
+
+        assertEquals(BigInteger.valueOf(11), generator.getCRLNumber(streamed));
+        assertEquals(expected.getIssuerX500Principal(), streamed.getIssuerX500Principal());
+        assertEquals(expected.getSigAlgOID(), streamed.getSigAlgOID());
+        assertEquals(expected.getNonCriticalExtensionOIDs(),
+            streamed.getNonCriticalExtensionOIDs());
+        assertEquals(3, streamed.getRevokedCertificates().size());
+        for (X509CRLEntry entry : expected.getRevokedCertificates()) {
+            assertArrayEquals(entry.getEncoded(),
+                streamed.getRevokedCertificate(entry.getSerialNumber()).getEncoded());
+        }
+        assertEquals(BigInteger.valueOf(11),
+            pkiUtility.readCRLNumber(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void streamedCRLWithoutEntries() throws Exception {
+        ScrollableResults results = mock(ScrollableResults.class);
+        when(curator.scrollCollectedSerials()).thenReturn(results);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.syncCRLWithDB(BigInteger.ZERO, out);
+
+        X509CRL streamed = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(out.toByteArray()));
+        streamed.verify(KP.getPublic());
+        assertNull(streamed.getRevokedCertificates());
+        assertEquals(BigInteger.ONE, generator.getCRLNumber(streamed));
+    }
+
+    @Test
+    public void readCRLNumberOfGeneratedCRL() throws Exception {
+        X509CRL crl = pkiUtility.createX509CRL(crlEntries(1L, 2L), BigInteger.valueOf(300));
+        assertEquals(BigInteger.valueOf(300), pkiUtility.readCRLNumber(
+            new ByteArrayInputStream(pkiUtility.getPemEncoded(crl))));
+    }
+
+    /*
+     * Hands out entries as a database cursor does: an entry may only be read until
+     * the next one is requested. Writing the CRL fails if the writer collects the
+     * entries before encoding them.
+     */
+    @Test
+    public void streamedCRLEncodesEachEntryBeforeTheNext() throws Exception {
+        final int count = 1000;
+        final Date revoked = new Date(System.currentTimeMillis() / 1000 * 1000);
+        Iterator<X509CRLEntryWrapper> entries = new Iterator<X509CRLEntryWrapper>() {
+            private int pulled;
+
+            public boolean hasNext() {
+                return pulled < count;
+            }
+
+            public X509CRLEntryWrapper next() {
+                final int row = ++pulled;
+                return new X509CRLEntryWrapper(BigInteger.valueOf(row), revoked) {
+                    @Override
+                    public BigInteger getSerialNumber() {
+                        assertEquals("Entry read after the next one", row, pulled);
+                        return super.getSerialNumber();
+                    }
+
+                    @Override
+                    public Date getRevocationDate() {
+                        assertEquals("Entry read after the next one", row, pulled);
+                        return super.getRevocationDate();
+                    }
+                };
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pkiUtility.writeX509CRL(entries, BigInteger.ONE, out);
+
+        X509CRL streamed = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(out.toByteArray()));
+        streamed.verify(KP.getPublic());
+        assertEquals(count, streamed.getRevokedCertificates().size());
+        assertNotNull(streamed.getRevokedCertificate(BigInteger.valueOf(count)));
+    }
+
     @SuppressWarnings("serial")
     private List<CertificateSerial> getStubCSList() {
         return new ArrayList<CertificateSerial>() {
@@ -113,6 +113,8 @@ public class PoolManagerTest {
     @Mock
     private Configuration mockConfig;
     @Mock
+    private CandidatePoolIndex poolIndexMock;
+    @Mock
     private EntitlementCurator entitlementCurator;
     @Mock
     private EntitlementCertificateCurator certCuratorMock;
@@ -174,7 +176,8 @@ public class PoolManagerTest {
             mockPoolCurator, mockProductCurator, entCertAdapterMock, mockEventSink,
             eventFactory, mockConfig, enforcerMock, poolRulesMock, entitlementCurator,
             consumerCuratorMock, certCuratorMock, complianceRules, autobindRules,
-            activationKeyRules, productCuratorMock, contentCuratorMock, ownerCuratorMock, i18n)
+            activationKeyRules, productCuratorMock, contentCuratorMock, ownerCuratorMock, i18n,
+            poolIndexMock)
         );
 
         when(entCertAdapterMock.generateEntitlementCert(any(Entitlement.class),
@@ -262,14 +265,48 @@ public class PoolManagerTest {
 
         // Make sure that only the floating pool was regenerated
         expectedModified.add(p);
-        verify(this.manager)
-            .updateFloatingPools(eq(new LinkedList()), eq(true), any(Set.class));
+        verify(this.manager, never())
+            .updateFloatingPools(any(List.class), anyBoolean(), any(Set.class));
         ArgumentCaptor<Pool> argPool = ArgumentCaptor.forClass(Pool.class);
-        verify(this.manager).updatePoolsForMasterPool(eq(expectedModified), argPool.capture(),
-                eq(sub.getQuantity()), eq(false), any(Set.class));
+        verify(this.manager).getPoolUpdatesForMasterPool(any(Map.class), eq(expectedModified),
+                argPool.capture(), eq(sub.getQuantity()), eq(false), any(Set.class));
         TestUtil.assertPoolsAreEqual(TestUtil.copyFromSub(sub), argPool.getValue());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRefreshPoolsLooksUpSubscriptionPoolsInBatches() {
+        List<Subscription> subscriptions = Util.newList();
+        List<Pool> pools = Util.newList();
+
+        Owner owner = this.getOwner();
+        Product product = TestUtil.createProduct(owner);
+        for (int i = 0; i < 3; i++) {
+            Subscription sub = TestUtil.createSubscription(owner, product);
+            sub.setId("sub" + i);
+            subscriptions.add(sub);
+
+            Pool p = TestUtil.createPool(product);
+            p.setSourceSubscription(new SourceSubscription(sub.getId(), "master"));
+            p.setOwner(owner);
+            pools.add(p);
+        }
+
+        mockSubsList(subscriptions);
+        mockPoolsList(pools);
+        when(mockConfig.getInt(eq(ConfigProperties.REFRESH_POOLS_BATCH_SIZE))).thenReturn(2);
+        when(ownerCuratorMock.lookupByKey(owner.getKey())).thenReturn(owner);
+        when(productCuratorMock.lookupById(owner, product.getId())).thenReturn(product);
+
+        this.manager.getRefresher(mockSubAdapter).add(owner).run();
+
+        verify(mockPoolCurator).getPoolsBySubscriptionIds(eq(Arrays.asList("sub0", "sub1")));
+        verify(mockPoolCurator).getPoolsBySubscriptionIds(eq(Arrays.asList("sub2")));
+        verify(mockPoolCurator, never()).getPoolsBySubscriptionId(any(String.class));
+        verify(this.manager, times(3)).getPoolUpdatesForMasterPool(any(Map.class), any(List.class),
+            any(Pool.class), any(Long.class), eq(false), any(Set.class));
+    }
+
     @Test
     public void productAttributesCopiedOntoPoolWhenCreatingNewPool() {
 
@@ -396,7 +433,7 @@ public class PoolManagerTest {
         Owner owner = getOwner();
         when(ownerCuratorMock.lookupByKey(owner.getKey())).thenReturn(owner);
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
-        verify(this.manager).deletePool(same(p));
+        assertTrue(deletedPools().contains(p));
     }
 
     @Test
@@ -418,7 +455,7 @@ public class PoolManagerTest {
         Owner owner = getOwner();
         when(ownerCuratorMock.lookupByKey(owner.getKey())).thenReturn(owner);
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
-        verify(this.manager).deletePool(same(p));
+        assertTrue(deletedPools().contains(p));
     }
 
     @Test
@@ -440,7 +477,7 @@ public class PoolManagerTest {
         Owner owner = getOwner();
         when(ownerCuratorMock.lookupByKey(owner.getKey())).thenReturn(owner);
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
-        verify(this.manager, never()).deletePool(same(p));
+        assertFalse(deletedPools().contains(p));
     }
 
     @Test
@@ -462,7 +499,7 @@ public class PoolManagerTest {
         Owner owner = getOwner();
         when(ownerCuratorMock.lookupByKey(owner.getKey())).thenReturn(owner);
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
-        verify(this.manager, never()).deletePool(same(p));
+        assertFalse(deletedPools().contains(p));
     }
 
     @Test
@@ -482,7 +519,7 @@ public class PoolManagerTest {
         Owner owner = getOwner();
         when(ownerCuratorMock.lookupByKey(owner.getKey())).thenReturn(owner);
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
-        verify(this.manager, never()).deletePool(same(p));
+        assertFalse(deletedPools().contains(p));
     }
 
     @SuppressWarnings("rawtypes")
@@ -533,7 +570,7 @@ public class PoolManagerTest {
         when(productCuratorMock.lookupById(owner, product.getId())).thenReturn(product);
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
         TestUtil.assertPoolsAreEqual(TestUtil.copyFromSub(s), argPool.getValue());
-        verify(this.mockPoolCurator, times(1)).create(any(Pool.class));
+        verify(this.mockPoolCurator, times(1)).createAll(eq(newPools));
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -611,6 +648,63 @@ public class PoolManagerTest {
         verify(mockEventSink, times(1)).queueEvent(any(Event.class));
     }
 
+    @Test
+    public void testNonLazyRegenerateInBatches() throws Exception {
+        when(mockConfig.getInt(eq(ConfigProperties.CERT_REGEN_BATCH_SIZE))).thenReturn(2);
+        Consumer c = TestUtil.createConsumer(o);
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+        List<EntitlementCertificate> oldCerts = new ArrayList<EntitlementCertificate>();
+        for (int i = 1; i <= 3; i++) {
+            Entitlement e = new Entitlement(pool, c, 1);
+            e.setId("ent" + i);
+            e.setDirty(true);
+            EntitlementCertificate cert = new EntitlementCertificate();
+            cert.setId("cert" + i);
+            cert.setEntitlement(e);
+            e.getCertificates().add(cert);
+            oldCerts.add(cert);
+            ents.add(e);
+        }
+
+        // The last certificate can not be generated:
+        when(entCertAdapterMock.generateEntitlementCerts(any(List.class))).thenAnswer(
+            new Answer<Map<String, EntitlementCertificate>>() {
+                @Override
+                public Map<String, EntitlementCertificate> answer(InvocationOnMock invocation) {
+                    Map<String, EntitlementCertificate> certs =
+                        new HashMap<String, EntitlementCertificate>();
+                    for (Object o : (List) invocation.getArguments()[0]) {
+                        Entitlement e = (Entitlement) o;
+                        if (!e.getId().equals("ent3")) {
+                            EntitlementCertificate cert = new EntitlementCertificate();
+                            e.getCertificates().add(cert);
+                            certs.put(e.getId(), cert);
+                        }
+                    }
+                    return certs;
+                }
+            });
+
+        RegenerationProgress progress = new RegenerationProgress();
+        manager.regenerateCertificatesOf(ents, false, progress);
+
+        verify(entCertAdapterMock, times(2)).generateEntitlementCerts(any(List.class));
+        verify(entCertAdapterMock, never()).generateEntitlementCert(any(Entitlement.class),
+            any(Product.class));
+        verify(certCuratorMock).deleteAll(eq(oldCerts.subList(0, 2)));
+        verify(certCuratorMock).deleteAll(eq(new ArrayList<EntitlementCertificate>()));
+        verify(mockEventSink, times(2)).queueEvent(any(Event.class));
+
+        for (Entitlement e : ents) {
+            assertEquals(1, e.getCertificates().size());
+            assertEquals(e.getId().equals("ent3"), e.getDirty());
+        }
+        assertEquals(3, progress.getTotal());
+        assertEquals(2, progress.getRegenerated());
+        assertEquals(1, progress.getFailed());
+        assertEquals(0, progress.getBacklog());
+    }
+
     /**
      * @return
      */
@@ -688,6 +782,82 @@ public class PoolManagerTest {
         verify(entitlementCurator).delete(e);
     }
 
+    @Test
+    public void keysetPageFilledFromChunksPassingRules() {
+        final List<Pool> pools = new ArrayList<Pool>();
+        for (int i = 0; i < 10; i++) {
+            Pool pool = TestUtil.createPool(o, TestUtil.createProduct(o));
+            pool.setId("pool" + i);
+            pools.add(pool);
+        }
+
+        // The curator seeks through the pools in order, the rules pass every other one.
+        when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
+            any(Owner.class), anyString(), any(Date.class), anyBoolean(),
+            any(PoolFilterBuilder.class), any(PageRequest.class), eq(false)))
+            .thenAnswer(new Answer<Page<List<Pool>>>() {
+                @Override
+                public Page<List<Pool>> answer(InvocationOnMock iom) throws Throwable {
+                    PageRequest request = (PageRequest) iom.getArguments()[6];
+                    int from = 0;
+                    for (int i = 0; i < pools.size(); i++) {
+                        if (pools.get(i).getId().equals(request.getAfter())) {
+                            from = i + 1;
+                        }
+                    }
+                    int to = Math.min(from + request.getPerPage(), pools.size());
+                    Page<List<Pool>> chunk = new Page<List<Pool>>();
+                    chunk.setPageData(new ArrayList<Pool>(pools.subList(from, to)));
+                    if (to < pools.size()) {
+                        chunk.setNextCursor(pools.get(to - 1).getId());
+                    }
+                    return chunk;
+                }
+            });
+        when(enforcerMock.filterPools(any(Consumer.class), anyList(), anyBoolean()))
+            .thenAnswer(new Answer<List<Pool>>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public List<Pool> answer(InvocationOnMock iom) throws Throwable {
+                    List<Pool> passed = new ArrayList<Pool>();
+                    for (Pool pool : (List<Pool>) iom.getArguments()[1]) {
+                        if (pools.indexOf(pool) % 2 == 0) {
+                            passed.add(pool);
+                        }
+                    }
+                    return passed;
+                }
+            });
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPerPage(2);
+        pageRequest.setAfter("");
+        Consumer consumer = TestUtil.createConsumer(o);
+
+        Page<List<Pool>> page = manager.listAvailableEntitlementPools(consumer, null, o,
+            null, null, false, false, new PoolFilterBuilder(), pageRequest);
+        assertEquals(Arrays.asList(pools.get(0), pools.get(2)), page.getPageData());
+        assertEquals("pool2", page.getNextCursor());
+        assertNull(page.getMaxRecords());
+
+        pageRequest.setAfter(page.getNextCursor());
+        page = manager.listAvailableEntitlementPools(consumer, null, o,
+            null, null, false, false, new PoolFilterBuilder(), pageRequest);
+        assertEquals(Arrays.asList(pools.get(4), pools.get(6)), page.getPageData());
+        assertEquals("pool6", page.getNextCursor());
+
+        pageRequest.setAfter(page.getNextCursor());
+        page = manager.listAvailableEntitlementPools(consumer, null, o,
+            null, null, false, false, new PoolFilterBuilder(), pageRequest);
+        assertEquals(Arrays.asList(pools.get(8)), page.getPageData());
+        assertNull(page.getNextCursor());
+
+        // Pools are never listed as a whole to be filtered:
+        verify(mockPoolCurator, never()).listAvailableEntitlementPools(any(Consumer.class),
+            any(Owner.class), anyString(), any(Date.class), anyBoolean(),
+            any(PoolFilterBuilder.class), any(PageRequest.class), eq(true));
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Test
     public void testEntitleWithADate() throws Exception {
@@ -711,6 +881,7 @@ public class PoolManagerTest {
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
             any(CallerType.class))).thenReturn(result);
+        mockBatchPreEntitlement(result);
 
         when(result.isSuccessful()).thenReturn(true);
 
@@ -767,7 +938,7 @@ public class PoolManagerTest {
         ent.setQuantity(1);
         poolEntitlements.add(ent);
 
-        when(mockPoolCurator.entitlementsIn(eq(p))).thenReturn(poolEntitlements);
+        when(mockPoolCurator.entitlementsIn(anyCollectionOf(Pool.class))).thenReturn(poolEntitlements);
 
         ValidationResult result = new ValidationResult();
         when(preHelper.getResult()).thenReturn(result);
@@ -776,7 +947,7 @@ public class PoolManagerTest {
 
         this.manager.getRefresher(mockSubAdapter).add(owner).run();
 
-        verify(mockPoolCurator).delete(eq(p));
+        verify(mockPoolCurator).deleteAll(eq(Arrays.asList(p)));
 
         verify(entitlementCurator).delete(eq(ent));
     }
@@ -909,6 +1080,7 @@ public class PoolManagerTest {
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
             any(CallerType.class))).thenReturn(result);
+        mockBatchPreEntitlement(result);
 
         when(result.isSuccessful()).thenReturn(true);
 
@@ -928,6 +1100,41 @@ public class PoolManagerTest {
             any(Set.class), eq(false));
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Test
+    public void testEntitleByProductsWithoutCandidatePools() throws Exception {
+        Product product = TestUtil.createProduct(o);
+        Date now = new Date();
+
+        String [] installedPids = new String [] { product.getUuid() };
+        ComplianceStatus mockCompliance = new ComplianceStatus(now);
+        mockCompliance.addNonCompliantProduct(installedPids[0]);
+        when(complianceRules.getStatus(any(Consumer.class),
+            any(Date.class), any(Boolean.class))).thenReturn(mockCompliance);
+
+        // No pool provides the product, the pools need not be listed at all:
+        when(poolIndexMock.isEnabled()).thenReturn(true);
+        when(poolIndexMock.getCandidates(any(Owner.class), any(Collection.class),
+            any(Collection.class))).thenReturn(new HashSet<String>());
+        when(autobindRules.selectBestPools(any(Consumer.class), any(String[].class),
+            any(List.class), any(ComplianceStatus.class), any(String.class),
+            any(Set.class), eq(false)))
+            .thenReturn(new ArrayList<PoolQuantity>());
+
+        AutobindData data = AutobindData.create(TestUtil.createConsumer(o)).on(now);
+        manager.entitleByProducts(data);
+
+        verify(poolIndexMock).getCandidates(any(Owner.class),
+            eq(Arrays.asList(installedPids)), eq(mockCompliance.getPartialStacks().keySet()));
+        verify(mockPoolCurator, never()).listAvailableEntitlementPools(any(Consumer.class),
+            any(Owner.class), anyString(), any(Date.class),
+            anyBoolean(), any(PoolFilterBuilder.class),
+            any(PageRequest.class), anyBoolean());
+        verify(autobindRules).selectBestPools(any(Consumer.class), eq(installedPids),
+            eq(new LinkedList<Pool>()), eq(mockCompliance), any(String.class),
+            any(Set.class), eq(false));
+    }
+
     @Test
     public void testRefreshPoolsRemovesOtherOwnerPoolsForSameSub() {
         PreUnbindHelper preHelper =  mock(PreUnbindHelper.class);
@@ -960,7 +1167,7 @@ public class PoolManagerTest {
         ent.setQuantity(1);
         poolEntitlements.add(ent);
 
-        when(mockPoolCurator.entitlementsIn(eq(p))).thenReturn(poolEntitlements);
+        when(mockPoolCurator.entitlementsIn(anyCollectionOf(Pool.class))).thenReturn(poolEntitlements);
 
         ValidationResult result = new ValidationResult();
         when(preHelper.getResult()).thenReturn(result);
@@ -971,7 +1178,7 @@ public class PoolManagerTest {
 
         // The pool left over from the pre-migrated subscription should be deleted
         // and granted entitlements should be revoked
-        verify(mockPoolCurator).delete(eq(p));
+        verify(mockPoolCurator).deleteAll(eq(Arrays.asList(p)));
         verify(entitlementCurator).delete(eq(ent));
         // Make sure pools that don't match the owner were removed from the list
         // They shouldn't cause us to attempt to update existing pools when we
@@ -981,6 +1188,23 @@ public class PoolManagerTest {
         TestUtil.assertPoolsAreEqual(TestUtil.copyFromSub(sub), argPool.getValue());
     }
 
+    @SuppressWarnings("unchecked")
+    private void mockBatchPreEntitlement(final ValidationResult result) {
+        when(enforcerMock.preEntitlement(any(Consumer.class), any(Collection.class),
+            any(CallerType.class))).thenAnswer(new Answer<Map<String, ValidationResult>>() {
+                @Override
+                public Map<String, ValidationResult> answer(InvocationOnMock iom)
+                    throws Throwable {
+                    Map<String, ValidationResult> results =
+                        new HashMap<String, ValidationResult>();
+                    for (Pool pool : (Collection<Pool>) iom.getArguments()[1]) {
+                        results.put(pool.getId(), result);
+                    }
+                    return results;
+                }
+            });
+    }
+
     private void mockSubsList(List<Subscription> subs) {
         List<String> subIds = new LinkedList<String>();
         for (Subscription sub : subs) {
@@ -991,6 +1215,17 @@ public class PoolManagerTest {
         when(mockSubAdapter.getSubscriptions(any(Owner.class))).thenReturn(subs);
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private List<Pool> deletedPools() {
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(this.manager, atLeast(0)).deletePools(captor.capture());
+        List<Pool> deleted = new LinkedList<Pool>();
+        for (Collection pools : captor.getAllValues()) {
+            deleted.addAll(pools);
+        }
+        return deleted;
+    }
+
     private void mockPoolsList(List<Pool> pools) {
         List<Pool> floating = new LinkedList<Pool>();
         subToPools = new HashMap<String, List<Pool>>();
@@ -1009,6 +1244,21 @@ public class PoolManagerTest {
         for (String subid : subToPools.keySet()) {
             when(mockPoolCurator.getPoolsBySubscriptionId(eq(subid))).thenReturn(subToPools.get(subid));
         }
+        when(mockPoolCurator.getPoolsBySubscriptionIds(any(Collection.class)))
+            .thenAnswer(new Answer<List<Pool>>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public List<Pool> answer(InvocationOnMock iom) throws Throwable {
+                    Collection<String> subIds = (Collection<String>) iom.getArguments()[0];
+                    List<Pool> results = new LinkedList<Pool>();
+                    for (String subId : subIds) {
+                        if (PoolManagerTest.subToPools.containsKey(subId)) {
+                            results.addAll(PoolManagerTest.subToPools.get(subId));
+                        }
+                    }
+                    return results;
+                }
+            });
         when(mockPoolCurator.getOwnersFloatingPools(any(Owner.class))).thenReturn(floating);
         when(mockPoolCurator.getPoolsFromBadSubs(any(Owner.class), any(Collection.class)))
             .thenAnswer(new Answer<List<Pool>>() {
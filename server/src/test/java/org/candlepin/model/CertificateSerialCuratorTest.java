@@ -21,17 +21,22 @@ import static org.candlepin.util.Util.toDate;
 import static org.candlepin.util.Util.tomorrow;
 import static org.candlepin.util.Util.yesterday;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.test.TestUtil;
 
+import org.hibernate.ScrollableResults;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +51,7 @@ public class CertificateSerialCuratorTest extends DatabaseTestFixture {
     @Inject private ProductCurator productCurator;
     @Inject private EntitlementCurator entitlementCurator;
     @Inject private CertificateSerialCurator certSerialCurator;
+    @Inject private EntitlementCertificateCurator entCertCurator;
 
     private class CertSerialBuilder {
         private Date dt = new Date();
@@ -223,11 +229,74 @@ public class CertificateSerialCuratorTest extends DatabaseTestFixture {
         assertNotNull(values.get(serial1.getSerial()));
     }
 
+    @Test
+    public void collectAndScrollRevokedSerials() {
+        CertificateSerial collected = createCS().withExpDate(tomorrow())
+            .collected(true).revoked(true).save();
+        CertificateSerial revoked = createCS().withExpDate(tomorrow())
+            .collected(false).revoked(true).save();
+        createCS().withExpDate(tomorrow()).collected(false).revoked(false).save();
+        createCS().withExpDate("01/10/2010").collected(true).revoked(true).save();
+
+        assertEquals(1, certSerialCurator.collectRevokedSerials(new Date()));
+        certSerialCurator.currentSession().clear();
+        assertEquals(0, certSerialCurator.retrieveTobeCollectedSerials().size());
+
+        Set<Long> ids = new HashSet<Long>();
+        ScrollableResults results = certSerialCurator.scrollCollectedSerials();
+        try {
+            while (results.next()) {
+                ids.add((Long) results.get(0));
+                assertNotNull(results.get(1));
+            }
+        }
+        finally {
+            results.close();
+        }
+        assertEquals(new HashSet<Long>(Arrays.asList(collected.getId(), revoked.getId())),
+            ids);
+    }
+
+    @Test
+    public void collectRevokedSerialsInBlocks() {
+        for (int i = 0; i < 1001; i++) {
+            createCS().withExpDate(tomorrow()).collected(false).revoked(true).save();
+        }
+
+        assertEquals(1001, certSerialCurator.collectRevokedSerials(new Date()));
+        certSerialCurator.currentSession().clear();
+        assertFalse(certSerialCurator.hasTobeCollectedSerials());
+    }
+
     @Test
     public void givenNullReturnsNull() {
         assertEquals(null, certSerialCurator.listBySerialIds(null));
     }
 
+    @Test
+    public void createAllSerialsAndDeleteAllCertificates() {
+        List<CertificateSerial> serials = Arrays.asList(new CertificateSerial(tomorrow()),
+            new CertificateSerial(tomorrow()), new CertificateSerial(tomorrow()));
+        certSerialCurator.createAll(serials);
+
+        List<EntitlementCertificate> certs = new ArrayList<EntitlementCertificate>();
+        for (CertificateSerial serial : serials) {
+            assertNotNull(serial.getId());
+            certs.add(createEntitlementCertificate(serial));
+        }
+        assertEquals(0, certSerialCurator.retrieveTobeCollectedSerials().size());
+
+        entCertCurator.deleteAll(certs.subList(0, 2));
+        Set<Long> revoked = new HashSet<Long>();
+        for (CertificateSerial serial : certSerialCurator.retrieveTobeCollectedSerials()) {
+            revoked.add(serial.getId());
+        }
+        assertEquals(new HashSet<Long>(Arrays.asList(serials.get(0).getId(),
+            serials.get(1).getId())), revoked);
+        assertTrue(certs.get(0).getEntitlement().getCertificates().isEmpty());
+        assertEquals(1, certs.get(2).getEntitlement().getCertificates().size());
+    }
+
     private EntitlementCertificate createEntitlementCertificate(CertificateSerial serial) {
         Owner owner = this.createOwner();
         Consumer c = this.createConsumer(owner);
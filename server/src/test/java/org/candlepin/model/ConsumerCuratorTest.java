@@ -24,6 +24,7 @@ import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.util.Util;
 
+import org.hibernate.Hibernate;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -669,6 +670,37 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertEquals(consumer.getId(), results.get(0));
     }
 
+    @Test
+    public void testLoadComplianceData() {
+        Product prod = new Product("1", "2", owner);
+        this.productCurator.create(prod);
+        Pool p = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
+        for (int i = 0; i < 2; i++) {
+            Consumer consumer = new Consumer("testConsumer" + i, "testUser", owner, ct);
+            consumer.setFact("cpu.cpu_socket(s)", "2");
+            consumer.addInstalledProduct(new ConsumerInstalledProduct("1", "2"));
+            consumerCurator.create(consumer);
+            entitlementCurator.create(this.createEntitlement(owner, consumer, p,
+                createEntitlementCertificate("entkey" + i, "ecert" + i)));
+        }
+        entityManager().clear();
+
+        List<Consumer> consumers = consumerCurator.listByOwner(owner);
+        assertEquals(2, consumers.size());
+        assertFalse(Hibernate.isInitialized(consumers.get(0).getEntitlements()));
+
+        consumerCurator.loadComplianceData(consumers);
+        for (Consumer consumer : consumers) {
+            assertTrue(Hibernate.isInitialized(consumer.getEntitlements()));
+            assertTrue(Hibernate.isInitialized(consumer.getFacts()));
+            assertTrue(Hibernate.isInitialized(consumer.getInstalledProducts()));
+            assertTrue(Hibernate.isInitialized(consumer.getGuestIds()));
+            assertEquals(1, consumer.getEntitlements().size());
+            assertEquals("2", consumer.getFact("cpu.cpu_socket(s)"));
+            assertEquals(1, consumer.getInstalledProducts().size());
+        }
+    }
+
     @Test
     public void testGetConsumerIdsWithStartedEntsAlreadyDone() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
@@ -16,7 +16,9 @@ package org.candlepin.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
+import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
 import org.candlepin.test.DatabaseTestFixture;
@@ -28,6 +30,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -185,6 +189,97 @@ public class CuratorPaginationTest extends DatabaseTestFixture {
         assertEquals(pageRequest, pageRequest2);
     }
 
+    @Test
+    public void testKeysetPaging() {
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setSortBy("key");
+        pageRequest.setOrder(PageRequest.Order.ASCENDING);
+        pageRequest.setPerPage(4);
+        pageRequest.setAfter("");
+
+        List<String> keys = new ArrayList<String>();
+        Page<List<Owner>> p;
+        do {
+            p = ownerCurator.listAll(pageRequest);
+            assertNull(p.getMaxRecords());
+            for (Owner o : p.getPageData()) {
+                keys.add(o.getKey());
+            }
+            pageRequest.setAfter(p.getNextCursor());
+        }
+        while (p.getNextCursor() != null);
+
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), keys);
+    }
+
+    @Test
+    public void testKeysetPagingWithCriteriaDescending() {
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setSortBy("key");
+        pageRequest.setOrder(PageRequest.Order.DESCENDING);
+        pageRequest.setPerPage(2);
+        pageRequest.setAfter("");
+
+        Criteria criteria = session.createCriteria(Owner.class).
+            add(Restrictions.gt("key", "5"));
+        Page<List<Owner>> p = ownerCurator.listByCriteria(criteria, pageRequest);
+        assertEquals("9", p.getPageData().get(0).getKey());
+        assertEquals("8", p.getPageData().get(1).getKey());
+        assertEquals(p.getPageData().get(1).getId(), p.getNextCursor());
+
+        pageRequest.setAfter(p.getNextCursor());
+        criteria = session.createCriteria(Owner.class).
+            add(Restrictions.gt("key", "5"));
+        p = ownerCurator.listByCriteria(criteria, pageRequest);
+        assertEquals(2, p.getPageData().size());
+        assertEquals("7", p.getPageData().get(0).getKey());
+        assertEquals("6", p.getPageData().get(1).getKey());
+        assertNull(p.getNextCursor());
+    }
+
+    @Test
+    public void testKeysetPagingBreaksTiesById() {
+        for (int i = 0; i < 5; i++) {
+            Owner o = new Owner();
+            o.setDisplayName("same");
+            o.setKey("same" + i);
+            ownerCurator.create(o);
+        }
+
+        Criteria criteria = session.createCriteria(Owner.class).
+            add(Restrictions.eq("displayName", "same"));
+        List<Owner> expected = ownerCurator.listByCriteria(criteria);
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setSortBy("displayName");
+        pageRequest.setOrder(PageRequest.Order.ASCENDING);
+        pageRequest.setPerPage(2);
+        pageRequest.setAfter("");
+
+        List<Owner> owners = new ArrayList<Owner>();
+        Page<List<Owner>> p;
+        do {
+            criteria = session.createCriteria(Owner.class).
+                add(Restrictions.eq("displayName", "same"));
+            p = ownerCurator.listByCriteria(criteria, pageRequest);
+            owners.addAll(p.getPageData());
+            pageRequest.setAfter(p.getNextCursor());
+        }
+        while (p.getNextCursor() != null);
+
+        assertEquals(5, owners.size());
+        assertEquals(new HashSet<Owner>(expected), new HashSet<Owner>(owners));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testKeysetPagingAfterUnknownRecord() {
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPerPage(2);
+        pageRequest.setAfter("unknown");
+
+        ownerCurator.listAll(pageRequest);
+    }
+
     private List<Owner> createOwners(int owners) {
         List<Owner> ownerList = new ArrayList<Owner>();
         for (int i = 0; i < owners; i++) {
@@ -219,6 +314,32 @@ public class CuratorPaginationTest extends DatabaseTestFixture {
         assertEquals(2, results.size());
     }
 
+    @Test
+    public void testIterateByCriteriaEvictsAsItGoes() {
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setSortBy("key");
+        pageRequest.setOrder(PageRequest.Order.DESCENDING);
+
+        Criteria criteria = session.createCriteria(Owner.class).
+            add(Restrictions.gt("key", "5"));
+        ResultIterator<Owner> owners = ownerCurator.iterateByCriteria(criteria, pageRequest);
+
+        List<String> keys = new ArrayList<String>();
+        Owner previous = null;
+        while (owners.hasNext()) {
+            Owner o = owners.next();
+            if (previous != null) {
+                assertFalse(session.contains(previous));
+            }
+            keys.add(o.getKey());
+            previous = o;
+        }
+        owners.close();
+
+        assertFalse(session.contains(previous));
+        assertEquals(Arrays.asList("9", "8", "7", "6"), keys);
+    }
+
     @Test
     public void testTakeSubListWhenRequestOutOfBounds() {
         PageRequest req = new PageRequest();
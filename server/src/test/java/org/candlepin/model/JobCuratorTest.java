@@ -140,6 +140,17 @@ public class JobCuratorTest extends DatabaseTestFixture {
         curator.merge(status);
     }
 
+    @Test
+    public void updateResultOfRunningJob() {
+        JobStatus job = newJobStatus().state(JobStatus.JobState.RUNNING)
+            .result("started").create();
+        curator.updateResult(job.getId(), "Healed 10 of 20 consumers");
+
+        curator.refresh(job);
+        assertEquals("Healed 10 of 20 consumers", job.getResult());
+        assertEquals(JobStatus.JobState.RUNNING, job.getState());
+    }
+
     @Test
     public void findWaitingJobsTest() {
         JobStatus waitingJob1 = newJobStatus().state(JobStatus.JobState.WAITING)
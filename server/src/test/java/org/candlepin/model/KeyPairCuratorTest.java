@@ -16,7 +16,10 @@ package org.candlepin.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.test.DatabaseTestFixture;
 
 import org.junit.Test;
@@ -30,6 +33,7 @@ import javax.inject.Inject;
  */
 public class KeyPairCuratorTest extends DatabaseTestFixture {
     @Inject private KeyPairCurator keyPairCurator;
+    @Inject private Configuration config;
 
     @Test
     public void testSameConsumerGetsSameKey() {
@@ -56,4 +60,35 @@ public class KeyPairCuratorTest extends DatabaseTestFixture {
         assertFalse(keyPair1.getPrivate().equals(keyPair2.getPrivate()));
     }
 
+    @Test
+    public void consumersGetSpareKeyPairs() {
+        keyPairCurator.createSpareKeyPairs(2);
+        assertEquals(2, keyPairCurator.getSpareCount());
+
+        Owner owner = createOwner();
+        Consumer consumer1 = createConsumer(owner);
+        Consumer consumer2 = createConsumer(owner);
+        Consumer consumer3 = createConsumer(owner);
+
+        KeyPair keyPair1 = keyPairCurator.getConsumerKeyPair(consumer1);
+        KeyPair keyPair2 = keyPairCurator.getConsumerKeyPair(consumer2);
+        assertEquals(0, keyPairCurator.getSpareCount());
+        assertFalse(consumer1.getKeyPair().isSpare());
+        assertFalse(keyPair1.getPrivate().equals(keyPair2.getPrivate()));
+
+        // Pool ran dry, generated on demand:
+        KeyPair keyPair3 = keyPairCurator.getConsumerKeyPair(consumer3);
+        assertFalse(keyPair3.getPrivate().equals(keyPair1.getPrivate()));
+        assertFalse(keyPair3.getPrivate().equals(keyPair2.getPrivate()));
+        assertEquals(0, keyPairCurator.getSpareCount());
+    }
+
+    @Test
+    public void noSpareKeyPairsClaimedWhenPoolDisabled() {
+        keyPairCurator.createSpareKeyPairs(1);
+        config.setProperty(ConfigProperties.KEYPAIR_POOL_SIZE, "0");
+
+        assertNull(keyPairCurator.claimSpareKeyPair());
+        assertEquals(1, keyPairCurator.getSpareCount());
+    }
 }
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * OwnerInfoCacheTest
+ */
+public class OwnerInfoCacheTest {
+    private OwnerInfoCache cache;
+    private Owner owner;
+    private OwnerInfo info;
+
+    @Before
+    public void init() {
+        cache = new OwnerInfoCache(2, 60000L);
+        owner = owner("owner1");
+        info = new OwnerInfo();
+    }
+
+    @Test
+    public void infoServedUntilInvalidated() {
+        assertNull(cache.get(owner));
+        cache.put(owner, info, cache.getVersion(owner));
+        assertSame(info, cache.get(owner));
+
+        cache.invalidate(owner.getId());
+        assertNull(cache.get(owner));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void infoComputedBeforeInvalidationNotStored() {
+        long version = cache.getVersion(owner);
+        cache.invalidate(owner.getId());
+        cache.put(owner, info, version);
+        assertNull(cache.get(owner));
+
+        version = cache.getVersion(owner);
+        cache.invalidateAll();
+        cache.put(owner, info, version);
+        assertNull(cache.get(owner));
+
+        cache.put(owner, info, cache.getVersion(owner));
+        assertSame(info, cache.get(owner));
+    }
+
+    @Test
+    public void infoExpires() {
+        cache = new OwnerInfoCache(2, -1L);
+        cache.put(owner, info, cache.getVersion(owner));
+        assertNull(cache.get(owner));
+    }
+
+    @Test
+    public void leastRecentlyUsedOwnersEvicted() {
+        Owner owner2 = owner("owner2");
+        Owner owner3 = owner("owner3");
+        cache.put(owner, info, cache.getVersion(owner));
+        cache.put(owner2, new OwnerInfo(), cache.getVersion(owner2));
+        cache.get(owner);
+        cache.put(owner3, new OwnerInfo(), cache.getVersion(owner3));
+
+        assertEquals(2, cache.size());
+        assertSame(info, cache.get(owner));
+        assertNull(cache.get(owner2));
+    }
+
+    private Owner owner(String id) {
+        Owner owner = new Owner(id);
+        owner.setId(id);
+        return owner;
+    }
+}
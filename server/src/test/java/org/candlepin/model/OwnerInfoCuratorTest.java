@@ -15,6 +15,7 @@
 package org.candlepin.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.UserPrincipal;
@@ -46,6 +47,7 @@ public class OwnerInfoCuratorTest extends DatabaseTestFixture {
     @Inject private ConsumerTypeCurator consumerTypeCurator;
     @Inject private EntitlementCurator entitlementCurator;
     @Inject private OwnerInfoCurator ownerInfoCurator;
+    @Inject private OwnerInfoCache ownerInfoCache;
 
     private Owner owner;
     private Pool pool1;
@@ -75,6 +77,23 @@ public class OwnerInfoCuratorTest extends DatabaseTestFixture {
         consumerTypeCurator.create(consumerType);
     }
 
+    @Test
+    public void cachedOwnerInfoServedUntilInvalidated() {
+        OwnerInfo info = ownerInfoCurator.getOwnerInfo(owner);
+        assertEquals(Integer.valueOf(0), info.getConsumerCounts().get("system"));
+
+        ConsumerType type = consumerTypeCurator.lookupByLabel("system");
+        Consumer consumer = new Consumer("test-consumer", "test-user", owner, type);
+        consumerCurator.create(consumer);
+        assertSame(info, ownerInfoCurator.getOwnerInfo(owner));
+
+        ownerInfoCache.invalidate(owner.getId());
+        info = ownerInfoCurator.getOwnerInfo(owner);
+        assertEquals(Integer.valueOf(1), info.getConsumerCounts().get("system"));
+        assertEquals(1, ownerInfoCache.getHits());
+        assertEquals(2, ownerInfoCache.getMisses());
+    }
+
     @Test
     public void testOwnerInfoNoConsumers() {
         OwnerInfo info = ownerInfoCurator.lookupByOwner(owner);
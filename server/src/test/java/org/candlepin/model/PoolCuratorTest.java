@@ -978,6 +978,44 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    public void testGetPoolsFromBadSubs() {
+        Owner owner2 = createOwner();
+        ownerCurator.create(owner2);
+
+        createPool(owner2, "expected");
+        Pool bad1 = createPool(owner2, "gone1");
+        Pool bad2 = createPool(owner2, "gone2");
+        Pool floating = TestUtil.createPool(owner2, product);
+        floating.setSourceSubscription(null);
+        poolCurator.create(floating);
+        createPool(owner, "gone3");
+
+        List<Pool> result = poolCurator.getPoolsFromBadSubs(owner2, Arrays.asList("expected"));
+        assertEquals(2, result.size());
+        assertTrue(result.contains(bad1));
+        assertTrue(result.contains(bad2));
+        assertTrue(result.get(0).getId().compareTo(result.get(1).getId()) < 0);
+    }
+
+    @Test
+    public void testDeleteAll() {
+        Pool pool1 = createPool(owner, "sub1");
+        Pool pool2 = createPool(owner, "sub2");
+        Pool kept = createPool(owner, "sub3");
+        Entitlement ent = new Entitlement(kept, consumer, 1);
+        entitlementCurator.create(ent);
+
+        assertTrue(poolCurator.entitlementsIn(Arrays.asList(pool1, pool2)).isEmpty());
+        assertEquals(Arrays.asList(ent),
+            poolCurator.entitlementsIn(Arrays.asList(pool1, kept)));
+
+        poolCurator.deleteAll(Arrays.asList(pool1, pool2));
+        assertNull(poolCurator.find(pool1.getId()));
+        assertNull(poolCurator.find(pool2.getId()));
+        assertNotNull(poolCurator.find(kept.getId()));
+    }
+
     @Test
     public void testGetPoolsByFilter() {
         Owner owner1 = createOwner();
@@ -1107,6 +1145,31 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         return products;
     }
 
+    @Test
+    public void poolsVersionChangesWithAttributesAndProvidedProducts() {
+        Pool pool = createPool(owner, product, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2));
+        poolCurator.create(pool);
+        Product provided = TestUtil.createProduct(owner);
+        productCurator.create(provided);
+        String version = poolCurator.getPoolsVersion(owner);
+        assertEquals(version, poolCurator.getPoolsVersion(owner));
+
+        product.addAttribute(new ProductAttribute("stacking_id", "stack"));
+        productCurator.merge(product);
+        String stacked = poolCurator.getPoolsVersion(owner);
+        assertFalse(version.equals(stacked));
+
+        pool.addProvidedProduct(provided);
+        poolCurator.merge(pool);
+        String providing = poolCurator.getPoolsVersion(owner);
+        assertFalse(stacked.equals(providing));
+
+        pool.addAttribute(new PoolAttribute("virt_only", "true"));
+        poolCurator.merge(pool);
+        assertFalse(providing.equals(poolCurator.getPoolsVersion(owner)));
+    }
+
     private Pool createPool(Owner o, String subId) {
         Pool pool = TestUtil.createPool(o, product);
         pool.setSourceSubscription(new SourceSubscription(subId, "master"));
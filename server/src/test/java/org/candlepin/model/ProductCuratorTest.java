@@ -652,4 +652,17 @@ public class ProductCuratorTest extends DatabaseTestFixture {
         Product result = productCurator.find(p.getUuid());
         assertEquals(1, result.getProductContent().size());
     }
+
+    @Test
+    public void testLookupByIdAfterEvictingCachedEntities() {
+        Product prod = new Product("cptest-label", "My Product", owner);
+        productCurator.create(prod);
+
+        productCurator.evictCachedEntities();
+
+        assertEquals(prod, productCurator.lookupById(owner, "cptest-label"));
+        // The testing persistence unit has no second-level cache, see
+        // ReferenceDataCacheTest:
+        assertTrue(productCurator.getCacheStatistics().isEmpty());
+    }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.Provider;
+
+import org.hibernate.Session;
+import org.hibernate.ejb.Ejb3Configuration;
+import org.hibernate.jdbc.Work;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * ReferenceDataCacheTest
+ *
+ * The testing persistence unit has no second-level cache, these tests build
+ * their own with the regions of ehcache.xml.
+ */
+public class ReferenceDataCacheTest {
+    private static final String REGION = "candlepin.consumer_type";
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private ConsumerTypeCurator curator;
+    private String typeId;
+
+    @Before
+    public void setUp() {
+        Properties props = new Properties();
+        props.put("javax.persistence.provider", "org.hibernate.ejb.HibernatePersistence");
+        props.put("javax.persistence.transactionType", "RESOURCE_LOCAL");
+        props.put("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        props.put("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+        props.put("hibernate.connection.url", "jdbc:hsqldb:mem:unit-testing-cache");
+        props.put("hibernate.hbm2ddl.auto", "create-drop");
+        props.put("hibernate.connection.username", "sa");
+        props.put("hibernate.connection.password", "");
+        props.put("hibernate.cache.use_second_level_cache", "true");
+        props.put("hibernate.cache.use_query_cache", "true");
+        props.put("hibernate.cache.region.factory_class",
+            "org.hibernate.cache.ehcache.EhCacheRegionFactory");
+        props.put("hibernate.generate_statistics", "true");
+
+        Ejb3Configuration cfg = new Ejb3Configuration();
+        cfg.addAnnotatedClass(ConsumerType.class);
+        cfg.addProperties(props);
+        emf = cfg.buildEntityManagerFactory();
+
+        em = emf.createEntityManager();
+        curator = new ConsumerTypeCurator();
+        curator.entityManager = new Provider<EntityManager>() {
+            @Override
+            public EntityManager get() {
+                return em;
+            }
+        };
+
+        em.getTransaction().begin();
+        ConsumerType type = new ConsumerType("system");
+        em.persist(type);
+        em.getTransaction().commit();
+        typeId = type.getId();
+        reopen();
+    }
+
+    @After
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+
+    @Test
+    public void loadedFromCache() {
+        assertEquals("system", em.find(ConsumerType.class, typeId).getLabel());
+
+        SecondLevelCacheStatistics statistics = curator.getCacheStatistics().get(REGION);
+        assertNotNull(statistics);
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(0, statistics.getMissCount());
+    }
+
+    @Test
+    public void changeOutsideSessionServedStaleUntilEvicted() {
+        // As another node would change it:
+        relabel("person");
+
+        assertEquals("system", em.find(ConsumerType.class, typeId).getLabel());
+
+        curator.evictCachedEntities();
+        reopen();
+        assertEquals("person", em.find(ConsumerType.class, typeId).getLabel());
+        assertEquals(1, curator.getCacheStatistics().get(REGION).getMissCount());
+    }
+
+    @Test
+    public void updateThroughSessionRefreshesCache() {
+        em.getTransaction().begin();
+        em.find(ConsumerType.class, typeId).setLabel("person");
+        em.getTransaction().commit();
+        reopen();
+
+        assertEquals("person", em.find(ConsumerType.class, typeId).getLabel());
+    }
+
+    private void reopen() {
+        em.close();
+        em = emf.createEntityManager();
+    }
+
+    private void relabel(final String label) {
+        em.getTransaction().begin();
+        ((Session) em.getDelegate()).doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                Statement statement = connection.createStatement();
+                try {
+                    statement.executeUpdate("update cp_consumer_type set label = '" +
+                        label + "' where id = '" + typeId + "'");
+                }
+                finally {
+                    statement.close();
+                }
+            }
+        });
+        em.getTransaction().commit();
+    }
+}
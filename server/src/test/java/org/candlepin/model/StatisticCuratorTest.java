@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.candlepin.audit.Event;
+import org.candlepin.auth.Access;
+import org.candlepin.auth.Principal;
+import org.candlepin.model.Statistic.EntryType;
+import org.candlepin.model.Statistic.ValueType;
+import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.test.TestUtil;
+import org.candlepin.util.Util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+/**
+ * StatisticCuratorTest
+ */
+public class StatisticCuratorTest extends DatabaseTestFixture {
+    @Inject private StatisticCurator statisticCurator;
+    @Inject private ProductCurator productCurator;
+    @Inject private EventCurator eventCurator;
+    @Inject private EntitlementCurator entitlementCurator;
+
+    @Test
+    public void statisticRunCoversAllOwners() {
+        Owner owner1 = createOwner();
+        Owner owner2 = createOwner();
+        Principal principal = setupPrincipal(owner1, Access.ALL);
+
+        createConsumer(owner1, "true", "2");
+        createConsumer(owner1, null, "2");
+        createConsumer(owner1, "false", null);
+        createConsumer(owner2, null, "4");
+
+        Product product1 = createProduct("product1", "Product 1", owner1);
+        Product product2 = createProduct("product2", "Product 2", owner1);
+        Product other1 = createProduct("product1", "Product 1", owner2);
+        Pool pool1 = createPool(owner1, product1, 10L, Util.yesterday(), Util.tomorrow());
+        Pool pool2 = createPool(owner1, product2, 5L, Util.yesterday(), Util.tomorrow());
+        Pool pool3 = createPool(owner2, other1, 30L, Util.yesterday(), Util.tomorrow());
+
+        Consumer consumer = createConsumer(owner1);
+        Entitlement ent = createEntitlement(owner1, consumer, pool1, null);
+        ent.setQuantity(3);
+        entitlementCurator.create(ent);
+
+        createEntitlementEvent(Event.Type.CREATED, principal, owner1, pool1);
+        createEntitlementEvent(Event.Type.CREATED, principal, owner1, pool1);
+        createEntitlementEvent(Event.Type.DELETED, principal, owner1, pool1);
+        createEntitlementEvent(Event.Type.CREATED, principal, owner2, pool3);
+
+        statisticCurator.executeStatisticRun();
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        String o1 = owner1.getId();
+        expected.put(key(o1, EntryType.SYSTEM, ValueType.VIRTUAL, null), 1);
+        expected.put(key(o1, EntryType.SYSTEM, ValueType.PHYSICAL, null), 3);
+        expected.put(key(o1, EntryType.TOTALCONSUMERS, ValueType.RAW, null), 4);
+        expected.put(key(o1, EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, "2"), 2);
+        expected.put(key(o1, EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, null), 2);
+        expected.put(key(o1, EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW, null), 15);
+        expected.put(key(o1, EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW, null), 3);
+        expected.put(key(o1, EntryType.TOTALSUBSCRIPTIONCONSUMED,
+            ValueType.PERCENTAGECONSUMED, null), 20);
+        expected.put(key(o1, EntryType.PERPOOL, ValueType.USED, pool1.getId()), 2);
+        expected.put(key(o1, EntryType.PERPOOL, ValueType.CONSUMED, pool1.getId()), 1);
+        expected.put(key(o1, EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED,
+            pool1.getId()), 10);
+        expected.put(key(o1, EntryType.PERPOOL, ValueType.USED, pool2.getId()), 0);
+        expected.put(key(o1, EntryType.PERPOOL, ValueType.CONSUMED, pool2.getId()), 0);
+        expected.put(key(o1, EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED,
+            pool2.getId()), 0);
+        // Products are matched across owners by name:
+        expected.put(key(o1, EntryType.PERPRODUCT, ValueType.USED, "product1"), 3);
+        expected.put(key(o1, EntryType.PERPRODUCT, ValueType.CONSUMED, "product1"), 2);
+        expected.put(key(o1, EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
+            "product1"), 5);
+        expected.put(key(o1, EntryType.PERPRODUCT, ValueType.USED, "product2"), 0);
+        expected.put(key(o1, EntryType.PERPRODUCT, ValueType.CONSUMED, "product2"), 0);
+        expected.put(key(o1, EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
+            "product2"), 0);
+
+        String o2 = owner2.getId();
+        expected.put(key(o2, EntryType.SYSTEM, ValueType.VIRTUAL, null), 0);
+        expected.put(key(o2, EntryType.SYSTEM, ValueType.PHYSICAL, null), 1);
+        expected.put(key(o2, EntryType.TOTALCONSUMERS, ValueType.RAW, null), 1);
+        expected.put(key(o2, EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, "4"), 1);
+        expected.put(key(o2, EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW, null), 30);
+        expected.put(key(o2, EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW, null), 0);
+        expected.put(key(o2, EntryType.TOTALSUBSCRIPTIONCONSUMED,
+            ValueType.PERCENTAGECONSUMED, null), 0);
+        expected.put(key(o2, EntryType.PERPOOL, ValueType.USED, pool3.getId()), 1);
+        expected.put(key(o2, EntryType.PERPOOL, ValueType.CONSUMED, pool3.getId()), 1);
+        expected.put(key(o2, EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED,
+            pool3.getId()), 3);
+        expected.put(key(o2, EntryType.PERPRODUCT, ValueType.USED, "product1"), 3);
+        expected.put(key(o2, EntryType.PERPRODUCT, ValueType.CONSUMED, "product1"), 2);
+        expected.put(key(o2, EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
+            "product1"), 5);
+
+        Map<String, Integer> actual = new HashMap<String, Integer>();
+        for (Statistic stat : statisticCurator.listAll()) {
+            actual.put(key(stat.getOwnerId(), stat.getEntryType(), stat.getValueType(),
+                stat.getValueReference()), stat.getValue());
+        }
+        assertEquals(expected, actual);
+    }
+
+    private Consumer createConsumer(Owner owner, String guest, String sockets) {
+        Consumer consumer = createConsumer(owner);
+        if (guest != null) {
+            consumer.setFact("virt.is_guest", guest);
+        }
+        if (sockets != null) {
+            consumer.setFact("cpu.cpu_socket(s)", sockets);
+        }
+        return consumerCurator.merge(consumer);
+    }
+
+    private Product createProduct(String id, String name, Owner owner) {
+        Product product = TestUtil.createProduct(id, name, owner);
+        return productCurator.create(product);
+    }
+
+    private void createEntitlementEvent(Event.Type type, Principal principal, Owner owner,
+        Pool pool) {
+        eventCurator.create(new Event(type, Event.Target.ENTITLEMENT,
+            pool.getProduct().getName(), principal, owner.getId(), null, null, null, null,
+            pool.getId(), Event.ReferenceType.POOL));
+    }
+
+    private String key(String ownerId, EntryType entryType, ValueType valueType,
+        String reference) {
+        return ownerId + "/" + entryType + "/" + valueType + "/" + reference;
+    }
+}
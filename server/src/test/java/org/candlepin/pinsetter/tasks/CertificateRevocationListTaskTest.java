@@ -32,7 +32,6 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.quartz.JobExecutionException;
 
 import java.io.File;
-import java.security.cert.X509CRL;
 
 /**
  * CertificateRevocationListTaskTest
@@ -44,7 +43,6 @@ public class CertificateRevocationListTaskTest {
     @Mock private Configuration config;
     @Mock private CrlFileUtil crlFileUtil;
     @Mock private CrlGenerator generator;
-    @Mock private X509CRL crl;
 
     @Before
     public void init() {
@@ -60,12 +58,11 @@ public class CertificateRevocationListTaskTest {
     @Test
     public void execute() throws Exception {
         when(config.getString(ConfigProperties.CRL_FILE_PATH)).thenReturn("/tmp/test.crl");
-        when(crlFileUtil.readCRLFile(any(File.class))).thenReturn(crl);
-        when(generator.syncCRLWithDB(eq(crl))).thenReturn(crl);
 
         task.execute(null);
 
-        verify(crlFileUtil).writeCRLFile(any(File.class), eq(crl));
+        verify(crlFileUtil).syncCRLFile(any(File.class), eq(generator));
+        verify(crlFileUtil).publishBaseCRLFile(any(File.class));
     }
 
 }
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.controller.Entitler;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.JobCurator;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerCurator;
+import org.candlepin.resource.dto.AutobindData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.PersistenceException;
+
+/**
+ * HealEntireOrgJobTest
+ */
+public class HealEntireOrgJobTest {
+    @Mock private Entitler entitler;
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private OwnerCurator ownerCurator;
+    @Mock private JobCurator jobCurator;
+    @Mock private JobExecutionContext ctx;
+
+    private ExecutorService executor;
+    private HealEntireOrgJob job;
+    private Consumer consumer;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        Owner owner = new Owner("test-owner");
+        consumer = new Consumer("Test Consumer", "test-consumer", owner,
+            new ConsumerType("system"));
+
+        List<String> uuids = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            uuids.add("uuid-" + i);
+        }
+        when(ownerCurator.getConsumerUuids(eq("test-owner"))).thenReturn(uuids);
+        when(consumerCurator.getConsumer(anyString())).thenReturn(consumer);
+
+        JobDetail detail = HealEntireOrgJob.healEntireOrg("test-owner", new Date());
+        when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
+        when(ctx.getJobDetail()).thenReturn(detail);
+
+        executor = Executors.newFixedThreadPool(4);
+        job = new HealEntireOrgJob(entitler, consumerCurator, ownerCurator, jobCurator,
+            executor);
+        job.config = new CandlepinCommonTestConfig();
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void healsEveryConsumerAndCountsFailures() throws JobExecutionException {
+        when(consumerCurator.getConsumer(eq("uuid-3")))
+            .thenThrow(new RuntimeException("Consumer deleted"));
+
+        job.toExecute(ctx);
+
+        verify(entitler, times(19)).bindByProducts(any(AutobindData.class), eq(true));
+        verify(ctx).setResult(startsWith("Healed 19 of 20 consumers, 1 failed"));
+    }
+
+    @Test
+    public void retriesConsumerAfterPersistenceFailure() throws JobExecutionException {
+        when(consumerCurator.getConsumer(eq("uuid-5")))
+            .thenThrow(new PersistenceException("Deadlock found"))
+            .thenReturn(consumer);
+
+        job.toExecute(ctx);
+
+        verify(consumerCurator, times(2)).getConsumer(eq("uuid-5"));
+        verify(entitler, times(20)).bindByProducts(any(AutobindData.class), eq(true));
+        verify(ctx).setResult(startsWith("Healed 20 of 20 consumers, 0 failed"));
+    }
+
+    @Test
+    public void emptyOwner() throws JobExecutionException {
+        when(ownerCurator.getConsumerUuids(eq("test-owner"))).thenReturn(
+            new ArrayList<String>());
+
+        job.toExecute(ctx);
+
+        verify(entitler, never()).bindByProducts(any(AutobindData.class), anyBoolean());
+        verify(ctx).setResult(startsWith("Healed 0 of 0 consumers"));
+    }
+}
@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.auth.Principal;
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.HypervisorId;
@@ -28,11 +29,15 @@ import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.VirtConsumerMap;
 import org.candlepin.pinsetter.core.model.JobStatus;
 import org.candlepin.pinsetter.core.model.JobStatus.JobState;
-import org.candlepin.resource.ConsumerResource;
+import org.candlepin.resource.dto.HypervisorUpdateResult;
+import org.candlepin.resource.util.HypervisorCheckInUtil;
+import org.candlepin.resource.util.HypervisorReportCache;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -40,6 +45,7 @@ import org.quartz.ListenerManager;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -53,7 +59,8 @@ public class HypervisorUpdateJobTest {
 
     private OwnerCurator ownerCurator;
     private ConsumerCurator consumerCurator;
-    private ConsumerResource consumerResource;
+    private HypervisorCheckInUtil hypervisorCheckInUtil;
+    private HypervisorReportCache reportCache;
 
 
     @Before
@@ -62,7 +69,11 @@ public class HypervisorUpdateJobTest {
         principal = mock(Principal.class);
         ownerCurator = mock(OwnerCurator.class);
         consumerCurator = mock(ConsumerCurator.class);
-        consumerResource = mock(ConsumerResource.class);
+        hypervisorCheckInUtil = mock(HypervisorCheckInUtil.class);
+        reportCache = new HypervisorReportCache(new CandlepinCommonTestConfig());
+        when(hypervisorCheckInUtil.checkIn(any(Owner.class), any(Principal.class), any(Map.class),
+            any(VirtConsumerMap.class), anyBoolean(), anyString()))
+            .thenAnswer(new CheckInAnswer());
         when(owner.getKey()).thenReturn("joe");
         when(principal.getUsername()).thenReturn("joe user");
 
@@ -94,14 +105,14 @@ public class HypervisorUpdateJobTest {
         when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
             .thenReturn(new VirtConsumerMap());
 
-        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator, consumerResource);
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
         job.execute(ctx);
-        verify(consumerResource).create(any(Consumer.class),
-                                        eq(principal),
-                                        anyString(),
-                                        eq("joe"),
-                                        anyString(),
-                                        eq(false));
+        Map<String, Consumer> incoming = verifyCheckIn(true, null);
+        assertEquals(1, incoming.size());
+        Consumer hypervisor = incoming.get("uuid_999");
+        assertEquals("hypervisor_999", hypervisor.getName());
+        assertEquals("guestId_1_999", hypervisor.getGuestIds().get(0).getGuestId());
     }
 
     @Test
@@ -115,16 +126,10 @@ public class HypervisorUpdateJobTest {
         when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class))).thenReturn(
                 new VirtConsumerMap());
 
-        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator, consumerResource);
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
         job.execute(ctx);
-        ArgumentCaptor<Consumer> argument = ArgumentCaptor.forClass(Consumer.class);
-        verify(consumerResource).create(argument.capture(),
-                                        eq(principal),
-                                        anyString(),
-                                        eq("joe"),
-                                        anyString(),
-                                        eq(false));
-        assertEquals("createReporterId", argument.getValue().getHypervisorId().getReporterId());
+        verifyCheckIn(true, "createReporterId");
     }
 
     @Test
@@ -137,34 +142,39 @@ public class HypervisorUpdateJobTest {
         vcm.add(hypervisorId, hypervisor);
         when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class))).thenReturn(vcm);
 
-        JobDetail detail = HypervisorUpdateJob.forOwner(owner, hypervisorJson, true, principal, null);
+        JobDetail detail = HypervisorUpdateJob.forOwner(owner, hypervisorJson, true, principal,
+                "updateReporterId");
         JobExecutionContext ctx = mock(JobExecutionContext.class);
         when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
 
-        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator, consumerResource);
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
         job.execute(ctx);
-        verify(consumerResource).performConsumerUpdates(any(Consumer.class), eq(hypervisor),
-                any(VirtConsumerMap.class), eq(false));
+        verify(hypervisorCheckInUtil).checkIn(eq(owner), eq(principal), any(Map.class), eq(vcm),
+            eq(true), eq("updateReporterId"));
     }
 
     @Test
-    public void reporterIdOnUpdateTest() throws JobExecutionException {
+    public void hypervisorUpdateExecMissingWithoutCreate() throws JobExecutionException {
         when(ownerCurator.lookupByKey(eq("joe"))).thenReturn(owner);
-        Consumer hypervisor = new Consumer();
-        String hypervisorId = "uuid_999";
-        hypervisor.setHypervisorId(new HypervisorId(hypervisorId));
-        VirtConsumerMap vcm = new VirtConsumerMap();
-        vcm.add(hypervisorId, hypervisor);
-        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class))).thenReturn(vcm);
+        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
 
-        JobDetail detail = HypervisorUpdateJob.forOwner(owner, hypervisorJson, true, principal,
-                "updateReporterId");
+        JobDetail detail = HypervisorUpdateJob.forOwner(owner, hypervisorJson, false, principal, null);
         JobExecutionContext ctx = mock(JobExecutionContext.class);
         when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
 
-        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator, consumerResource);
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
         job.execute(ctx);
-        assertEquals("updateReporterId", hypervisor.getHypervisorId().getReporterId());
+        verifyCheckIn(false, null);
+
+        ArgumentCaptor<HypervisorUpdateResult> result =
+            ArgumentCaptor.forClass(HypervisorUpdateResult.class);
+        verify(ctx).setResult(result.capture());
+        assertEquals(1, result.getValue().getFailedUpdate().size());
+        assertEquals("uuid_999: Unable to find hypervisor with id uuid_999 in org joe",
+            result.getValue().getFailedUpdate().iterator().next());
     }
 
     @Test
@@ -181,15 +191,123 @@ public class HypervisorUpdateJobTest {
         JobDetail detail = HypervisorUpdateJob.forOwner(owner, hypervisorJson, true, principal, null);
         JobExecutionContext ctx = mock(JobExecutionContext.class);
         when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
+        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
 
-        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator, consumerResource);
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
         job.execute(ctx);
-        verify(consumerResource, never()).create(any(Consumer.class),
-                                        any(Principal.class),
-                                        anyString(),
-                                        anyString(),
-                                        anyString(),
-                                        eq(false));
+        assertTrue(verifyCheckIn(true, null).isEmpty());
+    }
+
+    @Test
+    public void unchangedReportSkipped() throws JobExecutionException {
+        when(ownerCurator.lookupByKey(eq("joe"))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
+
+        execute(hypervisorJson, true, "reporter");
+        execute(hypervisorJson, true, "reporter");
+
+        verifyCheckIn(true, "reporter");
+        assertEquals(1, reportCache.getSkippedReports());
+        assertEquals(1, reportCache.getSkippedHosts());
+        assertEquals(1, reportCache.getAppliedHosts());
+
+        // Another reporter's report is applied regardless:
+        execute(hypervisorJson, true, "other");
+        verify(hypervisorCheckInUtil, times(2)).checkIn(eq(owner), eq(principal), any(Map.class),
+            any(VirtConsumerMap.class), eq(true), anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void unchangedHostsSkipped() throws JobExecutionException {
+        when(ownerCurator.lookupByKey(eq("joe"))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
+
+        execute(twoHosts("guestId_1_888"), true, null);
+        execute(twoHosts("guestId_2_888"), true, null);
+
+        ArgumentCaptor<Map> incoming = ArgumentCaptor.forClass(Map.class);
+        verify(hypervisorCheckInUtil, times(2)).checkIn(eq(owner), eq(principal),
+            incoming.capture(), any(VirtConsumerMap.class), eq(true), anyString());
+        assertEquals(2, incoming.getAllValues().get(0).size());
+        assertEquals(1, incoming.getAllValues().get(1).size());
+        assertTrue(incoming.getAllValues().get(1).containsKey("uuid_888"));
+        assertEquals(1, reportCache.getSkippedHosts());
+    }
+
+    @Test
+    public void failedHostsNotSkipped() throws JobExecutionException {
+        when(ownerCurator.lookupByKey(eq("joe"))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
+
+        execute(hypervisorJson, false, null);
+        execute(hypervisorJson, false, null);
+
+        verify(hypervisorCheckInUtil, times(2)).checkIn(eq(owner), eq(principal), any(Map.class),
+            any(VirtConsumerMap.class), eq(false), anyString());
+        assertEquals(0, reportCache.getSkippedHosts());
+    }
+
+    @Test
+    public void failedCheckInNotSkipped() throws JobExecutionException {
+        when(ownerCurator.lookupByKey(eq("joe"))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(eq(owner), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
+        when(hypervisorCheckInUtil.checkIn(any(Owner.class), any(Principal.class), any(Map.class),
+            any(VirtConsumerMap.class), anyBoolean(), anyString()))
+            .thenThrow(new RuntimeException("commit failed"))
+            .thenAnswer(new CheckInAnswer());
+
+        try {
+            execute(hypervisorJson, true, "reporter");
+            fail("Expected the failed check-in to fail the job");
+        }
+        catch (JobExecutionException e) {
+            // expected
+        }
+        execute(hypervisorJson, true, "reporter");
+
+        verify(hypervisorCheckInUtil, times(2)).checkIn(eq(owner), eq(principal), any(Map.class),
+            any(VirtConsumerMap.class), eq(true), eq("reporter"));
+        assertEquals(0, reportCache.getSkippedReports());
+        assertEquals(0, reportCache.getSkippedHosts());
+    }
+
+    private void execute(String json, boolean create, String reporterId)
+        throws JobExecutionException {
+        JobDetail detail = HypervisorUpdateJob.forOwner(owner, json, create, principal, reporterId);
+        JobExecutionContext ctx = mock(JobExecutionContext.class);
+        when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
+
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
+        job.execute(ctx);
+    }
+
+    private String twoHosts(String guestId) {
+        return "{\"hypervisors\":" +
+            "[{" +
+            "\"name\" : \"hypervisor_999\"," +
+            "\"hypervisorId\" : {\"hypervisorId\":\"uuid_999\"}," +
+            "\"guestIds\" : [{\"guestId\" : \"guestId_1_999\"}]" +
+            "},{" +
+            "\"name\" : \"hypervisor_888\"," +
+            "\"hypervisorId\" : {\"hypervisorId\":\"uuid_888\"}," +
+            "\"guestIds\" : [{\"guestId\" : \"" + guestId + "\"}]" +
+            "}]}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Consumer> verifyCheckIn(boolean create, String reporterId) {
+        ArgumentCaptor<Map> incoming = ArgumentCaptor.forClass(Map.class);
+        verify(hypervisorCheckInUtil).checkIn(eq(owner), eq(principal), incoming.capture(),
+            any(VirtConsumerMap.class), eq(create), eq(reporterId));
+        return incoming.getValue();
     }
 
     /*
@@ -201,7 +319,8 @@ public class HypervisorUpdateJobTest {
         JobDetail detail = HypervisorUpdateJob.forOwner(owner, hypervisorJson, true, principal, null);
         JobStatus preExistingJobStatus = new JobStatus();
         preExistingJobStatus.setState(JobState.WAITING);
-        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator, consumerResource);
+        HypervisorUpdateJob job = new HypervisorUpdateJob(ownerCurator, consumerCurator,
+            hypervisorCheckInUtil, reportCache);
         JobStatus newlyScheduledJobStatus = new JobStatus();
 
         JobCurator jobCurator = mock(JobCurator.class);
@@ -230,4 +349,28 @@ public class HypervisorUpdateJobTest {
                 .thenReturn(1L);
         assertFalse(HypervisorUpdateJob.isSchedulable(jobCurator, newJob));
     }
+
+    /**
+     * Updates the hosts with a consumer and creates the others when asked to, the
+     * way the check-in would.
+     */
+    private static class CheckInAnswer implements Answer<HypervisorUpdateResult> {
+        @SuppressWarnings("unchecked")
+        @Override
+        public HypervisorUpdateResult answer(InvocationOnMock invocation) {
+            Object[] args = invocation.getArguments();
+            Map<String, Consumer> incoming = (Map<String, Consumer>) args[2];
+            VirtConsumerMap hostConsumers = (VirtConsumerMap) args[3];
+            HypervisorUpdateResult result = new HypervisorUpdateResult();
+            for (Map.Entry<String, Consumer> entry : incoming.entrySet()) {
+                if (hostConsumers.get(entry.getKey()) != null) {
+                    result.updated(hostConsumers.get(entry.getKey()));
+                }
+                else if ((Boolean) args[4]) {
+                    result.created(entry.getValue());
+                }
+            }
+            return result;
+        }
+    }
 }
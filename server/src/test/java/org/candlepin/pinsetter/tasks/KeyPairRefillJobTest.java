@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.KeyPairCurator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.quartz.JobExecutionContext;
+
+/**
+ * KeyPairRefillJobTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class KeyPairRefillJobTest {
+
+    @Mock private KeyPairCurator keyPairCurator;
+    @Mock private Configuration config;
+    @Mock private JobExecutionContext ctx;
+    private KeyPairRefillJob job;
+
+    @Before
+    public void init() {
+        job = new KeyPairRefillJob(keyPairCurator, config);
+        when(config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE)).thenReturn(100);
+        when(config.getInt(ConfigProperties.KEYPAIR_POOL_LOW_WATERMARK)).thenReturn(20);
+    }
+
+    @Test
+    public void refillsToPoolSize() throws Exception {
+        when(keyPairCurator.getSpareCount()).thenReturn(15);
+        job.execute(ctx);
+
+        verify(keyPairCurator).createSpareKeyPairs(85);
+        verify(ctx).setResult("Generated 85 consumer key pairs, 15 were left of 100");
+    }
+
+    @Test
+    public void fullPoolNotRefilled() throws Exception {
+        when(keyPairCurator.getSpareCount()).thenReturn(120);
+        job.execute(ctx);
+
+        verify(keyPairCurator).createSpareKeyPairs(0);
+    }
+
+    @Test
+    public void nothingGeneratedWhenPoolDisabled() throws Exception {
+        when(config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE)).thenReturn(0);
+        job.execute(ctx);
+
+        verify(keyPairCurator, never()).getSpareCount();
+        verify(keyPairCurator, never()).createSpareKeyPairs(anyInt());
+    }
+}
@@ -14,14 +14,17 @@
  */
 package org.candlepin.pinsetter.tasks;
 
-import static org.mockito.Matchers.eq;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.RegenerationProgress;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
@@ -62,6 +65,33 @@ public class RegenEntitlementCertsJobTest {
         recj.execute(jec);
 
         // verification
-        verify(pm).regenerateCertificatesOf(eq(owner), eq(prodId), eq(lazyRegen));
+        verify(pm).regenerateCertificatesOf(eq(owner), eq(prodId), eq(lazyRegen),
+            any(RegenerationProgress.class));
+    }
+
+    @Test
+    public void reportsProgressAsResult() throws Exception {
+        CandlepinPoolManager pm = mock(CandlepinPoolManager.class);
+        JobExecutionContext jec = mock(JobExecutionContext.class);
+        OwnerCurator oc = mock(OwnerCurator.class);
+        JobDetail detail = mock(JobDetail.class);
+        JobDataMap jdm = mock(JobDataMap.class);
+
+        when(oc.listAll()).thenReturn(Arrays.asList(new Owner("o1"), new Owner("o2")));
+        when(jdm.getString(eq(RegenProductEntitlementCertsJob.PROD_ID))).thenReturn("prod");
+        when(jdm.getBoolean(eq(RegenProductEntitlementCertsJob.LAZY_REGEN))).thenReturn(false);
+        when(detail.getJobDataMap()).thenReturn(jdm);
+        when(jec.getJobDetail()).thenReturn(detail);
+
+        RegenProductEntitlementCertsJob recj = new RegenProductEntitlementCertsJob(pm, oc);
+        recj.execute(jec);
+
+        // Both owners count towards the same progress:
+        ArgumentCaptor<RegenerationProgress> progress =
+            ArgumentCaptor.forClass(RegenerationProgress.class);
+        verify(pm, times(2)).regenerateCertificatesOf(any(Owner.class), eq("prod"), eq(false),
+            progress.capture());
+        assertSame(progress.getAllValues().get(0), progress.getAllValues().get(1));
+        verify(jec).setResult(eq(progress.getValue().toString()));
     }
 }
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Date;
+
+/**
+ * JsRunnerProviderTest
+ */
+public class JsRunnerProviderTest {
+
+    private static final String RULES =
+        "// Version: 5.1\n" +
+        "function test_name_space() { return Test; }\n" +
+        "var Test = {\n" +
+        "    leftover: function() {\n" +
+        "        return typeof(value) == 'undefined' ? 'clean' : value;\n" +
+        "    }\n" +
+        "};\n";
+
+    @Mock private RulesCurator rulesCurator;
+    private Date updated;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        updated = new Date();
+        when(rulesCurator.getUpdated()).thenReturn(updated);
+        when(rulesCurator.getRules()).thenReturn(new Rules(RULES));
+    }
+
+    @Test
+    public void reusesScopesOnSameThread() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator, 0, 2);
+        JsRunner runner = provider.get();
+        runner.init("test_name_space");
+
+        runner.invokeRule("leftover");
+        runner.invokeRule("leftover");
+
+        runner = provider.get();
+        runner.init("test_name_space");
+        runner.invokeRule("leftover");
+
+        assertEquals(1, provider.getScopePoolMisses());
+        assertEquals(2, provider.getScopePoolHits());
+    }
+
+    @Test
+    public void reusedScopeIsCleared() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator, 0, 2);
+        JsRunner runner = provider.get();
+        runner.init("test_name_space");
+
+        ArgumentJsContext args = new ArgumentJsContext();
+        args.put("value", "dirty");
+        assertEquals("dirty", runner.invokeRule("leftover", args));
+        assertEquals("clean", runner.invokeRule("leftover"));
+    }
+
+    @Test
+    public void skipsDatabaseCheckWithinFreshnessInterval() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator, 60000, 2);
+        // Once for the initial compile:
+        verify(rulesCurator, times(1)).getUpdated();
+
+        provider.get();
+        provider.get();
+        verify(rulesCurator, times(1)).getUpdated();
+        assertEquals(1, provider.getRecompileCount());
+    }
+
+    @Test
+    public void forcedRecompileDropsPooledScopes() {
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCurator, 60000, 2);
+        JsRunner runner = provider.get();
+        runner.init("test_name_space");
+        runner.invokeRule("leftover");
+
+        provider.compileRules(true);
+        runner = provider.get();
+        runner.init("test_name_space");
+        runner.invokeRule("leftover");
+
+        assertEquals(2, provider.getRecompileCount());
+        assertEquals(2, provider.getScopePoolMisses());
+        assertEquals(0, provider.getScopePoolHits());
+    }
+}
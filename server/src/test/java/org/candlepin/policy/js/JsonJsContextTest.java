@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JsonJsContextTest
+ */
+public class JsonJsContextTest {
+    private static final String NATIVE_RULES =
+        "// Version: 5.1\n" +
+        "function test_name_space() { return Test; }\n" +
+        "function get_context() {\n" +
+        "    if (typeof(native_context) != 'undefined') { return native_context; }\n" +
+        "    return JSON.parse(json_context);\n" +
+        "}\n" +
+        "var Test = {\n" +
+        "    received: function() {\n" +
+        "        return typeof(json_context) + ':' + typeof(native_context);\n" +
+        "    },\n" +
+        "    consumer_name: function() {\n" +
+        "        return get_context().consumer.name;\n" +
+        "    }\n" +
+        "};\n";
+
+    private static final String OLD_RULES =
+        "// Version: 5.1\n" +
+        "function test_name_space() { return Test; }\n" +
+        "var Test = {\n" +
+        "    received: function() {\n" +
+        "        return typeof(json_context) + ':' + typeof(native_context);\n" +
+        "    },\n" +
+        "    consumer_name: function() {\n" +
+        "        return JSON.parse(json_context).consumer.name;\n" +
+        "    }\n" +
+        "};\n";
+
+    @Mock private RulesCurator rulesCurator;
+    private RulesObjectMapper mapper;
+    private Map<String, Object> args;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(rulesCurator.getUpdated()).thenReturn(new Date());
+        mapper = RulesObjectMapper.instance();
+
+        Owner owner = new Owner("test-owner");
+        Consumer consumer = new Consumer("test-consumer", "user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumer.setFact("cpu.cpu_socket(s)", "4");
+        consumer.setFact("uname.machine", "x86_64");
+
+        List<Pool> pools = new ArrayList<Pool>();
+        for (int i = 0; i < 50; i++) {
+            Product product = TestUtil.createProduct("product" + i);
+            product.setAttribute("sockets", "2");
+            product.setAttribute("arch", "x86_64,ppc64");
+            product.setAttribute("multi-entitlement", "yes");
+            Set<Product> provided = new HashSet<Product>();
+            provided.add(TestUtil.createProduct("provided" + i));
+            Pool pool = TestUtil.createPool(owner, product, provided, 10 + i);
+            pool.setId("pool" + i);
+            pool.setAttribute("virt_limit", "4");
+            pools.add(pool);
+        }
+
+        Map<String, Integer> quantities = new HashMap<String, Integer>();
+        quantities.put("0", 1);
+        quantities.put("pool1", 3000);
+
+        args = new HashMap<String, Object>();
+        args.put("consumer", consumer);
+        args.put("pools", pools);
+        args.put("quantities", quantities);
+        args.put("ratio", 1.1f);
+        args.put("big", 3000000000L);
+        args.put("nothing", null);
+    }
+
+    @Test
+    public void nativeContextMatchesParsedJson() {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            scope.put("native_context", scope, mapper.toScriptable(args, cx, scope));
+            scope.put("json_context", scope, mapper.toJsonString(args));
+
+            assertEquals(Boolean.TRUE, cx.evaluateString(scope,
+                "JSON.stringify(native_context) == JSON.stringify(JSON.parse(json_context))",
+                "test", 1, null));
+            assertEquals(Boolean.TRUE, cx.evaluateString(scope,
+                "native_context.quantities[0] === 1 && native_context.ratio == 1.1 && " +
+                "native_context.big == 3000000000 && native_context.nothing === null && " +
+                "native_context.pools.length == 50",
+                "test", 1, null));
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void rulesReadingContextNativelyGetNativeObjects() {
+        when(rulesCurator.getRules()).thenReturn(new Rules(NATIVE_RULES));
+        JsRunner runner = new JsRunnerProvider(rulesCurator, 0, 2).get();
+        runner.init("test_name_space");
+
+        JsonJsContext context = new JsonJsContext(mapper);
+        context.put("consumer", args.get("consumer"));
+        assertEquals("undefined:object", runner.invokeRule("received", context));
+        assertEquals("test-consumer", runner.invokeRule("consumer_name", context));
+    }
+
+    @Test
+    public void olderRulesGetJsonString() {
+        when(rulesCurator.getRules()).thenReturn(new Rules(OLD_RULES));
+        JsRunner runner = new JsRunnerProvider(rulesCurator, 0, 2).get();
+        runner.init("test_name_space");
+
+        JsonJsContext context = new JsonJsContext(mapper);
+        context.put("consumer", args.get("consumer"));
+        assertEquals("string:undefined", runner.invokeRule("received", context));
+        assertEquals("test-consumer", runner.invokeRule("consumer_name", context));
+    }
+
+    @Test
+    public void nativeContextSkipsJsonRoundTrip() {
+        when(rulesCurator.getRules()).thenReturn(new Rules(NATIVE_RULES));
+        JsRunner runner = new JsRunnerProvider(rulesCurator, 0, 2).get();
+        runner.init("test_name_space");
+
+        RulesObjectMapper spyMapper = spy(mapper);
+        JsonJsContext context = new JsonJsContext(spyMapper);
+        for (Map.Entry<String, Object> arg : args.entrySet()) {
+            context.put(arg.getKey(), arg.getValue());
+        }
+        assertEquals("test-consumer", runner.invokeRule("consumer_name", context));
+
+        verify(spyMapper).toScriptable(any(Map.class), any(Context.class), any(Scriptable.class));
+        verify(spyMapper, never()).toJsonString(any(Map.class));
+    }
+
+    @Test
+    public void olderRulesSkipNativeConversion() {
+        when(rulesCurator.getRules()).thenReturn(new Rules(OLD_RULES));
+        JsRunner runner = new JsRunnerProvider(rulesCurator, 0, 2).get();
+        runner.init("test_name_space");
+
+        RulesObjectMapper spyMapper = spy(mapper);
+        JsonJsContext context = new JsonJsContext(spyMapper);
+        for (Map.Entry<String, Object> arg : args.entrySet()) {
+            context.put(arg.getKey(), arg.getValue());
+        }
+        assertEquals("test-consumer", runner.invokeRule("consumer_name", context));
+
+        verify(spyMapper).toJsonString(any(Map.class));
+        verify(spyMapper, never()).toScriptable(any(Map.class), any(Context.class),
+            any(Scriptable.class));
+    }
+}
@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerInstalledProduct;
@@ -97,7 +98,8 @@ public class ComplianceRulesTest {
         provider = new JsRunnerProvider(rulesCuratorMock);
         compliance = new ComplianceRules(provider.get(),
             entCurator, new StatusReasonMessageGenerator(i18n), eventSink,
-            consumerCurator);
+            consumerCurator, new CandlepinCommonTestConfig(),
+            new ComplianceStatusCache(new CandlepinCommonTestConfig(), provider));
         owner = new Owner("test");
         activeGuestAttrs = new HashMap<String, String>();
         activeGuestAttrs.put("virtWhoType", "libvirt");
@@ -113,7 +115,8 @@ public class ComplianceRulesTest {
         JsRunner mockRunner = mock(JsRunner.class);
         compliance = new ComplianceRules(mockRunner,
             entCurator, new StatusReasonMessageGenerator(i18n), eventSink,
-            consumerCurator);
+            consumerCurator, new CandlepinCommonTestConfig(),
+            new ComplianceStatusCache(new CandlepinCommonTestConfig(), provider));
         when(mockRunner.runJsFunction(any(Class.class), eq("get_status"),
             any(JsContext.class))).thenReturn("{\"unknown\": \"thing\"}");
         Consumer c = mockConsumerWithTwoProductsAndNoEntitlements();
@@ -262,6 +265,29 @@ public class ComplianceRulesTest {
         assertEquals(0, status.getPartiallyCompliantProducts().size());
     }
 
+    @Test
+    public void batchStatusesUpdateChangedConsumersTogether() {
+        Consumer c1 = mockConsumerWithTwoProductsAndNoEntitlements();
+        c1.setUuid("c1");
+        Consumer c2 = mockFullyEntitledConsumer();
+        c2.setUuid("c2");
+        List<Consumer> consumers = Arrays.asList(c1, c2);
+
+        Map<String, ComplianceStatus> statuses = compliance.getStatuses(consumers);
+        assertEquals(Arrays.asList("c1", "c2"), new LinkedList<String>(statuses.keySet()));
+        assertEquals("invalid", statuses.get("c1").getStatus());
+        assertEquals("valid", statuses.get("c2").getStatus());
+        assertEquals("valid", c2.getEntitlementStatus());
+        verify(consumerCurator).loadComplianceData(eq(consumers));
+        verify(consumerCurator).bulkUpdate(eq(new HashSet<Consumer>(consumers)));
+        verify(consumerCurator, never()).update(any(Consumer.class));
+
+        // Nothing changed, nothing to update:
+        reset(consumerCurator);
+        compliance.getStatuses(consumers);
+        verify(consumerCurator, never()).bulkUpdate(any(Set.class));
+    }
+
     @Test
     public void entitledProducts() {
         Consumer c = mockConsumer(PRODUCT_1, PRODUCT_2);
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.util.Util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.io.InputStream;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * ComplianceStatusCacheTest
+ */
+public class ComplianceStatusCacheTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private EntitlementCurator entCurator;
+    @Mock private RulesCurator rulesCuratorMock;
+    @Mock private EventSink eventSink;
+
+    private JsRunnerProvider provider;
+    private ComplianceStatusCache cache;
+    private ComplianceRules compliance;
+    private Owner owner;
+    private Product product;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        InputStream is = this.getClass().getResourceAsStream(
+            RulesCurator.DEFAULT_RULES_FILE);
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date());
+        when(rulesCuratorMock.getRules()).thenReturn(new Rules(Util.readFile(is)));
+        provider = new JsRunnerProvider(rulesCuratorMock);
+
+        I18n i18n = I18nFactory.getI18n(getClass(), "org.candlepin.i18n.Messages",
+            new Locale("en_US"), I18nFactory.FALLBACK);
+        cache = new ComplianceStatusCache(2, provider);
+        compliance = new ComplianceRules(provider.get(), entCurator,
+            new StatusReasonMessageGenerator(i18n), eventSink, consumerCurator,
+            new CandlepinCommonTestConfig(), cache);
+
+        owner = new Owner("test");
+        product = new Product("p1", "product1", owner);
+    }
+
+    @Test
+    public void unchangedConsumerIsServedFromCache() {
+        Consumer c = consumer("c1");
+        addEntitlement(c, "ent1", new Date(System.currentTimeMillis() + DAY));
+
+        ComplianceStatus first = compliance.getStatus(c);
+        ComplianceStatus second = compliance.getStatus(c);
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(ComplianceStatus.GREEN, second.getStatus());
+        assertEquals(first.getCompliantProducts().keySet(),
+            second.getCompliantProducts().keySet());
+        // Entitlements in a cached status are the consumer's own:
+        assertSame(c.getEntitlements().iterator().next(),
+            second.getCompliantProducts().get("p1").iterator().next());
+        // The consumer has already been told about this status:
+        verify(eventSink, times(1)).emitCompliance(eq(c), anySetOf(Entitlement.class),
+            any(ComplianceStatus.class));
+    }
+
+    @Test
+    public void changedFactsMissCache() {
+        Consumer c = consumer("c1");
+        compliance.getStatus(c);
+        c.setFact("cpu.cpu_socket(s)", "4");
+        compliance.getStatus(c);
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void newEntitlementMissesCache() {
+        Consumer c = consumer("c1");
+        assertEquals(ComplianceStatus.RED, compliance.getStatus(c).getStatus());
+
+        addEntitlement(c, "ent1", new Date(System.currentTimeMillis() + DAY));
+        assertEquals(ComplianceStatus.GREEN, compliance.getStatus(c).getStatus());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void statusExpiresWithEntitlement() {
+        Consumer c = consumer("c1");
+        Date now = new Date();
+        Entitlement ent = addEntitlement(c, "ent1", new Date(now.getTime() + DAY));
+        ComplianceStatus status = new ComplianceStatus(now);
+        status.addCompliantProduct("p1", ent);
+
+        String hash = cache.getStateHash(c);
+        cache.put(c, hash, status, false);
+
+        assertNotNull(cache.get(c, hash, new Date(now.getTime() + DAY), false));
+        assertNull(cache.get(c, hash, new Date(now.getTime() + DAY + 1), false));
+    }
+
+    @Test
+    public void compliantUntilOnlyServedWhenCalculated() {
+        Consumer c = consumer("c1");
+        Date now = new Date();
+        String hash = cache.getStateHash(c);
+        cache.put(c, hash, new ComplianceStatus(now), false);
+
+        assertNotNull(cache.get(c, hash, now, false));
+        assertNull(cache.get(c, hash, now, true));
+    }
+
+    @Test
+    public void recompiledRulesClearCache() {
+        Consumer c = consumer("c1");
+        compliance.getStatus(c);
+        assertEquals(1, cache.size());
+
+        provider.compileRules(true);
+        compliance.getStatus(c);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void invalidateDropsStatus() {
+        Consumer c = consumer("c1");
+        compliance.getStatus(c);
+        compliance.invalidateStatus(c);
+        compliance.getStatus(c);
+
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        compliance.getStatus(consumer("c1"));
+        compliance.getStatus(consumer("c2"));
+        compliance.getStatus(consumer("c3"));
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void disabledCacheIsBypassed() {
+        cache = new ComplianceStatusCache(0, provider);
+        compliance = new ComplianceRules(provider.get(), entCurator,
+            mock(StatusReasonMessageGenerator.class), eventSink, consumerCurator,
+            new CandlepinCommonTestConfig(), cache);
+
+        Consumer c = consumer("c1");
+        compliance.getStatus(c);
+        compliance.getStatus(c);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    private Consumer consumer(String uuid) {
+        Consumer c = new Consumer();
+        c.setUuid(uuid);
+        c.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
+        c.addInstalledProduct(new ConsumerInstalledProduct(product.getId(),
+            product.getName()));
+        c.setFact("cpu.cpu_socket(s)", "2");
+        return c;
+    }
+
+    private Entitlement addEntitlement(Consumer c, String id, Date end) {
+        Pool pool = new Pool(owner, product, new HashSet<Product>(), 1000L,
+            new Date(System.currentTimeMillis() - DAY), end, "1000", "1000", "1000");
+        pool.setId("pool_" + id);
+
+        Entitlement ent = new Entitlement(pool, c, 1);
+        ent.setId(id);
+        Set<Entitlement> ents = new HashSet<Entitlement>(c.getEntitlements());
+        ents.add(ent);
+        c.setEntitlements(ents);
+        return ent;
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.test.TestUtil;
+import org.candlepin.util.Util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * NativeComplianceCalculatorTest
+ *
+ * Runs the same consumers through the javascript rules and the native engine and
+ * expects identical results.
+ */
+public class NativeComplianceCalculatorTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final int SCENARIOS = 400;
+
+    private static final String[] SOCKETS = {null, "", "1", "2", "4", "8", "abc"};
+    private static final String[] CORES = {null, "1", "2", "6", "12"};
+    private static final String[] MEMORY = {null, "1048576", "3969780", "8388608", "16777216"};
+    private static final String[] ARCHES = {null, "", "x86_64", "i686", "ppc64", "s390x"};
+    private static final String[] GUEST = {null, "true", "false", "TRUE"};
+    private static final String[] BAND = {null, "1", "100", "256"};
+
+    private static final String[] QUANTITY_ATTRS = {"sockets", "cores", "ram", "vcpu",
+        "storage_band"};
+    private static final String[] QUANTITY_VALUES = {"0", "1", "2", "4", "16", "x"};
+    private static final String[] PRODUCT_ARCHES = {"x86_64", "x86", "ALL", "ppc64,s390x",
+        "PPC64,x86_64", "ia64"};
+    private static final String[] STACK_IDS = {"stack-1", "stack-2", "0"};
+    private static final String[] GUEST_LIMITS = {"-1", "0", "2", "4"};
+
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private EntitlementCurator entCurator;
+    @Mock private RulesCurator rulesCuratorMock;
+    @Mock private EventSink eventSink;
+
+    private ComplianceRules jsCompliance;
+    private ComplianceRules nativeCompliance;
+    private Owner owner;
+    private Date onDate;
+    private Random random;
+    private int entCount;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        I18n i18n = I18nFactory.getI18n(getClass(), "org.candlepin.i18n.Messages",
+            new Locale("en_US"), I18nFactory.FALLBACK);
+        InputStream is = this.getClass().getResourceAsStream(
+            RulesCurator.DEFAULT_RULES_FILE);
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date());
+        when(rulesCuratorMock.getRules()).thenReturn(new Rules(Util.readFile(is)));
+        JsRunnerProvider provider = new JsRunnerProvider(rulesCuratorMock);
+
+        jsCompliance = new ComplianceRules(provider.get(), entCurator,
+            new StatusReasonMessageGenerator(i18n), eventSink, consumerCurator,
+            new CandlepinCommonTestConfig(), new ComplianceStatusCache(0, provider));
+
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.COMPLIANCE_ENGINE,
+            ConfigProperties.COMPLIANCE_ENGINE_NATIVE);
+        nativeCompliance = new ComplianceRules(provider.get(), entCurator,
+            new StatusReasonMessageGenerator(i18n), eventSink, consumerCurator, config,
+            new ComplianceStatusCache(0, provider));
+
+        owner = new Owner("test");
+        onDate = TestUtil.createDate(2014, 6, 1);
+        random = new Random(20141018L);
+    }
+
+    @Test
+    public void noEntitlements() {
+        Consumer c = consumer();
+        c.addInstalledProduct(new ConsumerInstalledProduct("p1", "p1"));
+        assertSameStatus(c);
+    }
+
+    @Test
+    public void partialStackAndHostRestrictedGuest() {
+        Consumer c = consumer();
+        c.setFact("virt.is_guest", "true");
+        c.setFact("cpu.cpu_socket(s)", "4");
+        c.setFact("cpu.core(s)_per_socket", "4");
+        c.addInstalledProduct(new ConsumerInstalledProduct("p1", "p1"));
+        c.addInstalledProduct(new ConsumerInstalledProduct("p2", "p2"));
+
+        Entitlement stacked = entitlement(c, "p1", 1, onDate, onDate);
+        stacked.getPool().getProduct().setAttribute("stacking_id", "stack-1");
+        stacked.getPool().getProduct().setAttribute("vcpu", "2");
+        Entitlement restricted = entitlement(c, "p2", 1, onDate, onDate);
+        restricted.getPool().setAttribute("requires_host", "SOMEUUID");
+        restricted.getPool().getProduct().setAttribute("vcpu", "1");
+        restricted.getPool().getProduct().setAttribute("ram", "1");
+        c.setEntitlements(new HashSet<Entitlement>(
+            Arrays.asList(stacked, restricted)));
+
+        ComplianceStatus status = assertSameStatus(c);
+        assertEquals(ComplianceStatus.YELLOW, status.getStatus());
+        assertTrue(status.getPartialStacks().containsKey("stack-1"));
+    }
+
+    @Test
+    public void compliantUntilFollowsExpiringEntitlements() {
+        Consumer c = consumer();
+        c.addInstalledProduct(new ConsumerInstalledProduct("p1", "p1"));
+        c.addInstalledProduct(new ConsumerInstalledProduct("p2", "p2"));
+        Set<Entitlement> ents = new HashSet<Entitlement>();
+        ents.add(entitlement(c, "p1", 1, new Date(onDate.getTime() - DAY),
+            new Date(onDate.getTime() + 10 * DAY)));
+        ents.add(entitlement(c, "p1", 1, new Date(onDate.getTime() + 5 * DAY),
+            new Date(onDate.getTime() + 30 * DAY)));
+        ents.add(entitlement(c, "p2", 1, new Date(onDate.getTime() - DAY),
+            new Date(onDate.getTime() + 20 * DAY)));
+        c.setEntitlements(ents);
+
+        ComplianceStatus status = assertSameStatus(c);
+        assertEquals(new Date(onDate.getTime() + 20 * DAY + 1000),
+            status.getCompliantUntil());
+    }
+
+    @Test
+    public void randomizedConsumersMatchRules() {
+        for (int i = 0; i < SCENARIOS; i++) {
+            Consumer c = randomConsumer();
+            assertSameStatus(c);
+
+            List<Entitlement> ents = new ArrayList<Entitlement>(c.getEntitlements());
+            when(entCurator.listByConsumerAndDate(eq(c), any(Date.class))).thenReturn(ents);
+            for (String stackId : STACK_IDS) {
+                assertEquals(describe(c),
+                    jsCompliance.isStackCompliant(c, stackId, ents),
+                    nativeCompliance.isStackCompliant(c, stackId, ents));
+            }
+            for (Entitlement ent : ents) {
+                assertEquals(describe(c),
+                    jsCompliance.isEntitlementCompliant(c, ent, onDate),
+                    nativeCompliance.isEntitlementCompliant(c, ent, onDate));
+            }
+        }
+    }
+
+    private ComplianceStatus assertSameStatus(Consumer c) {
+        ComplianceStatus expected = jsCompliance.getStatus(c, onDate, true, false);
+        ComplianceStatus actual = nativeCompliance.getStatus(c, onDate, true, false);
+
+        String message = describe(c);
+        assertEquals(message, expected.getStatus(), actual.getStatus());
+        assertEquals(message, expected.getNonCompliantProducts(),
+            actual.getNonCompliantProducts());
+        assertEquals(message, entitlementIds(expected.getCompliantProducts()),
+            entitlementIds(actual.getCompliantProducts()));
+        assertEquals(message, entitlementIds(expected.getPartiallyCompliantProducts()),
+            entitlementIds(actual.getPartiallyCompliantProducts()));
+        assertEquals(message, entitlementIds(expected.getPartialStacks()),
+            entitlementIds(actual.getPartialStacks()));
+        assertEquals(message, reasons(expected), reasons(actual));
+        assertEquals(message, expected.getCompliantUntil(), actual.getCompliantUntil());
+        return actual;
+    }
+
+    private Consumer consumer() {
+        Consumer c = new Consumer();
+        c.setUuid("consumer-" + random.nextInt(Integer.MAX_VALUE));
+        c.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
+        return c;
+    }
+
+    private Consumer randomConsumer() {
+        Consumer c = consumer();
+        if (random.nextInt(10) == 0) {
+            c.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.HYPERVISOR));
+        }
+        setFact(c, "cpu.cpu_socket(s)", pick(SOCKETS));
+        setFact(c, "cpu.core(s)_per_socket", pick(CORES));
+        setFact(c, "memory.memtotal", pick(MEMORY));
+        setFact(c, "uname.machine", pick(ARCHES));
+        setFact(c, "virt.is_guest", pick(GUEST));
+        setFact(c, "band.storage.usage", pick(BAND));
+
+        int guests = random.nextInt(4);
+        for (int i = 0; i < guests; i++) {
+            Map<String, String> attrs = new HashMap<String, String>();
+            attrs.put("virtWhoType", random.nextBoolean() ? "libvirt" : "esx");
+            attrs.put("active", random.nextBoolean() ? "1" : "0");
+            c.addGuestId(new GuestId("guest-" + i, c, attrs));
+        }
+
+        int installed = random.nextInt(4);
+        for (int i = 0; i < installed; i++) {
+            String pid = "p" + random.nextInt(5);
+            c.addInstalledProduct(new ConsumerInstalledProduct(pid, pid));
+        }
+
+        Set<Entitlement> ents = new HashSet<Entitlement>();
+        int count = random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            ents.add(randomEntitlement(c));
+        }
+        c.setEntitlements(ents);
+        return c;
+    }
+
+    private Entitlement randomEntitlement(Consumer c) {
+        Date start = new Date(onDate.getTime() + (random.nextInt(40) - 30) * DAY);
+        Date end = new Date(start.getTime() + (random.nextInt(60) + 1) * DAY);
+        Entitlement ent = entitlement(c, "p" + random.nextInt(5), random.nextInt(9), start, end);
+
+        Pool pool = ent.getPool();
+        Product product = pool.getProduct();
+        for (String attr : QUANTITY_ATTRS) {
+            if (random.nextInt(3) == 0) {
+                product.setAttribute(attr, pick(QUANTITY_VALUES));
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            product.setAttribute("arch", pick(PRODUCT_ARCHES));
+        }
+        if (random.nextInt(2) == 0) {
+            product.setAttribute("stacking_id", pick(STACK_IDS));
+        }
+        if (random.nextInt(4) == 0) {
+            product.setAttribute("guest_limit", pick(GUEST_LIMITS));
+        }
+        if (random.nextInt(4) == 0) {
+            product.setAttribute("instance_multiplier", random.nextBoolean() ? "2" : "3");
+        }
+        if (random.nextInt(5) == 0) {
+            pool.setAttribute("sockets", pick(QUANTITY_VALUES));
+        }
+        if (random.nextInt(5) == 0) {
+            pool.setAttribute("requires_host", "host-uuid");
+        }
+        if (random.nextInt(8) == 0) {
+            pool.setAttribute("unmapped_guests_only", "true");
+        }
+        return ent;
+    }
+
+    private Entitlement entitlement(Consumer c, String productId, int quantity, Date start,
+        Date end) {
+        Product product = new Product(productId + "-sku-" + entCount, "product", owner);
+        Set<Product> provided = new HashSet<Product>();
+        provided.add(new Product(productId, productId, owner));
+        if (random.nextInt(3) == 0) {
+            String other = "p" + random.nextInt(5);
+            provided.add(new Product(other, other, owner));
+        }
+
+        Pool pool = new Pool(owner, product, provided, 1000L, start, end,
+            "1000", "1000", "1000");
+        pool.setId("pool_" + entCount);
+
+        Entitlement ent = new Entitlement(pool, c, quantity);
+        ent.setId("ent_" + entCount++);
+        return ent;
+    }
+
+    private void setFact(Consumer c, String fact, String value) {
+        if (value != null) {
+            c.setFact(fact, value);
+        }
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private Map<String, Set<String>> entitlementIds(Map<String, Set<Entitlement>> map) {
+        Map<String, Set<String>> ids = new TreeMap<String, Set<String>>();
+        for (Map.Entry<String, Set<Entitlement>> entry : map.entrySet()) {
+            Set<String> entIds = new TreeSet<String>();
+            for (Entitlement ent : entry.getValue()) {
+                entIds.add(ent.getId());
+            }
+            ids.put(entry.getKey(), entIds);
+        }
+        return ids;
+    }
+
+    private List<String> reasons(ComplianceStatus status) {
+        List<String> reasons = new ArrayList<String>();
+        for (ComplianceReason reason : status.getReasons()) {
+            reasons.add(reason.getKey() + " " +
+                new TreeMap<String, String>(reason.getAttributes()) + " " + reason.getMessage());
+        }
+        Collections.sort(reasons);
+        return reasons;
+    }
+
+    private String describe(Consumer c) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("facts=").append(c.getFacts());
+        builder.append(" installed=[");
+        if (c.getInstalledProducts() != null) {
+            for (ConsumerInstalledProduct cip : c.getInstalledProducts()) {
+                builder.append(cip.getProductId()).append(' ');
+            }
+        }
+        builder.append("]");
+        for (Entitlement ent : c.getEntitlements()) {
+            Pool pool = ent.getPool();
+            builder.append("\n  ").append(ent.getId()).append(" qty=").append(ent.getQuantity())
+                .append(" product=").append(pool.getProductId())
+                .append(" provided=").append(pool.getProvidedProductDtos().size())
+                .append(" pool=").append(pool.getAttributes())
+                .append(" product=").append(pool.getProductAttributes());
+        }
+        return builder.toString();
+    }
+}
@@ -26,7 +26,9 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.PoolAttribute;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductAttribute;
+import org.candlepin.policy.ValidationError;
 import org.candlepin.policy.ValidationResult;
+import org.candlepin.policy.ValidationWarning;
 import org.candlepin.policy.js.entitlement.Enforcer.CallerType;
 import org.candlepin.test.TestUtil;
 
@@ -36,6 +38,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class PreEntitlementRulesTest extends EntitlementRulesTestFixture {
 
@@ -837,6 +840,48 @@ public class PreEntitlementRulesTest extends EntitlementRulesTestFixture {
         assertTrue(filtered.contains(pool));
     }
 
+    @Test
+    public void batchedPreEntitlementMatchesSinglePools() {
+        Product product = new Product(productId, "A product for testing", owner);
+        product.addAttribute(new ProductAttribute("cores", "10"));
+        when(this.prodAdapter.getProductById(product.getOwner(), product.getId()))
+            .thenReturn(product);
+
+        consumer.setFacts(new HashMap<String, String>());
+        consumer.setFact("cpu.cpu_socket(s)", "2");
+        consumer.setFact("cpu.core(s)_per_socket", "10");
+
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(createPool(owner, product));
+        Pool exhausted = TestUtil.createPool(owner, product, 0);
+        exhausted.setId("fakeid" + TestUtil.randomInt());
+        pools.add(exhausted);
+        pools.add(setupArchTest("arch", "x86_64", "uname.machine", "i686"));
+
+        Map<String, ValidationResult> results = enforcer.preEntitlement(consumer, pools,
+            CallerType.BEST_POOLS);
+
+        assertEquals(pools.size(), results.size());
+        for (Pool pool : pools) {
+            ValidationResult single = enforcer.preEntitlement(consumer, pool, 1,
+                CallerType.BEST_POOLS);
+            ValidationResult batched = results.get(pool.getId());
+            assertEquals(messageKeys(single), messageKeys(batched));
+        }
+        assertTrue(results.get(exhausted.getId()).hasErrors());
+    }
+
+    private List<String> messageKeys(ValidationResult result) {
+        List<String> keys = new LinkedList<String>();
+        for (ValidationError error : result.getErrors()) {
+            keys.add("error:" + error.getResourceKey());
+        }
+        for (ValidationWarning warning : result.getWarnings()) {
+            keys.add("warning:" + warning.getResourceKey());
+        }
+        return keys;
+    }
+
     @Test
     public void devPoolConsumerMatches() {
         Pool pool = setupDevConsumerRestrictedPool(consumer);
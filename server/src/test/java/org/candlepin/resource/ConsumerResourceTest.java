@@ -87,6 +87,7 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -186,7 +187,7 @@ public class ConsumerResourceTest {
             null, mockedEntitlementCertServiceAdapter, null, null,
             new CandlepinCommonTestConfig(), null, null,
             mockedEntitlementCurator, mockedConsumerCurator, null, null, null,
-            mockedActivationKeyRules, null, null, null, null);
+            mockedActivationKeyRules, null, null, null, null, null);
 
         ConsumerResource consumerResource = new ConsumerResource(
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
@@ -541,9 +542,10 @@ public class ConsumerResourceTest {
         uuids.add("2");
         when(mockedConsumerCurator.findByUuids(eq(uuids))).thenReturn(consumers);
 
-        ComplianceStatus status = new ComplianceStatus();
-        when(mockedComplianceRules.getStatus(any(Consumer.class), any(Date.class)))
-            .thenReturn(status);
+        Map<String, ComplianceStatus> statuses = new HashMap<String, ComplianceStatus>();
+        statuses.put("1", new ComplianceStatus());
+        statuses.put("2", new ComplianceStatus());
+        when(mockedComplianceRules.getStatuses(eq(consumers))).thenReturn(statuses);
 
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
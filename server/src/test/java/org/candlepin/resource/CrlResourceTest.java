@@ -14,10 +14,12 @@
  */
 package org.candlepin.resource;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -28,6 +30,7 @@ import org.candlepin.controller.CrlGenerator;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.util.CrlFileUtil;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import java.io.File;
@@ -58,6 +61,30 @@ public class CrlResourceTest {
         verify(fileutil, atLeastOnce()).writeCRLFile(any(File.class), eq(crl));
     }
 
+    @Test
+    public void currentCrlServedWithoutPendingChanges() throws Exception {
+        CrlGenerator crlgen = mock(CrlGenerator.class);
+        CrlFileUtil fileutil = mock(CrlFileUtil.class);
+        File crlFile = new File("/tmp/test-crl.crl");
+        FileUtils.writeStringToFile(crlFile, "crl");
+        try {
+            when(fileutil.readCRLBytes(eq(crlFile))).thenReturn("crl".getBytes());
+
+            CrlResource res = new CrlResource(crlgen, fileutil, new ConfigForTesting(),
+                null);
+            assertEquals("crl", res.getCurrentCrl(null));
+
+            verify(fileutil, never()).syncCRLFile(any(File.class), any(CrlGenerator.class));
+
+            when(crlgen.hasPendingChanges()).thenReturn(true);
+            res.getCurrentCrl(null);
+            verify(fileutil).syncCRLFile(eq(crlFile), eq(crlgen));
+        }
+        finally {
+            crlFile.delete();
+        }
+    }
+
     private static class ConfigForTesting extends MapConfiguration {
         public ConfigForTesting() {
             super(new HashMap<String, String>() {
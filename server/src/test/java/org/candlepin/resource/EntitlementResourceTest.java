@@ -41,6 +41,9 @@ import org.candlepin.policy.js.entitlement.EntitlementRules;
 import org.candlepin.policy.js.entitlement.EntitlementRulesTranslator;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.test.TestUtil;
+
+import com.google.common.collect.Lists;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -237,7 +240,8 @@ public class EntitlementResourceTest {
         when(entitlementCurator.listAll(isA(EntitlementFilterBuilder.class), isA(PageRequest.class)))
                 .thenReturn(page);
 
-        List<Entitlement> result = entResource.listAllForConsumer(null, null, null, req);
+        List<Entitlement> result = Lists.newArrayList(
+            entResource.listAllForConsumer(null, null, null, req));
 
         assertEquals(1, result.size());
         assertEquals("getEntitlementList", result.get(0).getId());
@@ -265,7 +269,8 @@ public class EntitlementResourceTest {
                 entitlementCurator.listByConsumer(isA(Consumer.class), anyString(),
                         isA(EntitlementFilterBuilder.class), isA(PageRequest.class))).thenReturn(page);
 
-        List<Entitlement> result = entResource.listAllForConsumer(consumer.getUuid(), null, null, req);
+        List<Entitlement> result = Lists.newArrayList(
+            entResource.listAllForConsumer(consumer.getUuid(), null, null, req));
 
         assertEquals(1, result.size());
         assertEquals("getAllEntitlementsForConsumer", result.get(0).getId());
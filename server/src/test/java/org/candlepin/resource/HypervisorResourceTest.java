@@ -16,8 +16,13 @@ package org.candlepin.resource;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.candlepin.audit.Event;
 import org.candlepin.audit.Event.Target;
 import org.candlepin.audit.Event.Type;
 import org.candlepin.audit.EventBuilder;
@@ -44,6 +49,8 @@ import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.resource.dto.HypervisorCheckInResult;
 import org.candlepin.resource.util.ConsumerBindUtil;
+import org.candlepin.resource.util.HypervisorCheckInUtil;
+import org.candlepin.resource.util.HypervisorReportCache;
 import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.service.UserServiceAdapter;
@@ -58,6 +65,7 @@ import org.mockito.stubbing.Answer;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -117,6 +125,8 @@ public class HypervisorResourceTest {
 
     private ConsumerType hypervisorType;
 
+    private HypervisorReportCache reportCache;
+
     private HypervisorResource hypervisorResource;
 
     @Before
@@ -131,8 +141,10 @@ public class HypervisorResourceTest {
             this.deletedConsumerCurator, null, null, new CandlepinCommonTestConfig(),
             null, null, null, this.consumerBindUtil);
 
-        hypervisorResource = new HypervisorResource(consumerResource,
-            consumerCurator, i18n, ownerCurator);
+        this.reportCache = new HypervisorReportCache(new CandlepinCommonTestConfig());
+        hypervisorResource = new HypervisorResource(new HypervisorCheckInUtil(consumerResource,
+            consumerCurator, complianceRules, eventFactory, sink),
+            consumerCurator, i18n, ownerCurator, reportCache);
 
         // Ensure that we get the consumer that was passed in back from the create call.
         when(consumerCurator.create(any(Consumer.class))).thenAnswer(new Answer<Object>() {
@@ -233,8 +245,8 @@ public class HypervisorResourceTest {
         assertEquals("GUEST_B", c1.getGuestIds().get(0).getGuestId());
     }
 
-    @Test
-    public void hypervisorCheckInReportsFailuresOnCreateFailure() throws Exception {
+    @Test(expected = RuntimeException.class)
+    public void hypervisorCheckInFailsOnCreateFailure() throws Exception {
         Owner owner = new Owner("admin");
 
         Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
@@ -260,15 +272,58 @@ public class HypervisorResourceTest {
         when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
         when(principal.canAccess(eq(owner), eq(SubResource.CONSUMERS), eq(Access.CREATE))).
             thenReturn(true);
-        when(consumerCurator.create(any(Consumer.class))).
-                thenThrow(exception);
+        doThrow(exception).when(consumerCurator).createAll(anyCollectionOf(Consumer.class));
+
+        // Not caught, so that the check-in is rolled back:
+        hypervisorResource.hypervisorUpdate(hostGuestMap, principal, owner.getKey(), true);
+    }
+
+    @Test
+    public void hypervisorCheckInReportsInvalidHostAlone() throws Exception {
+        Owner owner = new Owner("admin");
+
+        Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
+        hostGuestMap.put("#bad-host", Arrays.asList(new GuestId("GUEST_A")));
+        hostGuestMap.put("good-host", Arrays.asList(new GuestId("GUEST_B")));
+
+        when(consumerCurator.getHostConsumersMap(any(Owner.class),
+                any(Set.class))).
+                thenReturn(new VirtConsumerMap());
+        when(consumerCurator.getGuestConsumersMap(any(Owner.class), any(Set.class))).
+            thenReturn(new VirtConsumerMap());
+        when(consumerTypeCurator.lookupByLabel(
+                eq(ConsumerTypeEnum.HYPERVISOR.getLabel()))).thenReturn(hypervisorType);
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+        when(principal.canAccess(eq(owner), eq(SubResource.CONSUMERS), eq(Access.CREATE))).
+            thenReturn(true);
 
         HypervisorCheckInResult result = hypervisorResource.hypervisorUpdate(hostGuestMap,
             principal, owner.getKey(), true);
 
+        assertEquals(1, result.getCreated().size());
+        assertEquals("good-host",
+            result.getCreated().iterator().next().getHypervisorId().getHypervisorId());
         Set<String> failures = result.getFailedUpdate();
         assertEquals(1, failures.size());
-        assertTrue(failures.iterator().next().contains("Problem creating unit"));
+        assertEquals("#bad-host: System name cannot begin with # character",
+            failures.iterator().next());
+    }
+
+    @Test
+    public void hypervisorCheckInDropsAppliedReports() throws Exception {
+        Owner owner = new Owner("owner-id", "Owner Id");
+        owner.setId("owner-db-id");
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(any(Owner.class), any(Set.class)))
+            .thenReturn(new VirtConsumerMap());
+        String digest = HypervisorReportCache.digest("report", true);
+        reportCache.put(owner.getId(), "reporter", digest, new HashMap<String, String>(), 0, 0);
+        assertTrue(reportCache.isApplied(owner.getId(), "reporter", digest));
+
+        hypervisorResource.hypervisorUpdate(new HashMap<String, List<GuestId>>(),
+            principal, owner.getKey(), true);
+
+        assertFalse(reportCache.isApplied(owner.getId(), "reporter", digest));
     }
 
     @Test
@@ -306,6 +361,62 @@ public class HypervisorResourceTest {
         assertEquals(expected, failed);
     }
 
+    @Test
+    public void hypervisorCheckInCreatesAllMissingHostsAtOnce() throws Exception {
+        Owner owner = new Owner("admin");
+
+        Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
+        hostGuestMap.put("host-1", Arrays.asList(new GuestId("GUEST_A")));
+        hostGuestMap.put("host-2", Arrays.asList(new GuestId("GUEST_B")));
+        hostGuestMap.put("host-3", new ArrayList<GuestId>());
+
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(any(Owner.class), any(Set.class))).
+            thenReturn(new VirtConsumerMap());
+        when(principal.canAccess(eq(owner), eq(SubResource.CONSUMERS), eq(Access.CREATE))).
+            thenReturn(true);
+        when(consumerTypeCurator.lookupByLabel(
+            eq(ConsumerTypeEnum.HYPERVISOR.getLabel()))).thenReturn(hypervisorType);
+
+        HypervisorCheckInResult result = hypervisorResource.hypervisorUpdate(hostGuestMap,
+            principal, owner.getKey(), true);
+
+        assertEquals(3, result.getCreated().size());
+        verify(consumerCurator, times(1)).createAll(anyCollectionOf(Consumer.class));
+        verify(consumerCurator, never()).create(any(Consumer.class));
+        verify(sink, times(3)).emitConsumerCreated(any(Consumer.class));
+        verify(sink, times(2)).queueEvent(any(Event.class));
+        verify(complianceRules).getStatuses(anyListOf(Consumer.class));
+    }
+
+    @Test
+    public void hypervisorCheckInLeavesHostWithSameGuestsUnchanged() throws Exception {
+        Owner owner = new Owner("owner-id", "Owner Id");
+
+        Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
+        String hypervisorId = "test-host";
+        hostGuestMap.put(hypervisorId, Arrays.asList(new GuestId("guest_b"),
+            new GuestId("GUEST_A")));
+
+        Consumer existing = new Consumer();
+        existing.setUuid("test-host");
+        existing.setOwner(owner);
+        existing.addGuestId(new GuestId("GUEST_A"));
+        existing.addGuestId(new GuestId("GUEST_B"));
+
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(any(Owner.class), any(Set.class))).
+            thenReturn(mockHypervisorConsumerMap(hypervisorId, existing));
+
+        HypervisorCheckInResult result = hypervisorResource.hypervisorUpdate(hostGuestMap,
+            principal, owner.getKey(), true);
+
+        assertEquals(1, result.getUnchanged().size());
+        assertEquals(0, result.getUpdated().size());
+        assertEquals(2, existing.getGuestIds().size());
+        verify(sink, never()).queueEvent(any(Event.class));
+    }
+
     @Test(expected = BadRequestException.class)
     public void ensureBadRequestWhenNoMappingIsIncludedInRequest() {
         hypervisorResource.hypervisorUpdate(null, principal, "an-owner", false);
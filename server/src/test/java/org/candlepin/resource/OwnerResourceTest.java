@@ -63,6 +63,7 @@ import org.candlepin.model.activationkeys.ActivationKey;
 import org.candlepin.model.activationkeys.ActivationKeyCurator;
 import org.candlepin.model.dto.Subscription;
 import org.candlepin.policy.EntitlementRefusedException;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.CandlepinParameterUnmarshaller;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
@@ -76,12 +77,15 @@ import org.candlepin.util.ContentOverrideValidator;
 import org.candlepin.util.ServiceLevelValidator;
 import org.candlepin.util.Util;
 
+import com.google.common.collect.Lists;
+
 import org.hamcrest.core.IsEqual;
 import org.jboss.resteasy.plugins.providers.atom.Entry;
 import org.jboss.resteasy.plugins.providers.atom.Feed;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartInput;
 import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.jboss.resteasy.util.GenericType;
 import org.junit.Before;
 import org.junit.Rule;
@@ -102,6 +106,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -429,6 +434,42 @@ public class OwnerResourceTest extends DatabaseTestFixture {
     }
 
 
+    @Test
+    public void testConsumersComplianceIsPaged() {
+        Set<String> uuids = new HashSet<String>();
+        for (int i = 0; i < 3; i++) {
+            Consumer c = TestUtil.createConsumer(owner);
+            consumerTypeCurator.create(c.getType());
+            consumerCurator.create(c);
+            uuids.add(c.getUuid());
+        }
+
+        PageRequest req = new PageRequest();
+        req.setPage(1);
+        req.setPerPage(2);
+        req.setOrder(PageRequest.Order.ASCENDING);
+        req.setSortBy("uuid");
+
+        Map<String, ComplianceStatus> statuses =
+            ownerResource.getConsumersComplianceStatus(owner.getKey(), req);
+        assertEquals(2, statuses.size());
+        Set<String> seen = new HashSet<String>(statuses.keySet());
+
+        req.setPage(2);
+        statuses = ownerResource.getConsumersComplianceStatus(owner.getKey(), req);
+        assertEquals(1, statuses.size());
+        seen.addAll(statuses.keySet());
+        assertEquals(uuids, seen);
+
+        statuses = ownerResource.getConsumersComplianceStatus(owner.getKey(), null);
+        assertEquals(uuids, statuses.keySet());
+        assertEquals("valid", statuses.values().iterator().next().getStatus());
+        Page<?> page = ResteasyProviderFactory.getContextData(Page.class);
+        assertEquals(Integer.valueOf(1), page.getPageRequest().getPage());
+        assertEquals(Integer.valueOf(100), page.getPageRequest().getPerPage());
+        assertEquals(Integer.valueOf(3), page.getMaxRecords());
+    }
+
     @Test(expected = ForbiddenException.class)
     public void testConsumerRoleCannotGetOwner() {
         Consumer c = TestUtil.createConsumer(owner);
@@ -705,9 +746,9 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         types.add("type");
         consumerTypeCurator.create(new ConsumerType("type"));
 
-        List<Consumer> results = ownerResource.listConsumers(
+        List<Consumer> results = Lists.newArrayList(ownerResource.listConsumers(
             owner.getKey(), "username", types, uuids, null, null, null, null,
-            null, new PageRequest());
+            null, new PageRequest()));
 
         assertEquals(0, results.size());
     }
@@ -731,9 +772,9 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         setupPrincipal(owner, Access.ALL);
         securityInterceptor.enable();
 
-        assertEquals(1,
+        assertEquals(1, Lists.newArrayList(
             ownerResource.listConsumers(owner.getKey(), null, null,
-                uuids, null, null, null, null, null, null).size());
+                uuids, null, null, null, null, null, null)).size());
     }
 
     /**
@@ -769,8 +810,8 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         setupPrincipal(owner, Access.ALL);
         securityInterceptor.enable();
 
-        List<Consumer> results = ownerResource.listConsumers(owner.getKey(), null,
-            null, uuids, null, null, null, null, null, null);
+        List<Consumer> results = Lists.newArrayList(ownerResource.listConsumers(
+            owner.getKey(), null, null, uuids, null, null, null, null, null, null));
         assertEquals(2, results.size());
     }
 
@@ -1017,7 +1058,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null,
             null,
             null
-        );
+        , null);
         or.createActivationKey("testOwner", ak);
     }
 
@@ -1102,7 +1143,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null, null, i18n, es, null, null, null, importer, null, null,
             null, importRecordCurator, null, null, null, null,
             null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null, null, null, null, null);
+            serviceLevelValidator, null, null, null, null, null, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
@@ -1137,7 +1178,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null, null, i18n, es, null, null, null, importer, null, null,
             null, importRecordCurator, null, null, null, null,
             null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null, null, null, null, null);
+            serviceLevelValidator, null, null, null, null, null, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
@@ -1178,7 +1219,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource ownerres = new OwnerResource(oc, null,
             null, null, i18n, null, null, null, null, null, null, null,
             null, null, null, null, null, null, null, null, null,
-            contentOverrideValidator, serviceLevelValidator, null, null, null, null, null);
+            contentOverrideValidator, serviceLevelValidator, null, null, null, null, null, null);
 
         when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
         when(owner.getUpstreamConsumer()).thenReturn(upstream);
@@ -1374,14 +1415,15 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource ownerres = new OwnerResource(oc, null,
                 null, null, i18n, null, null, null, null, null, null, null,
                 null, null, null, null, null, ec, null, null, null,
-                null, null, null, null, null, null, null);
+                null, null, null, null, null, null, null, null);
 
         when(oc.lookupByKey(owner.getKey())).thenReturn(owner);
         when(
                 ec.listByOwner(isA(Owner.class), anyString(), isA(EntitlementFilterBuilder.class),
                         isA(PageRequest.class))).thenReturn(page);
 
-        List<Entitlement> result = ownerres.ownerEntitlements(owner.getKey(), null, null, null, req);
+        List<Entitlement> result = Lists.newArrayList(
+            ownerres.ownerEntitlements(owner.getKey(), null, null, null, req));
 
         assertEquals(1, result.size());
         assertEquals("getAllEntitlementsForOwner", result.get(0).getId());
@@ -1397,7 +1439,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource ownerres = new OwnerResource(oc, null,
                 null, null, i18n, null, null, null, null, null, null, null,
                 null, null, null, null, null, null, null, null, null,
-                null, null, null, null, null, null, null);
+                null, null, null, null, null, null, null, null);
 
         ownerres.ownerEntitlements("Taylor Swift", null, null, null, req);
     }
@@ -1421,7 +1463,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource resource = new OwnerResource(
             oc, null, cc, null, i18n, null, null, null, null, null, cpm, null, null, null, null,
             null, ecc, ec, ucg, null, null, null, null, null, null, null, null, null
-        );
+        , null);
 
         try {
             when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
@@ -1457,7 +1499,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource resource = new OwnerResource(
             oc, null, cc, null, i18n, null, null, null, null, null, cpm, null, null, null, null,
             null, ecc, ec, ucg, null, null, null, null, null, null, null, null, null
-        );
+        , null);
 
         when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
         when(cc.findByName(eq(owner), eq(Consumer.UEBER_CERT_CONSUMER))).thenReturn(consumer);
@@ -1489,7 +1531,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource resource = new OwnerResource(
             oc, null, cc, null, i18n, null, null, null, null, null, cpm, null, null, null, null,
             null, ecc, ec, ucg, null, null, null, null, null, null, null, null, null
-        );
+        , null);
 
         try {
             when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
@@ -1520,7 +1562,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource resource = new OwnerResource(
             oc, null, cc, null, i18n, null, null, null, null, null, cpm, null, null, null, null,
             null, ecc, ec, ucg, null, null, null, null, null, null, null, null, null
-        );
+        , null);
 
         EntitlementCertificate result = resource.createUeberCertificate(principal, "admin");
     }
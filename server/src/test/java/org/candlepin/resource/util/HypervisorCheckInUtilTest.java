@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resource.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.Event;
+import org.candlepin.audit.Event.Target;
+import org.candlepin.audit.Event.Type;
+import org.candlepin.audit.EventBuilder;
+import org.candlepin.audit.EventFactory;
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
+import org.candlepin.common.exceptions.BadRequestException;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.HypervisorId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.VirtConsumerMap;
+import org.candlepin.policy.js.compliance.ComplianceRules;
+import org.candlepin.resource.ConsumerResource;
+import org.candlepin.resource.dto.HypervisorUpdateResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HypervisorCheckInUtilTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HypervisorCheckInUtilTest {
+
+    @Mock private ConsumerResource consumerResource;
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private ComplianceRules complianceRules;
+    @Mock private EventFactory eventFactory;
+    @Mock private EventSink sink;
+    @Mock private EventBuilder eventBuilder;
+    @Mock private Principal principal;
+
+    private Owner owner;
+    private Consumer host;
+    private VirtConsumerMap hostConsumers;
+    private HypervisorCheckInUtil util;
+
+    @Before
+    public void init() {
+        owner = new Owner("admin");
+        host = new Consumer();
+        host.setUuid("host-uuid");
+        host.setName("host");
+        host.setOwner(owner);
+        host.setHypervisorId(new HypervisorId(host, "HOST-ID"));
+        host.addGuestId(new GuestId("guest-1"));
+        host.addGuestId(new GuestId("guest-2"));
+        hostConsumers = new VirtConsumerMap();
+        hostConsumers.add("host-id", host);
+
+        when(eventFactory.getEventBuilder(any(Target.class), any(Type.class)))
+            .thenReturn(eventBuilder);
+        when(eventBuilder.setOldEntity(any(Consumer.class))).thenReturn(eventBuilder);
+        when(eventBuilder.setNewEntity(any(Consumer.class))).thenReturn(eventBuilder);
+
+        util = new HypervisorCheckInUtil(consumerResource, consumerCurator,
+            complianceRules, eventFactory, sink);
+    }
+
+    @Test
+    public void appliesGuestIdDifferences() {
+        GuestId added = new GuestId("guest-3");
+        Map<String, Consumer> incoming = incoming("HOST-ID",
+            reported(new GuestId("GUEST-2"), added));
+
+        HypervisorUpdateResult result = util.checkIn(owner, principal, incoming,
+            hostConsumers, true, null);
+
+        assertTrue(result.getUpdated().contains(host));
+        assertEquals(2, host.getGuestIds().size());
+        assertEquals("guest-2", host.getGuestIds().get(0).getGuestId());
+        assertSame(added, host.getGuestIds().get(1));
+        assertSame(host, added.getConsumer());
+
+        verify(consumerCurator).loadGuestIds(eq(Arrays.asList(host)));
+        verify(consumerCurator).updateAll(eq(Arrays.asList(host)));
+        verify(eventFactory).guestIdCreated(eq(added));
+        verify(eventFactory).guestIdDeleted(any(GuestId.class));
+        verify(eventBuilder).setOldEntity(eq(host));
+        verify(complianceRules).invalidateStatus(eq(host));
+        verify(complianceRules).getStatuses(eq(Arrays.asList(host)));
+    }
+
+    @Test
+    public void complianceComputedBeforeHostEvent() {
+        util.checkIn(owner, principal, incoming("HOST-ID", reported(new GuestId("guest-3"))),
+            hostConsumers, true, null);
+
+        InOrder inOrder = inOrder(complianceRules, eventBuilder);
+        inOrder.verify(complianceRules).getStatuses(eq(Arrays.asList(host)));
+        inOrder.verify(eventBuilder).setNewEntity(eq(host));
+    }
+
+    @Test
+    public void invalidNameNotApplied() {
+        Consumer reported = reported(new GuestId("guest-3"));
+        reported.setName("#host");
+        doThrow(new BadRequestException("invalid name"))
+            .when(consumerResource).checkConsumerName(eq(reported));
+
+        HypervisorUpdateResult result = util.checkIn(owner, principal,
+            incoming("HOST-ID", reported), hostConsumers, true, null);
+
+        assertEquals("host", host.getName());
+        assertEquals(2, host.getGuestIds().size());
+        assertTrue(result.getUpdated().isEmpty());
+        assertEquals("HOST-ID: invalid name", result.getFailedUpdate().iterator().next());
+        verify(sink, never()).queueEvent(any(Event.class));
+    }
+
+    @Test
+    public void unreportedGuestsAreKept() {
+        Consumer reported = new Consumer();
+        reported.setFact("cpu.cpu_socket(s)", "2");
+        HypervisorUpdateResult result = util.checkIn(owner, principal,
+            incoming("HOST-ID", reported), hostConsumers, true, null);
+
+        assertTrue(result.getUpdated().contains(host));
+        assertEquals("2", host.getFact("cpu.cpu_socket(s)"));
+        assertEquals(2, host.getGuestIds().size());
+        verify(eventFactory, never()).guestIdDeleted(any(GuestId.class));
+    }
+
+    @Test
+    public void hypervisorIdCaseIsUpdated() {
+        HypervisorUpdateResult result = util.checkIn(owner, principal,
+            incoming("host-id", reported(new GuestId("guest-1"), new GuestId("guest-2"))),
+            hostConsumers, true, null);
+
+        assertTrue(result.getUpdated().contains(host));
+        assertEquals("host-id", host.getHypervisorId().getHypervisorId());
+    }
+
+    @Test
+    public void reporterIdUpdatedOnUnchangedHost() {
+        HypervisorUpdateResult result = util.checkIn(owner, principal,
+            incoming("HOST-ID", reported(new GuestId("guest-1"), new GuestId("guest-2"))),
+            hostConsumers, true, "reporter");
+
+        assertTrue(result.getUnchanged().contains(host));
+        assertEquals("reporter", host.getHypervisorId().getReporterId());
+        verify(sink, never()).queueEvent(any(Event.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void createsMissingHostsTogether() {
+        Map<String, Consumer> incoming = incoming("new-1", reported(new GuestId("guest-a")));
+        incoming.put("new-2", reported());
+
+        HypervisorUpdateResult result = util.checkIn(owner, principal, incoming,
+            hostConsumers, true, "reporter");
+
+        ArgumentCaptor<List> created = ArgumentCaptor.forClass(List.class);
+        verify(consumerResource).createHypervisors(created.capture(), eq(principal), eq(owner));
+        assertEquals(2, created.getValue().size());
+        assertEquals(2, result.getCreated().size());
+        for (Consumer newHost : result.getCreated()) {
+            assertEquals("reporter", newHost.getHypervisorId().getReporterId());
+            assertEquals("x86_64", newHost.getFact("uname.machine"));
+            verify(sink).emitConsumerCreated(eq(newHost));
+        }
+        verify(eventFactory).guestIdCreated(any(GuestId.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void invalidMissingHostFailsAlone() {
+        Map<String, Consumer> incoming = incoming("new-1", reported(new GuestId("guest-a")));
+        incoming.put("new-2", reported(new GuestId("guest-b")));
+        when(consumerResource.createHypervisors(any(List.class), eq(principal), eq(owner)))
+            .thenAnswer(new Answer<Map<Consumer, String>>() {
+                @Override
+                public Map<Consumer, String> answer(InvocationOnMock invocation) {
+                    Map<Consumer, String> failed = new IdentityHashMap<Consumer, String>();
+                    for (Consumer newHost : (List<Consumer>) invocation.getArguments()[0]) {
+                        if ("new-2".equals(newHost.getName())) {
+                            failed.put(newHost, "invalid");
+                        }
+                    }
+                    return failed;
+                }
+            });
+
+        HypervisorUpdateResult result = util.checkIn(owner, principal, incoming,
+            hostConsumers, true, null);
+
+        assertEquals(1, result.getCreated().size());
+        assertEquals("new-1", result.getCreated().iterator().next().getName());
+        assertEquals(1, result.getFailedUpdate().size());
+        assertTrue(result.getFailedUpdate().iterator().next().contains("new-2"));
+        verify(sink, times(1)).emitConsumerCreated(any(Consumer.class));
+        verify(eventFactory, times(1)).guestIdCreated(any(GuestId.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected = RuntimeException.class)
+    public void failedWriteNotCaught() {
+        when(consumerResource.createHypervisors(any(List.class), eq(principal), eq(owner)))
+            .thenThrow(new RuntimeException("constraint violation"));
+
+        util.checkIn(owner, principal, incoming("new-1", reported()), hostConsumers,
+            true, null);
+    }
+
+    @Test
+    public void missingHostsSkippedWithoutCreate() {
+        HypervisorUpdateResult result = util.checkIn(owner, principal,
+            incoming("new-1", reported(new GuestId("guest-a"))), hostConsumers, false, null);
+
+        assertTrue(result.getCreated().isEmpty());
+        assertTrue(result.getFailedUpdate().isEmpty());
+        verify(sink, never()).emitConsumerCreated(any(Consumer.class));
+    }
+
+    private Map<String, Consumer> incoming(String hypervisorId, Consumer reported) {
+        Map<String, Consumer> incoming = new HashMap<String, Consumer>();
+        incoming.put(hypervisorId, reported);
+        return incoming;
+    }
+
+    private Consumer reported(GuestId... guestIds) {
+        Consumer reported = new Consumer();
+        reported.setGuestIds(Arrays.asList(guestIds));
+        return reported;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resource.util;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.GuestId;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HypervisorReportCacheTest
+ */
+public class HypervisorReportCacheTest {
+    private HypervisorReportCache cache;
+    private Map<String, String> hosts;
+
+    @Before
+    public void setUp() {
+        cache = new HypervisorReportCache(2, 60000L);
+        hosts = new HashMap<String, String>();
+        hosts.put("host-1", "digest-1");
+        hosts.put("host-2", "digest-2");
+    }
+
+    @Test
+    public void appliedReportSkipped() {
+        String digest = HypervisorReportCache.digest("report", true);
+        cache.put("owner", "reporter", digest, hosts, 2, 0);
+
+        assertTrue(cache.isApplied("owner", "reporter", digest));
+        assertFalse(cache.isApplied("owner", null, digest));
+        assertFalse(cache.isApplied("other", "reporter", digest));
+        assertFalse(cache.isApplied("owner", "reporter",
+            HypervisorReportCache.digest("report", false)));
+        assertEquals(1, cache.getSkippedReports());
+        assertEquals(2, cache.getSkippedHosts());
+        assertEquals(2, cache.getAppliedHosts());
+    }
+
+    @Test
+    public void failedReportNotSkipped() {
+        cache.put("owner", null, null, hosts, 2, 1);
+
+        assertFalse(cache.isApplied("owner", null, HypervisorReportCache.digest("report", true)));
+        assertEquals("digest-1", cache.getAppliedHosts("owner", null).get("host-1"));
+        assertEquals(1, cache.getSkippedHosts());
+    }
+
+    @Test
+    public void expiredReportNotSkipped() {
+        cache = new HypervisorReportCache(2, -1L);
+        cache.put("owner", null, "digest", hosts, 2, 0);
+
+        assertFalse(cache.isApplied("owner", null, "digest"));
+        assertTrue(cache.getAppliedHosts("owner", null).isEmpty());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        cache.put("one", null, "digest", hosts, 2, 0);
+        cache.put("two", null, "digest", hosts, 2, 0);
+        cache.isApplied("one", null, "digest");
+        cache.put("three", null, "digest", hosts, 2, 0);
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.isApplied("two", null, "digest"));
+        assertTrue(cache.isApplied("one", null, "digest"));
+    }
+
+    @Test
+    public void evictedByOwner() {
+        cache.put("owner", null, "digest", hosts, 2, 0);
+        cache.put("owner", "reporter", "digest", hosts, 2, 0);
+        cache.evict("owner");
+
+        assertEquals(0, cache.size());
+        assertFalse(cache.isApplied("owner", "reporter", "digest"));
+    }
+
+    @Test
+    public void disabledWithoutSize() {
+        assertTrue(cache.isEnabled());
+        cache = new HypervisorReportCache(0, 60000L);
+        assertFalse(cache.isEnabled());
+
+        cache.put("owner", null, "digest", hosts, 2, 0);
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getAppliedHosts());
+    }
+
+    @Test
+    public void hostDigestCoversNameFactsAndGuests() {
+        Consumer host = host();
+        String digest = HypervisorReportCache.digest("host-1", host);
+        assertEquals(digest, HypervisorReportCache.digest("host-1", host()));
+        assertFalse(digest.equals(HypervisorReportCache.digest("host-2", host)));
+
+        host.setFact("cpu.cpu_socket(s)", "4");
+        assertFalse(digest.equals(HypervisorReportCache.digest("host-1", host)));
+
+        host = host();
+        host.addGuestId(new GuestId("guest-2"));
+        assertFalse(digest.equals(HypervisorReportCache.digest("host-1", host)));
+
+        host = host();
+        host.getGuestIds().get(0).getAttributes().put("active", "0");
+        assertFalse(digest.equals(HypervisorReportCache.digest("host-1", host)));
+    }
+
+    private Consumer host() {
+        Consumer host = new Consumer();
+        host.setName("host");
+        host.setFact("cpu.cpu_socket(s)", "2");
+        GuestId guestId = new GuestId("guest-1");
+        guestId.getAttributes().put("active", "1");
+        host.addGuestId(guestId);
+        return host;
+    }
+}
@@ -46,6 +46,7 @@ import org.candlepin.pki.X509ExtensionWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
+import org.candlepin.util.ContentPayloadCache;
 import org.candlepin.util.Util;
 import org.candlepin.util.X509ExtensionUtil;
 import org.candlepin.util.X509V3ExtensionUtil;
@@ -58,6 +59,7 @@ import com.google.inject.Injector;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMReader;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -66,9 +68,12 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -80,9 +85,11 @@ import java.security.Key;
 import java.security.KeyPair;
 import java.security.Security;
 import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -92,6 +99,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.InflaterOutputStream;
 
 import javax.inject.Inject;
@@ -158,6 +167,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
     private Set<Content> largeContent;
 
     private static KeyPair keyPair;
+    private static ExecutorService signers;
 
     private String[] testUrls = {
         "/content/dist/rhel/$releasever/$basearch/os",
@@ -173,6 +183,16 @@ public class DefaultEntitlementCertServiceAdapterTest {
         Security.addProvider(new BouncyCastleProvider());
     }
 
+    @BeforeClass
+    public static void startSigners() {
+        signers = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopSigners() {
+        signers.shutdown();
+    }
+
     @BeforeClass
     public static void keyPair() throws Exception {
         ClassLoader cl = DefaultEntitlementCertServiceAdapterTest.class.getClassLoader();
@@ -206,7 +226,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
             mock(EntitlementCertificateCurator.class),
             keyPairCurator, serialCurator, entCurator,
             I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-            config);
+            config, signers);
 
         product = new Product("12345", "a product", owner, "variant", "version", ARCH_LABEL, "SVC");
         largeContentProduct = new Product("67890", "large content product", owner, "variant",
@@ -325,7 +345,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
             mock(EntitlementCertificateCurator.class),
             keyPairCurator, serialCurator, entCurator,
             I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-            config);
+            config, signers);
 
         X509Certificate result = certServiceAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(),
@@ -342,6 +362,79 @@ public class DefaultEntitlementCertServiceAdapterTest {
         result.checkValidity(twentyFiveHoursOut);
     }
 
+    @Test
+    public void bulkGenerationSignsAndPersistsTogether() throws Exception {
+        EntitlementCertificateCurator certCurator = mock(EntitlementCertificateCurator.class);
+        certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
+            realPKI, extensionUtil, v3extensionUtil, certCurator,
+            keyPairCurator, serialCurator, entCurator,
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+            config, signers);
+        when(keyPairCurator.getConsumerKeyPair(eq(consumer))).thenReturn(keyPair);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                long id = 1000;
+                for (Object serial : (Collection<?>) invocation.getArguments()[0]) {
+                    ((CertificateSerial) serial).setId(id++);
+                }
+                return null;
+            }
+        }).when(serialCurator).createAll(any(Collection.class), eq(false));
+
+        entitlement.setId("ent1");
+        Entitlement second = createEntitlement("ent2", pool);
+
+        // A V1 certificate with too many content sets is skipped:
+        Product tooLarge = new Product("99999", "Too large", owner, "variant", "version",
+            ARCH_LABEL, "SVC");
+        tooLarge.setContent(generateContent(X509ExtensionUtil.V1_CONTENT_LIMIT + 1, "Large"));
+        Pool tooLargePool = new Pool();
+        tooLargePool.setQuantity(1L);
+        tooLargePool.setProduct(tooLarge);
+        tooLargePool.setStartDate(pool.getStartDate());
+        tooLargePool.setEndDate(pool.getEndDate());
+        Entitlement skipped = createEntitlement("ent3", tooLargePool);
+
+        Map<String, EntitlementCertificate> certs = certServiceAdapter.generateEntitlementCerts(
+            Arrays.asList(entitlement, skipped, second));
+
+        assertEquals(Arrays.asList("ent1", "ent2"), new ArrayList<String>(certs.keySet()));
+        assertTrue(skipped.getCertificates().isEmpty());
+        verify(serialCurator).createAll(argThat(hasSize(2)), eq(false));
+        verify(certCurator).createAll(argThat(hasSize(2)));
+        verify(serialCurator, never()).create(any(CertificateSerial.class), anyBoolean());
+
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        for (Entitlement ent : Arrays.asList(entitlement, second)) {
+            EntitlementCertificate cert = certs.get(ent.getId());
+            assertEquals(Collections.singleton(cert), ent.getCertificates());
+            X509Certificate x509 = (X509Certificate) factory.generateCertificate(
+                new ByteArrayInputStream(cert.getCert().getBytes()));
+            assertEquals(BigInteger.valueOf(cert.getSerial().getId()), x509.getSerialNumber());
+            assertEquals("CN=" + ent.getId(), x509.getSubjectX500Principal().getName());
+        }
+    }
+
+    private Entitlement createEntitlement(String id, Pool entPool) {
+        Entitlement ent = new Entitlement();
+        ent.setId(id);
+        ent.setQuantity(1);
+        ent.setConsumer(consumer);
+        ent.setPool(entPool);
+        ent.setOwner(owner);
+        return ent;
+    }
+
+    private static ArgumentMatcher<Collection> hasSize(final int size) {
+        return new ArgumentMatcher<Collection>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((Collection<?>) argument).size() == size;
+            }
+        };
+    }
+
     @Test(expected = CertificateSizeException.class)
     public void tooManyContentSetsAcrossMultipleProducts() throws Exception {
         Set<Product> providedProducts = new HashSet<Product>();
@@ -785,7 +878,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, signers);
 
         entAdapter.createX509Certificate(entitlement, product,
             new HashSet<Product>(),
@@ -827,7 +920,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, signers);
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(),
@@ -859,7 +952,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, signers);
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(),
@@ -888,7 +981,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, signers);
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(),
@@ -914,7 +1007,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, signers);
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(),
@@ -1618,9 +1711,14 @@ public class DefaultEntitlementCertServiceAdapterTest {
             "".getBytes());
         when(mockedPKI.getPemEncoded(any(Key.class))).thenReturn("".getBytes());
 
-        CertificateSerial serial = mock(CertificateSerial.class);
-        when(serial.getId()).thenReturn(1L);
-        when(serialCurator.create(any(CertificateSerial.class))).thenReturn(serial);
+        when(serialCurator.create(any(CertificateSerial.class), eq(false))).thenAnswer(
+            new Answer<CertificateSerial>() {
+                public CertificateSerial answer(InvocationOnMock invocation) {
+                    CertificateSerial serial = (CertificateSerial) invocation.getArguments()[0];
+                    serial.setId(1L);
+                    return serial;
+                }
+            });
 
         EntitlementCertificate cert =
             certServiceAdapter.generateEntitlementCert(entitlement, product);
@@ -1662,6 +1760,52 @@ public class DefaultEntitlementCertServiceAdapterTest {
         }
     }
 
+    @Test
+    public void contentExtensionSharedBetweenSameContentSets() throws Exception {
+        ContentPayloadCache payloadCache = new ContentPayloadCache(10);
+        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator, payloadCache);
+        certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
+            mockedPKI, extensionUtil, v3extensionUtil,
+            mock(EntitlementCertificateCurator.class),
+            keyPairCurator, serialCurator, entCurator,
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+            config, signers);
+
+        Set<Product> products = new HashSet<Product>();
+        products.add(product);
+        product.setContent(superContent);
+        consumer.setFact("system.certificate_version", "3.2");
+        consumer.setFact("uname.machine", "x86_64");
+
+        byte[] first = contentExtension(products, "prefix");
+        byte[] second = contentExtension(products, "prefix");
+        assertArrayEquals(first, second);
+        assertEquals(1, payloadCache.getHits());
+
+        // Another prefix changes every content path:
+        List<String> contentSetList = v3extensionUtil.hydrateContentPackage(
+            contentExtension(products, "other"));
+        assertEquals(2, payloadCache.getMisses());
+        assertEquals(7, contentSetList.size());
+        for (String url : testUrls) {
+            assertTrue(contentSetList.contains("/other" + url));
+        }
+    }
+
+    private byte[] contentExtension(Set<Product> products, String prefix)
+        throws IOException {
+        Set<X509ByteExtensionWrapper> byteExtensions =
+            certServiceAdapter.prepareV3ByteExtensions(product,
+                getProductModels(product, products, prefix, entitlement), entitlement,
+                prefix, null);
+        for (X509ByteExtensionWrapper ext : byteExtensions) {
+            if (ext.getOid().equals("1.3.6.1.4.1.2312.9.7")) {
+                return ext.getValue();
+            }
+        }
+        throw new AssertionError("No content extension");
+    }
+
     @Test
     public void testContentExtensionConsumerNoArchFact() throws IOException {
         Set<Product> products = new HashSet<Product>();
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -84,7 +85,7 @@ public class DefaultIdentityCertServiceAdapterTest {
         KeyPair kp = createKeyPair();
         when(kpc.getConsumerKeyPair(consumer)).thenReturn(kp);
         when(idcur.find(consumer.getId())).thenReturn(null);
-        when(csc.create(any(CertificateSerial.class))).thenAnswer(
+        when(csc.create(any(CertificateSerial.class), eq(false))).thenAnswer(
             new Answer<CertificateSerial>() {
                 public CertificateSerial answer(InvocationOnMock invocation) {
                     Object[] args = invocation.getArguments();
@@ -116,7 +117,7 @@ public class DefaultIdentityCertServiceAdapterTest {
         assertNotNull(ic.getCertAsBytes());
         assertNotNull(ic.getKeyAsBytes());
         verify(consumer).setIdCert(ic);
-        verify(csc).create(any(CertificateSerial.class));
+        verify(csc).create(any(CertificateSerial.class), eq(false));
     }
 
     @Test
@@ -145,7 +146,7 @@ public class DefaultIdentityCertServiceAdapterTest {
 
         KeyPair kp = createKeyPair();
         when(kpc.getConsumerKeyPair(consumer)).thenReturn(kp);
-        when(csc.create(any(CertificateSerial.class))).thenAnswer(
+        when(csc.create(any(CertificateSerial.class), eq(false))).thenAnswer(
             new Answer<CertificateSerial>() {
                 public CertificateSerial answer(InvocationOnMock invocation) {
                     Object[] args = invocation.getArguments();
@@ -179,7 +180,7 @@ public class DefaultIdentityCertServiceAdapterTest {
         assertNotNull(ic.getCertAsBytes());
         assertNotNull(ic.getKeyAsBytes());
         verify(consumer).setIdCert(ic);
-        verify(csc).create(any(CertificateSerial.class));
+        verify(csc).create(any(CertificateSerial.class), eq(false));
 
     }
 
@@ -193,7 +194,7 @@ public class DefaultIdentityCertServiceAdapterTest {
 
         KeyPair kp = createKeyPair();
         when(kpc.getConsumerKeyPair(consumer)).thenReturn(kp);
-        when(csc.create(any(CertificateSerial.class))).thenAnswer(
+        when(csc.create(any(CertificateSerial.class), eq(false))).thenAnswer(
             new Answer<CertificateSerial>() {
                 public CertificateSerial answer(InvocationOnMock invocation) {
                     Object[] args = invocation.getArguments();
@@ -227,7 +228,7 @@ public class DefaultIdentityCertServiceAdapterTest {
         assertNotNull(ic.getCertAsBytes());
         assertNotNull(ic.getKeyAsBytes());
         verify(consumer).setIdCert(ic);
-        verify(csc).create(any(CertificateSerial.class));
+        verify(csc).create(any(CertificateSerial.class), eq(false));
 
     }
 }
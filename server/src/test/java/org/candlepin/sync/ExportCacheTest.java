@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ExportCacheTest
+ */
+public class ExportCacheTest {
+    private ExportCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ExportCache(2);
+    }
+
+    @Test
+    public void servedOnlyForSameVersion() throws IOException {
+        cache.put("consumer", "v1", archive("one"));
+
+        assertEquals("one", read(cache.open("consumer", "v1")));
+        assertNull(cache.open("consumer", "v2"));
+        assertNull(cache.open("other", "v1"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        cache.evict("consumer");
+    }
+
+    @Test
+    public void replacedArchiveDeleted() throws IOException {
+        File first = archive("one");
+        File second = archive("two");
+        cache.put("consumer", "v1", first);
+        cache.put("consumer", "v2", second);
+
+        assertFalse(first.getParentFile().exists());
+        assertEquals("two", read(cache.open("consumer", "v2")));
+        cache.evict("consumer");
+        assertFalse(second.getParentFile().exists());
+    }
+
+    @Test
+    public void openedArchiveReadableAfterReplaced() throws IOException {
+        File first = archive("one");
+        cache.put("consumer", "v1", first);
+        InputStream opened = cache.open("consumer", "v1");
+        cache.put("consumer", "v2", archive("two"));
+
+        assertFalse(first.exists());
+        assertEquals("one", read(opened));
+        cache.evict("consumer");
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws IOException {
+        cache.put("one", "v1", archive("one"));
+        cache.put("two", "v1", archive("two"));
+        read(cache.open("one", "v1"));
+        cache.put("three", "v1", archive("three"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.open("two", "v1"));
+        assertEquals("one", read(cache.open("one", "v1")));
+        cache.evict("one");
+        cache.evict("three");
+    }
+
+    @Test
+    public void deletedArchiveNotServed() throws IOException {
+        File archive = archive("one");
+        cache.put("consumer", "v1", archive);
+        assertTrue(archive.delete());
+
+        assertNull(cache.open("consumer", "v1"));
+        cache.evict("consumer");
+    }
+
+    @Test
+    public void disabledWithoutSize() {
+        assertTrue(cache.isEnabled());
+        assertFalse(new ExportCache(0).isEnabled());
+    }
+
+    private File archive(String content) throws IOException {
+        File dir = File.createTempFile("export", Long.toString(System.nanoTime()));
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        File archive = new File(dir, "export.zip");
+        FileUtils.writeStringToFile(archive, content);
+        return archive;
+    }
+
+    private String read(InputStream in) throws IOException {
+        try {
+            return IOUtils.toString(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
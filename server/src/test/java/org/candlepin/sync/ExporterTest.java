@@ -54,8 +54,11 @@ import org.candlepin.service.ProductServiceAdapter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -68,14 +71,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 
@@ -84,6 +90,8 @@ import java.util.zip.ZipInputStream;
  */
 public class ExporterTest {
 
+    private static final java.security.KeyPair SIGNING_KEYS = createSigningKeys();
+
     private ConsumerTypeCurator ctc;
     private MetaExporter me;
     private ConsumerExporter ce;
@@ -105,6 +113,7 @@ public class ExporterTest {
     private CandlepinCommonTestConfig config;
     private ExportRules exportRules;
     private PrincipalProvider pprov;
+    private ExportCache exportCache;
 
     @Before
     public void setUp() {
@@ -129,6 +138,7 @@ public class ExporterTest {
         dve = new DistributorVersionExporter();
         cdnc = mock(CdnCurator.class);
         cdne = new CdnExporter();
+        exportCache = new ExportCache(0);
 
         when(exportRules.canExport(any(Entitlement.class))).thenReturn(Boolean.TRUE);
     }
@@ -149,6 +159,17 @@ public class ExporterTest {
         return cpKeyPair;
     }
 
+    private static java.security.KeyPair createSigningKeys() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void exportProducts() throws Exception {
@@ -213,8 +234,7 @@ public class ExporterTest {
 
         when(ent.getPool()).thenReturn(pool);
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
         when(rc.getRules()).thenReturn(mrules);
         when(consumer.getEntitlements()).thenReturn(entitlements);
         when(psa.getProductById(prod.getOwner(), "12345")).thenReturn(prod);
@@ -238,7 +258,8 @@ public class ExporterTest {
 
         // FINALLY test this badboy
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
-            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
 
         File export = e.getFullExport(consumer);
 
@@ -269,8 +290,7 @@ public class ExporterTest {
         List<Entitlement> entitlements = new ArrayList<Entitlement>();
         entitlements.add(ent);
 
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
 
@@ -291,7 +311,8 @@ public class ExporterTest {
             .thenReturn("publicKey".getBytes());
 
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
-            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
 
         e.getFullExport(consumer);
     }
@@ -306,8 +327,7 @@ public class ExporterTest {
         IdentityCertificate idcert = new IdentityCertificate();
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -328,7 +348,8 @@ public class ExporterTest {
 
         // FINALLY test this badboy
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
-            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
         File export = e.getFullExport(consumer);
 
         // VERIFY
@@ -350,8 +371,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -374,7 +394,8 @@ public class ExporterTest {
 
         // FINALLY test this badboy
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
-            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
         File export = e.getFullExport(consumer);
 
         // VERIFY
@@ -394,8 +415,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -421,7 +441,8 @@ public class ExporterTest {
 
         // FINALLY test this badboy
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
-            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
         File export = e.getFullExport(consumer);
 
         verifyContent(export, "export/consumer.json",
@@ -438,8 +459,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -475,13 +495,157 @@ public class ExporterTest {
 
         // FINALLY test this badboy
         Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
-            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
         File export = e.getFullExport(consumer);
 
         verifyContent(export, "export/distributor_version/test-dist-ver.json",
             new VerifyDistributorVersion("test-dist-ver.json"));
     }
 
+    @Test
+    public void exportIsSignedAsItIsWritten() throws Exception {
+        config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
+        Consumer consumer = mockExportableConsumer();
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
+        File export = e.getFullExport(consumer);
+
+        try {
+            assertTrue(verifySignature(export));
+        }
+        finally {
+            FileUtils.deleteDirectory(export.getParentFile());
+        }
+    }
+
+    @Test
+    public void unchangedExportIsCopiedFromCacheWithNewMeta() throws Exception {
+        config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
+        Consumer consumer = mockExportableConsumer();
+        exportCache = new ExportCache(10);
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne,
+            exportCache);
+        File first = e.getFullExport(consumer);
+        // Creation dates are written in milliseconds:
+        Thread.sleep(5);
+        File second = e.getFullExport(consumer);
+
+        assertFalse(first.equals(second));
+        assertEquals(1, exportCache.getHits());
+        assertTrue(verifySignature(second));
+
+        Map<String, String> firstEntries = readConsumerExport(first);
+        Map<String, String> secondEntries = readConsumerExport(second);
+        assertFalse(firstEntries.get("export/meta.json").equals(
+            secondEntries.get("export/meta.json")));
+        firstEntries.remove("export/meta.json");
+        secondEntries.remove("export/meta.json");
+        assertEquals(firstEntries, secondEntries);
+
+        // Anything going into the export builds a new one:
+        when(consumer.getName()).thenReturn("renamed");
+        File third = e.getFullExport(consumer);
+        assertEquals(2, exportCache.getMisses());
+
+        // Replacing the cached export leaves the ones served alone:
+        assertTrue(first.exists());
+        assertTrue(second.exists());
+        assertTrue(third.exists());
+
+        exportCache.evict(consumer.getUuid());
+        FileUtils.deleteDirectory(first.getParentFile());
+        FileUtils.deleteDirectory(second.getParentFile());
+        FileUtils.deleteDirectory(third.getParentFile());
+    }
+
+    private boolean verifySignature(File export) throws Exception {
+        ZipFile archive = new ZipFile(export);
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(SIGNING_KEYS.getPublic());
+            InputStream in = archive.getInputStream(archive.getEntry("consumer_export.zip"));
+            try {
+                signature.update(IOUtils.toByteArray(in));
+            }
+            finally {
+                in.close();
+            }
+            InputStream signed = archive.getInputStream(archive.getEntry("signature"));
+            try {
+                return signature.verify(IOUtils.toByteArray(signed));
+            }
+            finally {
+                signed.close();
+            }
+        }
+        finally {
+            archive.close();
+        }
+    }
+
+    private Map<String, String> readConsumerExport(File export) throws IOException {
+        Map<String, String> entries = new HashMap<String, String>();
+        ZipFile archive = new ZipFile(export);
+        try {
+            ZipInputStream in = new ZipInputStream(
+                archive.getInputStream(archive.getEntry("consumer_export.zip")));
+            try {
+                for (ZipEntry entry = in.getNextEntry(); entry != null;
+                    entry = in.getNextEntry()) {
+                    entries.put(entry.getName(), IOUtils.toString(in));
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            archive.close();
+        }
+        return entries;
+    }
+
+    private Consumer mockExportableConsumer() {
+        Rules mrules = mock(Rules.class);
+        Consumer consumer = mock(Consumer.class);
+        Principal principal = mock(Principal.class);
+
+        when(mrules.getRules()).thenReturn("foobar");
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new SignerAnswer());
+        when(rc.getRules()).thenReturn(mrules);
+        when(pprov.get()).thenReturn(principal);
+        when(principal.getUsername()).thenReturn("testUser");
+
+        IdentityCertificate idcert = new IdentityCertificate();
+        idcert.setSerial(new CertificateSerial(10L, new Date()));
+        idcert.setKey("euh0876puhapodifbvj094");
+        idcert.setCert("hpj-08ha-w4gpoknpon*)&^%#");
+        idcert.setCreated(new Date());
+        idcert.setUpdated(new Date());
+        when(consumer.getIdCert()).thenReturn(idcert);
+        when(consumer.getUuid()).thenReturn("8auuid");
+        when(consumer.getName()).thenReturn("consumer_name");
+        when(consumer.getType()).thenReturn(new ConsumerType(ConsumerTypeEnum.CANDLEPIN));
+        return consumer;
+    }
+
+    /**
+     * Hands out a new signature made with the test key on every call.
+     */
+    private static class SignerAnswer implements Answer<Signature> {
+        @Override
+        public Signature answer(InvocationOnMock invocation) throws Throwable {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(SIGNING_KEYS.getPrivate());
+            return signature;
+        }
+    }
+
     /**
      * return true if export has a given entry named name.
      * @param export zip file to inspect
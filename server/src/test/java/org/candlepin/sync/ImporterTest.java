@@ -63,10 +63,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.net.URISyntaxException;
 import java.security.Security;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -139,8 +141,8 @@ public class ImporterTest {
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(em);
         Importer i = new Importer(null, null, null, null, null, null,
             null, null, null, emc, null, null, i18n, null, null);
-        i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actual,
-            new ConflictOverrides());
+        i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null,
+            ManifestEntry.forFile(actual), new ConflictOverrides());
 
         Meta fileMeta = mapper.readValue(file, Meta.class);
         Meta actualMeta = mapper.readValue(actual, Meta.class);
@@ -163,8 +165,8 @@ public class ImporterTest {
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(null);
         Importer i = new Importer(null, null, null, null, null, null,
             null, null, null, emc, null, null, i18n, null, null);
-        i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
-            new ConflictOverrides());
+        i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null,
+            ManifestEntry.forFile(actualmeta), new ConflictOverrides());
         assertTrue(f.delete());
         assertTrue(actualmeta.delete());
         verify(emc).create(any(ExporterMetadata.class));
@@ -185,8 +187,8 @@ public class ImporterTest {
         Importer i = new Importer(null, null, null, null, null, null,
             null, null, null, emc, null, null, i18n, null, null);
         try {
-            i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
-                new ConflictOverrides());
+            i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null,
+                ManifestEntry.forFile(actualmeta), new ConflictOverrides());
             fail();
         }
         catch (ImportConflictException e) {
@@ -213,8 +215,8 @@ public class ImporterTest {
         Importer i = new Importer(null, null, null, null, null, null,
             null, null, null, emc, null, null, i18n, null, null);
         try {
-            i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
-                new ConflictOverrides());
+            i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null,
+                ManifestEntry.forFile(actualmeta), new ConflictOverrides());
             fail();
         }
         catch (ImportConflictException e) {
@@ -260,8 +262,8 @@ public class ImporterTest {
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(em);
         Importer i = new Importer(null, null, null, null, null, null,
             null, null, null, emc, null, null, i18n, null, null);
-        i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
-            new ConflictOverrides());
+        i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null,
+            ManifestEntry.forFile(actualmeta), new ConflictOverrides());
         assertEquals(importDate, em.getExported());
     }
 
@@ -274,7 +276,8 @@ public class ImporterTest {
                 null, null, null, null, null, null, i18n, null, null);
 
             // null Type should cause exception
-            i.validateMetadata(null, null, actualmeta, new ConflictOverrides());
+            i.validateMetadata(null, null, ManifestEntry.forFile(actualmeta),
+                new ConflictOverrides());
         }
         finally {
             assertTrue(actualmeta.delete());
@@ -292,8 +295,8 @@ public class ImporterTest {
             null, null, null, emc, null, null, i18n, null, null);
 
         // null Type should cause exception
-        i.validateMetadata(ExporterMetadata.TYPE_PER_USER, null, actualmeta,
-            new ConflictOverrides());
+        i.validateMetadata(ExporterMetadata.TYPE_PER_USER, null,
+            ManifestEntry.forFile(actualmeta), new ConflictOverrides());
         verify(emc, never()).create(any(ExporterMetadata.class));
     }
 
@@ -376,7 +379,7 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(InputStream.class),
             any(byte [].class))).thenReturn(true);
 
         File archive = new File("/tmp/file.zip");
@@ -412,7 +415,7 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(InputStream.class),
             any(byte [].class))).thenReturn(true);
 
         File archive = new File("/tmp/file.zip");
@@ -436,15 +439,15 @@ public class ImporterTest {
         fail();
     }
 
-    private Map<String, File> getTestImportFiles() {
-        Map<String, File> importFiles = new HashMap<String, File>();
-        importFiles.put(ImportFile.META.fileName(), mock(File.class));
-        importFiles.put(ImportFile.RULES_FILE.fileName(), mock(File.class));
-        importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), mock(File.class));
-        importFiles.put(ImportFile.CONSUMER.fileName(), mock(File.class));
-        importFiles.put(ImportFile.PRODUCTS.fileName(), mock(File.class));
-        importFiles.put(ImportFile.ENTITLEMENTS.fileName(), mock(File.class));
-        importFiles.put(ImportFile.DISTRIBUTOR_VERSIONS.fileName(), mock(File.class));
+    private Map<String, ManifestEntry> getTestImportFiles() {
+        Map<String, ManifestEntry> importFiles = new HashMap<String, ManifestEntry>();
+        importFiles.put(ImportFile.META.fileName(), mock(ManifestEntry.class));
+        importFiles.put(ImportFile.RULES_FILE.fileName(), mock(ManifestEntry.class));
+        importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), mock(ManifestEntry.class));
+        importFiles.put(ImportFile.CONSUMER.fileName(), mock(ManifestEntry.class));
+        importFiles.put(ImportFile.PRODUCTS.fileName(), mock(ManifestEntry.class));
+        importFiles.put(ImportFile.ENTITLEMENTS.fileName(), mock(ManifestEntry.class));
+        importFiles.put(ImportFile.DISTRIBUTOR_VERSIONS.fileName(), mock(ManifestEntry.class));
         return importFiles;
     }
 
@@ -455,7 +458,7 @@ public class ImporterTest {
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
-        Map<String, File> importFiles = getTestImportFiles();
+        Map<String, ManifestEntry> importFiles = getTestImportFiles();
         importFiles.put(ImportFile.META.fileName(), null);
 
         try {
@@ -475,7 +478,7 @@ public class ImporterTest {
             null, config, null, null, null, i18n, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
-        Map<String, File> importFiles = getTestImportFiles();
+        Map<String, ManifestEntry> importFiles = getTestImportFiles();
 
         importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), null);
 
@@ -496,7 +499,7 @@ public class ImporterTest {
             null, config, null, null, null, i18n, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
-        Map<String, File> importFiles = getTestImportFiles();
+        Map<String, ManifestEntry> importFiles = getTestImportFiles();
 
         importFiles.put(ImportFile.CONSUMER.fileName(), null);
 
@@ -519,10 +522,8 @@ public class ImporterTest {
             null, config, null, null, null, i18n, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
-        Map<String, File> importFiles = getTestImportFiles();
-        File ruleDir = mock(File.class);
+        Map<String, ManifestEntry> importFiles = getTestImportFiles();
         File[] rulesFiles = createMockJsFile(MOCK_JS_PATH);
-        when(ruleDir.listFiles()).thenReturn(rulesFiles);
         File actualmeta = createFile("meta.json", "0.0.3", new Date(),
             "test_user", "prefix");
         // this is the hook to stop testing. we confirm that the archive component tests
@@ -531,11 +532,12 @@ public class ImporterTest {
         doThrow(new RuntimeException("Done with the test")).when(ri).importObject(
             any(Reader.class));
 
-        importFiles.put(ImportFile.META.fileName(), actualmeta);
-        importFiles.put(ImportFile.RULES_FILE.fileName(), rulesFiles[0]);
+        importFiles.put(ImportFile.META.fileName(), ManifestEntry.forFile(actualmeta));
+        importFiles.put(ImportFile.RULES_FILE.fileName(),
+            ManifestEntry.forFile(rulesFiles[0]));
         importFiles.put(ImportFile.PRODUCTS.fileName(), null);
         importFiles.put(ImportFile.ENTITLEMENTS.fileName(), null);
-        importFiles.put(ImportFile.UPSTREAM_CONSUMER.fileName(), mock(File.class));
+        importFiles.put(ImportFile.UPSTREAM_CONSUMER.fileName(), mock(ManifestEntry.class));
 
         try {
             i.importObjects(owner, importFiles, co);
@@ -554,7 +556,7 @@ public class ImporterTest {
             null, config, null, null, null, i18n, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
-        Map<String, File> importFiles = getTestImportFiles();
+        Map<String, ManifestEntry> importFiles = getTestImportFiles();
 
         importFiles.put(ImportFile.ENTITLEMENTS.fileName(), null);
 
@@ -646,12 +648,13 @@ public class ImporterTest {
             mock(IdentityCertificateCurator.class), null, null,
             pki, null, null, mock(CertificateSerialCurator.class), null, i18n, null,
             null);
-        File[] upstream = new File[2];
+        List<ManifestEntry> upstream = new ArrayList<ManifestEntry>();
         File idcertfile = new File("target/test/resources/upstream/testidcert.json");
         File kpfile = new File("target/test/resources/upstream/keypair.pem");
-        upstream[0] = idcertfile;
-        upstream[1] = kpfile;
-        File consumerfile = new File("target/test/resources/upstream/consumer.json");
+        upstream.add(ManifestEntry.forFile(idcertfile));
+        upstream.add(ManifestEntry.forFile(kpfile));
+        ManifestEntry consumerfile = ManifestEntry.forFile(
+            new File("target/test/resources/upstream/consumer.json"));
 
         Owner owner = mock(Owner.class);
         ConflictOverrides forcedConflicts = mock(ConflictOverrides.class);
@@ -669,8 +672,9 @@ public class ImporterTest {
         DistributorVersionCurator dvc = mock(DistributorVersionCurator.class);
         Importer i = new Importer(null, null, null, null, null, null,
             null, null, null, null, null, null, i18n, dvc, null);
-        File[] distVer = new File[1];
-        distVer[0] = new File("target/test/resources/upstream/dist-ver.json");
+        List<ManifestEntry> distVer = new ArrayList<ManifestEntry>();
+        distVer.add(ManifestEntry.forFile(
+            new File("target/test/resources/upstream/dist-ver.json")));
 
         i.importDistributorVersions(distVer);
 
@@ -685,8 +689,9 @@ public class ImporterTest {
             null, null, null, null, null, null, i18n, dvc, null);
         when(dvc.findByName("test-dist-ver")).thenReturn(
             new DistributorVersion("test-dist-ver"));
-        File[] distVer = new File[1];
-        distVer[0] = new File("target/test/resources/upstream/dist-ver.json");
+        List<ManifestEntry> distVer = new ArrayList<ManifestEntry>();
+        distVer.add(ManifestEntry.forFile(
+            new File("target/test/resources/upstream/dist-ver.json")));
 
         i.importDistributorVersions(distVer);
 
@@ -703,20 +708,19 @@ public class ImporterTest {
             null, null, config, emc, null, null, i18n, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
-        Map<String, File> importFiles = getTestImportFiles();
-        File ruleDir = mock(File.class);
+        Map<String, ManifestEntry> importFiles = getTestImportFiles();
         File[] rulesFiles = createMockJsFile(MOCK_JS_PATH);
-        when(ruleDir.listFiles()).thenReturn(rulesFiles);
         File actualmeta = createFile("meta.json", "0.0.3", new Date(),
             "test_user", "prefix");
-        importFiles.put(ImportFile.META.fileName(), actualmeta);
-        importFiles.put(ImportFile.RULES_FILE.fileName(), rulesFiles[0]);
+        importFiles.put(ImportFile.META.fileName(), ManifestEntry.forFile(actualmeta));
+        importFiles.put(ImportFile.RULES_FILE.fileName(),
+            ManifestEntry.forFile(rulesFiles[0]));
         importFiles.put(ImportFile.PRODUCTS.fileName(), null);
         importFiles.put(ImportFile.ENTITLEMENTS.fileName(), null);
         doNothing().when(ri).importObject(any(Reader.class));
         importFiles.put(ImportFile.DISTRIBUTOR_VERSIONS.fileName(), null);
-        File cTypes = mock(File.class);
-        when(cTypes.listFiles()).thenReturn(new File[]{});
+        ManifestEntry cTypes = mock(ManifestEntry.class);
+        when(cTypes.listEntries()).thenReturn(new ArrayList<ManifestEntry>());
         importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), cTypes);
 
         // this is the hook to stop testing. we confirm that the dist version null test
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ManifestArchiveTest
+ */
+public class ManifestArchiveTest {
+
+    private File zipFile;
+    private ManifestArchive archive;
+
+    @Before
+    public void init() throws IOException {
+        zipFile = File.createTempFile("consumer_export", ".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        addEntry(out, "export/meta.json", "{\"version\":\"0.0.3\"}");
+        addEntry(out, "export/consumer.json", "{}");
+        addEntry(out, "export/products/100.json", "{\"id\":\"100\"}");
+        addEntry(out, "export/products/100.pem", "cert");
+        addEntry(out, "export/rules2/rules.js", "// rules");
+        addEntry(out, "signature", "not below the export directory");
+        out.close();
+
+        archive = new ManifestArchive(zipFile);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        archive.close();
+        zipFile.delete();
+    }
+
+    @Test
+    public void indexesTopLevelEntries() {
+        Map<String, ManifestEntry> entries = archive.getEntries();
+        assertEquals(4, entries.size());
+        assertTrue(entries.containsKey("meta.json"));
+        assertTrue(entries.containsKey("consumer.json"));
+        assertTrue(entries.containsKey("products"));
+        assertTrue(entries.containsKey("rules2"));
+    }
+
+    @Test
+    public void listsDirectoryEntries() {
+        List<String> names = new ArrayList<String>();
+        for (ManifestEntry entry : archive.getEntries().get("products").listEntries()) {
+            names.add(entry.getName());
+        }
+        assertEquals(2, names.size());
+        assertTrue(names.contains("100.json"));
+        assertTrue(names.contains("100.pem"));
+    }
+
+    @Test
+    public void readsNestedEntryInPlace() throws IOException {
+        ManifestEntry rules = archive.getEntry("rules2/rules.js");
+        Reader reader = rules.openReader();
+        try {
+            assertEquals("// rules", IOUtils.toString(reader));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void missingEntryIsNull() {
+        assertNull(archive.getEntry("entitlements"));
+        assertNull(archive.getEntry("rules2/missing.js"));
+    }
+
+    @Test
+    public void filesHaveNoEntries() {
+        assertTrue(archive.getEntry("meta.json").listEntries().isEmpty());
+    }
+
+    @Test(expected = ZipException.class)
+    public void rejectsFlatFile() throws IOException {
+        File flat = File.createTempFile("flat", ".zip");
+        try {
+            FileOutputStream out = new FileOutputStream(flat);
+            out.write("Just a flat file".getBytes());
+            out.close();
+            new ManifestArchive(flat);
+        }
+        finally {
+            flat.delete();
+        }
+    }
+
+    private void addEntry(ZipOutputStream out, String name, String content)
+        throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes("UTF-8"));
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.common.config.MapConfiguration;
+import org.candlepin.config.ConfigProperties;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ManifestImportBenchmark
+ *
+ * Times the file handling part of a manifest import against a synthetic
+ * consumer_export.zip: the single signature pass over the archive, indexing
+ * it, and parsing every product and entitlement straight from its zip entry.
+ * Nothing is written to the database. Not run as part of the test suite:
+ *
+ *   java org.candlepin.sync.ManifestImportBenchmark [entitlements] [products]
+ *       [entitlement size in KB]
+ */
+public class ManifestImportBenchmark {
+
+    private ManifestImportBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int entitlements = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int products = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int entitlementKb = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(ConfigProperties.FAIL_ON_UNKNOWN_IMPORT_PROPERTIES, "false");
+        ObjectMapper mapper = SyncUtils.getObjectMapper(new MapConfiguration(props));
+
+        File zip = File.createTempFile("consumer_export", ".zip");
+        try {
+            long start = System.currentTimeMillis();
+            writeManifest(zip, entitlements, products, entitlementKb);
+            report("generate", start, zip);
+
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keys = generator.generateKeyPair();
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keys.getPrivate());
+            update(signature, zip);
+            byte[] signed = signature.sign();
+
+            start = System.currentTimeMillis();
+            signature.initVerify(keys.getPublic());
+            update(signature, zip);
+            if (!signature.verify(signed)) {
+                throw new IllegalStateException("signature check failed");
+            }
+            report("verify signature", start, zip);
+
+            start = System.currentTimeMillis();
+            ManifestArchive archive = new ManifestArchive(zip);
+            report("index archive", start, zip);
+
+            try {
+                start = System.currentTimeMillis();
+                int parsed = parse(mapper, archive.getEntry("products"));
+                parsed += parse(mapper, archive.getEntry("entitlements"));
+                report("parse " + parsed + " entries", start, zip);
+            }
+            finally {
+                archive.close();
+            }
+        }
+        finally {
+            zip.delete();
+        }
+    }
+
+    private static int parse(ObjectMapper mapper, ManifestEntry dir) throws IOException {
+        int parsed = 0;
+        for (ManifestEntry entry : dir.listEntries()) {
+            InputStream in = entry.open();
+            try {
+                mapper.readTree(in);
+                parsed++;
+            }
+            finally {
+                in.close();
+            }
+        }
+        return parsed;
+    }
+
+    private static void update(Signature signature, File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                signature.update(buf, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static void writeManifest(File zip, int entitlements, int products,
+        int entitlementKb) throws IOException {
+        StringBuilder padding = new StringBuilder(entitlementKb * 1024);
+        while (padding.length() < entitlementKb * 1024) {
+            padding.append("MIIFxTCCA62gAwIBAgIIYnF1ZXN0aW9uMA0GCSqGSIb3DQEBBQUAMDMxEjAQBgNV");
+        }
+
+        ZipOutputStream out = new ZipOutputStream(
+            new BufferedOutputStream(new FileOutputStream(zip)));
+        try {
+            addEntry(out, "export/meta.json",
+                "{\"version\":\"0.0.3\",\"created\":\"2014-01-01T00:00:00.000+0000\"}");
+            for (int i = 0; i < products; i++) {
+                addEntry(out, "export/products/" + i + ".json",
+                    "{\"id\":\"" + i + "\",\"name\":\"Product " + i + "\"," +
+                    "\"multiplier\":1,\"attributes\":[{\"name\":\"arch\"," +
+                    "\"value\":\"x86_64\"}],\"productContent\":[]}");
+            }
+            for (int i = 0; i < entitlements; i++) {
+                addEntry(out, "export/entitlements/" + i + ".json",
+                    "{\"id\":\"ent" + i + "\",\"quantity\":10,\"pool\":{\"id\":\"pool" + i +
+                    "\",\"productId\":\"" + (i % Math.max(products, 1)) + "\"}," +
+                    "\"certificates\":[{\"serial\":{\"id\":" + i + "},\"cert\":\"" +
+                    padding + "\"}]}");
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void addEntry(ZipOutputStream out, String name, String content)
+        throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes("UTF-8"));
+        out.closeEntry();
+    }
+
+    private static void report(String phase, long start, File zip) {
+        System.out.println(String.format("%-24s %6d ms  (%d KB archive)", phase,
+            System.currentTimeMillis() - start, zip.length() / 1024));
+    }
+}
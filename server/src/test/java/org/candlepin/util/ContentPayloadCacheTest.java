@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.model.dto.Content;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ContentPayloadCacheTest
+ */
+public class ContentPayloadCacheTest {
+    private ContentPayloadCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ContentPayloadCache(2);
+    }
+
+    @Test
+    public void fingerprintDependsOnPathsAndOrder() {
+        String key = cache.fingerprint(content("/a/b", "/c"));
+        assertEquals(key, cache.fingerprint(content("/a/b", "/c")));
+        assertFalse(key.equals(cache.fingerprint(content("/c", "/a/b"))));
+        assertFalse(key.equals(cache.fingerprint(content("/a", "/b/c"))));
+        assertFalse(key.equals(cache.fingerprint(content("/a/b/c"))));
+    }
+
+    @Test
+    public void payloadsCopiedInAndOut() {
+        byte[] payload = new byte[] {1, 2, 3};
+        cache.put("key", payload);
+        payload[0] = 0;
+
+        byte[] cached = cache.get("key");
+        assertArrayEquals(new byte[] {1, 2, 3}, cached);
+        cached[1] = 0;
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get("key"));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        cache.put("one", new byte[] {1});
+        cache.put("two", new byte[] {2});
+        cache.get("one");
+        cache.put("three", new byte[] {3});
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("two"));
+        assertNotNull(cache.get("one"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void disabledWithoutSize() {
+        assertTrue(cache.isEnabled());
+        assertFalse(new ContentPayloadCache(0).isEnabled());
+    }
+
+    private List<Content> content(String... paths) {
+        List<Content> contentList = new ArrayList<Content>();
+        for (String path : paths) {
+            Content content = new Content();
+            content.setPath(path);
+            contentList.add(content);
+        }
+        return contentList;
+    }
+}
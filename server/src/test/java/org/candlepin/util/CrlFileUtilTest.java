@@ -27,10 +27,16 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
@@ -131,4 +137,85 @@ public class CrlFileUtilTest {
             }
         }
     }
+
+    @Test
+    public void readCRLBytesFollowsRewrites() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        try {
+            X509CRL crl = mock(X509CRL.class);
+            when(pkiUtility.getPemEncoded(any(X509CRL.class))).thenReturn("first".getBytes());
+            cfu.writeCRLFile(f, crl);
+            assertEquals("first", new String(cfu.readCRLBytes(f)));
+
+            when(pkiUtility.getPemEncoded(any(X509CRL.class))).thenReturn("second".getBytes());
+            cfu.writeCRLFile(f, crl);
+            assertEquals("second", new String(cfu.readCRLBytes(f)));
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void newCRLDropsDelta() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        try {
+            X509CRL crl = mock(X509CRL.class);
+            when(pkiUtility.getPemEncoded(any(X509CRL.class))).thenReturn("crl".getBytes());
+            cfu.writeCRLFile(f, crl);
+            cfu.publishBaseCRLFile(f);
+            assertEquals("crl", FileUtils.readFileToString(cfu.getBaseFile(f)));
+
+            cfu.writeDeltaCRLFile(f, crl);
+            assertTrue(cfu.getDeltaFile(f).exists());
+            cfu.writeCRLFile(f, crl);
+            assertFalse(cfu.getDeltaFile(f).exists());
+        }
+        finally {
+            cfu.getBaseFile(f).delete();
+            cfu.getDeltaFile(f).delete();
+            f.delete();
+        }
+    }
+
+    @Test
+    public void syncCRLFileReplacesFile() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        try {
+            FileUtils.writeStringToFile(f, "old");
+            when(pkiUtility.readCRLNumber(any(InputStream.class))).thenReturn(BigInteger.TEN);
+            doAnswer(new Answer<Object>() {
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    ((OutputStream) invocation.getArguments()[1]).write("new".getBytes());
+                    return null;
+                }
+            }).when(crlGenerator).syncCRLWithDB(eq(BigInteger.TEN), any(OutputStream.class));
+
+            assertEquals("old", new String(cfu.readCRLBytes(f)));
+            cfu.syncCRLFile(f, crlGenerator);
+            assertEquals("new", new String(cfu.readCRLBytes(f)));
+            assertEquals(1, f.getParentFile().listFiles(new PrefixFilter(f.getName())).length);
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void crlNumberOfMissingFile() throws Exception {
+        assertEquals(BigInteger.ZERO, cfu.readCRLNumber(new File("/tmp/missing.crl")));
+        verify(pkiUtility, never()).readCRLNumber(any(InputStream.class));
+    }
+
+    private static class PrefixFilter implements FilenameFilter {
+        private final String prefix;
+
+        PrefixFilter(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public boolean accept(File dir, String name) {
+            return name.startsWith(prefix);
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * SerialNumberAllocatorTest
+ */
+public class SerialNumberAllocatorTest {
+
+    @Test
+    public void serialsConsecutiveWithinBlock() {
+        SerialNumberAllocator allocator = new SerialNumberAllocator(16);
+        long first = allocator.next();
+        assertTrue(first > 0);
+        long base = first - first % 16;
+        for (long expected = first + 1; expected < base + 16; expected++) {
+            assertEquals(expected, allocator.next());
+        }
+        assertEquals(1, allocator.getBlocksReserved());
+
+        long next = allocator.next();
+        assertTrue(next > 0);
+        assertEquals(0, next % 16);
+        assertEquals(2, allocator.getBlocksReserved());
+    }
+
+    @Test
+    public void singleSerialBlocks() {
+        SerialNumberAllocator allocator = new SerialNumberAllocator(1);
+        Set<Long> serials = new HashSet<Long>();
+        for (int i = 0; i < 100; i++) {
+            long serial = allocator.next();
+            assertTrue(serial > 0);
+            serials.add(serial);
+        }
+        assertEquals(100, serials.size());
+        assertEquals(100, allocator.getBlocksReserved());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blockSizeMustBePositive() {
+        new SerialNumberAllocator(0);
+    }
+
+    @Test
+    public void concurrentSerialsUnique() throws Exception {
+        final SerialNumberAllocator allocator = new SerialNumberAllocator(8);
+        final List<Long> serials = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        serials.add(allocator.next());
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, serials.size());
+        assertEquals(8000, new HashSet<Long>(serials).size());
+    }
+}
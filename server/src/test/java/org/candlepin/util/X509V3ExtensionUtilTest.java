@@ -32,13 +32,20 @@ import org.candlepin.test.TestUtil;
 import org.candlepin.util.X509V3ExtensionUtil.NodePair;
 import org.candlepin.util.X509V3ExtensionUtil.PathNode;
 
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 
@@ -47,6 +54,7 @@ import java.util.Set;
  * X509V3ExtensionUtilTest
  */
 public class X509V3ExtensionUtilTest {
+
     private Configuration config;
     private EntitlementCurator ec;
     private X509V3ExtensionUtil util;
@@ -185,4 +193,87 @@ public class X509V3ExtensionUtilTest {
         assertEquals("OS", resultBrandType);
     }
 
+    /*
+     * The golden payloads are snapshots of the current encoder, which is
+     * deterministic, and guard against unintended changes of the encoding. They
+     * are checked to decode to the content paths they were written for.
+     */
+    @Test
+    public void contentPayloadMatchesGoldenFiles() throws Exception {
+        for (int count : new int[] {100, 1000}) {
+            List<org.candlepin.model.dto.Content> contents = contentSets(count);
+            String golden = readGolden(count);
+            Set<String> paths = new HashSet<String>();
+            for (org.candlepin.model.dto.Content c : contents) {
+                paths.add(c.getPath());
+            }
+            assertEquals("paths of golden payload of " + count + " content sets", paths,
+                new HashSet<String>(util.hydrateContentPackage(
+                    Base64.decodeBase64(golden.getBytes("US-ASCII")))));
+
+            byte[] payload = util.createContentPayload(contents);
+            assertEquals("payload of " + count + " content sets", golden,
+                new String(Base64.encodeBase64(payload), "US-ASCII"));
+        }
+    }
+
+    @Test
+    public void contentPayloadHydrates() throws Exception {
+        List<org.candlepin.model.dto.Content> contents = contentSets(300);
+        Set<String> paths = new HashSet<String>();
+        for (org.candlepin.model.dto.Content c : contents) {
+            paths.add(c.getPath());
+        }
+
+        byte[] payload = util.createContentPayload(contents);
+        assertEquals(paths, new HashSet<String>(util.hydrateContentPackage(payload)));
+    }
+
+    @Test
+    public void emptyContentPayload() throws Exception {
+        assertEquals(0, util.createContentPayload(
+            new ArrayList<org.candlepin.model.dto.Content>()).length);
+    }
+
+    private List<org.candlepin.model.dto.Content> contentSets(int count) {
+        String[] products = {"rhel", "rhel-ha", "rhel-rs", "rhel-lb", "jboss", "rhev",
+            "satellite", "openstack"};
+        String[] variants = {"server", "client", "workstation", "computenode"};
+        String[] versions = {"5", "6", "7", "$releasever"};
+        String[] arches = {"x86_64", "i386", "ppc64", "s390x", "$basearch"};
+        String[] types = {"os", "debug", "source/SRPMS", "iso", "optional/os",
+            "supplementary/os"};
+
+        Random random = new Random(count);
+        Set<String> paths = new LinkedHashSet<String>();
+        while (paths.size() < count) {
+            paths.add("/content/" + (random.nextInt(10) == 0 ? "beta" : "dist") + "/" +
+                pick(random, products) + random.nextInt(1 + count / 50) + "/" +
+                pick(random, variants) + "/" + pick(random, versions) + "/" +
+                pick(random, arches) + "/" + pick(random, types));
+        }
+
+        List<org.candlepin.model.dto.Content> contents =
+            new ArrayList<org.candlepin.model.dto.Content>();
+        for (String path : paths) {
+            org.candlepin.model.dto.Content content = new org.candlepin.model.dto.Content();
+            content.setPath(path);
+            contents.add(content);
+        }
+        return contents;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String readGolden(int count) throws IOException {
+        InputStream in = getClass().getResourceAsStream("v3-content-" + count + ".b64");
+        try {
+            return IOUtils.toString(in, "US-ASCII").trim();
+        }
+        finally {
+            in.close();
+        }
+    }
 }